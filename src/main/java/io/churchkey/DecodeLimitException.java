@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+/**
+ * Thrown when an input exceeds one of the limits set in {@link DecodeOptions}
+ */
+public class DecodeLimitException extends IllegalArgumentException {
+
+    private final String limit;
+    private final long actual;
+    private final long maximum;
+
+    public DecodeLimitException(final String limit, final long actual, final long maximum) {
+        super(String.format("Maximum %s exceeded: %s > %s", limit, actual, maximum));
+        this.limit = limit;
+        this.actual = actual;
+        this.maximum = maximum;
+    }
+
+    public String getLimit() {
+        return limit;
+    }
+
+    public long getActual() {
+        return actual;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Switches off work a caller does not need and bounds the resources a
+ * single decode may consume.
+ *
+ * <code>
+ * final DecodeOptions options = DecodeOptions.builder()
+ *         .attributes(false)
+ *         .maximumInputSize(64 * 1024)
+ *         .maximumKeys(100)
+ *         .maximumRsaBits(8192)
+ *         .build();
+ *
+ * final List&lt;Key&gt; keys = Keys.decodeSet(bytes, options);
+ * </code>
+ *
+ * The options are installed for the calling thread for the duration of
+ * {@link Keys#decode(byte[], DecodeOptions)} and friends, and parsers read
+ * them through {@link #current()}.  Outside of such a call {@link #current()}
+ * returns {@link #DEFAULTS}, which capture everything and impose no limits
+ * other than on the work of deriving the key of an encrypted private key.
+ *
+ * A limit that is exceeded raises a {@link DecodeLimitException} before the
+ * costly part of the work is done wherever the format allows it.
+ */
+public final class DecodeOptions {
+
+    public static final DecodeOptions DEFAULTS = builder().build();
+
+    private static final ThreadLocal<DecodeOptions> CURRENT = new ThreadLocal<>();
+
+    private final boolean derivePublicKey;
+    private final boolean attributes;
+    private final long maximumInputSize;
+    private final int maximumKeys;
+    private final int maximumRsaBits;
+    private final int maximumDsaBits;
+    private final int maximumDerDepth;
+    private final long maximumDerLength;
+    private final int maximumPbkdf2Iterations;
+    private final long maximumScryptMemory;
+    private final long maximumScryptCost;
+    private final Supplier<char[]> passwordCallback;
+
+    private DecodeOptions(final Builder builder) {
+        this.derivePublicKey = builder.derivePublicKey;
+        this.attributes = builder.attributes;
+        this.maximumInputSize = builder.maximumInputSize;
+        this.maximumKeys = builder.maximumKeys;
+        this.maximumRsaBits = builder.maximumRsaBits;
+        this.maximumDsaBits = builder.maximumDsaBits;
+        this.maximumDerDepth = builder.maximumDerDepth;
+        this.maximumDerLength = builder.maximumDerLength;
+        this.maximumPbkdf2Iterations = builder.maximumPbkdf2Iterations;
+        this.maximumScryptMemory = builder.maximumScryptMemory;
+        this.maximumScryptCost = builder.maximumScryptCost;
+        this.passwordCallback = builder.passwordCallback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the options of the decode running on this thread, or {@link #DEFAULTS}
+     */
+    public static DecodeOptions current() {
+        final DecodeOptions options = CURRENT.get();
+        return options != null ? options : DEFAULTS;
+    }
+
+    /**
+     * Installs the options for this thread
+     *
+     * @return the options previously installed, to be handed to {@link #exit(DecodeOptions)}
+     */
+    static DecodeOptions enter(final DecodeOptions options) {
+        final DecodeOptions previous = CURRENT.get();
+        CURRENT.set(options);
+        return previous;
+    }
+
+    static void exit(final DecodeOptions previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Runs part of a decode with these options installed on the calling
+     * thread.  Parsers that split their work over other threads use it so
+     * each task sees the options of the decode that started it.
+     */
+    public <T> T within(final Supplier<T> decode) {
+        final DecodeOptions previous = enter(this);
+        try {
+            return decode.get();
+        } finally {
+            exit(previous);
+        }
+    }
+
+    /**
+     * When false a private key only has a public key if the encoded file
+     * contained one; it is never calculated from the private key.
+     */
+    public boolean isDerivePublicKey() {
+        return derivePublicKey;
+    }
+
+    /**
+     * When false JWK members, PEM and SSH2 headers and OpenSSH comments are
+     * not copied into {@link Key#getAttributes()}
+     */
+    public boolean isAttributes() {
+        return attributes;
+    }
+
+    public long getMaximumInputSize() {
+        return maximumInputSize;
+    }
+
+    public int getMaximumKeys() {
+        return maximumKeys;
+    }
+
+    public int getMaximumRsaBits() {
+        return maximumRsaBits;
+    }
+
+    public int getMaximumDsaBits() {
+        return maximumDsaBits;
+    }
+
+    public int getMaximumDerDepth() {
+        return maximumDerDepth;
+    }
+
+    public long getMaximumDerLength() {
+        return maximumDerLength;
+    }
+
+    public int getMaximumPbkdf2Iterations() {
+        return maximumPbkdf2Iterations;
+    }
+
+    public long getMaximumScryptMemory() {
+        return maximumScryptMemory;
+    }
+
+    public long getMaximumScryptCost() {
+        return maximumScryptCost;
+    }
+
+    /**
+     * Asked for the password of each encrypted key.  The array returned is
+     * cleared once the key is decrypted.  Bundles with encrypted keys are
+     * decrypted in parallel, so the callback may be called concurrently
+     * from {@link java.util.concurrent.ForkJoinPool#commonPool() common pool}
+     * threads and must be thread-safe.
+     *
+     * @return the callback or null if encrypted keys cannot be decrypted
+     */
+    public Supplier<char[]> getPasswordCallback() {
+        return passwordCallback;
+    }
+
+    public void checkInputSize(final long size) {
+        if (size > maximumInputSize) throw new DecodeLimitException("input size", size, maximumInputSize);
+    }
+
+    public void checkKeys(final int count) {
+        if (count > maximumKeys) throw new DecodeLimitException("keys", count, maximumKeys);
+    }
+
+    public void checkRsaBits(final int bits) {
+        if (bits > maximumRsaBits) throw new DecodeLimitException("RSA modulus bits", bits, maximumRsaBits);
+    }
+
+    public void checkDsaBits(final int bits) {
+        if (bits > maximumDsaBits) throw new DecodeLimitException("DSA p bits", bits, maximumDsaBits);
+    }
+
+    public void checkDerDepth(final int depth) {
+        if (depth > maximumDerDepth) throw new DecodeLimitException("DER nesting depth", depth, maximumDerDepth);
+    }
+
+    public void checkDerLength(final long length) {
+        if (length > maximumDerLength) throw new DecodeLimitException("DER value length", length, maximumDerLength);
+    }
+
+    public void checkPbkdf2Iterations(final long iterations) {
+        if (iterations > maximumPbkdf2Iterations) throw new DecodeLimitException("PBKDF2 iterations", iterations, maximumPbkdf2Iterations);
+    }
+
+    public void checkScryptMemory(final long bytes) {
+        if (bytes > maximumScryptMemory) throw new DecodeLimitException("scrypt memory", bytes, maximumScryptMemory);
+    }
+
+    public void checkScryptCost(final long cost) {
+        if (cost > maximumScryptCost) throw new DecodeLimitException("scrypt cost N * r * p", cost, maximumScryptCost);
+    }
+
+    /**
+     * Checks the key count and the size of every key.  Covers formats whose
+     * key material is parsed by the JCA, where the size is only known after.
+     */
+    void check(final List<Key> keys) {
+        checkKeys(keys.size());
+        for (final Key key : keys) {
+            check(key);
+        }
+    }
+
+    void check(final Key key) {
+        if (key.getAlgorithm() == Key.Algorithm.RSA && maximumRsaBits != Integer.MAX_VALUE) {
+            checkRsaBits(key.getSize());
+        } else if (key.getAlgorithm() == Key.Algorithm.DSA && maximumDsaBits != Integer.MAX_VALUE) {
+            checkDsaBits(key.getSize());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeOptions{" +
+                "derivePublicKey=" + derivePublicKey +
+                ", attributes=" + attributes +
+                ", maximumInputSize=" + maximumInputSize +
+                ", maximumKeys=" + maximumKeys +
+                ", maximumRsaBits=" + maximumRsaBits +
+                ", maximumDsaBits=" + maximumDsaBits +
+                ", maximumDerDepth=" + maximumDerDepth +
+                ", maximumDerLength=" + maximumDerLength +
+                ", maximumPbkdf2Iterations=" + maximumPbkdf2Iterations +
+                ", maximumScryptMemory=" + maximumScryptMemory +
+                ", maximumScryptCost=" + maximumScryptCost +
+                ", passwordCallback=" + (passwordCallback != null ? "set" : null) +
+                '}';
+    }
+
+    public static class Builder {
+
+        private boolean derivePublicKey = true;
+        private boolean attributes = true;
+        private long maximumInputSize = Long.MAX_VALUE;
+        private int maximumKeys = Integer.MAX_VALUE;
+        private int maximumRsaBits = Integer.MAX_VALUE;
+        private int maximumDsaBits = Integer.MAX_VALUE;
+        private int maximumDerDepth = Integer.MAX_VALUE;
+        private long maximumDerLength = Long.MAX_VALUE;
+        private int maximumPbkdf2Iterations = 10_000_000;
+        private long maximumScryptMemory = 64L * 1024 * 1024;
+        private long maximumScryptCost = 1L << 19;
+        private Supplier<char[]> passwordCallback;
+
+        Builder() {
+        }
+
+        public Builder derivePublicKey(final boolean derivePublicKey) {
+            this.derivePublicKey = derivePublicKey;
+            return this;
+        }
+
+        public Builder attributes(final boolean attributes) {
+            this.attributes = attributes;
+            return this;
+        }
+
+        /**
+         * Inputs larger than this many bytes are rejected before being read or parsed
+         */
+        public Builder maximumInputSize(final long maximumInputSize) {
+            this.maximumInputSize = maximumInputSize;
+            return this;
+        }
+
+        /**
+         * Sets larger than this are rejected before any key in them is built
+         */
+        public Builder maximumKeys(final int maximumKeys) {
+            this.maximumKeys = maximumKeys;
+            return this;
+        }
+
+        public Builder maximumRsaBits(final int maximumRsaBits) {
+            this.maximumRsaBits = maximumRsaBits;
+            return this;
+        }
+
+        public Builder maximumDsaBits(final int maximumDsaBits) {
+            this.maximumDsaBits = maximumDsaBits;
+            return this;
+        }
+
+        /**
+         * How deeply DER structures may nest
+         */
+        public Builder maximumDerDepth(final int maximumDerDepth) {
+            this.maximumDerDepth = maximumDerDepth;
+            return this;
+        }
+
+        /**
+         * The largest length a single DER element may declare.  Checked as
+         * soon as the length is read, before any value byte is buffered.
+         */
+        public Builder maximumDerLength(final long maximumDerLength) {
+            this.maximumDerLength = maximumDerLength;
+            return this;
+        }
+
+        /**
+         * The largest PBKDF2 iteration count an encrypted key may ask for.
+         * The count comes from the file, so it is bounded by default, to
+         * 10,000,000.
+         */
+        public Builder maximumPbkdf2Iterations(final int maximumPbkdf2Iterations) {
+            this.maximumPbkdf2Iterations = maximumPbkdf2Iterations;
+            return this;
+        }
+
+        /**
+         * The most memory, in bytes, scrypt may use to derive the key of an
+         * encrypted key, 128 * r * (N + p) for the N, r and p of the file.
+         * Bounded by default to 64 MiB, enough for N = 2^16 with r = 8.
+         */
+        public Builder maximumScryptMemory(final long maximumScryptMemory) {
+            this.maximumScryptMemory = maximumScryptMemory;
+            return this;
+        }
+
+        /**
+         * The most work scrypt may do to derive the key of an encrypted key,
+         * N * r * p for the N, r and p of the file.  The memory limit alone
+         * does not bound it, as each of the p lanes reuses the same memory.
+         * Bounded by default to 2^19, the work of N = 2^16 with r = 8 and p = 1.
+         */
+        public Builder maximumScryptCost(final long maximumScryptCost) {
+            this.maximumScryptCost = maximumScryptCost;
+            return this;
+        }
+
+        /**
+         * The password of encrypted keys, such as {@code ENCRYPTED PRIVATE KEY}
+         * PEM files.  The array is copied.
+         */
+        public Builder password(final char[] password) {
+            final char[] copy = password.clone();
+            return passwordCallback(copy::clone);
+        }
+
+        /**
+         * Called for every encrypted key, so the password need not be held in
+         * memory between decodes.  The array returned is cleared after use.
+         * The callback must be thread-safe, see {@link DecodeOptions#getPasswordCallback()}.
+         */
+        public Builder passwordCallback(final Supplier<char[]> passwordCallback) {
+            this.passwordCallback = passwordCallback;
+            return this;
+        }
+
+        public DecodeOptions build() {
+            return new DecodeOptions(this);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The outcome of decoding a single input.  Holds either the keys found in
+ * the input, or the {@link Status} and {@link Reason} explaining why there
+ * are none, so one bad input never aborts the rest of a batch.
+ *
+ * Results built by {@link Keys#tryDecode(byte[])} for input that is not a
+ * key, or that is structurally broken, carry no exception and no message;
+ * only the reason code and the offset where the problem was found.
+ *
+ * See {@link Keys#decodeAll(java.util.Collection)}
+ */
+public class DecodeResult {
+
+    public enum Status {
+        SUCCESS,
+
+        /**
+         * The input does not start like any known key format
+         */
+        NOT_A_KEY,
+
+        /**
+         * The input starts like a key but could not be decoded
+         */
+        MALFORMED
+    }
+
+    public enum Reason {
+        NONE,
+
+        /**
+         * The input is empty or only whitespace
+         */
+        EMPTY,
+
+        /**
+         * The leading bytes match no known format
+         */
+        UNKNOWN_FORMAT,
+
+        /**
+         * A PEM or SSH2 header line is not terminated
+         */
+        INVALID_HEADER,
+
+        /**
+         * A PEM or SSH2 block has no END line
+         */
+        MISSING_FOOTER,
+
+        /**
+         * A character that cannot appear in base64 data
+         */
+        INVALID_BASE64,
+
+        /**
+         * A block or JSON object with no data or ending early
+         */
+        TRUNCATED,
+
+        /**
+         * The input is well formed but the key inside it could not be built,
+         * see {@link DecodeResult#getError()}
+         */
+        INVALID_KEY
+    }
+
+    private static final DecodeResult EMPTY = new DecodeResult(Status.NOT_A_KEY, Reason.EMPTY, 0, Collections.emptyList(), null);
+
+    private final Status status;
+    private final Reason reason;
+    private final int offset;
+    private final List<Key> keys;
+    private final Exception error;
+
+    private DecodeResult(final Status status, final Reason reason, final int offset, final List<Key> keys, final Exception error) {
+        this.status = status;
+        this.reason = reason;
+        this.offset = offset;
+        this.keys = keys;
+        this.error = error;
+    }
+
+    public static DecodeResult success(final List<Key> keys) {
+        Objects.requireNonNull(keys);
+        return new DecodeResult(Status.SUCCESS, Reason.NONE, -1, Collections.unmodifiableList(keys), null);
+    }
+
+    public static DecodeResult failure(final Exception error) {
+        Objects.requireNonNull(error);
+        return new DecodeResult(Status.MALFORMED, Reason.INVALID_KEY, -1, Collections.emptyList(), error);
+    }
+
+    public static DecodeResult notAKey(final Reason reason, final int offset) {
+        if (reason == Reason.EMPTY && offset == 0) return EMPTY;
+        return new DecodeResult(Status.NOT_A_KEY, reason, offset, Collections.emptyList(), null);
+    }
+
+    public static DecodeResult malformed(final Reason reason, final int offset) {
+        return new DecodeResult(Status.MALFORMED, reason, offset, Collections.emptyList(), null);
+    }
+
+    public static DecodeResult malformed(final Reason reason, final int offset, final Exception error) {
+        return new DecodeResult(Status.MALFORMED, reason, offset, Collections.emptyList(), error);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return why decoding failed, or {@link Reason#NONE} if it succeeded
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the index in the input where the problem was found, or -1 if not known
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return all keys found in the input, or an empty list if decoding failed
+     */
+    public List<Key> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the first key found in the input
+     * @throws IllegalStateException if decoding failed or no key was found
+     */
+    public Key getKey() {
+        if (error != null) throw new IllegalStateException("Decoding failed", error);
+        if (status != Status.SUCCESS) throw new IllegalStateException("Decoding failed: " + status + " " + reason + " at offset " + offset);
+        if (keys.isEmpty()) throw new IllegalStateException("No keys found");
+        return keys.get(0);
+    }
+
+    /**
+     * @return the exception thrown while decoding or null if there was none
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) return "DecodeResult{error=" + error + "}";
+        if (status != Status.SUCCESS) return "DecodeResult{status=" + status + ", reason=" + reason + ", offset=" + offset + "}";
+        return "DecodeResult{keys=" + keys.size() + "}";
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plugs an additional key format into {@link Keys#decode(byte[])} and friends.
+ *
+ * Implementations are discovered with {@link java.util.ServiceLoader} by listing
+ * them in {@code META-INF/services/io.churchkey.FormatProvider}, or registered
+ * directly with {@link FormatRegistry#register(FormatProvider)}.
+ *
+ * The provider itself should be a small class.  {@link #matches(byte[], int)} is
+ * called for every input that reaches it and must only look at the leading
+ * bytes.  {@link #createParser()} is called once, the first time the predicate
+ * matches, so the parser and everything it references are only loaded when the
+ * format is actually seen.
+ */
+public interface FormatProvider {
+
+    /**
+     * The priority of the built-in JWK, OpenSSH, SSH2 and PEM formats
+     */
+    int BUILTIN_PRIORITY = 0;
+
+    /**
+     * Providers are consulted from the highest priority to the lowest.  Return
+     * a value above {@link #BUILTIN_PRIORITY} to be consulted before the built-in
+     * formats, for example to claim a PEM header they would otherwise reject.
+     */
+    default int getPriority() {
+        return BUILTIN_PRIORITY;
+    }
+
+    /**
+     * @param bytes the encoded key
+     * @param offset the index of the first significant byte, after any byte order mark and leading whitespace
+     * @return true if the bytes look like this provider's format
+     */
+    boolean matches(byte[] bytes, int offset);
+
+    /**
+     * The default copies at most the first {@link FormatRegistry#SNIFF_LENGTH}
+     * bytes starting at the index and calls {@link #matches(byte[], int)}.
+     *
+     * @param buffer the encoded key, which must not be modified
+     * @param index the absolute index of the first significant byte
+     * @return true if the bytes look like this provider's format
+     */
+    default boolean matches(final ByteBuffer buffer, final int index) {
+        final byte[] head = new byte[Math.min(FormatRegistry.SNIFF_LENGTH, buffer.limit() - index)];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(index);
+        view.get(head);
+        return matches(head, 0);
+    }
+
+    /**
+     * @return the parser for this format, called at most once
+     */
+    Key.Format.Parser createParser();
+}
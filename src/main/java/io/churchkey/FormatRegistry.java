@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Selects the parser for an encoded key among the built-in {@link Key.Format}s
+ * and any {@link FormatProvider}s.
+ *
+ * Providers are discovered with {@link ServiceLoader} the first time a key is
+ * decoded and are consulted in descending {@link FormatProvider#getPriority() priority}.
+ * The built-in formats are sniffed by {@link KeyFormatDetector} at
+ * {@link FormatProvider#BUILTIN_PRIORITY} and win ties.  When no providers are
+ * installed a lookup is a single call to the detector.
+ */
+public final class FormatRegistry {
+
+    /**
+     * How many leading bytes of a {@link ByteBuffer} are handed to a provider's
+     * byte[] predicate by {@link FormatProvider#matches(ByteBuffer, int)}
+     */
+    public static final int SNIFF_LENGTH = 256;
+
+    private static final Key.Format.Parser[] BUILTIN = builtin();
+
+    private static final Entry[] NONE = new Entry[0];
+
+    private static volatile Providers providers;
+
+    private FormatRegistry() {
+    }
+
+    /**
+     * Adds a provider in addition to those discovered by the {@link ServiceLoader}
+     */
+    public static void register(final FormatProvider provider) {
+        synchronized (FormatRegistry.class) {
+            final List<FormatProvider> list = new ArrayList<>(providers().list);
+            list.add(provider);
+            providers = new Providers(list);
+        }
+    }
+
+    /**
+     * Removes a provider previously registered or discovered
+     *
+     * @return true if the provider was installed
+     */
+    public static boolean unregister(final FormatProvider provider) {
+        synchronized (FormatRegistry.class) {
+            final List<FormatProvider> list = new ArrayList<>(providers().list);
+            final boolean removed = list.remove(provider);
+            providers = new Providers(list);
+            return removed;
+        }
+    }
+
+    /**
+     * @return the installed providers from the highest priority to the lowest
+     */
+    public static List<FormatProvider> getProviders() {
+        return Collections.unmodifiableList(providers().list);
+    }
+
+    /**
+     * @param bytes the encoded key
+     * @param offset the index of the first significant byte as returned by {@link KeyFormatDetector#start(byte[])}
+     * @return the parser for the bytes or null if no format recognizes them
+     */
+    public static Key.Format.Parser find(final byte[] bytes, final int offset) {
+        final Providers installed = providers();
+
+        for (final Entry entry : installed.before) {
+            if (entry.provider.matches(bytes, offset)) return entry.getParser();
+        }
+
+        final Key.Format format = KeyFormatDetector.detect(bytes, offset);
+        if (format != null) return BUILTIN[format.ordinal()];
+
+        for (final Entry entry : installed.after) {
+            if (entry.provider.matches(bytes, offset)) return entry.getParser();
+        }
+
+        return null;
+    }
+
+    /**
+     * @param buffer the encoded key, which is not modified
+     * @param index the absolute index of the first significant byte as returned by {@link KeyFormatDetector#start(ByteBuffer)}
+     * @return the parser for the bytes or null if no format recognizes them
+     */
+    public static Key.Format.Parser find(final ByteBuffer buffer, final int index) {
+        final Providers installed = providers();
+
+        for (final Entry entry : installed.before) {
+            if (entry.provider.matches(buffer, index)) return entry.getParser();
+        }
+
+        final Key.Format format = KeyFormatDetector.detect(buffer, index);
+        if (format != null) return BUILTIN[format.ordinal()];
+
+        for (final Entry entry : installed.after) {
+            if (entry.provider.matches(buffer, index)) return entry.getParser();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if the parser was returned by {@link #find} for one of the built-in formats
+     */
+    static boolean isBuiltin(final Key.Format.Parser parser) {
+        return parser instanceof FormatParser;
+    }
+
+    private static Providers providers() {
+        Providers result = providers;
+        if (result == null) {
+            synchronized (FormatRegistry.class) {
+                result = providers;
+                if (result == null) {
+                    final List<FormatProvider> list = new ArrayList<>();
+                    for (final FormatProvider provider : ServiceLoader.load(FormatProvider.class)) {
+                        list.add(provider);
+                    }
+                    result = new Providers(list);
+                    providers = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Key.Format.Parser[] builtin() {
+        final Key.Format[] formats = Key.Format.values();
+        final Key.Format.Parser[] parsers = new Key.Format.Parser[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            parsers[i] = new FormatParser(formats[i]);
+        }
+        return parsers;
+    }
+
+    /**
+     * An immutable snapshot of the installed providers
+     */
+    private static class Providers {
+        private final List<FormatProvider> list;
+        private final Entry[] before;
+        private final Entry[] after;
+
+        Providers(final List<FormatProvider> providers) {
+            final List<FormatProvider> sorted = new ArrayList<>(providers);
+            sorted.sort(Comparator.comparingInt(FormatProvider::getPriority).reversed());
+
+            final List<Entry> before = new ArrayList<>();
+            final List<Entry> after = new ArrayList<>();
+            for (final FormatProvider provider : sorted) {
+                final Entry entry = new Entry(provider);
+                if (provider.getPriority() > FormatProvider.BUILTIN_PRIORITY) {
+                    before.add(entry);
+                } else {
+                    after.add(entry);
+                }
+            }
+
+            this.list = sorted;
+            this.before = before.isEmpty() ? NONE : before.toArray(NONE);
+            this.after = after.isEmpty() ? NONE : after.toArray(NONE);
+        }
+    }
+
+    /**
+     * Creates the provider's parser the first time its predicate matches
+     */
+    private static class Entry {
+        private final FormatProvider provider;
+        private volatile Key.Format.Parser parser;
+
+        Entry(final FormatProvider provider) {
+            this.provider = provider;
+        }
+
+        Key.Format.Parser getParser() {
+            Key.Format.Parser result = parser;
+            if (result == null) {
+                synchronized (this) {
+                    result = parser;
+                    if (result == null) {
+                        result = provider.createParser();
+                        parser = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Routes through the {@link Key.Format} so the built-in formats keep
+     * their lazily created parsers and concrete-typed dispatch
+     */
+    private static class FormatParser implements Key.Format.Parser {
+        private final Key.Format format;
+
+        FormatParser(final Key.Format format) {
+            this.format = format;
+        }
+
+        @Override
+        public Key decode(final byte[] bytes) {
+            return format.decode(bytes);
+        }
+
+        @Override
+        public byte[] encode(final Key key) {
+            return format.encode(key);
+        }
+
+        @Override
+        public List<Key> decodeSet(final byte[] bytes) {
+            return format.decodeSet(bytes);
+        }
+
+        @Override
+        public Key decode(final ByteBuffer buffer) {
+            return format.decode(buffer);
+        }
+
+        @Override
+        public List<Key> decodeSet(final ByteBuffer buffer) {
+            return format.decodeSet(buffer);
+        }
+
+        @Override
+        public List<Key> decodeLazySet(final byte[] bytes) {
+            return format.decodeLazySet(bytes);
+        }
+
+        @Override
+        public byte[] encodeSet(final List<Key> keys) {
+            return format.encodeSet(keys);
+        }
+
+        @Override
+        public void encode(final Key key, final OutputStream out) throws IOException {
+            format.encode(key, out);
+        }
+
+        @Override
+        public void encodeSet(final List<Key> keys, final OutputStream out) throws IOException {
+            format.encodeSet(keys, out);
+        }
+
+        @Override
+        public String toString() {
+            return format.toString();
+        }
+    }
+}
@@ -22,20 +22,39 @@ import io.churchkey.pem.PemParser;
 import io.churchkey.rsa.Rsa;
 import io.churchkey.ssh.OpenSSHParser;
 import io.churchkey.ssh.SSH2Parser;
+import io.churchkey.util.ByteBufferOutputStream;
+import io.churchkey.util.Bytes;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.security.KeyFactory;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.interfaces.DSAKey;
+import java.security.interfaces.DSAParams;
 import java.security.interfaces.DSAPrivateKey;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
 import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.DSAPrivateKeySpec;
+import java.security.spec.DSAPublicKeySpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.security.spec.RSAPrivateKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -92,8 +111,21 @@ public class Key {
     private final Type type;
     private final Algorithm algorithm;
     private final Format format;
-    private final Map<String, String> attributes = new HashMap<>();
-    private final Key publicKey;
+    private final Map<String, String> attributes;
+    private final PublicKey suppliedPublicKey;
+    private final boolean derivePublicKey;
+
+    /**
+     * Deriving the public key can be costly (a modPow for DSA), so it
+     * is done on first call to {@link #getPublicKey()} and remembered.
+     */
+    private volatile Key publicKey;
+    private volatile boolean publicKeyResolved;
+
+    /**
+     * SHA-256 of the key material, see {@link #getFingerprint()}
+     */
+    private volatile byte[] fingerprint;
 
     /**
      * Avoid constructing Key instances directly and instead favor any of {@link Keys#decode(byte[])},
@@ -142,17 +174,39 @@ public class Key {
         this.type = type;
         this.algorithm = algorithm;
         this.format = format;
-        this.attributes.putAll(attributes);
-        this.publicKey = publicKey(key, publicKey, algorithm, format, attributes);
+        this.attributes = new HashMap<>(attributes);
+        this.suppliedPublicKey = publicKey;
+        this.derivePublicKey = DecodeOptions.current().isDerivePublicKey();
+    }
+
+    /**
+     * For subclasses that supply the {@link java.security.Key} on demand by
+     * overriding {@link #getKey()}.  The attributes map is used as-is and not copied.
+     */
+    protected Key(final Type type, final Algorithm algorithm, final Format format, final Map<String, String> attributes) {
+        Objects.requireNonNull(type);
+        Objects.requireNonNull(algorithm);
+        Objects.requireNonNull(format);
+        Objects.requireNonNull(attributes);
+        this.key = null;
+        this.type = type;
+        this.algorithm = algorithm;
+        this.format = format;
+        this.attributes = attributes;
+        this.suppliedPublicKey = null;
+        this.derivePublicKey = DecodeOptions.current().isDerivePublicKey();
     }
 
-    private Key publicKey(final java.security.Key key, PublicKey publicKey, final Algorithm algorithm,
-                          final Format format, final Map<String, String> attributes) {
+    private Key publicKey() {
+        final java.security.Key key = getKey();
+
         if (!(key instanceof PrivateKey)) {
             return null;
         }
 
-        if (publicKey == null) {
+        PublicKey publicKey = suppliedPublicKey;
+
+        if (publicKey == null && derivePublicKey) {
             // For RSA and DSA it's fairly easy to calculate it
             if (algorithm == Algorithm.RSA && key instanceof RSAPrivateCrtKey) {
                 final RSAPrivateCrtKey rsaPrivateCrtKey = (RSAPrivateCrtKey) key;
@@ -174,7 +228,7 @@ public class Key {
         }
 
         if (publicKey != null) {
-            return new Key(publicKey, Type.PUBLIC, algorithm, format, attributes);
+            return new Key(publicKey, Type.PUBLIC, algorithm, format, getAttributes());
         }
 
         return null;
@@ -197,8 +251,45 @@ public class Key {
      * @throws IllegalStateException if this is not a private key
      */
     public Key getPublicKey() {
-        if (type == Type.PRIVATE) return publicKey;
-        throw new IllegalStateException(type + " keys do not have public keys");
+        if (type != Type.PRIVATE) throw new IllegalStateException(type + " keys do not have public keys");
+
+        if (!publicKeyResolved) {
+            synchronized (this) {
+                if (!publicKeyResolved) {
+                    publicKey = publicKey();
+                    publicKeyResolved = true;
+                }
+            }
+        }
+
+        return publicKey;
+    }
+
+    /**
+     * The size of the key in bits.  For RSA and DSA keys this is the bit length of
+     * the modulus or prime p, for EC keys the field size of the curve and for secret
+     * keys the length of the key material.
+     *
+     * @return the key size in bits or -1 if it cannot be determined
+     */
+    public int getSize() {
+        final java.security.Key key = getKey();
+
+        if (key instanceof RSAKey) {
+            return ((RSAKey) key).getModulus().bitLength();
+        }
+
+        if (key instanceof DSAKey) {
+            final DSAParams params = ((DSAKey) key).getParams();
+            return params != null ? params.getP().bitLength() : -1;
+        }
+
+        if (key instanceof ECKey) {
+            return ((ECKey) key).getParams().getCurve().getField().getFieldSize();
+        }
+
+        final byte[] encoded = key.getEncoded();
+        return encoded != null ? encoded.length * 8 : -1;
     }
 
     /**
@@ -306,6 +397,49 @@ public class Key {
         return format.encode(this);
     }
 
+    /**
+     * Writes this key in the target format directly to the stream, producing the
+     * same bytes as {@link #encode(Format)} without building them in memory first.
+     * The stream is not closed.
+     *
+     * @param format the desired target format
+     * @param out where the encoded key is written
+     */
+    public void encodeTo(final Format format, final OutputStream out) throws IOException {
+        format.encode(this, out);
+    }
+
+    /**
+     * Writes this key in the target format into the buffer starting at its position,
+     * which is advanced past the encoded bytes.
+     *
+     * @param format the desired target format
+     * @param buffer where the encoded key is written
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough room
+     */
+    public void encodeTo(final Format format, final ByteBuffer buffer) {
+        try {
+            format.encode(this, new ByteBufferOutputStream(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes this key on the {@link KeyExecutors#getDefaultExecutor() default executor}.
+     * See {@link #encode(Format)}
+     */
+    public CompletableFuture<byte[]> encodeAsync(final Format format) {
+        return encodeAsync(format, KeyExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Encodes this key on the supplied executor.  See {@link #encode(Format)}
+     */
+    public CompletableFuture<byte[]> encodeAsync(final Format format, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encode(format), executor);
+    }
+
     public String toJwk() {
         return new String(encode(Format.JWK), UTF_8);
     }
@@ -322,6 +456,57 @@ public class Key {
         return new String(encode(Format.SSH2), UTF_8);
     }
 
+    /**
+     * A SHA-256 digest of the key's standard encoding: X.509 SubjectPublicKeyInfo
+     * for public keys, PKCS#8 for private keys and the raw key bytes for secret keys.
+     *
+     * The digest depends only on the key material, so the same key decoded from
+     * PEM, JWK, OpenSSH or SSH2 has the same fingerprint.  It is computed once.
+     *
+     * @return a copy of the 32 byte digest
+     */
+    public byte[] getFingerprint() {
+        return fingerprint().clone();
+    }
+
+    private byte[] fingerprint() {
+        byte[] digest = fingerprint;
+        if (digest != null) return digest;
+
+        final byte[] encoded = getKey().getEncoded();
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(encoded != null ? encoded : new byte[0]);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        fingerprint = digest;
+        return digest;
+    }
+
+    /**
+     * Two keys are equal when they hold the same key material with the same
+     * {@link Type} and {@link Algorithm}, regardless of the {@link Format}
+     * they were decoded from or their attributes.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Key)) return false;
+
+        final Key that = (Key) o;
+        return getType() == that.getType()
+                && getAlgorithm() == that.getAlgorithm()
+                && Arrays.equals(fingerprint(), that.fingerprint());
+    }
+
+    @Override
+    public int hashCode() {
+        final byte[] digest = fingerprint();
+        // A SHA-256 digest is already uniformly distributed
+        return (digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF);
+    }
+
     public enum Type {
         /**
          * Indicates the {@link java.security.Key} contained by the {@link Key} instance
@@ -344,46 +529,119 @@ public class Key {
     public enum Algorithm {
         RSA, DSA, EC, OCT;
 
+        /**
+         * See {@link KeyFactories} for how instances are pooled and providers chosen
+         */
         public Factory getKeyFactory() {
             if (this == OCT) throw new UnsupportedOperationException();
-            try {
-                return new Factory(KeyFactory.getInstance(name()));
-            } catch (NoSuchAlgorithmException e) {
-                throw new UnsupportedAlgorithmException(this, e);
-            }
+            return new Factory(this);
         }
     }
 
+    /**
+     * Parsers are created the first time a format is used, so an application
+     * that only ever sees PEM never loads the JSON parser classes.  Additional
+     * formats can be plugged in through {@link FormatProvider}.
+     */
     public enum Format {
-        JWK(new JwkParser()),
-        OPENSSH(new OpenSSHParser()),
-        SSH2(new SSH2Parser()),
-        PEM(new PemParser()),
+        // lambdas rather than constructor references so the parser
+        // classes are not resolved when this enum is initialized
+        JWK(() -> new JwkParser()),
+        OPENSSH(() -> new OpenSSHParser()),
+        SSH2(() -> new SSH2Parser()),
+        PEM(() -> new PemParser()),
         ;
 
-        private final Parser parser;
+        private final Supplier<Parser> factory;
+        private volatile Parser parser;
+
+        Format(final Supplier<Parser> factory) {
+            this.factory = factory;
+        }
 
-        Format(final Parser parser) {
-            this.parser = parser;
+        public Parser getParser() {
+            Parser result = parser;
+            if (result == null) {
+                synchronized (this) {
+                    result = parser;
+                    if (result == null) {
+                        result = factory.get();
+                        parser = result;
+                    }
+                }
+            }
+            return result;
         }
 
         public byte[] encode(final Key key) {
-            return parser.encode(key);
+            return getParser().encode(key);
         }
 
+        /**
+         * Each case casts to the concrete parser so every call site sees
+         * exactly one receiver type and can be inlined, rather than one
+         * megamorphic interface call shared by all formats.
+         */
         public Key decode(final byte[] bytes) {
-            return parser.decode(bytes);
+            switch (this) {
+                case JWK: return ((JwkParser) getParser()).decode(bytes);
+                case OPENSSH: return ((OpenSSHParser) getParser()).decode(bytes);
+                case SSH2: return ((SSH2Parser) getParser()).decode(bytes);
+                case PEM: return ((PemParser) getParser()).decode(bytes);
+                default: return getParser().decode(bytes);
+            }
         }
 
         public List<Key> decodeSet(final byte[] bytes) {
-            return parser.decodeSet(bytes);
+            switch (this) {
+                case JWK: return ((JwkParser) getParser()).decodeSet(bytes);
+                case OPENSSH: return ((OpenSSHParser) getParser()).decodeSet(bytes);
+                case SSH2: return ((SSH2Parser) getParser()).decodeSet(bytes);
+                case PEM: return ((PemParser) getParser()).decodeSet(bytes);
+                default: return getParser().decodeSet(bytes);
+            }
+        }
+
+        public Key decode(final ByteBuffer buffer) {
+            switch (this) {
+                case JWK: return ((JwkParser) getParser()).decode(buffer);
+                case OPENSSH: return ((OpenSSHParser) getParser()).decode(buffer);
+                case SSH2: return ((SSH2Parser) getParser()).decode(buffer);
+                case PEM: return ((PemParser) getParser()).decode(buffer);
+                default: return getParser().decode(buffer);
+            }
+        }
+
+        public List<Key> decodeSet(final ByteBuffer buffer) {
+            switch (this) {
+                case JWK: return ((JwkParser) getParser()).decodeSet(buffer);
+                case OPENSSH: return ((OpenSSHParser) getParser()).decodeSet(buffer);
+                case SSH2: return ((SSH2Parser) getParser()).decodeSet(buffer);
+                case PEM: return ((PemParser) getParser()).decodeSet(buffer);
+                default: return getParser().decodeSet(buffer);
+            }
+        }
+
+        public List<Key> decodeLazySet(final byte[] bytes) {
+            return getParser().decodeLazySet(bytes);
+        }
+
+        public void encode(final Key key, final OutputStream out) throws IOException {
+            getParser().encode(key, out);
+        }
+
+        public void encodeSet(final List<Key> keys, final OutputStream out) throws IOException {
+            getParser().encodeSet(keys, out);
         }
 
         public byte[] encodeSet(final List<Key> keys) {
-            return parser.encodeSet(keys);
+            return getParser().encodeSet(keys);
         }
 
 
+        /**
+         * While decoding, parsers should honor the {@link DecodeOptions#current()} options
+         */
         public interface Parser {
             Key decode(final byte[] bytes);
 
@@ -395,6 +653,30 @@ public class Key {
                 return Collections.singletonList(key);
             }
 
+            /**
+             * Decodes the remaining bytes of the buffer without changing its position.
+             *
+             * Parsers able to read the buffer in place should override this.  The
+             * default copies the bytes only when the buffer is not already backed
+             * by an array holding exactly its contents.
+             */
+            default Key decode(final ByteBuffer buffer) {
+                return decode(Bytes.toArray(buffer));
+            }
+
+            default List<Key> decodeSet(final ByteBuffer buffer) {
+                return decodeSet(Bytes.toArray(buffer));
+            }
+
+            /**
+             * Like {@link #decodeSet(byte[])}, but parsers able to read a key's metadata
+             * without building it may return {@link LazyKey} instances.  The default
+             * simply decodes every key.
+             */
+            default List<Key> decodeLazySet(final byte[] bytes) {
+                return decodeSet(bytes);
+            }
+
             default byte[] encodeSet(final List<Key> keys) {
                 if (keys.size() == 0) {
                     throw new IllegalArgumentException("No keys to encode");
@@ -405,31 +687,79 @@ public class Key {
 
                 return encode(keys.get(0));
             }
+
+            /**
+             * Writes the same bytes {@link #encode(Key)} returns to the stream.  Parsers
+             * should override this to write their output directly rather than building
+             * it in memory first.  The stream is not closed.
+             */
+            default void encode(final Key key, final OutputStream out) throws IOException {
+                out.write(encode(key));
+            }
+
+            /**
+             * Writes the same bytes {@link #encodeSet(List)} returns to the stream.
+             * The stream is not closed.
+             */
+            default void encodeSet(final List<Key> keys, final OutputStream out) throws IOException {
+                out.write(encodeSet(keys));
+            }
         }
     }
 
     public static class Factory {
         private final KeyFactory keyFactory;
+        private final Algorithm algorithm;
 
         public Factory(final KeyFactory keyFactory) {
             this.keyFactory = keyFactory;
+            this.algorithm = null;
+        }
+
+        /**
+         * Builds keys with factories shared through {@link KeyFactories}
+         */
+        Factory(final Algorithm algorithm) {
+            this.keyFactory = null;
+            this.algorithm = algorithm;
         }
 
         public PublicKey generatePublic(final KeySpec keySpec) {
+            checkLimits(keySpec);
             try {
-                return keyFactory.generatePublic(keySpec);
+                if (keyFactory != null) return keyFactory.generatePublic(keySpec);
+                return KeyFactories.generatePublic(algorithm, keySpec);
             } catch (InvalidKeySpecException e) {
                 throw new InvalidPublicKeySpecException(keySpec, e);
             }
         }
 
         public PrivateKey generatePrivate(final KeySpec keySpec) {
+            checkLimits(keySpec);
             try {
-                return keyFactory.generatePrivate(keySpec);
+                if (keyFactory != null) return keyFactory.generatePrivate(keySpec);
+                return KeyFactories.generatePrivate(algorithm, keySpec);
             } catch (InvalidKeySpecException e) {
                 throw new InvalidPrivateKeySpecException(keySpec, e);
             }
         }
+
+        /**
+         * Rejects oversized keys before the provider does any work on them
+         */
+        private static void checkLimits(final KeySpec keySpec) {
+            final DecodeOptions options = DecodeOptions.current();
+
+            if (keySpec instanceof RSAPublicKeySpec) {
+                options.checkRsaBits(((RSAPublicKeySpec) keySpec).getModulus().bitLength());
+            } else if (keySpec instanceof RSAPrivateKeySpec) {
+                options.checkRsaBits(((RSAPrivateKeySpec) keySpec).getModulus().bitLength());
+            } else if (keySpec instanceof DSAPublicKeySpec) {
+                options.checkDsaBits(((DSAPublicKeySpec) keySpec).getP().bitLength());
+            } else if (keySpec instanceof DSAPrivateKeySpec) {
+                options.checkDsaBits(((DSAPrivateKeySpec) keySpec).getP().bitLength());
+            }
+        }
     }
 
 }
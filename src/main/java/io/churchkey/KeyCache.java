@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache placed in front of {@link Keys#decode(byte[])} and
+ * {@link Keys#decodeSet(byte[])} for applications that decode the same
+ * key files over and over, for example from configuration or request headers.
+ *
+ * Entries are keyed by a SHA-256 digest of the encoded bytes, so equal
+ * contents share one entry no matter which array they arrive in.  The
+ * {@link DecodeOptions} installed on the calling thread are part of the key,
+ * a key decoded without attributes is never handed to a caller that wants
+ * them.  The cache is bounded by entry count and optionally by the total
+ * size of the encoded inputs.
+ *
+ * Hits take no lock.  They only mark the entry as recently used, which the
+ * eviction, a second chance (CLOCK) approximation of least recently used,
+ * looks at when the cache is full.
+ *
+ * Concurrent requests for the same bytes are collapsed: one thread decodes
+ * while the others wait for and share its result.  Failures are not cached.
+ *
+ * <code>
+ * final KeyCache cache = KeyCache.builder().maximumSize(500).build();
+ * final Key key = cache.decode(bytes);
+ * </code>
+ *
+ * The {@link Key} instances returned are shared between all callers and
+ * should be treated as read-only.
+ */
+public class KeyCache {
+
+    private static final byte DECODE = 1;
+    private static final byte DECODE_SET = 2;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long maximumSize;
+    private final long maximumWeight;
+
+    private final Map<Digest, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Digest, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * The entries in insertion order, the eviction candidates.  Guards
+     * itself and {@link #weight}, only writers take that lock.
+     */
+    private final ArrayDeque<Digest> order = new ArrayDeque<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    KeyCache(final long maximumSize, final long maximumWeight) {
+        if (maximumSize < 0) throw new IllegalArgumentException("maximumSize cannot be negative: " + maximumSize);
+        if (maximumWeight < 0) throw new IllegalArgumentException("maximumWeight cannot be negative: " + maximumWeight);
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Cached equivalent of {@link Keys#decode(byte[])}
+     */
+    public Key decode(final byte[] bytes) {
+        return (Key) get(digest(DECODE, bytes), bytes.length, () -> Keys.decode(bytes));
+    }
+
+    /**
+     * Cached equivalent of {@link Keys#decode(String)}
+     */
+    public Key decode(final String contents) {
+        return decode(contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cached equivalent of {@link Keys#decodeSet(byte[])}
+     *
+     * @return an unmodifiable list of the keys found
+     */
+    @SuppressWarnings("unchecked")
+    public List<Key> decodeSet(final byte[] bytes) {
+        return (List<Key>) get(digest(DECODE_SET, bytes), bytes.length, () -> Collections.unmodifiableList(Keys.decodeSet(bytes)));
+    }
+
+    /**
+     * Cached equivalent of {@link Keys#decodeSet(String)}
+     *
+     * @return an unmodifiable list of the keys found
+     */
+    public List<Key> decodeSet(final String contents) {
+        return decodeSet(contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total length of the encoded inputs currently cached
+     */
+    public long weight() {
+        synchronized (order) {
+            return weight;
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (order) {
+            entries.clear();
+            order.clear();
+            weight = 0;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), failures.sum());
+    }
+
+    private Object get(final Digest digest, final int entryWeight, final Supplier<Object> loader) {
+        final Entry cached = lookup(digest);
+        if (cached != null) {
+            hits.increment();
+            return cached.value;
+        }
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlight = loading.putIfAbsent(digest, future);
+
+        if (inFlight != null) {
+            // Another thread is already decoding these bytes
+            hits.increment();
+            return join(inFlight);
+        }
+
+        // The previous load may have completed between our lookup and putIfAbsent
+        final Entry loaded = lookup(digest);
+        if (loaded != null) {
+            loading.remove(digest, future);
+            future.complete(loaded.value);
+            hits.increment();
+            return loaded.value;
+        }
+
+        misses.increment();
+
+        final Object value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            // Errors too, or callers waiting on the future would block forever
+            failures.increment();
+            loading.remove(digest, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+
+        put(digest, new Entry(value, entryWeight));
+        loading.remove(digest, future);
+        future.complete(value);
+        return value;
+    }
+
+    private Entry lookup(final Digest digest) {
+        final Entry entry = entries.get(digest);
+        if (entry != null) entry.used = true;
+        return entry;
+    }
+
+    private void put(final Digest digest, final Entry entry) {
+        synchronized (order) {
+            final Entry previous = entries.put(digest, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            } else {
+                order.addLast(digest);
+            }
+            weight += entry.weight;
+
+            // Entries used since the last pass get a second chance at the tail
+            while ((entries.size() > maximumSize || weight > maximumWeight) && !order.isEmpty()) {
+                final Digest eldest = order.pollFirst();
+                final Entry candidate = entries.get(eldest);
+                if (candidate == null) continue;
+
+                if (candidate.used) {
+                    candidate.used = false;
+                    order.addLast(eldest);
+                    continue;
+                }
+
+                entries.remove(eldest);
+                weight -= candidate.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    private static Object join(final CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private static Digest digest(final byte mode, final byte[] bytes) {
+        final MessageDigest sha256 = SHA256.get();
+        sha256.update(mode);
+        return new Digest(sha256.digest(bytes), DecodeOptions.current());
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long weight;
+
+        /**
+         * Set on every hit, cleared when eviction passes over the entry
+         */
+        private volatile boolean used;
+
+        Entry(final Object value, final long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The options are compared by identity, callers that do not install
+     * any share {@link DecodeOptions#DEFAULTS}
+     */
+    private static class Digest {
+        private final byte[] bytes;
+        private final DecodeOptions options;
+        private final int hash;
+
+        Digest(final byte[] bytes, final DecodeOptions options) {
+            this.bytes = bytes;
+            this.options = options;
+            // A SHA-256 digest is already uniformly distributed
+            this.hash = (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Digest)) return false;
+            final Digest that = (Digest) o;
+            return options == that.options && Arrays.equals(bytes, that.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A point in time snapshot of the cache statistics
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long loadFailureCount;
+
+        Stats(final long hitCount, final long missCount, final long evictionCount, final long loadFailureCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.loadFailureCount = loadFailureCount;
+        }
+
+        /**
+         * @return lookups served without decoding, including those that waited
+         * for a concurrent decode of the same bytes
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return lookups that had to decode, whether or not decoding succeeded
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        public long getRequestCount() {
+            return hitCount + missCount;
+        }
+
+        public double getHitRate() {
+            final long requests = getRequestCount();
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                    + ", loadFailures=" + loadFailureCount + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private long maximumSize = 1024;
+        private long maximumWeight = Long.MAX_VALUE;
+
+        Builder() {
+        }
+
+        /**
+         * The maximum number of cached entries.  Defaults to 1024.
+         */
+        public Builder maximumSize(final long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * The maximum total length in bytes of the encoded inputs cached.  Unbounded by default.
+         */
+        public Builder maximumWeight(final long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        public KeyCache build() {
+            return new KeyCache(maximumSize, maximumWeight);
+        }
+    }
+}
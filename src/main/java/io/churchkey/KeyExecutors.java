@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Supplies the executor used by the asynchronous methods
+ * {@link Keys#decodeAsync(byte[])} and {@link Key#encodeAsync(Key.Format)}
+ * when no executor is passed explicitly.
+ *
+ * On Java 21 and later the default runs each task on a new virtual thread.
+ * On older JVMs it is the {@link ForkJoinPool#commonPool()}.  The default
+ * can be replaced with {@link #setDefaultExecutor(Executor)}.
+ */
+public final class KeyExecutors {
+
+    private static volatile Executor defaultExecutor;
+
+    private KeyExecutors() {
+    }
+
+    public static Executor getDefaultExecutor() {
+        Executor executor = defaultExecutor;
+        if (executor != null) return executor;
+
+        synchronized (KeyExecutors.class) {
+            if (defaultExecutor == null) {
+                defaultExecutor = platformDefault();
+            }
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * @param executor the executor to use by default, or null to go back to the platform default
+     */
+    public static void setDefaultExecutor(final Executor executor) {
+        defaultExecutor = executor;
+    }
+
+    /**
+     * @return true if the platform default runs tasks on virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Executor platformDefault() {
+        final Executor virtual = virtualThreadExecutor();
+        return virtual != null ? virtual : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Looked up reflectively as this library is compiled for Java 8
+     */
+    private static Executor virtualThreadExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) Objects.requireNonNull(method.invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
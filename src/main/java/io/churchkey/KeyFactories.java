@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out {@link KeyFactory} instances for each {@link Key.Algorithm}
+ * without going through the synchronized provider lookup of
+ * {@link KeyFactory#getInstance(String)} on every key built.
+ *
+ * KeyFactory instances are not guaranteed to be thread-safe, so each one
+ * is used by a single thread at a time.  Idle factories are kept in a
+ * small pool per algorithm shared by all threads: a thread takes one,
+ * builds its key and puts it back.  No locks are taken, and a new virtual
+ * thread per task reuses the factories of the tasks that ran before it.
+ *
+ * By default the highest priority installed provider is used.  A specific
+ * provider can be chosen per algorithm, for example SunRsaSign, SunEC or
+ * BouncyCastle:
+ *
+ * <code>
+ * KeyFactories.setProvider(Key.Algorithm.EC, new BouncyCastleProvider());
+ * KeyFactories.setProvider(Key.Algorithm.RSA, "SunRsaSign");
+ * </code>
+ *
+ * Changing the provider takes effect on the next key built by any thread.
+ */
+public final class KeyFactories {
+
+    private static final Key.Algorithm[] ALGORITHMS = Key.Algorithm.values();
+
+    /**
+     * Idle factories kept per algorithm; more than this many threads
+     * building keys at once create factories that are then dropped
+     */
+    private static final int MAXIMUM_IDLE = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final AtomicReferenceArray<Pool> POOLS = new AtomicReferenceArray<>(ALGORITHMS.length);
+
+    static {
+        for (final Key.Algorithm algorithm : ALGORITHMS) {
+            POOLS.set(algorithm.ordinal(), new Pool(algorithm, null));
+        }
+    }
+
+    private KeyFactories() {
+    }
+
+    /**
+     * Creates a KeyFactory for the caller's own use.  Keys built through
+     * {@link Key.Algorithm#getKeyFactory()} or the generate methods of this
+     * class share pooled factories instead.
+     *
+     * @return a new KeyFactory for the algorithm, from the selected provider if any
+     * @throws UnsupportedAlgorithmException if no installed provider supports the algorithm
+     */
+    public static KeyFactory get(final Key.Algorithm algorithm) {
+        return pool(algorithm).create();
+    }
+
+    /**
+     * @throws UnsupportedAlgorithmException if no installed provider supports the algorithm
+     */
+    public static PublicKey generatePublic(final Key.Algorithm algorithm, final KeySpec keySpec) throws InvalidKeySpecException {
+        return apply(algorithm, factory -> factory.generatePublic(keySpec));
+    }
+
+    /**
+     * @throws UnsupportedAlgorithmException if no installed provider supports the algorithm
+     */
+    public static PrivateKey generatePrivate(final Key.Algorithm algorithm, final KeySpec keySpec) throws InvalidKeySpecException {
+        return apply(algorithm, factory -> factory.generatePrivate(keySpec));
+    }
+
+    /**
+     * @throws UnsupportedAlgorithmException if no installed provider supports the algorithm
+     */
+    public static <T extends KeySpec> T getKeySpec(final Key.Algorithm algorithm, final java.security.Key key, final Class<T> keySpec)
+            throws InvalidKeySpecException {
+        return apply(algorithm, factory -> factory.getKeySpec(key, keySpec));
+    }
+
+    /**
+     * Selects the provider used to create KeyFactory instances for the algorithm.
+     *
+     * @param provider the provider to use or null to go back to the default provider lookup
+     */
+    public static void setProvider(final Key.Algorithm algorithm, final Provider provider) {
+        if (algorithm == Key.Algorithm.OCT) throw new UnsupportedOperationException();
+
+        // Factories of the old provider still in use go back to the replaced pool and are dropped with it
+        POOLS.set(algorithm.ordinal(), new Pool(algorithm, provider));
+    }
+
+    /**
+     * Selects an installed provider by name, for example "SunRsaSign" or "SunEC"
+     *
+     * @throws IllegalArgumentException if no provider of that name is installed
+     */
+    public static void setProvider(final Key.Algorithm algorithm, final String providerName) {
+        final Provider provider = Security.getProvider(providerName);
+
+        if (provider == null) {
+            throw new IllegalArgumentException("Provider not installed: " + providerName);
+        }
+
+        setProvider(algorithm, provider);
+    }
+
+    /**
+     * @return the provider selected for the algorithm or null if the default lookup is used
+     */
+    public static Provider getProvider(final Key.Algorithm algorithm) {
+        return POOLS.get(algorithm.ordinal()).provider;
+    }
+
+    /**
+     * Runs the function with a factory no other thread is using and returns
+     * the factory to the pool it was taken from
+     */
+    static <T> T apply(final Key.Algorithm algorithm, final Function<T> function) throws InvalidKeySpecException {
+        final Pool pool = pool(algorithm);
+        final KeyFactory factory = pool.take();
+        try {
+            return function.apply(factory);
+        } finally {
+            pool.offer(factory);
+        }
+    }
+
+    private static Pool pool(final Key.Algorithm algorithm) {
+        if (algorithm == Key.Algorithm.OCT) throw new UnsupportedOperationException();
+        return POOLS.get(algorithm.ordinal());
+    }
+
+    interface Function<T> {
+        T apply(KeyFactory factory) throws InvalidKeySpecException;
+    }
+
+    private static class Pool {
+        private final Key.Algorithm algorithm;
+        private final Provider provider;
+        // Last in, first out so the most recently used factory is taken next
+        private final Deque<KeyFactory> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Pool(final Key.Algorithm algorithm, final Provider provider) {
+            this.algorithm = algorithm;
+            this.provider = provider;
+        }
+
+        KeyFactory take() {
+            final KeyFactory factory = idle.pollFirst();
+            if (factory == null) return create();
+
+            size.decrementAndGet();
+            return factory;
+        }
+
+        void offer(final KeyFactory factory) {
+            if (size.incrementAndGet() > MAXIMUM_IDLE) {
+                size.decrementAndGet();
+                return;
+            }
+            idle.offerFirst(factory);
+        }
+
+        KeyFactory create() {
+            try {
+                if (provider != null) return KeyFactory.getInstance(algorithm.name(), provider);
+                return KeyFactory.getInstance(algorithm.name());
+            } catch (NoSuchAlgorithmException e) {
+                throw new UnsupportedAlgorithmException(algorithm, e);
+            }
+        }
+    }
+}
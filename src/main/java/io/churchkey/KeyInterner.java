@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Returns one shared {@link Key} instance for all keys holding the same key
+ * material, as defined by {@link Key#equals(Object)}.  Useful when the same
+ * keys arrive many times, possibly in different formats, and are held for
+ * a long time.
+ *
+ * Identity ignores the format and attributes, so the instance returned is
+ * whichever equal key was interned first.
+ *
+ * <code>
+ * final KeyInterner interner = KeyInterner.weak();
+ * final Key key = interner.intern(Keys.decode(bytes));
+ * </code>
+ */
+public abstract class KeyInterner {
+
+    KeyInterner() {
+    }
+
+    /**
+     * An interner that holds on to every key it has seen until {@link #clear()}
+     */
+    public static KeyInterner strong() {
+        return new Strong();
+    }
+
+    /**
+     * An interner that lets go of a key once nothing else references it
+     */
+    public static KeyInterner weak() {
+        return new Weak();
+    }
+
+    /**
+     * @return the previously interned key equal to this one, or the supplied key if there was none
+     */
+    public abstract Key intern(Key key);
+
+    public abstract int size();
+
+    public abstract void clear();
+
+    private static class Strong extends KeyInterner {
+
+        private final Map<Key, Key> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public Key intern(final Key key) {
+            Objects.requireNonNull(key);
+            final Key existing = keys.putIfAbsent(key, key);
+            return existing != null ? existing : key;
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public void clear() {
+            keys.clear();
+        }
+    }
+
+    private static class Weak extends KeyInterner {
+
+        private final Map<Key, WeakReference<Key>> keys = new WeakHashMap<>();
+
+        @Override
+        public Key intern(final Key key) {
+            Objects.requireNonNull(key);
+
+            // Computed outside the lock as it may need to build a LazyKey
+            key.hashCode();
+
+            synchronized (keys) {
+                final WeakReference<Key> reference = keys.get(key);
+                final Key existing = reference != null ? reference.get() : null;
+                if (existing != null) return existing;
+
+                keys.put(key, new WeakReference<>(key));
+                return key;
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (keys) {
+                return keys.size();
+            }
+        }
+
+        @Override
+        public void clear() {
+            synchronized (keys) {
+                keys.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import java.nio.ByteBuffer;
+
+import static io.churchkey.DecodeResult.Reason.EMPTY;
+import static io.churchkey.DecodeResult.Reason.INVALID_BASE64;
+import static io.churchkey.DecodeResult.Reason.INVALID_HEADER;
+import static io.churchkey.DecodeResult.Reason.MISSING_FOOTER;
+import static io.churchkey.DecodeResult.Reason.TRUNCATED;
+import static io.churchkey.DecodeResult.Reason.UNKNOWN_FORMAT;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Cheap structural checks run by {@link Keys#tryDecode(byte[])} before a
+ * parser is invoked, so the bulk of inputs that are not keys, or are
+ * obviously broken, are rejected without creating exceptions or strings.
+ *
+ * Only the structure of the first key is checked: PEM and SSH2 headers
+ * and footers, base64 alphabets and balanced JSON braces.  Anything that
+ * passes may still fail in the parser.  All indices are absolute; offsets
+ * in the results are relative to the buffer's position.
+ */
+final class KeyProbe {
+
+    private static final byte[] BEGIN = "-----BEGIN ".getBytes(US_ASCII);
+    private static final byte[] END = "-----END ".getBytes(US_ASCII);
+    private static final byte[] SSH2_BEGIN = "---- BEGIN SSH2".getBytes(US_ASCII);
+    private static final byte[] SSH2_END = "---- END SSH2".getBytes(US_ASCII);
+
+    private KeyProbe() {
+    }
+
+    /**
+     * @param buffer the input, which is not modified
+     * @param start the absolute index of the first significant byte
+     * @param parser the parser chosen by the {@link FormatRegistry} or null
+     * @return null if the input looks decodable, otherwise the result describing why not
+     */
+    static DecodeResult probe(final ByteBuffer buffer, final int start, final Key.Format.Parser parser) {
+        final int base = buffer.position();
+
+        if (start >= buffer.limit()) return DecodeResult.notAKey(EMPTY, start - base);
+        if (parser == null) return DecodeResult.notAKey(UNKNOWN_FORMAT, start - base);
+
+        // providers are responsible for validating their own formats
+        if (!FormatRegistry.isBuiltin(parser)) return null;
+
+        switch (buffer.get(start)) {
+            case '{':
+                return json(buffer, start);
+            case '-':
+                return matches(buffer, start, SSH2_BEGIN) ? ssh2(buffer, start) : pem(buffer, start);
+            case 's':
+                return openssh(buffer, start);
+            case 'e':
+                return buffer.get(start + 1) == 'c' ? openssh(buffer, start) : base64(buffer, start);
+            default:
+                return null;
+        }
+    }
+
+    private static DecodeResult pem(final ByteBuffer buffer, final int start) {
+        final int limit = buffer.limit();
+
+        if (!matches(buffer, start, BEGIN)) return malformed(buffer, INVALID_HEADER, start);
+
+        int eol = endOfLine(buffer, start);
+        if (trimmedEnd(buffer, start, eol) - start < BEGIN.length + 5 || !endsWithDashes(buffer, start, eol, 5)) {
+            return malformed(buffer, INVALID_HEADER, start);
+        }
+
+        boolean data = false;
+        int line = eol + 1;
+        while (line < limit) {
+            eol = endOfLine(buffer, line);
+
+            if (matches(buffer, line, END)) {
+                return data ? null : malformed(buffer, TRUNCATED, line);
+            }
+
+            if (!contains(buffer, line, eol, (byte) ':')) {
+                for (int i = line; i < eol; i++) {
+                    final byte b = buffer.get(i);
+                    if (isWhitespace(b)) continue;
+                    if (!isBase64(b)) return malformed(buffer, INVALID_BASE64, i);
+                    data = true;
+                }
+            }
+
+            line = eol + 1;
+        }
+
+        return malformed(buffer, MISSING_FOOTER, limit);
+    }
+
+    private static DecodeResult ssh2(final ByteBuffer buffer, final int start) {
+        final int limit = buffer.limit();
+
+        int eol = endOfLine(buffer, start);
+        if (!endsWithDashes(buffer, start, eol, 4)) return malformed(buffer, INVALID_HEADER, start);
+
+        int line = eol + 1;
+        while (line < limit) {
+            if (matches(buffer, line, SSH2_END)) return null;
+            eol = endOfLine(buffer, line);
+            line = eol + 1;
+        }
+
+        return malformed(buffer, MISSING_FOOTER, limit);
+    }
+
+    /**
+     * "algorithm base64 [comment]" on the first line
+     */
+    private static DecodeResult openssh(final ByteBuffer buffer, final int start) {
+        final int eol = endOfLine(buffer, start);
+
+        int i = start;
+        while (i < eol && buffer.get(i) != ' ') {
+            i++;
+        }
+        while (i < eol && buffer.get(i) == ' ') {
+            i++;
+        }
+
+        final int data = i;
+        while (i < eol && !isWhitespace(buffer.get(i))) {
+            if (!isBase64(buffer.get(i))) return malformed(buffer, INVALID_BASE64, i);
+            i++;
+        }
+
+        return i == data ? malformed(buffer, TRUNCATED, data) : null;
+    }
+
+    private static DecodeResult base64(final ByteBuffer buffer, final int start) {
+        final int limit = buffer.limit();
+
+        for (int i = start; i < limit; i++) {
+            final byte b = buffer.get(i);
+            if (!isBase64(b) && !isWhitespace(b)) return malformed(buffer, INVALID_BASE64, i);
+        }
+
+        return null;
+    }
+
+    /**
+     * Balanced braces, ignoring any inside strings
+     */
+    private static DecodeResult json(final ByteBuffer buffer, final int start) {
+        final int limit = buffer.limit();
+
+        int depth = 0;
+        boolean string = false;
+        for (int i = start; i < limit; i++) {
+            final byte b = buffer.get(i);
+
+            if (string) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    string = false;
+                }
+            } else if (b == '"') {
+                string = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) return null;
+            }
+        }
+
+        return malformed(buffer, TRUNCATED, limit);
+    }
+
+    private static DecodeResult malformed(final ByteBuffer buffer, final DecodeResult.Reason reason, final int index) {
+        return DecodeResult.malformed(reason, index - buffer.position());
+    }
+
+    private static int endOfLine(final ByteBuffer buffer, final int from) {
+        final int limit = buffer.limit();
+        int i = from;
+        while (i < limit && buffer.get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimmedEnd(final ByteBuffer buffer, final int from, final int eol) {
+        int end = eol;
+        while (end > from && isWhitespace(buffer.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean endsWithDashes(final ByteBuffer buffer, final int from, final int eol, final int count) {
+        final int end = trimmedEnd(buffer, from, eol);
+        if (end - from < count) return false;
+        for (int i = end - count; i < end; i++) {
+            if (buffer.get(i) != '-') return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(final ByteBuffer buffer, final int from, final int to, final byte b) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(final ByteBuffer buffer, final int index, final byte[] prefix) {
+        if (buffer.limit() - index < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(index + i) != prefix[i]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Accepts both the standard and url-safe alphabets
+     */
+    private static boolean isBase64(final byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+                || b == '+' || b == '/' || b == '=' || b == '-' || b == '_';
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
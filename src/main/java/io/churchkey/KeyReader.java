@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import io.churchkey.pem.PemParser;
+import io.churchkey.util.Pem;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads keys one at a time from a stream holding any mix of
+ *
+ * <ul>
+ *     <li>concatenated PEM and OpenSSH private key blocks</li>
+ *     <li>SSH2 public key blocks</li>
+ *     <li>authorized_keys style lines of OpenSSH public keys</li>
+ *     <li>JWK or JWKS objects, either one per line or pretty printed</li>
+ * </ul>
+ *
+ * Memory use is bounded by the largest single item of the input, not by
+ * its total size: one PEM or SSH2 block, one line, or one JWK or JWKS
+ * object together with all the keys it holds, as a JWKS is parsed whole.
+ * Key dumps of any length can be processed as long as no single item is
+ * huge.  Blank lines, '#' comments and any other text outside of a key are
+ * skipped.  A key that cannot be decoded fails the read with the same
+ * exception {@link Keys#decode(byte[])} would throw.
+ *
+ * As in {@link Keys#decodeSet(byte[])} of a PEM bundle, PEM blocks of a type
+ * that holds no key, CRLs or certificate requests for example, are skipped
+ * unless the input holds no keys at all.
+ *
+ * See {@link Keys#stream(InputStream)}
+ */
+public class KeyReader implements Iterator<Key>, Closeable {
+
+    private static final PemParser.PemDecoder PEM = new PemParser.PemDecoder();
+
+    private final BufferedReader reader;
+    private final ArrayDeque<Key> pending = new ArrayDeque<>();
+    private boolean eof;
+    private boolean found;
+
+    /**
+     * The first skipped PEM block, reported if no key is found
+     */
+    private String unsupported;
+
+    public KeyReader(final InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return fill();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Key next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return pending.removeFirst();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean fill() throws IOException {
+        while (pending.isEmpty() && !eof) {
+            final String line = reader.readLine();
+
+            if (line == null) {
+                eof = true;
+                if (!found && unsupported != null) {
+                    final String type = unsupported;
+                    unsupported = null;
+                    throw new UnsupportedOperationException(String.format("Unsupported PEM format '%s'", type));
+                }
+                break;
+            }
+
+            final String trimmed = line.trim();
+
+            if (trimmed.startsWith("ssh-") || trimmed.startsWith("ecdsa-")) {
+                pending.add(Keys.decode(trimmed.getBytes(UTF_8), Key.Format.OPENSSH));
+
+            } else if (trimmed.startsWith("-----BEGIN OPENSSH ")) {
+                pending.add(Keys.decode(readBlock(trimmed, "-----END ")));
+
+            } else if (trimmed.startsWith("-----BEGIN ")) {
+                final byte[] block = readBlock(trimmed, "-----END ");
+                final Key key = PEM.decodeBlock(ByteBuffer.wrap(block));
+                if (key != null) {
+                    pending.add(key);
+                } else if (unsupported == null) {
+                    unsupported = Pem.parse(block).getType();
+                }
+
+            } else if (trimmed.startsWith("---- BEGIN SSH2")) {
+                pending.add(Keys.decode(readBlock(trimmed, "---- END SSH2")));
+
+            } else if (trimmed.startsWith("{")) {
+                pending.addAll(Keys.decodeSet(readJson(trimmed), Key.Format.JWK));
+            }
+        }
+
+        if (!pending.isEmpty()) found = true;
+        return !pending.isEmpty();
+    }
+
+    private byte[] readBlock(final String begin, final String end) throws IOException {
+        final StringBuilder block = new StringBuilder(begin).append('\n');
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String trimmed = line.trim();
+            block.append(trimmed).append('\n');
+            if (trimmed.startsWith(end)) return block.toString().getBytes(UTF_8);
+        }
+
+        throw new IllegalArgumentException("Unterminated key, expected '" + end + "':\n" + block);
+    }
+
+    /**
+     * Collects lines until the braces opened on the first line are closed
+     */
+    private byte[] readJson(final String first) throws IOException {
+        final StringBuilder json = new StringBuilder();
+        final JsonDepth depth = new JsonDepth();
+
+        String line = first;
+        while (line != null) {
+            json.append(line).append('\n');
+            if (depth.scan(line) == 0) return json.toString().getBytes(UTF_8);
+            line = reader.readLine();
+        }
+
+        throw new IllegalArgumentException("Unterminated JSON:\n" + json);
+    }
+
+    private static class JsonDepth {
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+
+        int scan(final String line) {
+            for (int i = 0; i < line.length(); i++) {
+                final char c = line.charAt(i);
+
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+
+                if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            return depth;
+        }
+    }
+}
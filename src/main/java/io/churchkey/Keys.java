@@ -20,7 +20,15 @@ import org.tomitribe.util.IO;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.interfaces.DSAPrivateKey;
@@ -30,8 +38,21 @@ import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The primary factory used to obtain instances of {@link Key}
@@ -40,6 +61,11 @@ import java.util.Objects;
  */
 public class Keys {
 
+    /**
+     * Files of at least this many bytes are memory-mapped by {@link #decode(Path)}
+     */
+    public static final int MAP_THRESHOLD = 64 * 1024;
+
     private Keys() {
     }
 
@@ -69,7 +95,76 @@ public class Keys {
      * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
      */
     public static Key decode(final File file) throws IOException {
-        return decode(IO.readBytes(file));
+        return decode(file.toPath());
+    }
+
+    /**
+     * Inspects the contents of the supplied file, determines what key file
+     * format was supplied and then parses it returning a {@link Key} instance.
+     *
+     * Files larger than {@value #MAP_THRESHOLD} bytes are memory-mapped and decoded
+     * in place rather than being read onto the heap first.
+     *
+     * @param path a valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
+     */
+    public static Key decode(final Path path) throws IOException {
+        return decode(read(path));
+    }
+
+    /**
+     * Reads the stream fully and decodes its contents.  See {@link #decode(byte[])}
+     *
+     * @param in a stream containing any valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
+     */
+    public static Key decode(final InputStream in) throws IOException {
+        return decode(IO.readBytes(in));
+    }
+
+    /**
+     * Inspects the remaining bytes of the supplied buffer, determines what key
+     * format was supplied and then parses it returning a {@link Key} instance.
+     *
+     * Heap, direct and memory-mapped buffers are all read in place where the
+     * format allows it.  The buffer's position and limit are not modified.
+     *
+     * @param buffer contents of any valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
+     */
+    public static Key decode(final ByteBuffer buffer) {
+        final int start = KeyFormatDetector.start(buffer);
+        final Key.Format.Parser parser = FormatRegistry.find(buffer, start);
+
+        if (parser == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + toString(buffer));
+        }
+
+        final Key key = parser.decode(trim(buffer, start));
+
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + toString(buffer));
+        }
+
+        return key;
+    }
+
+    /**
+     * Parses the remaining bytes of the supplied buffer using the specified
+     * {@link Key.Format} without attempting to detect the format.
+     *
+     * @param buffer contents of a key file in the specified format
+     * @param format the format of the supplied bytes
+     * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
+     */
+    public static Key decode(final ByteBuffer buffer, final Key.Format format) {
+        final Key key = format.decode(buffer);
+
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + toString(buffer));
+        }
+
+        return key;
     }
 
     /**
@@ -83,14 +178,38 @@ public class Keys {
      * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
      */
     public static Key decode(final byte[] bytes) {
-        for (final Key.Format format : Key.Format.values()) {
-            final Key key = format.decode(bytes);
-            if (key != null) {
-                return key;
-            }
+        final int start = KeyFormatDetector.start(bytes);
+        final Key.Format.Parser parser = FormatRegistry.find(bytes, start);
+
+        if (parser == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
         }
 
-        throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        final Key key = parser.decode(trim(bytes, start));
+
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        }
+
+        return key;
+    }
+
+    /**
+     * Parses the supplied bytes using the specified {@link Key.Format} without
+     * attempting to detect the format.
+     *
+     * @param bytes contents of a key file in the specified format
+     * @param format the format of the supplied bytes
+     * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
+     */
+    public static Key decode(final byte[] bytes, final Key.Format format) {
+        final Key key = format.decode(bytes);
+
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        }
+
+        return key;
     }
 
     /**
@@ -119,7 +238,75 @@ public class Keys {
      * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
      */
     public static List<Key> decodeSet(final File file) throws IOException {
-        return decodeSet(IO.readBytes(file));
+        return decodeSet(file.toPath());
+    }
+
+    /**
+     * Inspects the contents of the supplied file, determines what key file
+     * format was supplied and then parses all keys it contains.
+     *
+     * Files larger than {@value #MAP_THRESHOLD} bytes are memory-mapped and decoded
+     * in place rather than being read onto the heap first.
+     *
+     * @param path a valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return the list of {@link Key} instances found
+     */
+    public static List<Key> decodeSet(final Path path) throws IOException {
+        return decodeSet(read(path));
+    }
+
+    /**
+     * Reads the stream fully and decodes all keys it contains.  See {@link #decodeSet(byte[])}
+     *
+     * @param in a stream containing any valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return the list of {@link Key} instances found
+     */
+    public static List<Key> decodeSet(final InputStream in) throws IOException {
+        return decodeSet(IO.readBytes(in));
+    }
+
+    /**
+     * Inspects the remaining bytes of the supplied buffer, determines what key
+     * format was supplied and then parses all keys it contains.
+     *
+     * The buffer's position and limit are not modified.
+     *
+     * @param buffer contents of any valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return the list of {@link Key} instances found
+     */
+    public static List<Key> decodeSet(final ByteBuffer buffer) {
+        final int start = KeyFormatDetector.start(buffer);
+        final Key.Format.Parser parser = FormatRegistry.find(buffer, start);
+
+        if (parser == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + toString(buffer));
+        }
+
+        final List<Key> keys = parser.decodeSet(trim(buffer, start));
+
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + toString(buffer));
+        }
+
+        return keys;
+    }
+
+    /**
+     * Parses the remaining bytes of the supplied buffer using the specified
+     * {@link Key.Format} without attempting to detect the format.
+     *
+     * @param buffer contents of a key file in the specified format
+     * @param format the format of the supplied bytes
+     * @return the list of {@link Key} instances found
+     */
+    public static List<Key> decodeSet(final ByteBuffer buffer, final Key.Format format) {
+        final List<Key> keys = format.decodeSet(buffer);
+
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + toString(buffer));
+        }
+
+        return keys;
     }
 
     /**
@@ -133,14 +320,501 @@ public class Keys {
      * @return a {@link Key} instance that has metadata and wraps the parsed {@link java.security.Key}
      */
     public static List<Key> decodeSet(final byte[] bytes) {
-        for (final Key.Format format : Key.Format.values()) {
-            final List<Key> keys = format.decodeSet(bytes);
-            if (keys != null) {
-                return keys;
+        final int start = KeyFormatDetector.start(bytes);
+        final Key.Format.Parser parser = FormatRegistry.find(bytes, start);
+
+        if (parser == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        }
+
+        final List<Key> keys = parser.decodeSet(trim(bytes, start));
+
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        }
+
+        return keys;
+    }
+
+    /**
+     * Parses the supplied bytes using the specified {@link Key.Format} without
+     * attempting to detect the format.
+     *
+     * @param bytes contents of a key file in the specified format
+     * @param format the format of the supplied bytes
+     * @return the list of {@link Key} instances found
+     */
+    public static List<Key> decodeSet(final byte[] bytes, final Key.Format format) {
+        final List<Key> keys = format.decodeSet(bytes);
+
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        }
+
+        return keys;
+    }
+
+    /**
+     * Same as {@link #decode(byte[])} with the work and limits set by the options
+     *
+     * @throws DecodeLimitException if the input exceeds one of the limits
+     */
+    public static Key decode(final byte[] bytes, final DecodeOptions options) {
+        options.checkInputSize(bytes.length);
+        return check(options, with(options, () -> decode(bytes)));
+    }
+
+    /**
+     * Same as {@link #decodeSet(byte[])} with the work and limits set by the options
+     *
+     * @throws DecodeLimitException if the input exceeds one of the limits
+     */
+    public static List<Key> decodeSet(final byte[] bytes, final DecodeOptions options) {
+        options.checkInputSize(bytes.length);
+        return check(options, with(options, () -> decodeSet(bytes)));
+    }
+
+    /**
+     * Same as {@link #decode(ByteBuffer)} with the work and limits set by the options
+     *
+     * @throws DecodeLimitException if the input exceeds one of the limits
+     */
+    public static Key decode(final ByteBuffer buffer, final DecodeOptions options) {
+        options.checkInputSize(buffer.remaining());
+        return check(options, with(options, () -> decode(buffer)));
+    }
+
+    /**
+     * Same as {@link #decodeSet(ByteBuffer)} with the work and limits set by the options
+     *
+     * @throws DecodeLimitException if the input exceeds one of the limits
+     */
+    public static List<Key> decodeSet(final ByteBuffer buffer, final DecodeOptions options) {
+        options.checkInputSize(buffer.remaining());
+        return check(options, with(options, () -> decodeSet(buffer)));
+    }
+
+    /**
+     * Same as {@link #decode(Path)} with the work and limits set by the options.
+     * The file size is checked before anything is read.
+     *
+     * @throws DecodeLimitException if the input exceeds one of the limits
+     */
+    public static Key decode(final Path path, final DecodeOptions options) throws IOException {
+        options.checkInputSize(Files.size(path));
+        return decode(read(path), options);
+    }
+
+    /**
+     * Same as {@link #decodeSet(Path)} with the work and limits set by the options.
+     * The file size is checked before anything is read.
+     *
+     * @throws DecodeLimitException if the input exceeds one of the limits
+     */
+    public static List<Key> decodeSet(final Path path, final DecodeOptions options) throws IOException {
+        options.checkInputSize(Files.size(path));
+        return decodeSet(read(path), options);
+    }
+
+    private static <T> T with(final DecodeOptions options, final Supplier<T> decode) {
+        return options.within(decode);
+    }
+
+    private static Key check(final DecodeOptions options, final Key key) {
+        options.check(key);
+        return key;
+    }
+
+    private static List<Key> check(final DecodeOptions options, final List<Key> keys) {
+        options.check(keys);
+        return keys;
+    }
+
+    /**
+     * Decodes the first key in the supplied bytes without throwing.
+     *
+     * Intended for scanning large numbers of untrusted inputs, most of which
+     * are not keys.  Input that matches no format, or whose structure is
+     * obviously broken (an unterminated PEM block, invalid base64, unbalanced
+     * JSON), is reported as {@link DecodeResult.Status#NOT_A_KEY} or
+     * {@link DecodeResult.Status#MALFORMED} with a reason code and offset,
+     * without creating an exception or copying the input into a string.
+     * Only input that passes those checks and still fails to parse carries
+     * the parser's exception in {@link DecodeResult#getError()}.
+     *
+     * @param bytes any input
+     * @return the outcome, never null
+     */
+    public static DecodeResult tryDecode(final byte[] bytes) {
+        return tryDecode(bytes, false);
+    }
+
+    /**
+     * Same as {@link #tryDecode(byte[])} but returns all the keys in the input
+     */
+    public static DecodeResult tryDecodeSet(final byte[] bytes) {
+        return tryDecode(bytes, true);
+    }
+
+    /**
+     * Same as {@link #tryDecode(byte[])} reading the remaining bytes of the
+     * buffer.  Offsets are relative to the buffer's position, which is not modified.
+     */
+    public static DecodeResult tryDecode(final ByteBuffer buffer) {
+        return tryDecode(buffer, false);
+    }
+
+    /**
+     * Same as {@link #tryDecode(ByteBuffer)} but returns all the keys in the input
+     */
+    public static DecodeResult tryDecodeSet(final ByteBuffer buffer) {
+        return tryDecode(buffer, true);
+    }
+
+    private static DecodeResult tryDecode(final byte[] bytes, final boolean set) {
+        final int start = KeyFormatDetector.start(bytes);
+        final Key.Format.Parser parser = start < bytes.length ? FormatRegistry.find(bytes, start) : null;
+
+        final DecodeResult rejected = KeyProbe.probe(ByteBuffer.wrap(bytes), start, parser);
+        if (rejected != null) return rejected;
+
+        try {
+            final byte[] trimmed = trim(bytes, start);
+            return result(set ? parser.decodeSet(trimmed) : singleton(parser.decode(trimmed)), start);
+        } catch (final RuntimeException e) {
+            return DecodeResult.malformed(DecodeResult.Reason.INVALID_KEY, start, e);
+        }
+    }
+
+    private static DecodeResult tryDecode(final ByteBuffer buffer, final boolean set) {
+        final int start = KeyFormatDetector.start(buffer);
+        final Key.Format.Parser parser = start < buffer.limit() ? FormatRegistry.find(buffer, start) : null;
+
+        final DecodeResult rejected = KeyProbe.probe(buffer, start, parser);
+        if (rejected != null) return rejected;
+
+        final int offset = start - buffer.position();
+        try {
+            final ByteBuffer trimmed = trim(buffer, start);
+            return result(set ? parser.decodeSet(trimmed) : singleton(parser.decode(trimmed)), offset);
+        } catch (final RuntimeException e) {
+            return DecodeResult.malformed(DecodeResult.Reason.INVALID_KEY, offset, e);
+        }
+    }
+
+    private static List<Key> singleton(final Key key) {
+        return key == null ? null : Collections.singletonList(key);
+    }
+
+    private static DecodeResult result(final List<Key> keys, final int offset) {
+        if (keys == null || keys.isEmpty()) return DecodeResult.notAKey(DecodeResult.Reason.UNKNOWN_FORMAT, offset);
+        return DecodeResult.success(keys);
+    }
+
+    /**
+     * Lazily decodes keys one at a time from a stream of concatenated PEM blocks,
+     * authorized_keys style lines, SSH2 blocks and newline delimited or pretty printed
+     * JWK/JWKS objects.  See {@link KeyReader} for details.
+     *
+     * Keys are read only as the returned stream is consumed, so memory use is
+     * bounded by the largest single block, line or JWKS of the input rather
+     * than by its total size.  Closing the returned stream closes the input
+     * stream.
+     *
+     * @param in a stream of PEM, JWK, OpenSSH or SSH2 keys in any mix
+     * @return a sequential, ordered stream of the keys found
+     */
+    public static Stream<Key> stream(final InputStream in) {
+        final KeyReader reader = new KeyReader(in);
+        final Spliterator<Key> spliterator = Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        });
+    }
+
+    /**
+     * Opens the file and lazily decodes the keys it contains.  See {@link #stream(InputStream)}
+     *
+     * The returned stream should be closed, for example with try-with-resources,
+     * to release the file.
+     */
+    public static Stream<Key> stream(final Path path) throws IOException {
+        return stream(Files.newInputStream(path));
+    }
+
+    /**
+     * Same as {@link #decodeSet(byte[])} except that no {@link java.security.Key} is
+     * built until it is used.
+     *
+     * For {@link Key.Format#JWK} each key of the set is returned as a {@link LazyKey}
+     * whose type, algorithm, size and attributes (such as "kid") can be inspected
+     * without any {@link java.security.KeyFactory} work.  This makes it cheap to load
+     * a large JWKS and only ever build the few keys actually looked up.  Other formats
+     * are decoded as usual.
+     *
+     * @param bytes contents of any valid PEM, JWK, OpenSSH or SSH2 key file
+     * @return the list of {@link Key} instances found
+     */
+    public static List<Key> decodeLazySet(final byte[] bytes) {
+        final int start = KeyFormatDetector.start(bytes);
+        final Key.Format.Parser parser = FormatRegistry.find(bytes, start);
+
+        if (parser == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        }
+
+        final List<Key> keys = parser.decodeLazySet(trim(bytes, start));
+
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
         }
 
-        throw new IllegalArgumentException("Cannot decode key: " + new String(bytes));
+        return keys;
+    }
+
+    /**
+     * Decodes the bytes on the {@link KeyExecutors#getDefaultExecutor() default executor}.
+     * See {@link #decode(byte[])}
+     */
+    public static CompletableFuture<Key> decodeAsync(final byte[] bytes) {
+        return decodeAsync(bytes, KeyExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Decodes the bytes on the supplied executor so the calling thread never
+     * blocks on the parsing and key generation work.  See {@link #decode(byte[])}
+     *
+     * The task runs with the {@link DecodeOptions} of the calling thread.
+     *
+     * @return a future completed with the key, or exceptionally with the
+     * exception {@link #decode(byte[])} would have thrown
+     */
+    public static CompletableFuture<Key> decodeAsync(final byte[] bytes, final Executor executor) {
+        return decodeAsync(bytes, DecodeOptions.current(), executor);
+    }
+
+    /**
+     * Decodes the bytes with the options on the {@link KeyExecutors#getDefaultExecutor() default executor}.
+     * See {@link #decode(byte[], DecodeOptions)}
+     */
+    public static CompletableFuture<Key> decodeAsync(final byte[] bytes, final DecodeOptions options) {
+        return decodeAsync(bytes, options, KeyExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Decodes the bytes with the options on the supplied executor.
+     * See {@link #decode(byte[], DecodeOptions)}
+     */
+    public static CompletableFuture<Key> decodeAsync(final byte[] bytes, final DecodeOptions options, final Executor executor) {
+        Objects.requireNonNull(options);
+        return CompletableFuture.supplyAsync(() -> decode(bytes, options), executor);
+    }
+
+    /**
+     * Decodes all keys on the {@link KeyExecutors#getDefaultExecutor() default executor}.
+     * See {@link #decodeSet(byte[])}
+     */
+    public static CompletableFuture<List<Key>> decodeSetAsync(final byte[] bytes) {
+        return decodeSetAsync(bytes, KeyExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Decodes all keys on the supplied executor with the {@link DecodeOptions}
+     * of the calling thread.  See {@link #decodeSet(byte[])}
+     */
+    public static CompletableFuture<List<Key>> decodeSetAsync(final byte[] bytes, final Executor executor) {
+        return decodeSetAsync(bytes, DecodeOptions.current(), executor);
+    }
+
+    /**
+     * Decodes all keys with the options on the {@link KeyExecutors#getDefaultExecutor() default executor}.
+     * See {@link #decodeSet(byte[], DecodeOptions)}
+     */
+    public static CompletableFuture<List<Key>> decodeSetAsync(final byte[] bytes, final DecodeOptions options) {
+        return decodeSetAsync(bytes, options, KeyExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Decodes all keys with the options on the supplied executor.
+     * See {@link #decodeSet(byte[], DecodeOptions)}
+     */
+    public static CompletableFuture<List<Key>> decodeSetAsync(final byte[] bytes, final DecodeOptions options, final Executor executor) {
+        Objects.requireNonNull(options);
+        return CompletableFuture.supplyAsync(() -> decodeSet(bytes, options), executor);
+    }
+
+    /**
+     * Decodes every input in parallel on the {@link ForkJoinPool#commonPool()}.
+     *
+     * See {@link #decodeAll(Collection, Executor)}
+     */
+    public static List<DecodeResult> decodeAll(final Collection<byte[]> inputs) {
+        return decodeAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes every input in parallel on the supplied executor.
+     *
+     * Each input is decoded as with {@link #decodeSet(byte[])}, with the
+     * {@link DecodeOptions} of the calling thread.  The returned list has
+     * exactly one {@link DecodeResult} per input, in input order.  An input that cannot
+     * be decoded yields a failed result holding the exception rather than aborting
+     * the batch.
+     *
+     * @param inputs contents of PEM, JWK, OpenSSH or SSH2 key files
+     * @param executor the executor the individual decodes run on
+     * @return one result per input, in the same order as the inputs
+     */
+    public static List<DecodeResult> decodeAll(final Collection<byte[]> inputs, final Executor executor) {
+        return decodeAll(inputs, DecodeOptions.current(), executor);
+    }
+
+    /**
+     * Decodes every input with the options in parallel on the {@link ForkJoinPool#commonPool()}.
+     *
+     * See {@link #decodeAll(Collection, DecodeOptions, Executor)}
+     */
+    public static List<DecodeResult> decodeAll(final Collection<byte[]> inputs, final DecodeOptions options) {
+        return decodeAll(inputs, options, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes every input in parallel on the supplied executor, each as with
+     * {@link #decodeSet(byte[], DecodeOptions)}.  An input exceeding one of the
+     * limits yields a failed result holding the {@link DecodeLimitException}.
+     *
+     * See {@link #decodeAll(Collection, Executor)}
+     */
+    public static List<DecodeResult> decodeAll(final Collection<byte[]> inputs, final DecodeOptions options, final Executor executor) {
+        Objects.requireNonNull(options);
+        Objects.requireNonNull(executor);
+
+        final List<CompletableFuture<DecodeResult>> futures = new ArrayList<>(inputs.size());
+        for (final byte[] input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> result(() -> decodeSet(input, options)), executor));
+        }
+
+        return join(futures);
+    }
+
+    /**
+     * Reads and decodes every file in parallel on the {@link ForkJoinPool#commonPool()}.
+     *
+     * See {@link #decodeAll(Stream, Executor)}
+     */
+    public static List<DecodeResult> decodeAll(final Stream<Path> paths) {
+        return decodeAll(paths, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads and decodes every file in parallel on the supplied executor.
+     *
+     * Reading happens on the executor as well, so slow storage does not serialize
+     * the batch.  Files are decoded with the {@link DecodeOptions} of the calling
+     * thread.  The returned list has exactly one {@link DecodeResult} per path, in
+     * stream order.  A file that cannot be read or decoded yields a failed result
+     * holding the exception rather than aborting the batch.
+     *
+     * @param paths PEM, JWK, OpenSSH or SSH2 key files
+     * @param executor the executor the individual reads and decodes run on
+     * @return one result per path, in the same order as the stream
+     */
+    public static List<DecodeResult> decodeAll(final Stream<Path> paths, final Executor executor) {
+        return decodeAll(paths, DecodeOptions.current(), executor);
+    }
+
+    /**
+     * Reads and decodes every file with the options in parallel on the {@link ForkJoinPool#commonPool()}.
+     *
+     * See {@link #decodeAll(Stream, DecodeOptions, Executor)}
+     */
+    public static List<DecodeResult> decodeAll(final Stream<Path> paths, final DecodeOptions options) {
+        return decodeAll(paths, options, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads and decodes every file in parallel on the supplied executor, each as
+     * with {@link #decodeSet(Path, DecodeOptions)}, so a file exceeding the input
+     * size limit is not even read.
+     *
+     * See {@link #decodeAll(Stream, Executor)}
+     */
+    public static List<DecodeResult> decodeAll(final Stream<Path> paths, final DecodeOptions options, final Executor executor) {
+        Objects.requireNonNull(options);
+        Objects.requireNonNull(executor);
+
+        final List<CompletableFuture<DecodeResult>> futures = new ArrayList<>();
+        paths.forEachOrdered(path -> futures.add(CompletableFuture.supplyAsync(() -> result(() -> decodeSet(path, options)), executor)));
+
+        return join(futures);
+    }
+
+    private static DecodeResult result(final Callable<List<Key>> decode) {
+        try {
+            return DecodeResult.success(decode.call());
+        } catch (Exception e) {
+            return DecodeResult.failure(e);
+        }
+    }
+
+    private static List<DecodeResult> join(final List<CompletableFuture<DecodeResult>> futures) {
+        final List<DecodeResult> results = new ArrayList<>(futures.size());
+        for (final CompletableFuture<DecodeResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Drops any leading whitespace or byte order mark skipped by the {@link KeyFormatDetector}
+     * so parsers see their expected prefix at index zero.
+     */
+    private static byte[] trim(final byte[] bytes, final int start) {
+        if (start == 0) return bytes;
+        return Arrays.copyOfRange(bytes, start, bytes.length);
+    }
+
+    /**
+     * Same as {@link #trim(byte[], int)} but returns a view rather than a copy
+     */
+    private static ByteBuffer trim(final ByteBuffer buffer, final int start) {
+        if (start == buffer.position()) return buffer;
+        final ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        return view;
+    }
+
+    private static String toString(final ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    /**
+     * Small files are read onto the heap as that is cheaper than setting up a mapping.
+     * Anything larger is memory-mapped so the parsers can read the page cache directly.
+     */
+    private static ByteBuffer read(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Key file too large: " + path + " (" + size + " bytes)");
+            }
+
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) break;
+            }
+            buffer.flip();
+            return buffer;
+        }
     }
 
     /**
@@ -190,6 +864,15 @@ public class Keys {
         return format.encodeSet(keys);
     }
 
+    /**
+     * Writes the keys in the specified format directly to the stream, producing the same
+     * bytes as {@link #encodeSet(List, Key.Format)} without building them in memory first.
+     * The stream is not closed.
+     */
+    public static void encodeSet(final List<Key> keys, final Key.Format format, final OutputStream out) throws IOException {
+        format.encodeSet(keys, out);
+    }
+
     /**
      * Creates a {@link Key} instance that encompasses both the public and private keys.  If this Key
      * instance is exported via {@link Key#encode(Key.Format)}} the resulting file will be a private key
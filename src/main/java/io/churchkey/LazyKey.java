@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import io.churchkey.util.CompactMap;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A {@link Key} that holds only the encoded form of a single key plus
+ * its metadata and attributes, and builds the {@link java.security.Key}
+ * the first time it is actually needed.
+ *
+ * {@link #getType()}, {@link #getAlgorithm()}, {@link #getFormat()},
+ * {@link #getSize()} and the attributes such as "kid" are all available
+ * without any {@link java.security.KeyFactory} work.  The first call to
+ * {@link #getKey()} or {@link #getPublicKey()} decodes the retained bytes
+ * once and every later call reuses that result.
+ *
+ * The attributes are held compactly and only copied into a regular map
+ * if they are modified.
+ *
+ * Obtain instances through {@link Keys#decodeLazySet(byte[])}
+ */
+public class LazyKey extends Key {
+
+    private final int size;
+    private byte[] encoded;
+    private Function<byte[], Key> decoder;
+    private DecodeOptions options;
+    private volatile Key decoded;
+
+    /**
+     * @param encoded the encoded form of this one key in the specified format
+     * @param decoder turns the encoded bytes into a fully decoded {@link Key}
+     * @param size the key size in bits as returned by {@link #getSize()}
+     */
+    public LazyKey(final byte[] encoded, final Function<byte[], Key> decoder, final Type type,
+                   final Algorithm algorithm, final Format format, final int size, final Map<String, String> attributes) {
+        super(type, algorithm, format, CompactMap.of(attributes));
+        this.encoded = Objects.requireNonNull(encoded);
+        this.decoder = Objects.requireNonNull(decoder);
+        this.size = size;
+        this.options = DecodeOptions.current();
+    }
+
+    @Override
+    public java.security.Key getKey() {
+        return decoded().getKey();
+    }
+
+    @Override
+    public Key getPublicKey() {
+        if (getType() != Type.PRIVATE) throw new IllegalStateException(getType() + " keys do not have public keys");
+        return decoded().getPublicKey();
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return true if the {@link java.security.Key} has already been built
+     */
+    public boolean isDecoded() {
+        return decoded != null;
+    }
+
+    private Key decoded() {
+        Key key = decoded;
+        if (key != null) return key;
+
+        synchronized (this) {
+            if (decoded == null) {
+                // Built under the same options the set was decoded with
+                final DecodeOptions previous = DecodeOptions.enter(options);
+                try {
+                    decoded = decoder.apply(encoded);
+                } finally {
+                    DecodeOptions.exit(previous);
+                }
+                // Nothing else needs these once the key is built
+                encoded = null;
+                decoder = null;
+                options = null;
+            }
+            return decoded;
+        }
+    }
+}
@@ -15,69 +15,331 @@
  */
 package io.churchkey.asn1;
 
+import io.churchkey.ec.Curve;
+import io.churchkey.pem.EcCurveParams;
 import io.churchkey.util.Pem;
-import org.tomitribe.util.IO;
-import org.tomitribe.util.Pipe;
-import org.tomitribe.util.PrintString;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Prints DER structures in the format of {@code openssl asn1parse -i -dump}
+ *
+ * <pre>
+ *     0:d=0  hl=2 l= 112 cons: SEQUENCE
+ *     2:d=1  hl=2 l=   1 prim:  INTEGER           :00
+ *     5:d=1  hl=2 l=  20 cons:  SEQUENCE
+ *     7:d=2  hl=2 l=   7 prim:   OBJECT            :id-ecPublicKey
+ *    16:d=2  hl=2 l=   9 prim:   OBJECT            :brainpoolP192r1
+ *    27:d=1  hl=2 l=  85 prim:  OCTET STRING
+ *       0000 - 30 53 02 01 01 04 18 88-9f 26 37 f9 f5 1f da 16   0S.......&7.....
+ * </pre>
+ *
+ * The dump is produced in-process on top of {@link DerSlice}, so it is
+ * cheap enough to log the structure of rejected keys.  Malformed input
+ * does not throw; everything up to the problem is printed followed by
+ * an "Error in encoding" line.  OIDs are printed with the OpenSSL short
+ * name when it is one churchkey knows, otherwise in dotted form.
+ * Like OpenSSL, elements nested deeper than 128 levels are not printed.
+ */
 public class Asn1Dump {
 
+    private static final String[] UNIVERSAL = {
+            "EOC", "BOOLEAN", "INTEGER", "BIT STRING", "OCTET STRING", "NULL", "OBJECT", "OBJECT DESCRIPTOR",
+            "EXTERNAL", "REAL", "ENUMERATED", "<ASN1 11>", "UTF8STRING", "<ASN1 13>", "<ASN1 14>", "<ASN1 15>",
+            "SEQUENCE", "SET", "NUMERICSTRING", "PRINTABLESTRING", "T61STRING", "VIDEOTEXSTRING", "IA5STRING", "UTCTIME",
+            "GENERALIZEDTIME", "GRAPHICSTRING", "VISIBLESTRING", "GENERALSTRING", "UNIVERSALSTRING", "<ASN1 29>", "BMPSTRING"
+    };
+
+    private static final OidRegistry<String> NAMES = names();
+
+    /**
+     * OpenSSL's ASN1_PARSE_MAXDEPTH.  Each line is indented by its depth,
+     * so without a cap a small input could produce a quadratic dump.
+     */
+    static final int MAXIMUM_DEPTH = 128;
+
     private Asn1Dump() {
     }
 
     public static void print(final byte[] bytes) throws IOException {
-        final File der = File.createTempFile("der", ".dump");
-        IO.copy(bytes, der);
+        System.out.print(dump(bytes));
+    }
 
-        final ProcessBuilder builder = new ProcessBuilder("openssl", "asn1parse", "-i", "-inform", "DER", "-in", der.getAbsolutePath(), "-dump");
-        final Process process = builder.start();
-        Pipe.pipe(process.getInputStream(), System.out);
-        Pipe.pipe(process.getErrorStream(), System.err);
+    /**
+     * @param bytes DER or PEM encoded data
+     */
+    public static String dump(final byte[] bytes) throws IOException {
+        final StringBuilder out = new StringBuilder();
+        dump(bytes, out);
+        return out.toString();
+    }
+
+    /**
+     * @param bytes DER or PEM encoded data
+     * @param out where the dump is appended
+     */
+    public static void dump(final byte[] bytes, final StringBuilder out) {
+        final byte[] der = bytes.length > 1 && bytes[0] == '-' && bytes[1] == '-' ? Pem.parse(bytes).getData() : bytes;
+
+        final Printer printer = new Printer(out);
         try {
-            final int i = process.waitFor();
-            if (i != 0) {
-                throw new IllegalStateException("Exit code " + i);
+            for (DerSlice slice = der.length > 0 ? DerSlice.of(der) : null; slice != null; slice = slice.next()) {
+                slice.accept(printer);
             }
-        } catch (InterruptedException e) {
-            throw new IllegalStateException(e);
+        } catch (final IOException | RuntimeException e) {
+            out.append("Error in encoding: ").append(e.getMessage()).append('\n');
         }
     }
 
-    public static String dump(final byte[] bytes) throws IOException {
-        final File der = File.createTempFile("der", ".dump");
+    private static class Printer implements Asn1Visitor {
+
+        private final StringBuilder out;
 
-        if (bytes[0] == '-' && bytes[1] == '-'){
-            final Pem pem = Pem.parse(bytes);
-            IO.copy(pem.getData(), der);
-        } else {
-            IO.copy(bytes, der);
+        Printer(final StringBuilder out) {
+            this.out = out;
         }
 
-        final PrintString err = new PrintString();
-        final PrintString out = new PrintString();
-        final ProcessBuilder builder = new ProcessBuilder("openssl", "asn1parse", "-i", "-inform", "DER", "-in", der.getAbsolutePath(), "-dump");
-        final Process process = builder.start();
-        final Future<Pipe> o = Pipe.pipe(process.getInputStream(), out);
-        final Future<Pipe> e = Pipe.pipe(process.getErrorStream(), err);
-        try {
-            final int i = process.waitFor();
-            o.get();
-            e.get();
-            if (i != 0) {
-                throw new IllegalStateException("Exit code " + i + "\n" + err);
+        @Override
+        public boolean startConstructed(final int tag, final DerSlice slice) throws IOException {
+            if (slice.getDepth() >= MAXIMUM_DEPTH) {
+                throw new StreamCorruptedException("nesting deeper than " + MAXIMUM_DEPTH);
             }
-        } catch (InterruptedException | ExecutionException exception) {
-            throw new IllegalStateException(exception);
-        } finally {
-            out.close();
-            err.close();
-            der.delete();
+            header(tag, slice);
+            out.append('\n');
+            return true;
         }
-        return out.toString();
+
+        @Override
+        public void primitive(final int tag, final DerSlice slice) throws IOException {
+            header(tag, slice);
+
+            if ((tag & 0b11000000) != 0) {
+                out.append('\n');
+                return;
+            }
+
+            final int length = slice.getLength();
+            switch (tag & 0b00011111) {
+                case 12: // UTF8STRING
+                case 18: // NUMERICSTRING
+                case 19: // PRINTABLESTRING
+                case 20: // T61STRING
+                case 22: // IA5STRING
+                case 23: // UTCTIME
+                case 24: // GENERALIZEDTIME
+                case 26: // VISIBLESTRING
+                    out.append(':').append(new String(slice.toBytes(), ISO_8859_1));
+                    break;
+
+                case 6: { // OBJECT
+                    final String name = NAMES.get(slice);
+                    if (name != null) {
+                        out.append(':').append(name);
+                    } else {
+                        try {
+                            final Oid oid = slice.toOID();
+                            out.append(':').append(oid);
+                        } catch (final IOException | RuntimeException e) {
+                            bad("OBJECT", slice);
+                        }
+                    }
+                    break;
+                }
+
+                case 1: // BOOLEAN
+                    if (length != 1) {
+                        out.append(":BAD BOOLEAN");
+                    } else {
+                        out.append(':').append(slice.getByte(0) & 0xFF);
+                    }
+                    break;
+
+                case 2: // INTEGER
+                case 10: { // ENUMERATED
+                    if (length == 0) {
+                        bad(tag == 2 ? "INTEGER" : "ENUMERATED", slice);
+                        break;
+                    }
+                    final BigInteger value = slice.toInteger();
+                    out.append(':');
+                    if (value.signum() < 0) out.append('-');
+                    final String hex = value.abs().toString(16).toUpperCase(Locale.ENGLISH);
+                    if (hex.length() % 2 != 0) out.append('0');
+                    out.append(hex);
+                    break;
+                }
+
+                case 4: { // OCTET STRING
+                    if (length == 0) break;
+                    if (isPrintable(slice)) {
+                        out.append(':').append(new String(slice.toBytes(), ISO_8859_1));
+                    } else {
+                        out.append('\n');
+                        hex(slice);
+                        return;
+                    }
+                    break;
+                }
+
+                case 5: // NULL
+                    break;
+
+                default:
+                    if (length > 0) {
+                        out.append('\n');
+                        hex(slice);
+                        return;
+                    }
+            }
+
+            out.append('\n');
+        }
+
+        private void bad(final String type, final DerSlice slice) {
+            out.append(":BAD ").append(type).append(":[");
+            for (int i = 0; i < slice.getLength(); i++) {
+                final int b = slice.getByte(i) & 0xFF;
+                out.append(Character.toUpperCase(Character.forDigit(b >> 4, 16)));
+                out.append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+            out.append(']');
+        }
+
+        private void header(final int tag, final DerSlice slice) {
+            final int depth = slice.getDepth();
+
+            pad(Integer.toString(slice.getOffset()), 5, true);
+            out.append(":d=");
+            pad(Integer.toString(depth), 2, false);
+            out.append(" hl=").append(slice.getValueOffset() - slice.getOffset());
+            out.append(" l=");
+            pad(Integer.toString(slice.getLength()), 4, true);
+            out.append((tag & 0b00100000) != 0 ? " cons: " : " prim: ");
+
+            for (int i = 0; i < depth; i++) {
+                out.append(' ');
+            }
+
+            pad(tagName(tag), 18, false);
+        }
+
+        /**
+         * The BIO_dump_indent layout, 16 bytes per row indented by 6
+         */
+        private void hex(final DerSlice slice) {
+            final int length = slice.getLength();
+            for (int row = 0; row < length; row += 16) {
+                out.append("      ");
+                final String offset = Integer.toHexString(row);
+                for (int i = offset.length(); i < 4; i++) {
+                    out.append('0');
+                }
+                out.append(offset).append(" - ");
+
+                for (int i = 0; i < 16; i++) {
+                    if (row + i >= length) {
+                        out.append("   ");
+                        continue;
+                    }
+                    final int b = slice.getByte(row + i) & 0xFF;
+                    out.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+                    out.append(i == 7 ? '-' : ' ');
+                }
+
+                out.append("  ");
+                for (int i = row; i < row + 16 && i < length; i++) {
+                    final int b = slice.getByte(i) & 0xFF;
+                    out.append(b >= ' ' && b <= '~' ? (char) b : '.');
+                }
+                out.append('\n');
+            }
+        }
+
+        private void pad(final String value, final int width, final boolean left) {
+            if (!left) out.append(value);
+            for (int i = value.length(); i < width; i++) {
+                out.append(' ');
+            }
+            if (left) out.append(value);
+        }
+    }
+
+    private static String tagName(final int tag) {
+        final int number = tag & 0b00011111;
+        switch (tag & 0b11000000) {
+            case 0b01000000:
+                return "appl [ " + number + " ]";
+            case 0b10000000:
+                return "cont [ " + number + " ]";
+            case 0b11000000:
+                return "priv [ " + number + " ] ";
+            default:
+                return number < UNIVERSAL.length ? UNIVERSAL[number] : "<ASN1 " + number + ">";
+        }
+    }
+
+    private static boolean isPrintable(final DerSlice slice) {
+        for (int i = 0; i < slice.getLength(); i++) {
+            final int b = slice.getByte(i) & 0xFF;
+            if ((b < ' ' && b != '\n' && b != '\r' && b != '\t') || b > '~') return false;
+        }
+        return true;
+    }
+
+    /**
+     * OpenSSL short names of the algorithm, curve and attribute OIDs found in keys
+     */
+    private static OidRegistry<String> names() {
+        final Map<Oid, String> names = new HashMap<>();
+
+        /*
+         * Only the curve families whose enum names follow the OpenSSL
+         * short names.  Later constants win, so the X9.62 names replace
+         * the SEC names for the curves they share, as OpenSSL does.
+         */
+        for (final Curve curve : Curve.values()) {
+            final String name = curve.name();
+            if (curve.getOid() == null) continue;
+            if (name.startsWith("sec") || name.startsWith("prime") || name.startsWith("c2")) {
+                names.put(curve.getOid(), name);
+            } else if (name.startsWith("brainpoolp")) {
+                names.put(curve.getOid(), "brainpoolP" + name.substring("brainpoolp".length()));
+            } else if (name.startsWith("wapwsgidmecidwtls")) {
+                names.put(curve.getOid(), "wap-wsg-idm-ecid-wtls" + name.substring("wapwsgidmecidwtls".length()));
+            }
+        }
+
+        names.put(Oid.fromString("1.2.840.113549.1.1.1"), "rsaEncryption");
+        names.put(Oid.fromString("1.2.840.113549.1.1.5"), "sha1WithRSAEncryption");
+        names.put(Oid.fromString("1.2.840.113549.1.1.11"), "sha256WithRSAEncryption");
+        names.put(Oid.fromString("1.2.840.113549.1.1.12"), "sha384WithRSAEncryption");
+        names.put(Oid.fromString("1.2.840.113549.1.1.13"), "sha512WithRSAEncryption");
+        names.put(Oid.fromString("1.2.840.10040.4.1"), "dsaEncryption");
+        names.put(Oid.fromString("1.2.840.10040.4.3"), "dsaWithSHA1");
+        names.put(Oid.fromString("1.2.840.10045.2.1"), "id-ecPublicKey");
+        names.put(Oid.fromString("1.2.840.10045.4.3.2"), "ecdsa-with-SHA256");
+        names.put(Oid.fromString("1.2.840.10045.4.3.3"), "ecdsa-with-SHA384");
+        names.put(Oid.fromString("1.2.840.10045.4.3.4"), "ecdsa-with-SHA512");
+        names.put(Oid.fromString("1.2.643.2.2.35.0"), "id-GostR3410-2001-TestParamSet");
+        names.put(Oid.fromString("1.2.643.2.2.35.1"), "id-GostR3410-2001-CryptoPro-A-ParamSet");
+        names.put(Oid.fromString("1.2.643.2.2.35.2"), "id-GostR3410-2001-CryptoPro-B-ParamSet");
+        names.put(Oid.fromString("1.2.643.2.2.35.3"), "id-GostR3410-2001-CryptoPro-C-ParamSet");
+        names.put(Oid.fromString("1.2.643.2.2.36.0"), "id-GostR3410-2001-CryptoPro-XchA-ParamSet");
+        names.put(Oid.fromString("1.2.643.2.2.36.1"), "id-GostR3410-2001-CryptoPro-XchB-ParamSet");
+        names.put(Oid.fromString("1.2.643.7.1.2.1.2.1"), "GOST R 34.10-2012 (512 bit) ParamSet A");
+        names.put(Oid.fromString("1.2.643.7.1.2.1.2.2"), "GOST R 34.10-2012 (512 bit) ParamSet B");
+
+        names.put(EcCurveParams.primeField, "prime-field");
+        names.put(EcCurveParams.characteristicTwoField, "characteristic-two-field");
+        names.put(EcCurveParams.tpBasis, "tpBasis");
+        names.put(EcCurveParams.ppBasis, "ppBasis");
+        return new OidRegistry<>(names);
     }
 }
@@ -18,14 +18,12 @@
  */
 package io.churchkey.asn1;
 
+import io.churchkey.DecodeOptions;
 import io.churchkey.util.Bytes;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.StreamCorruptedException;
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 public class Asn1Object {
@@ -34,6 +32,11 @@ public class Asn1Object {
     private final int length;
     private final byte[] value;
 
+    /**
+     * Nesting level of the parser this object was read from, see {@link #createParser()}
+     */
+    int depth;
+
     public Asn1Object(final byte tag, final int len, final byte... data) {
         this(Tag.fromDer(tag), len, data);
     }
@@ -102,8 +105,17 @@ public class Asn1Object {
         return pure;
     }
 
+    /**
+     * The returned parser is one level deeper than the one this object was
+     * read from and is rejected if that exceeds {@link DecodeOptions#getMaximumDerDepth()}
+     */
     public DerParser createParser() {
-        return new DerParser(getValue(), 0, getLength());
+        final int childDepth = depth + 1;
+        DecodeOptions.current().checkDerDepth(childDepth);
+
+        final DerParser parser = new DerParser(getValue(), 0, getLength());
+        parser.depth = childDepth;
+        return parser;
     }
 
     public Object asObject() throws IOException {
@@ -215,51 +227,7 @@ public class Asn1Object {
 
     // Does not check that type is OID
     public Oid toOID() throws IOException {
-        int vLen = getLength();
-        if (vLen <= 0) {
-            throw new EOFException("Not enough data for an OID");
-        }
-
-        List<Integer> oid = new ArrayList<>(vLen + 1);
-        byte[] bytes = getValue();
-        int val1 = bytes[0] & 0xFF;
-        oid.add(Integer.valueOf(val1 / 40));
-        oid.add(Integer.valueOf(val1 % 40));
-
-        for (int curPos = 1; curPos < vLen; curPos++) {
-            int v = bytes[curPos] & 0xFF;
-            if (v <= 0x7F) { // short form
-                oid.add(Integer.valueOf(v));
-                continue;
-            }
-
-            long curVal = v & 0x7F;
-            curPos++;
-
-            for (int subLen = 1; ; subLen++, curPos++) {
-                if (curPos >= vLen) {
-                    throw new EOFException("Incomplete OID value");
-                }
-
-                if (subLen > 5) { // 32 bit values can span at most 5 octets
-                    throw new StreamCorruptedException("OID component encoding beyond 5 bytes");
-                }
-
-                v = bytes[curPos] & 0xFF;
-                curVal = ((curVal << 7) & 0xFFFFFFFF80L) | (v & 0x7FL);
-                if (curVal > Integer.MAX_VALUE) {
-                    throw new StreamCorruptedException("OID value exceeds 32 bits: " + curVal);
-                }
-
-                if (v <= 0x7F) { // found last octet ?
-                    break;
-                }
-            }
-
-            oid.add(Integer.valueOf((int) (curVal & 0x7FFFFFFFL)));
-        }
-
-        return new Oid(oid);
+        return Oid.fromBytes(getPureValueBytes());
     }
 
     @Override
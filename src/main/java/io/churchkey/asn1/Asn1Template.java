@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the elements of an ASN.1 SEQUENCE once and binds them onto a
+ * target, typically a key spec builder, in a single pass over a {@link DerSlice}.
+ *
+ * <pre>
+ * private static final Asn1Template&lt;Rsa.Public.Builder&gt; RSA_PUBLIC_KEY = Asn1Template.&lt;Rsa.Public.Builder&gt;sequence()
+ *         .integer(Rsa.Public.Builder::modulus)
+ *         .integer(Rsa.Public.Builder::publicExponent)
+ *         .build();
+ *
+ * final Rsa.Public spec = RSA_PUBLIC_KEY.bind(bytes, Rsa.Public.builder()).build();
+ * </pre>
+ *
+ * Fields are matched in order against the children of the sequence.  A
+ * required field whose type does not match fails the whole bind, an
+ * optional one is left out and the same child is tried against the next
+ * field.  Children after the last field are ignored, as the ASN.1
+ * extension marker allows.
+ *
+ * Templates are immutable and can be shared as constants.
+ *
+ * @param <T> the type values are bound onto
+ */
+public final class Asn1Template<T> {
+
+    private final Field<T>[] fields;
+
+    private Asn1Template(final Field<T>[] fields) {
+        this.fields = fields;
+    }
+
+    public static <T> Builder<T> sequence() {
+        return new Builder<>();
+    }
+
+    /**
+     * @param der a DER encoded SEQUENCE
+     */
+    public T bind(final byte[] der, final T target) throws IOException {
+        return bind(DerSlice.of(der), target);
+    }
+
+    /**
+     * @param sequence a SEQUENCE slice
+     */
+    public T bind(final DerSlice sequence, final T target) throws IOException {
+        sequence.assertType(Asn1Type.SEQUENCE);
+
+        DerSlice child = sequence.first();
+        for (final Field<T> field : fields) {
+            if (child != null && field.matches(child)) {
+                field.bind(child, target);
+                child = child.next();
+            } else if (!field.optional) {
+                throw new StreamCorruptedException(String.format("Invalid DER: expected %s at offset %d, found %s",
+                        field.description, child == null ? sequence.getEnd() : child.getOffset(), child == null ? "end of sequence" : child.getType()));
+            }
+        }
+
+        return target;
+    }
+
+    @FunctionalInterface
+    public interface Binder<T, V> {
+        void bind(T target, V value) throws IOException;
+    }
+
+    private static final class Field<T> {
+        private final String description;
+        private final int tag;
+        private final int mask;
+        private final boolean optional;
+        private final Binder<T, DerSlice> binder;
+
+        Field(final String description, final int tag, final int mask, final boolean optional, final Binder<T, DerSlice> binder) {
+            this.description = description;
+            this.tag = tag;
+            this.mask = mask;
+            this.optional = optional;
+            this.binder = binder;
+        }
+
+        boolean matches(final DerSlice slice) {
+            return (slice.getTag() & mask) == tag;
+        }
+
+        void bind(final DerSlice slice, final T target) throws IOException {
+            if (binder != null) binder.bind(target, slice);
+        }
+    }
+
+    public static final class Builder<T> {
+
+        /**
+         * Universal types are matched on the type number only, like
+         * {@link DerSlice#isType(Asn1Type)}
+         */
+        private static final int TYPE = 0x1F;
+
+        /**
+         * Tagged elements are matched on the number and construction
+         * but not the class, as the key encoders of this library
+         * historically wrote them in the universal class
+         */
+        private static final int TAGGED = 0x3F;
+
+        private final List<Field<T>> fields = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * A required element of this type whose value is not used, a version for example
+         */
+        public Builder<T> skip(final Asn1Type type) {
+            return add(type.name(), type.getConstant(), TYPE, false, null);
+        }
+
+        public Builder<T> integer(final Binder<T, BigInteger> binder) {
+            return add("INTEGER", Asn1Type.INTEGER.getConstant(), TYPE, false, (target, slice) -> binder.bind(target, slice.asInteger()));
+        }
+
+        /**
+         * An OCTET STRING holding an unsigned big-endian integer, as the SEC1 private value
+         */
+        public Builder<T> unsignedInteger(final Binder<T, BigInteger> binder) {
+            return add("OCTET STRING", Asn1Type.OCTET_STRING.getConstant(), TYPE, false, (target, slice) -> binder.bind(target, slice.toInteger()));
+        }
+
+        public Builder<T> objectIdentifier(final Binder<T, Oid> binder) {
+            return add("OBJECT", Asn1Type.OBJECT_IDENTIFIER.getConstant(), TYPE, false, (target, slice) -> binder.bind(target, slice.asOID()));
+        }
+
+        /**
+         * A required element of this type handed over as is
+         */
+        public Builder<T> element(final Asn1Type type, final Binder<T, DerSlice> binder) {
+            return add(type.name(), type.getConstant(), TYPE, false, binder);
+        }
+
+        /**
+         * A required element of any type, for example the parameters of an AlgorithmIdentifier
+         */
+        public Builder<T> any(final Binder<T, DerSlice> binder) {
+            return add("any element", 0, 0, false, binder);
+        }
+
+        /**
+         * An element of any type that may be absent
+         */
+        public Builder<T> optional(final Binder<T, DerSlice> binder) {
+            return add("any element", 0, 0, true, binder);
+        }
+
+        /**
+         * An element of this type that may be absent
+         */
+        public Builder<T> optional(final Asn1Type type, final Binder<T, DerSlice> binder) {
+            return add(type.name(), type.getConstant(), TYPE, true, binder);
+        }
+
+        /**
+         * A nested SEQUENCE bound onto the same target
+         */
+        public Builder<T> sequence(final Asn1Template<T> template) {
+            return add("SEQUENCE", Asn1Type.SEQUENCE.getConstant(), TYPE, false, (target, slice) -> template.bind(slice, target));
+        }
+
+        /**
+         * An OCTET STRING encapsulating a DER encoded SEQUENCE bound onto the same target
+         */
+        public Builder<T> encapsulated(final Asn1Template<T> template) {
+            return add("OCTET STRING", Asn1Type.OCTET_STRING.getConstant(), TYPE, false, (target, slice) -> template.bind(slice.first(), target));
+        }
+
+        /**
+         * An optional {@code [number] EXPLICIT} element, the binder receives the wrapped element
+         */
+        public Builder<T> explicit(final int number, final Binder<T, DerSlice> binder) {
+            return add("[" + number + "]", 0x20 | number, TAGGED, true, (target, slice) -> {
+                final DerSlice wrapped = slice.first();
+                if (wrapped == null) {
+                    throw new StreamCorruptedException("Invalid DER: empty [" + number + "] at offset " + slice.getOffset());
+                }
+                binder.bind(target, wrapped);
+            });
+        }
+
+        public Asn1Template<T> build() {
+            @SuppressWarnings("unchecked")
+            final Field<T>[] array = (Field<T>[]) fields.toArray(new Field<?>[0]);
+            return new Asn1Template<>(array);
+        }
+
+        private Builder<T> add(final String description, final int tag, final int mask, final boolean optional, final Binder<T, DerSlice> binder) {
+            fields.add(new Field<>(description, tag, mask, optional, binder));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import java.io.IOException;
+
+/**
+ * Receives the elements of a DER structure in document order, see
+ * {@link DerSlice#accept(Asn1Visitor)}.
+ *
+ * Nothing is copied or materialized while walking; each callback gets a
+ * {@link DerSlice} over the source so the visitor only pays for the
+ * values it actually reads.  For example collecting every OID and the
+ * size of every INTEGER:
+ *
+ * <pre>
+ * DerSlice.of(bytes).accept(new Asn1Visitor() {
+ *     public void primitive(final int tag, final DerSlice slice) throws IOException {
+ *         if (slice.isType(Asn1Type.OBJECT_IDENTIFIER)) oids.add(slice.toOID());
+ *         if (slice.isType(Asn1Type.INTEGER)) sizes.add(slice.getUnsignedBitLength());
+ *     }
+ * });
+ * </pre>
+ *
+ * Primitive OCTET STRING and BIT STRING values frequently wrap another
+ * DER structure, PKCS#8 private keys for example.  They are reported as
+ * primitives; a visitor that wants to look inside calls
+ * {@code slice.first().accept(this)} itself.
+ */
+public interface Asn1Visitor {
+
+    /**
+     * Called before the contents of a constructed element are visited
+     *
+     * @param tag the identifier octet, see {@link Tag#fromDer(int)}
+     * @return false to skip the contents of the element, in which case
+     * {@link #endConstructed(int, DerSlice)} is not called for it either
+     */
+    default boolean startConstructed(final int tag, final DerSlice slice) throws IOException {
+        return true;
+    }
+
+    /**
+     * Called after the contents of a constructed element were visited
+     */
+    default void endConstructed(final int tag, final DerSlice slice) throws IOException {
+    }
+
+    /**
+     * Called for every element that is not constructed
+     */
+    default void primitive(final int tag, final DerSlice slice) throws IOException {
+    }
+}
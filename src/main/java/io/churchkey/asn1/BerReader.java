@@ -0,0 +1,587 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.DecodeOptions;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A pull reader for BER encoded streams, including the indefinite
+ * length form and constructed strings used by PKCS#7/CMS and PKCS#12
+ * containers.  DER is a subset of BER so DER input is read as well.
+ *
+ * {@link DerParser} and {@link DerSlice} only understand definite lengths
+ * and need the value of a constructed element in memory before they can
+ * look inside it.  This reader instead moves through the stream one
+ * header at a time.  Elements that are not of interest are skipped as
+ * they are read, whatever their length form, and values can be consumed
+ * as streams, so the memory used does not depend on the size of the
+ * container.  Only the values explicitly materialized with
+ * {@link #readBytes()}, {@link #readBigInteger()} or {@link #readOid()}
+ * are held, and those are checked against
+ * {@link DecodeOptions#getMaximumDerLength()}.
+ *
+ * <pre>
+ * final BerReader reader = new BerReader(in);
+ * reader.next();          // ContentInfo SEQUENCE
+ * reader.enter();
+ * reader.next();          // contentType OBJECT IDENTIFIER
+ * final Oid type = reader.readOid();
+ * reader.next();          // [0] content
+ * reader.enter();
+ * while (reader.next()) {
+ *     ...
+ * }
+ * reader.exit();
+ * </pre>
+ *
+ * Each level entered is checked against {@link DecodeOptions#getMaximumDerDepth()}.
+ */
+public final class BerReader implements Closeable {
+
+    private static final Asn1Type[] TYPES = Asn1Type.values();
+    private static final Asn1Class[] CLASSES = Asn1Class.values();
+
+    private static final int CHUNK = 8192;
+
+    private final InputStream in;
+    private long position;
+
+    /**
+     * The absolute position where each entered element ends or -1 when
+     * it ends with end-of-contents octets
+     */
+    private long[] ends = new long[8];
+
+    /**
+     * The end of the innermost entered element with a definite length, at
+     * each level, or -1 when there is none.  Nothing at that level may run past it.
+     */
+    private long[] limits = new long[8];
+    private int depth;
+
+    /**
+     * Set once the end of the innermost entered element, or of the stream, was reached
+     */
+    private boolean atEnd;
+
+    private int tag = -1;
+    private int tagNumber;
+    private long offset;
+    private long length;
+    private long valueEnd;
+
+    /**
+     * True while the value of the current element has not been skipped or entered
+     */
+    private boolean pending;
+
+    /**
+     * The only value stream allowed to read, streams of previous elements are detached
+     */
+    private InputStream stream;
+
+    public BerReader(final InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the next element at the current level.  Whatever was not
+     * read of the previous element is skipped.
+     *
+     * @return false when the entered element, or the stream at the top level, has no more elements
+     */
+    public boolean next() throws IOException {
+        if (atEnd) return false;
+        if (tag != -1) skip();
+
+        final long limit = depth > 0 ? limits[depth - 1] : -1;
+        if (limit >= 0 && position >= limit) {
+            if (position > limit || ends[depth - 1] < 0) {
+                throw new StreamCorruptedException("Invalid BER: element at " + offset + " exceeds its enclosing element");
+            }
+            return end();
+        }
+
+        offset = position;
+        final int b = read();
+        if (b < 0) {
+            if (depth > 0) {
+                throw new EOFException("Invalid BER: stream ended inside an element at depth " + depth);
+            }
+            return end();
+        }
+
+        if (b == 0) {
+            if (read() != 0) {
+                throw new StreamCorruptedException("Invalid BER: malformed end-of-contents octets at " + offset);
+            }
+            if (depth == 0 || ends[depth - 1] >= 0) {
+                throw new StreamCorruptedException("Invalid BER: unexpected end-of-contents octets at " + offset);
+            }
+            return end();
+        }
+
+        tag = b;
+        tagNumber = readTagNumber(b);
+        length = readLength();
+
+        if (length < 0) {
+            if (!isConstructed()) {
+                throw new StreamCorruptedException("Invalid BER: indefinite length on a primitive element at " + offset);
+            }
+        } else {
+            valueEnd = position + length;
+            if (valueEnd < 0 || (limit >= 0 && valueEnd > limit)) {
+                throw new StreamCorruptedException("Invalid BER: element at " + offset + " exceeds its enclosing element");
+            }
+        }
+
+        pending = true;
+        return true;
+    }
+
+    /**
+     * Descends into the current constructed element, the following
+     * {@link #next()} calls iterate over its children
+     */
+    public void enter() {
+        if (tag == -1 || !pending || !isConstructed()) {
+            throw new IllegalStateException("No constructed element to enter");
+        }
+
+        DecodeOptions.current().checkDerDepth(depth + 1);
+
+        if (depth == ends.length) {
+            ends = Arrays.copyOf(ends, depth * 2);
+            limits = Arrays.copyOf(limits, depth * 2);
+        }
+        ends[depth] = length < 0 ? -1 : valueEnd;
+        limits[depth] = length >= 0 ? valueEnd : depth > 0 ? limits[depth - 1] : -1;
+        depth++;
+
+        pending = false;
+        tag = -1;
+    }
+
+    /**
+     * Skips the remaining children of the entered element and returns to
+     * its parent.  The next {@link #next()} call moves to its sibling.
+     */
+    public void exit() throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("Not inside a constructed element");
+        }
+
+        while (next()) {
+            // skipped by next()
+        }
+
+        depth--;
+        atEnd = false;
+        tag = -1;
+    }
+
+    /**
+     * The identifier octet of the current element
+     */
+    public int getTag() {
+        return tag;
+    }
+
+    /**
+     * The tag number, which is only different from the low five bits of
+     * {@link #getTag()} for numbers of 31 and above
+     */
+    public int getTagNumber() {
+        return tagNumber;
+    }
+
+    public Asn1Class getAsn1Class() {
+        return CLASSES[tag >> 6];
+    }
+
+    /**
+     * @return the universal type of the low five bits of the tag or null
+     * for the high tag number form
+     */
+    public Asn1Type getType() {
+        final int type = tag & 0x1F;
+        return type < TYPES.length ? TYPES[type] : null;
+    }
+
+    public boolean isType(final Asn1Type type) {
+        return tag != -1 && getType() == type;
+    }
+
+    public BerReader assertType(final Asn1Type type) {
+        if (!isType(type)) {
+            throw new IllegalStateException(String.format("Expected type %s, found %s", type, tag == -1 ? null : getType()));
+        }
+        return this;
+    }
+
+    public boolean isConstructed() {
+        return (tag & 0x20) != 0;
+    }
+
+    /**
+     * True when the current element is terminated by end-of-contents octets
+     */
+    public boolean isIndefinite() {
+        return length < 0;
+    }
+
+    /**
+     * @return the length of the value of the current element or -1 if it is indefinite
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the position of the identifier octet of the current element in the stream
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of elements entered
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * The value of the current element as a stream.  For a constructed
+     * element, as BER allows for strings, the values of its primitive
+     * segments are concatenated.
+     *
+     * The stream reads through this reader.  A primitive value that is not
+     * read completely is skipped by {@link #next()}, the stream of a
+     * constructed value has to be read to the end or closed first.
+     */
+    public InputStream openValue() throws IOException {
+        if (tag == -1 || !pending) {
+            throw new IllegalStateException("No element value to read");
+        }
+
+        if (!isConstructed()) {
+            stream = new ValueStream();
+            return stream;
+        }
+
+        return new Segments();
+    }
+
+    /**
+     * Materializes the value of the current element
+     *
+     * @throws io.churchkey.DecodeLimitException if the value exceeds {@link DecodeOptions#getMaximumDerLength()}
+     */
+    public byte[] readBytes() throws IOException {
+        final DecodeOptions options = DecodeOptions.current();
+        if (length >= 0 && !isConstructed()) {
+            options.checkDerLength(length);
+        }
+
+        try (InputStream value = openValue()) {
+            byte[] bytes = new byte[(int) Math.min(Math.max(length, 0), CHUNK)];
+            int n = 0;
+            while (true) {
+                if (n == bytes.length) {
+                    if (n == Integer.MAX_VALUE) {
+                        throw new StreamCorruptedException("Invalid BER: value too big to be held in an array");
+                    }
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE, Math.max(CHUNK, 2L * n)));
+                }
+
+                final int read = value.read(bytes, n, bytes.length - n);
+                if (read < 0) break;
+                n += read;
+                options.checkDerLength(n);
+            }
+            return n == bytes.length ? bytes : Arrays.copyOf(bytes, n);
+        }
+    }
+
+    public BigInteger readBigInteger() throws IOException {
+        assertType(Asn1Type.INTEGER);
+        final byte[] value = readBytes();
+        if (value.length == 0) {
+            throw new StreamCorruptedException("Invalid BER: empty INTEGER at " + offset);
+        }
+        return new BigInteger(value);
+    }
+
+    public Oid readOid() throws IOException {
+        assertType(Asn1Type.OBJECT_IDENTIFIER);
+        return Oid.decode(readBytes());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean end() {
+        atEnd = true;
+        tag = -1;
+        return false;
+    }
+
+    /**
+     * Skips the unread part of the value of the current element
+     */
+    private void skip() throws IOException {
+        stream = null;
+
+        if (pending) {
+            if (length >= 0) {
+                skip(valueEnd - position);
+            } else {
+                skipIndefinite();
+            }
+            pending = false;
+        }
+
+        tag = -1;
+    }
+
+    /**
+     * Skips the value of an indefinite length element by counting the
+     * indefinite elements opened inside it until the end-of-contents
+     * octets closing it.  Elements of definite length are skipped whole,
+     * so the stack is never used, however deep the nesting.
+     */
+    private void skipIndefinite() throws IOException {
+        final DecodeOptions options = DecodeOptions.current();
+        final long limit = depth > 0 ? limits[depth - 1] : -1;
+        final long start = offset;
+
+        int open = 1;
+        options.checkDerDepth(depth + open);
+
+        while (open > 0) {
+            if (limit >= 0 && position >= limit) {
+                throw new StreamCorruptedException("Invalid BER: element at " + start + " exceeds its enclosing element");
+            }
+
+            offset = position;
+            final int b = read();
+            if (b < 0) {
+                throw new EOFException("Invalid BER: stream ended inside an element at depth " + (depth + open));
+            }
+
+            if (b == 0) {
+                if (read() != 0) {
+                    throw new StreamCorruptedException("Invalid BER: malformed end-of-contents octets at " + offset);
+                }
+                open--;
+                continue;
+            }
+
+            readTagNumber(b);
+            final long value = readLength();
+
+            if (value >= 0) {
+                if (limit >= 0 && value > limit - position) {
+                    throw new StreamCorruptedException("Invalid BER: element at " + offset + " exceeds its enclosing element");
+                }
+                skip(value);
+            } else if ((b & 0x20) == 0) {
+                throw new StreamCorruptedException("Invalid BER: indefinite length on a primitive element at " + offset);
+            } else {
+                options.checkDerDepth(depth + ++open);
+            }
+        }
+
+        if (limit >= 0 && position > limit) {
+            throw new StreamCorruptedException("Invalid BER: element at " + start + " exceeds its enclosing element");
+        }
+        offset = start;
+    }
+
+    private int readTagNumber(final int identifier) throws IOException {
+        if ((identifier & 0x1F) != 0x1F) return identifier & 0x1F;
+
+        int number = 0;
+        int b;
+        do {
+            b = read();
+            if (b < 0) {
+                throw new EOFException("Invalid BER: tag number missing at " + offset);
+            }
+            if (number > (Integer.MAX_VALUE >> 7)) {
+                throw new StreamCorruptedException("Invalid BER: tag number too big at " + offset);
+            }
+            number = (number << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+
+        return number;
+    }
+
+    /**
+     * Unlike DER, BER allows the indefinite form and lengths that are not
+     * in the shortest form
+     */
+    private long readLength() throws IOException {
+        final int first = read();
+        if (first < 0) {
+            throw new EOFException("Invalid BER: length missing at " + offset);
+        }
+
+        if (first < 0x80) return first;
+        if (first == 0x80) return -1;
+
+        final int num = first & 0x7F;
+        if (first == 0xFF || num > Long.BYTES) {
+            throw new StreamCorruptedException("Invalid BER: length field too big: " + first);
+        }
+
+        long value = 0;
+        for (int i = 0; i < num; i++) {
+            final int b = read();
+            if (b < 0) {
+                throw new EOFException("Invalid BER: length data too short at " + offset);
+            }
+            value = (value << 8) | b;
+        }
+
+        if (value < 0) {
+            throw new StreamCorruptedException("Invalid BER: length field too big: " + num + " octets");
+        }
+
+        return value;
+    }
+
+    private int read() throws IOException {
+        final int b = in.read();
+        if (b >= 0) position++;
+        return b;
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            final long skipped = in.skip(n);
+            if (skipped > 0) {
+                position += skipped;
+                n -= skipped;
+            } else if (read() >= 0) {
+                n--;
+            } else {
+                throw new EOFException("Invalid BER: stream too short, missing " + n + " value bytes");
+            }
+        }
+    }
+
+    /**
+     * The value of the current primitive element
+     */
+    private final class ValueStream extends InputStream {
+
+        private final long end = valueEnd;
+
+        @Override
+        public int read() throws IOException {
+            if (stream != this || position >= end) return -1;
+
+            final int b = BerReader.this.read();
+            if (b < 0) {
+                throw new EOFException("Invalid BER: stream too short, missing " + (end - position) + " value bytes");
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            if (stream != this || position >= end) return -1;
+
+            final int n = in.read(b, off, (int) Math.min(len, end - position));
+            if (n < 0) {
+                throw new EOFException("Invalid BER: stream too short, missing " + (end - position) + " value bytes");
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (stream != this) return 0;
+            return (int) Math.min(in.available(), end - position);
+        }
+    }
+
+    /**
+     * The concatenated primitive segments of a constructed string
+     */
+    private final class Segments extends InputStream {
+
+        private final int base = depth;
+        private InputStream segment;
+
+        Segments() {
+            enter();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+
+            while (true) {
+                if (segment != null) {
+                    final int n = segment.read(b, off, len);
+                    if (n >= 0) return n;
+                    segment = null;
+                }
+
+                if (depth == base) return -1;
+
+                if (!next()) {
+                    exit();
+                } else if (isConstructed()) {
+                    enter();
+                } else {
+                    segment = openValue();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            segment = null;
+            while (depth > base) {
+                exit();
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Builds DER structures with the same fluent style as {@link DerWriter}
+ * but without encoding anything until the result is asked for.
+ *
+ * <pre>
+ * final byte[] der = write()
+ *         .sequence(write()
+ *                 .integer(ZERO)
+ *                 .octetString(write()
+ *                         .integer(value)))
+ *         .bytes();
+ * </pre>
+ *
+ * Each call only records the element.  {@link #bytes()} then computes
+ * every length bottom-up in one pass and encodes the whole tree in a
+ * second pass into a single, exactly sized array.  Nested builders are
+ * never turned into intermediate arrays, so each value byte is copied
+ * once regardless of how deep it is nested.  {@link #writeTo(byte[], int)},
+ * {@link #writeTo(ByteBuffer)} and {@link #writeTo(OutputStream)} encode
+ * into a caller supplied destination instead.
+ *
+ * The encoding is identical to the one produced by {@link DerWriter}.
+ */
+public final class DerBuilder {
+
+    private static final byte SEQUENCE = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.CONSTRUCTED, Asn1Type.SEQUENCE).toDer();
+    private static final byte ANY = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.CONSTRUCTED, Asn1Type.ANY).toDer();
+    private static final byte BOOLEAN = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.CONSTRUCTED, Asn1Type.BOOLEAN).toDer();
+    private static final byte INTEGER = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.PRIMITIVE, Asn1Type.INTEGER).toDer();
+    private static final byte OCTET_STRING = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.PRIMITIVE, Asn1Type.OCTET_STRING).toDer();
+    private static final byte BIT_STRING = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.PRIMITIVE, Asn1Type.BIT_STRING).toDer();
+    private static final byte OBJECT_IDENTIFIER = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.PRIMITIVE, Asn1Type.OBJECT_IDENTIFIER).toDer();
+    private static final byte NULL = new Tag(Asn1Class.UNIVERSAL, Asn1Construction.PRIMITIVE, Asn1Type.NULL).toDer();
+
+    private static final byte[] ZERO = {0};
+
+    private final List<Element> elements = new ArrayList<>();
+
+    /**
+     * Length of the contents, valid after {@link #measure()}
+     */
+    private int length;
+
+    public static DerBuilder write() {
+        return new DerBuilder();
+    }
+
+    public DerBuilder integer(final BigInteger value) {
+        final byte[] bytes = Objects.requireNonNull(value, "No value").toByteArray();
+        int off = 0;
+        int len = bytes.length;
+
+        // Strip leading zeroes
+        while (len > 1 && bytes[off] == 0 && isPositive(bytes[off + 1])) {
+            off++;
+            len--;
+        }
+
+        // The integer is always considered to be positive, pad with a zero if needed
+        return add(new Primitive(INTEGER, !isPositive(bytes[off]), bytes, off, len));
+    }
+
+    public DerBuilder integer(final int value) {
+        return integer(BigInteger.valueOf(value));
+    }
+
+    public DerBuilder sequence(final DerBuilder builder) {
+        return add(new Constructed(SEQUENCE, builder));
+    }
+
+    public DerBuilder any(final DerBuilder builder) {
+        return add(new Constructed(ANY, builder));
+    }
+
+    public DerBuilder bolean(final DerBuilder builder) {
+        return add(new Constructed(BOOLEAN, builder));
+    }
+
+    public DerBuilder octetString(final DerBuilder builder) {
+        return add(new Constructed(OCTET_STRING, builder));
+    }
+
+    /**
+     * Leading zero bytes are dropped, the same as {@link Asn1Object#octetString(byte[])}
+     */
+    public DerBuilder octetString(final byte[] bytes) {
+        int off = 0;
+        while (off < bytes.length && bytes[off] == 0) {
+            off++;
+        }
+
+        if (off == bytes.length) {
+            return add(new Primitive(OCTET_STRING, false, ZERO, 0, 1));
+        }
+        return add(new Primitive(OCTET_STRING, false, bytes, off, bytes.length - off));
+    }
+
+    public DerBuilder octetString(final BigInteger integer) {
+        return octetString(integer.toByteArray());
+    }
+
+    public DerBuilder bitString(final byte[] bytes) {
+        return add(new Primitive(BIT_STRING, false, bytes, 0, bytes.length));
+    }
+
+    public DerBuilder objectIdentifier(final Oid oid) {
+        final byte[] bytes = oid.encoded();
+        return add(new Primitive(OBJECT_IDENTIFIER, false, bytes, 0, bytes.length));
+    }
+
+    public DerBuilder nill() {
+        return add(new Primitive(NULL, false, ZERO, 0, 0));
+    }
+
+    public DerBuilder writeObject(final Asn1Object obj) {
+        Objects.requireNonNull(obj, "No ASN.1 object");
+        return add(new Primitive(obj.getTag().toDer(), false, obj.getValue(), 0, obj.getLength()));
+    }
+
+    /**
+     * @return the exact number of bytes {@link #bytes()} will return
+     */
+    public int size() {
+        return measure();
+    }
+
+    public byte[] bytes() {
+        final byte[] bytes = new byte[measure()];
+        encode(bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * @return the offset just past the last byte written
+     * @throws IndexOutOfBoundsException if the encoding does not fit
+     */
+    public int writeTo(final byte[] bytes, final int offset) {
+        final int size = measure();
+        if (offset < 0 || size > bytes.length - offset) {
+            throw new IndexOutOfBoundsException("Encoding needs " + size + " bytes, " + (bytes.length - offset) + " available");
+        }
+        return encode(bytes, offset);
+    }
+
+    /**
+     * Writes at the buffer's position and advances it
+     *
+     * @throws BufferOverflowException if the encoding does not fit
+     */
+    public ByteBuffer writeTo(final ByteBuffer buffer) {
+        if (buffer.hasArray() && !buffer.isReadOnly()) {
+            final int size = measure();
+            if (size > buffer.remaining()) {
+                throw new BufferOverflowException();
+            }
+            encode(buffer.array(), buffer.arrayOffset() + buffer.position());
+            buffer.position(buffer.position() + size);
+            return buffer;
+        }
+        return buffer.put(bytes());
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(bytes());
+    }
+
+    private DerBuilder add(final Element element) {
+        elements.add(element);
+        return this;
+    }
+
+    /**
+     * Computes the content length of this builder and every nested one
+     *
+     * @return the encoded size of the contents
+     */
+    private int measure() {
+        long total = 0;
+        for (final Element element : elements) {
+            total += element.measure();
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("DER encoding exceeds 2 GiB");
+        }
+        length = (int) total;
+        return length;
+    }
+
+    private int encode(final byte[] bytes, int pos) {
+        for (final Element element : elements) {
+            pos = element.encode(bytes, pos);
+        }
+        return pos;
+    }
+
+    private static boolean isPositive(final byte b) {
+        return (b & 0x80) == 0;
+    }
+
+    private static int sizeOf(final int length) {
+        if (length <= 127) return 1;
+        if (length <= 0xFF) return 2;
+        if (length <= 0xFFFF) return 3;
+        if (length <= 0xFFFFFF) return 4;
+        return 5;
+    }
+
+    private static int header(final byte[] bytes, int pos, final byte tag, final int length) {
+        bytes[pos++] = tag;
+
+        // short form - MSBit is zero
+        if (length <= 127) {
+            bytes[pos++] = (byte) length;
+            return pos;
+        }
+
+        final int octets = sizeOf(length) - 1;
+        bytes[pos++] = (byte) (0x80 | octets); // indicate number of octets
+        for (int shift = (octets - 1) * 8; shift >= 0; shift -= 8) {
+            bytes[pos++] = (byte) (length >>> shift);
+        }
+        return pos;
+    }
+
+    private interface Element {
+
+        /**
+         * @return the complete encoded size of the element
+         */
+        long measure();
+
+        /**
+         * @return the position after the element
+         */
+        int encode(byte[] bytes, int pos);
+    }
+
+    private static final class Primitive implements Element {
+        private final byte tag;
+        private final boolean pad;
+        private final byte[] value;
+        private final int offset;
+        private final int length;
+
+        Primitive(final byte tag, final boolean pad, final byte[] value, final int offset, final int length) {
+            this.tag = tag;
+            this.pad = pad;
+            this.value = value;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long measure() {
+            final int contents = pad ? length + 1 : length;
+            return 1L + sizeOf(contents) + contents;
+        }
+
+        @Override
+        public int encode(final byte[] bytes, int pos) {
+            if (pad) {
+                pos = header(bytes, pos, tag, length + 1);
+                bytes[pos++] = 0;
+            } else {
+                pos = header(bytes, pos, tag, length);
+            }
+            System.arraycopy(value, offset, bytes, pos, length);
+            return pos + length;
+        }
+    }
+
+    private static final class Constructed implements Element {
+        private final byte tag;
+        private final DerBuilder contents;
+
+        Constructed(final byte tag, final DerBuilder contents) {
+            this.tag = tag;
+            this.contents = Objects.requireNonNull(contents, "No contents");
+        }
+
+        @Override
+        public long measure() {
+            final int length = contents.measure();
+            return 1L + sizeOf(length) + length;
+        }
+
+        @Override
+        public int encode(final byte[] bytes, final int pos) {
+            return contents.encode(bytes, header(bytes, pos, tag, contents.length));
+        }
+    }
+}
@@ -19,7 +19,10 @@
 
 package io.churchkey.asn1;
 
+import io.churchkey.DecodeOptions;
+
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,12 +37,25 @@ import java.util.Arrays;
  */
 public class DerParser extends FilterInputStream {
     /**
-     * Maximum size of data allowed by {@link #readLength()} - it is a bit arbitrary since one can encode 32-bit length
-     * data, but it is good enough for the keys
+     * The limit {@link #readLength()} used to enforce
+     *
+     * @deprecated lengths are now bounded by {@link DecodeOptions#getMaximumDerLength()}
      */
+    @Deprecated
     public static final int MAX_DER_VALUE_LENGTH = 2 * Short.MAX_VALUE;
 
-    private final byte[] lenBytes = new byte[Integer.BYTES];
+    /**
+     * Values are buffered in chunks of this size when the declared length
+     * exceeds what the underlying stream reports as available
+     */
+    private static final int CHUNK = 8192;
+
+    private final byte[] lenBytes = new byte[Long.BYTES];
+
+    /**
+     * How many {@link #readSequence()} or {@link Asn1Object#createParser()} calls led to this parser
+     */
+    int depth;
 
     public DerParser(byte... bytes) {
         this(bytes, 0, Utils.length(bytes));
@@ -54,8 +70,7 @@ public class DerParser extends FilterInputStream {
     }
 
     /**
-     * Decode the length of the field. Can only support length encoding up to 4 octets. In BER/DER encoding, length can
-     * be encoded in 2 forms:
+     * Decode the length of the field. In BER/DER encoding, length can be encoded in 2 forms:
      * <ul>
      * <li>
      * <p>
@@ -65,7 +80,7 @@ public class DerParser extends FilterInputStream {
      *
      * <li>
      * <p>
-     * Long form - Two to 127 octets (only 4 is supported here). Bit 8 of first octet has value "1" and bits 7-1 give
+     * Long form - Two to 127 octets (up to 8 are supported here). Bit 8 of first octet has value "1" and bits 7-1 give
      * the number of additional length octets. Second and following octets give the length, base 256, most significant
      * digit first.
      * </p>
@@ -73,9 +88,23 @@ public class DerParser extends FilterInputStream {
      * </ul>
      *
      * @return The length as integer
-     * @throws IOException If invalid format found
+     * @throws IOException If invalid format found or the length does not fit an int, in
+     * which case {@link #readLongLength()} and {@link #readValue(long)} can still read it
      */
     public int readLength() throws IOException {
+        final long len = readLongLength();
+        if (len > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Invalid DER: data length too big to be held in an array: " + len);
+        }
+        return (int) len;
+    }
+
+    /**
+     * Same as {@link #readLength()} for lengths of up to 8 octets
+     *
+     * @throws io.churchkey.DecodeLimitException if the length exceeds {@link DecodeOptions#getMaximumDerLength()}
+     */
+    public long readLongLength() throws IOException {
         int i = read();
         if (i == -1) {
             throw new StreamCorruptedException("Invalid DER: length missing");
@@ -83,34 +112,89 @@ public class DerParser extends FilterInputStream {
 
         // A single byte short length
         if ((i & ~0x7F) == 0) {
+            DecodeOptions.current().checkDerLength(i);
             return i;
         }
 
+        if (i == 0x80) {
+            throw new StreamCorruptedException("Invalid DER: indefinite length, BER encoded data can be read with BerReader");
+        }
+
         int num = i & 0x7F;
-        // TODO We can't handle length longer than 4 bytes
         if ((i >= 0xFF) || (num > lenBytes.length)) {
             throw new StreamCorruptedException("Invalid DER: length field too big: " + i);
         }
 
         // place the read bytes last so that the 1st ones are zeroes as big endian
         Arrays.fill(lenBytes, (byte) 0);
-        int n = read(lenBytes, 4 - num, num);
+        int n = readFully(lenBytes, lenBytes.length - num, num);
         if (n < num) {
             throw new StreamCorruptedException("Invalid DER: length data too short: expected=" + num + ", actual=" + n);
         }
 
-        long len = Utils.getUInt(lenBytes);
+        long len = 0;
+        for (final byte b : lenBytes) {
+            len = (len << 8) | (b & 0xFF);
+        }
+
+        if (len < 0) {
+            throw new StreamCorruptedException("Invalid DER: length field too big: " + Utils.toHex(lenBytes, 0, lenBytes.length, ':'));
+        }
+
         if (len < 0x7FL) { // according to standard: "the shortest possible length encoding must be used"
             throw new StreamCorruptedException("Invalid DER: length not in shortest form: " + len);
         }
 
-        if (len > MAX_DER_VALUE_LENGTH) {
-            throw new StreamCorruptedException(
-                    "Invalid DER: data length too big: " + len + " (max=" + MAX_DER_VALUE_LENGTH + ")");
+        DecodeOptions.current().checkDerLength(len);
+        return len;
+    }
+
+    /**
+     * Reads the identifier octet of the next element
+     *
+     * @return the tag or null at the end of the stream
+     */
+    public Tag readTag() throws IOException {
+        final int tagDer = read();
+        return tagDer == -1 ? null : Tag.fromDer(tagDer);
+    }
+
+    /**
+     * Exposes the next {@code length} bytes as a stream rather than
+     * materializing them, so values of any size are read with constant
+     * memory.  Typically called right after {@link #readTag()} and
+     * {@link #readLongLength()}.
+     *
+     * The returned stream reads through this parser and must be consumed
+     * or closed before this parser is read again.  Closing it skips what
+     * was not read, it does not close this parser.
+     */
+    public InputStream readValue(final long length) {
+        return new ValueInputStream(this, length);
+    }
+
+    /**
+     * Streaming counterpart of {@link #readSequence()}.  The contents of
+     * the sequence are not buffered; the returned parser reads them from
+     * this one and the same rules as for {@link #readValue(long)} apply.
+     */
+    public DerParser readStreamedSequence() throws IOException {
+        final Tag tag = readTag();
+        if (tag == null) {
+            throw new EOFException("Invalid DER: sequence missing");
+        }
+        if (tag.getType() != Asn1Type.SEQUENCE) {
+            throw new IllegalStateException(String.format("Expected type %s, found %s", Asn1Type.SEQUENCE, tag.getType()));
         }
 
-        // we know the cast is safe since it is less than MAX_DER_VALUE_LENGTH which is ~64K
-        return (int) len;
+        final long length = readLongLength();
+
+        final int childDepth = depth + 1;
+        DecodeOptions.current().checkDerDepth(childDepth);
+
+        final DerParser parser = new DerParser(readValue(length));
+        parser.depth = childDepth;
+        return parser;
     }
 
     public DerParser readSequence() throws IOException {
@@ -128,18 +212,17 @@ public class DerParser extends FilterInputStream {
         final Tag tag = Tag.fromDer(tagDer);
 
         if (tag.getType() == Asn1Type.NULL) {
-            return new Asn1Object((byte) tagDer, 0, Utils.EMPTY_BYTE_ARRAY);
+            final Asn1Object object = new Asn1Object((byte) tagDer, 0, Utils.EMPTY_BYTE_ARRAY);
+            object.depth = depth;
+            return object;
         }
 
         int length = readLength();
-        byte[] value = new byte[length];
-        int n = read(value);
-        if (n < length) {
-            throw new StreamCorruptedException(
-                    "Invalid DER: stream too short, missing value: read " + n + " out of required " + length);
-        }
+        byte[] value = readValueBytes(length);
 
-        return new Asn1Object(tag, length, value);
+        final Asn1Object object = new Asn1Object(tag, length, value);
+        object.depth = depth;
+        return object;
     }
 
     public BigInteger readBigInteger() throws IOException {
@@ -149,13 +232,104 @@ public class DerParser extends FilterInputStream {
         }
 
         int len = readLength();
-        byte[] value = new byte[len];
-        int n = read(value);
-        if (n < len) {
-            throw new StreamCorruptedException(
-                    "Invalid DER: stream too short, missing value: read " + n + " out of required " + len);
-        }
+        byte[] value = readValueBytes(len);
 
         return new BigInteger(value);
     }
+
+    /**
+     * The declared length is only trusted up to what the stream reports as
+     * available, beyond that the array grows as bytes actually arrive.  A
+     * corrupt or hostile length can therefore not trigger a huge allocation.
+     */
+    private byte[] readValueBytes(final int length) throws IOException {
+        final int available = Math.max(available(), CHUNK);
+
+        byte[] value = new byte[Math.min(length, available)];
+        int n = 0;
+        while (n < length) {
+            if (n == value.length) {
+                value = Arrays.copyOf(value, (int) Math.min(length, 2L * value.length));
+            }
+
+            final int read = read(value, n, value.length - n);
+            if (read < 0) {
+                throw new StreamCorruptedException(
+                        "Invalid DER: stream too short, missing value: read " + n + " out of required " + length);
+            }
+            n += read;
+        }
+
+        return value;
+    }
+
+    private int readFully(final byte[] bytes, final int offset, final int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            final int read = read(bytes, offset + n, length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        return n;
+    }
+
+    /**
+     * A view of the next bytes of a stream that ends after a fixed length
+     */
+    private static class ValueInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        ValueInputStream(final InputStream in, final long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Invalid DER: stream too short, missing " + remaining + " value bytes");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return -1;
+
+            final int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("Invalid DER: stream too short, missing " + remaining + " value bytes");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (remaining > 0) {
+                if (skip(remaining) <= 0 && read() < 0) {
+                    return;
+                }
+            }
+        }
+    }
 }
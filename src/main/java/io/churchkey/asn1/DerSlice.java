@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.DecodeOptions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only cursor over one DER element of a source byte array or
+ * {@link ByteBuffer}.
+ *
+ * Unlike {@link DerParser} nothing is copied while walking the structure.
+ * A slice only records where its header and value sit in the source, and
+ * children are parsed lazily from the value range when {@link #first()},
+ * {@link #next()}, {@link #child(int)} or {@link #get(int...)} is called.
+ * Bytes are only copied when a value is materialized, for example by
+ * {@link #toInteger()} or {@link #toBytes()}.
+ *
+ * <pre>
+ * final DerSlice privateKey = DerSlice.of(bytes).get(2, 0);
+ * final BigInteger modulus = privateKey.child(1).asInteger();
+ * </pre>
+ *
+ * Each level descended is checked against {@link DecodeOptions#getMaximumDerDepth()}
+ * and every declared length against {@link DecodeOptions#getMaximumDerLength()}.
+ * As values are never buffered, a slice over a large or memory mapped
+ * {@link ByteBuffer} reads multi-megabyte structures with flat memory use.
+ */
+public final class DerSlice {
+
+    private static final Asn1Type[] TYPES = Asn1Type.values();
+    private static final Asn1Class[] CLASSES = Asn1Class.values();
+
+    private final byte[] array;
+    private final ByteBuffer buffer;
+
+    private final int tag;
+    private final int offset;
+    private final int valueOffset;
+    private final int length;
+
+    /**
+     * End of the region this element and its following siblings live in
+     */
+    private final int limit;
+    private final int depth;
+
+    private DerSlice(final byte[] array, final ByteBuffer buffer, final int offset, final int limit, final int depth) throws IOException {
+        this.array = array;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.limit = limit;
+        this.depth = depth;
+
+        if (offset >= limit) {
+            throw new EOFException("Invalid DER: tag missing");
+        }
+
+        this.tag = get(offset) & 0xFF;
+
+        int position = offset + 1;
+        if (position >= limit) {
+            throw new StreamCorruptedException("Invalid DER: length missing");
+        }
+
+        final int first = get(position++) & 0xFF;
+        final long len;
+        if ((first & ~0x7F) == 0) {
+            len = first;
+        } else {
+            final int num = first & 0x7F;
+            if (first == 0xFF || num == 0 || num > Long.BYTES) {
+                throw new StreamCorruptedException("Invalid DER: length field too big: " + first);
+            }
+            if (position + num > limit) {
+                throw new StreamCorruptedException("Invalid DER: length data too short: expected=" + num + ", actual=" + (limit - position));
+            }
+
+            long value = 0;
+            for (int i = 0; i < num; i++) {
+                value = (value << 8) | (get(position++) & 0xFF);
+            }
+
+            if (value < 0) {
+                throw new StreamCorruptedException("Invalid DER: length field too big: " + num + " octets");
+            }
+
+            if (value < 0x7FL) { // according to standard: "the shortest possible length encoding must be used"
+                throw new StreamCorruptedException("Invalid DER: length not in shortest form: " + value);
+            }
+
+            len = value;
+        }
+
+        DecodeOptions.current().checkDerLength(len);
+
+        if (len > limit - position) {
+            throw new StreamCorruptedException(
+                    "Invalid DER: stream too short, missing value: read " + (limit - position) + " out of required " + len);
+        }
+
+        this.length = (int) len;
+        this.valueOffset = position;
+    }
+
+    /**
+     * @param bytes DER encoded data, not copied
+     * @return the first element of the data
+     */
+    public static DerSlice of(final byte[] bytes) throws IOException {
+        return of(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes DER encoded data, not copied
+     * @param offset where the first element starts
+     * @param length the number of bytes the element and its siblings may span
+     * @return the first element of the range
+     */
+    public static DerSlice of(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + bytes.length);
+        }
+        return new DerSlice(bytes, null, offset, offset + length, 0);
+    }
+
+    /**
+     * The remaining bytes of the buffer are read using absolute reads, the
+     * buffer's position and limit are left untouched.  Any later change to
+     * the buffer contents is visible through the returned slice.
+     *
+     * @param buffer DER encoded data, not copied
+     * @return the first element of the remaining bytes
+     */
+    public static DerSlice of(final ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            return new DerSlice(buffer.array(), null, buffer.arrayOffset() + buffer.position(), buffer.arrayOffset() + buffer.limit(), 0);
+        }
+        return new DerSlice(null, buffer, buffer.position(), buffer.limit(), 0);
+    }
+
+    /**
+     * @return the first element contained in the value of this one or null if the value is empty
+     */
+    public DerSlice first() throws IOException {
+        if (length == 0) return null;
+
+        final int childDepth = depth + 1;
+        DecodeOptions.current().checkDerDepth(childDepth);
+
+        return new DerSlice(array, buffer, valueOffset, valueOffset + length, childDepth);
+    }
+
+    /**
+     * @return the element following this one at the same level or null if this is the last one
+     */
+    public DerSlice next() throws IOException {
+        final int end = getEnd();
+        if (end >= limit) return null;
+
+        return new DerSlice(array, buffer, end, limit, depth);
+    }
+
+    /**
+     * @param index zero based position among the elements contained in this one
+     * @return the child or null if there are not that many
+     */
+    public DerSlice child(final int index) throws IOException {
+        DerSlice child = first();
+        for (int i = 0; i < index && child != null; i++) {
+            child = child.next();
+        }
+        return child;
+    }
+
+    /**
+     * Navigates down the structure, each index selecting a child of the
+     * previously selected element.  {@code get(2, 0)} is the first child
+     * of the third child of this element.
+     *
+     * @throws StreamCorruptedException if an element along the path does not exist
+     */
+    public DerSlice get(final int... path) throws IOException {
+        DerSlice slice = this;
+        for (int i = 0; i < path.length; i++) {
+            slice = slice.child(path[i]);
+            if (slice == null) {
+                throw new StreamCorruptedException("Invalid DER: no element at " + Arrays.toString(Arrays.copyOf(path, i + 1)));
+            }
+        }
+        return slice;
+    }
+
+    /**
+     * @return all the elements contained in this one
+     */
+    public List<DerSlice> children() throws IOException {
+        final List<DerSlice> children = new ArrayList<>();
+        for (DerSlice child = first(); child != null; child = child.next()) {
+            children.add(child);
+        }
+        return children;
+    }
+
+    /**
+     * Walks this element and everything it contains, reporting each to the
+     * visitor.  Contents of constructed elements are only parsed if
+     * {@link Asn1Visitor#startConstructed(int, DerSlice)} asks for them.
+     *
+     * The walk keeps the open elements on a heap allocated stack rather
+     * than recursing, so no depth of nesting overflows the thread stack.
+     */
+    public void accept(final Asn1Visitor visitor) throws IOException {
+        final ArrayDeque<DerSlice> open = new ArrayDeque<>();
+        DerSlice slice = this;
+
+        while (true) {
+            if (!slice.isConstructed()) {
+                visitor.primitive(slice.tag, slice);
+            } else if (visitor.startConstructed(slice.tag, slice)) {
+                final DerSlice first = slice.first();
+                if (first != null) {
+                    open.push(slice);
+                    slice = first;
+                    continue;
+                }
+                visitor.endConstructed(slice.tag, slice);
+            }
+
+            // Move on to the next sibling, closing every element whose contents are done
+            while (true) {
+                if (open.isEmpty()) return;
+
+                final DerSlice next = slice.next();
+                if (next != null) {
+                    slice = next;
+                    break;
+                }
+
+                slice = open.pop();
+                visitor.endConstructed(slice.tag, slice);
+            }
+        }
+    }
+
+    public int getTag() {
+        return tag;
+    }
+
+    public Asn1Class getAsn1Class() {
+        return CLASSES[(tag & 0b11000000) >> 6];
+    }
+
+    public Asn1Type getType() {
+        final int type = tag & 0b00011111;
+        return type < TYPES.length ? TYPES[type] : null;
+    }
+
+    public boolean isConstructed() {
+        return (tag & 0b00100000) != 0;
+    }
+
+    public boolean isType(final Asn1Type type) {
+        return getType() == type;
+    }
+
+    public DerSlice assertType(final Asn1Type type) {
+        if (!isType(type)) {
+            throw new IllegalStateException(String.format("Expected type %s, found %s", type, getType()));
+        }
+        return this;
+    }
+
+    /**
+     * @return the position of the tag in the source
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the position of the first value byte in the source
+     */
+    public int getValueOffset() {
+        return valueOffset;
+    }
+
+    /**
+     * @return the number of value bytes, excluding the tag and length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the position just past the last value byte in the source
+     */
+    public int getEnd() {
+        return valueOffset + length;
+    }
+
+    /**
+     * @return the number of bytes of the complete element, including the tag and length
+     */
+    public int getEncodedLength() {
+        return getEnd() - offset;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public byte getByte(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return get(valueOffset + index);
+    }
+
+    /**
+     * @return a copy of the value bytes
+     */
+    public byte[] toBytes() {
+        return copy(valueOffset, length);
+    }
+
+    /**
+     * @return a copy of the value bytes with any leading zero bytes
+     * removed, the same result as {@code Bytes.trim(toBytes())}
+     */
+    public byte[] toTrimmedBytes() {
+        int from = valueOffset;
+        final int end = getEnd();
+        while (from < end && get(from) == 0) {
+            from++;
+        }
+        return copy(from, end - from);
+    }
+
+    /**
+     * @return a copy of the complete element, including the tag and length
+     */
+    public byte[] toEncoded() {
+        return copy(offset, getEncodedLength());
+    }
+
+    /**
+     * @return a read-only view of the value bytes, nothing is copied
+     */
+    public ByteBuffer toByteBuffer() {
+        final ByteBuffer view = array != null ? ByteBuffer.wrap(array) : buffer.duplicate();
+        view.limit(getEnd());
+        view.position(valueOffset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return true if this is an OBJECT IDENTIFIER with the given value
+     */
+    public boolean isOid(final Oid oid) {
+        return isType(Asn1Type.OBJECT_IDENTIFIER) && valueEquals(oid.encoded());
+    }
+
+    /**
+     * Hash of the value bytes as computed by {@link OidRegistry}
+     */
+    int hashValue() {
+        int hash = 1;
+        for (int i = valueOffset; i < getEnd(); i++) {
+            hash = 31 * hash + get(i);
+        }
+        return OidRegistry.spread(hash);
+    }
+
+    boolean valueEquals(final byte[] expected) {
+        if (expected.length != length) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (expected[i] != get(valueOffset + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The number of significant bits of the value read as an unsigned
+     * big-endian number, without creating a {@link BigInteger}.  For an
+     * RSA modulus or DSA prime this is the key size.
+     */
+    public int getUnsignedBitLength() {
+        int from = valueOffset;
+        final int end = getEnd();
+        while (from < end && get(from) == 0) {
+            from++;
+        }
+
+        if (from == end) return 0;
+
+        return (end - from - 1) * 8 + (32 - Integer.numberOfLeadingZeros(get(from) & 0xFF));
+    }
+
+    /**
+     * Get the value as {@link BigInteger}
+     *
+     * @throws IOException if type not an {@link Asn1Type#INTEGER}
+     */
+    public BigInteger asInteger() throws IOException {
+        if (!isType(Asn1Type.INTEGER)) {
+            throw new IOException("Invalid DER: object is not integer: " + getType());
+        }
+        return toInteger();
+    }
+
+    /**
+     * Does not check if this is an integer.  Like {@link Asn1Object#toInteger()}
+     * an OCTET STRING is read as an unsigned value.
+     */
+    public BigInteger toInteger() {
+        if (isType(Asn1Type.OCTET_STRING)) {
+            return new BigInteger(1, toBytes());
+        }
+        return new BigInteger(toBytes());
+    }
+
+    public Oid asOID() throws IOException {
+        if (!isType(Asn1Type.OBJECT_IDENTIFIER)) {
+            throw new StreamCorruptedException("Invalid DER: object is not an OID: " + getType());
+        }
+        return toOID();
+    }
+
+    // Does not check that type is OID
+    public Oid toOID() throws IOException {
+        return Oid.decode(toBytes());
+    }
+
+    private byte get(final int index) {
+        return array != null ? array[index] : buffer.get(index);
+    }
+
+    private byte[] copy(final int from, final int count) {
+        final byte[] bytes = new byte[count];
+        if (array != null) {
+            System.arraycopy(array, from, bytes, 0, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        final byte[] value = toBytes();
+        return getAsn1Class()
+                + "/" + getType()
+                + "/" + isConstructed()
+                + "[" + length + "]"
+                + ": " + Utils.toHex(value, 0, value.length, ':');
+    }
+}
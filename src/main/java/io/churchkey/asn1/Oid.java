@@ -16,18 +16,14 @@
 package io.churchkey.asn1;
 
 import org.tomitribe.util.Hex;
-import org.tomitribe.util.Join;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.StreamCorruptedException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.RandomAccess;
 
 /**
  * OIDs are encoded using Variable-Length Quantity.
@@ -36,82 +32,122 @@ import java.util.stream.Stream;
  *
  * https://en.wikipedia.org/wiki/Variable-length_quantity
  * https://docs.microsoft.com/en-us/windows/win32/seccertenroll/about-object-identifier?redirectedfrom=MSDN
+ *
+ * Components are held in an int[] and both the DER encoding and the hash
+ * are computed once, so comparing, hashing and encoding an Oid does not
+ * allocate.  See {@link OidRegistry} to match encoded OIDs without
+ * creating an Oid at all.
  */
 public class Oid {
 
-    final List<Integer> oid = new ArrayList<>();
+    private final int[] oid;
+
+    /**
+     * The DER encoded value, computed on first use unless parsed from bytes
+     */
+    private volatile byte[] encoded;
+
+    private final int hash;
 
     public Oid(final int... oid) {
-        for (final int i : oid) {
-            this.oid.add(i);
-        }
+        this(oid.clone(), null);
     }
 
     public Oid(final List<Integer> oid) {
-        this.oid.addAll(oid);
+        this(toArray(oid), null);
+    }
+
+    private Oid(final int[] oid, final byte[] encoded) {
+        this.oid = oid;
+        this.encoded = encoded;
+        this.hash = Arrays.hashCode(oid);
     }
 
     public int length() {
-        return oid.size();
+        return oid.length;
     }
 
     public int get(int index) {
-        return oid.get(index);
+        return oid[index];
     }
 
     public List<Integer> getComponents() {
-        return Collections.unmodifiableList(oid);
+        return new Components();
     }
 
     @Override
     public String toString() {
-        return Join.join(".", oid);
+        final StringBuilder sb = new StringBuilder(oid.length * 4);
+        for (int i = 0; i < oid.length; i++) {
+            if (i > 0) sb.append('.');
+            sb.append(oid[i]);
+        }
+        return sb.toString();
     }
 
     public String toHex() {
-        return Hex.toString(toBytes());
+        return Hex.toString(encoded());
     }
 
     public byte[] toBytes() {
+        return encoded().clone();
+    }
 
-        final Iterator<Integer> values = oid.iterator();
-        final Integer one = values.next();
-        final Integer two = values.next();
+    /**
+     * The cached encoding, must not be modified
+     */
+    byte[] encoded() {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = encode(oid);
+            encoded = bytes;
+        }
+        return bytes;
+    }
 
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private static byte[] encode(final int[] oid) {
+        if (oid.length < 2) {
+            throw new IllegalStateException("An OID needs at least two components: " + Arrays.toString(oid));
+        }
 
-        int val1 = one * 40 + two;
-        out.write(val1);
+        int size = 1;
+        for (int i = 2; i < oid.length; i++) {
+            size += octets(oid[i]);
+        }
 
-        while (values.hasNext()) {
-            int elem = values.next();
+        final byte[] bytes = new byte[size];
+        bytes[0] = (byte) (oid[0] * 40 + oid[1]);
 
-            if (elem <= 0b1111111) {
-                out.write(elem);
-            } else {
-                final byte[] bytes = new byte[5];
-                int pos = bytes.length - 1;
+        int pos = 1;
+        for (int i = 2; i < oid.length; i++) {
+            int elem = oid[i];
+            final int octets = octets(elem);
 
-                bytes[pos--] = (byte) (elem & 0b1111111);
-                elem = elem >> 7;
-                while (elem > 0) {
-                    bytes[pos--] = (byte) (elem | 0b10000000);
-                    elem = elem >> 7;
-                }
-                pos++;
-                final int length = bytes.length - pos;
-                out.write(bytes, pos, length);
+            // 7 bits per octet, every octet but the last has the high bit set
+            for (int j = pos + octets - 1; j >= pos; j--) {
+                bytes[j] = (byte) ((elem & 0b1111111) | (j == pos + octets - 1 ? 0 : 0b10000000));
+                elem = elem >>> 7;
             }
+            pos += octets;
         }
-        return out.toByteArray();
+        return bytes;
+    }
+
+    private static int octets(final int value) {
+        int octets = 1;
+        for (int v = value >>> 7; v > 0; v = v >>> 7) {
+            octets++;
+        }
+        return octets;
     }
 
     public static Oid fromString(final String dottedIntegers) {
         final String[] strings = dottedIntegers.split("\\.");
-        final List<Integer> integers = Stream.of(strings)
-                .map(Integer::valueOf)
-                .collect(Collectors.toList());
-        return new Oid(integers);
+        final int[] integers = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            integers[i] = Integer.parseInt(strings[i]);
+        }
+        return new Oid(integers, null);
     }
 
     public static Oid fromHex(final String hex) throws IOException {
@@ -124,6 +160,14 @@ public class Oid {
     }
 
     public static Oid fromBytes(final byte[] bytes) throws IOException {
+        return decode(bytes.clone());
+    }
+
+    /**
+     * Same as {@link #fromBytes(byte[])} but the array is kept as the
+     * cached encoding rather than copied, so it must not be modified later
+     */
+    static Oid decode(final byte[] bytes) throws IOException {
         final int length = bytes.length;
         if (length <= 0) {
             throw new EOFException("Not enough data for an OID");
@@ -141,7 +185,16 @@ public class Oid {
          */
         final int shortForm = 0b01111111;
 
-        final List<Integer> oid = new ArrayList<>(length + 1);
+        /*
+         * Each component ends with an octet that is in short form, so
+         * counting those gives the exact number of components
+         */
+        int count = 2;
+        for (int position = 1; position < length; position++) {
+            if ((bytes[position] & toPositiveNumber) <= shortForm) count++;
+        }
+
+        final int[] oid = new int[count];
 
         /*
          * The first value is treated specially.  The first
@@ -150,8 +203,9 @@ public class Oid {
          * are limits on how big these two numbers can be.
          */
         final int firstValue = bytes[0] & toPositiveNumber;
-        oid.add(Integer.valueOf(firstValue / 40));
-        oid.add(Integer.valueOf(firstValue % 40));
+        oid[0] = firstValue / 40;
+        oid[1] = firstValue % 40;
+        int index = 2;
 
         /*
          * Now read each subsequent OID value from the remaining bytes
@@ -164,7 +218,7 @@ public class Oid {
              * use it as-is.
              */
             if (b <= shortForm) { // short form
-                oid.add(Integer.valueOf(b));
+                oid[index++] = b;
                 continue;
             }
 
@@ -205,10 +259,18 @@ public class Oid {
                 }
             }
 
-            oid.add(Integer.valueOf((int) (value & 0x7FFFFFFFL)));
+            oid[index++] = (int) (value & 0x7FFFFFFFL);
         }
 
-        return new Oid(oid);
+        return new Oid(oid, bytes);
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
     }
 
     @Override
@@ -218,13 +280,23 @@ public class Oid {
 
         final Oid oid1 = (Oid) o;
 
-        if (!oid.equals(oid1.oid)) return false;
-
-        return true;
+        return hash == oid1.hash && Arrays.equals(oid, oid1.oid);
     }
 
     @Override
     public int hashCode() {
-        return oid.hashCode();
+        return hash;
+    }
+
+    private class Components extends AbstractList<Integer> implements RandomAccess {
+        @Override
+        public Integer get(final int index) {
+            return oid[index];
+        }
+
+        @Override
+        public int size() {
+            return oid.length;
+        }
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import java.util.Map;
+
+/**
+ * An immutable lookup table keyed by the DER encoding of OIDs.
+ *
+ * Lookups hash and compare the encoded bytes directly, so an OBJECT
+ * IDENTIFIER can be matched straight from a {@link DerSlice} or a byte
+ * range without decoding it into an {@link Oid} first.  Every lookup is
+ * a single probe of an open addressed table and allocates nothing.
+ *
+ * <pre>
+ * final Key.Algorithm algorithm = keyTypes.get(slice);
+ * </pre>
+ */
+public final class OidRegistry<T> {
+
+    private final byte[][] keys;
+    private final Object[] values;
+    private final int mask;
+
+    public OidRegistry(final Map<Oid, T> entries) {
+        int capacity = 4;
+        while (capacity < entries.size() * 2) {
+            capacity <<= 1;
+        }
+
+        this.keys = new byte[capacity][];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        for (final Map.Entry<Oid, T> entry : entries.entrySet()) {
+            final byte[] key = entry.getKey().encoded();
+
+            int index = hash(key, 0, key.length) & mask;
+            while (keys[index] != null && !equals(keys[index], key, 0, key.length)) {
+                index = (index + 1) & mask;
+            }
+
+            keys[index] = key;
+            values[index] = entry.getValue();
+        }
+    }
+
+    public T get(final Oid oid) {
+        if (oid == null) return null;
+        final byte[] encoded = oid.encoded();
+        return get(encoded, 0, encoded.length);
+    }
+
+    /**
+     * @param bytes the encoded OID value, without tag and length
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final byte[] bytes, final int offset, final int length) {
+        int index = hash(bytes, offset, length) & mask;
+        for (byte[] key = keys[index]; key != null; key = keys[index]) {
+            if (equals(key, bytes, offset, length)) {
+                return (T) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return the entry for the OID or null if the slice is not an OBJECT IDENTIFIER or not registered
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final DerSlice slice) {
+        if (slice == null || !slice.isType(Asn1Type.OBJECT_IDENTIFIER)) return null;
+
+        int index = slice.hashValue() & mask;
+        for (byte[] key = keys[index]; key != null; key = keys[index]) {
+            if (slice.valueEquals(key)) {
+                return (T) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    static int hash(final byte[] bytes, final int offset, final int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return spread(hash);
+    }
+
+    /**
+     * Mixes the high bits down as only the low bits select a slot
+     */
+    static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(final byte[] key, final byte[] bytes, final int offset, final int length) {
+        if (key.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (key[i] != bytes[offset + i]) return false;
+        }
+        return true;
+    }
+}
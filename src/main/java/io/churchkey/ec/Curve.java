@@ -15,7 +15,9 @@
  */
 package io.churchkey.ec;
 
+import io.churchkey.asn1.DerSlice;
 import io.churchkey.asn1.Oid;
+import io.churchkey.asn1.OidRegistry;
 import org.tomitribe.util.Hex;
 
 import java.lang.annotation.ElementType;
@@ -871,16 +873,21 @@ public enum Curve {
             1), oid(1, 2, 643, 7, 1, 2, 1, 2, 2)),
     ;
 
-    private static final Map<Oid, Curve> oids = new HashMap<>();
+    private static final OidRegistry<Curve> oids;
+    private static final Map<String, Curve> names = new HashMap<>();
 
     static {
+        final Map<Oid, Curve> byOid = new HashMap<>();
         for (final Curve curve : Curve.values()) {
+            names.put(curve.name(), curve);
+
             if (curve.oid == null || curve.oid.length() == 0) {
                 // Not all curves have an OID
                 continue;
             }
-            oids.putIfAbsent(curve.oid, curve);
+            byOid.putIfAbsent(curve.oid, curve);
         }
+        oids = new OidRegistry<>(byOid);
     }
 
 
@@ -969,27 +976,47 @@ public enum Curve {
         return oids.get(oid);
     }
 
+    /**
+     * Same as {@link #resolve(Oid)} matching the encoded OBJECT IDENTIFIER
+     * directly, without decoding it into an {@link Oid}
+     *
+     * @return the curve or null if the slice is not a known curve OID
+     */
+    public static Curve resolve(final DerSlice oid) {
+        return oids.get(oid);
+    }
+
     public static Curve resolve(final String curveName) {
-        final String enumName = getEnumName(curveName);
+        final Curve curve = find(curveName);
+        if (curve == null) throw new UnsupportedCurveException(curveName);
+        return curve;
+    }
 
-        try {
-            return Curve.valueOf(enumName);
-        } catch (IllegalArgumentException ignored) {
-        }
+    /**
+     * Same lookup as {@link #resolve(String)} but returns null rather than
+     * throwing when the name is unknown.  Names are looked up in a map built
+     * once, so an unknown name costs a few hash lookups and no exceptions.
+     *
+     * @param curveName a curve name such as "secp256r1", "nistp256" or "P-256"
+     * @return the curve or null if the name is not known
+     */
+    public static Curve find(final String curveName) {
+        if (curveName == null) return null;
 
-        if (curveName.startsWith("ansiX9")) {
-            try {
-                return Curve.valueOf(enumName.replace("ansiX9", "sec"));
-            } catch (IllegalArgumentException ignored) {
-            }
-        }
+        final Curve exact = names.get(curveName);
+        if (exact != null) return exact;
+
+        final String enumName = getEnumName(curveName);
+
+        final Curve curve = names.get(enumName);
+        if (curve != null) return curve;
 
-        try {
-            return Curve.valueOf("nist" + enumName);
-        } catch (IllegalArgumentException ignored) {
+        if (enumName.startsWith("ansix9")) {
+            final Curve sec = names.get("sec" + enumName.substring("ansix9".length()));
+            if (sec != null) return sec;
         }
 
-        throw new UnsupportedCurveException(curveName);
+        return names.get("nist" + enumName);
     }
 
     private static ECParameterSpec prime(final String fp, final String a, final String b, final String x, final String y, final String n, final int h) {
@@ -16,25 +16,32 @@
  */
 package io.churchkey.jwk;
 
+import com.grack.nanojson.JsonAppendableWriter;
 import com.grack.nanojson.JsonArray;
 import com.grack.nanojson.JsonBuilder;
 import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonWriter;
+import com.grack.nanojson.JsonWriterException;
+import io.churchkey.DecodeOptions;
 import io.churchkey.Key;
+import io.churchkey.KeyFactories;
+import io.churchkey.LazyKey;
 import io.churchkey.dsa.Dsa;
 import io.churchkey.ec.Curve;
 import io.churchkey.ec.ECParameterSpecs;
 import io.churchkey.ec.Ecdsa;
 import io.churchkey.ec.UnsupportedCurveException;
+import io.churchkey.util.ByteBufferInputStream;
 import io.churchkey.util.Bytes;
 import io.churchkey.util.Utils;
-import org.tomitribe.util.IO;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
-import java.security.KeyFactory;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -60,48 +67,146 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 public class JwkParser implements Key.Format.Parser {
 
+    private static final byte[] BRACE = "{".getBytes(US_ASCII);
+    private static final byte[] E = "e".getBytes(US_ASCII);
+    private static final byte[] ECDSA = "ecdsa".getBytes(US_ASCII);
+
+    private static final String[] RSA_PRIVATE = {"kty", "n", "e", "d", "p", "q", "dp", "dq", "qi"};
+    private static final String[] RSA_PUBLIC = {"kty", "n", "e"};
+    private static final String[] DSA = {"kty", "p", "q", "q", "x", "y"};
+    private static final String[] EC_PRIVATE = {"kty", "crv", "d"};
+    private static final String[] EC_PUBLIC = {"kty", "crv", "x", "y"};
+    private static final String[] OCT = {"kty", "k"};
+
     @Override
     public List<Key> decodeSet(final byte[] bytes) {
-        byte[] decoded = normalize(bytes);
-        if (!Utils.startsWith("{", decoded)) return null;
+        return decodeSet(ByteBuffer.wrap(bytes));
+    }
 
-        final String rawJson = new String(decoded);
+    @Override
+    public List<Key> decodeSet(final ByteBuffer buffer) {
+        final ByteBuffer decoded = normalize(buffer);
+        if (!Utils.startsWith(decoded, BRACE)) return null;
 
         final JsonObject jsonObject;
         try {
-            jsonObject = JsonParser.object().from(IO.read(decoded));
+            jsonObject = JsonParser.object().from(new ByteBufferInputStream(decoded));
         } catch (Exception e) {
-            throw new InvalidJwkException(e, rawJson);
+            throw new InvalidJwkException(e, UTF_8.decode(decoded.duplicate()).toString());
         }
 
-        return getJwks(jsonObject).stream()
+        final List<JsonObject> jwks = getJwks(jsonObject);
+        DecodeOptions.current().checkKeys(jwks.size());
+
+        return jwks.stream()
                 .map(this::asKey)
                 .collect(Collectors.toList());
     }
 
     public Key decode(final byte[] bytes) {
-        byte[] decoded = normalize(bytes);
-        if (!Utils.startsWith("{", decoded)) return null;
-
-        final String rawJson = new String(decoded);
-
-        final HashMap<String, Object> config = new HashMap<>();
-        config.put("org.apache.johnzon.buffer-strategy", "BY_INSTANCE");
+        return decode(ByteBuffer.wrap(bytes));
+    }
 
+    /**
+     * Parses the JSON straight from the buffer.  The raw JSON is only
+     * turned into a String if it is invalid and needs to be reported.
+     */
+    @Override
+    public Key decode(final ByteBuffer buffer) {
+        final ByteBuffer decoded = normalize(buffer);
+        if (!Utils.startsWith(decoded, BRACE)) return null;
 
         final JsonObject jwk;
         try {
-            final JsonObject jsonObject = JsonParser.object().from(IO.read(decoded));
+            final JsonObject jsonObject = JsonParser.object().from(new ByteBufferInputStream(decoded));
             jwk = getJwk(jsonObject);
         } catch (Exception e) {
-            throw new InvalidJwkException(e, rawJson);
+            throw new InvalidJwkException(e, UTF_8.decode(decoded.duplicate()).toString());
         }
 
         return asKey(jwk);
     }
 
+    /**
+     * Reads only the metadata of each key in the set.  Every key keeps its own
+     * JSON and is built from it the first time the {@link java.security.Key} is used.
+     */
+    @Override
+    public List<Key> decodeLazySet(final byte[] bytes) {
+        final ByteBuffer decoded = normalize(ByteBuffer.wrap(bytes));
+        if (!Utils.startsWith(decoded, BRACE)) return null;
+
+        final JsonObject jsonObject;
+        try {
+            jsonObject = JsonParser.object().from(new ByteBufferInputStream(decoded));
+        } catch (Exception e) {
+            throw new InvalidJwkException(e, UTF_8.decode(decoded.duplicate()).toString());
+        }
+
+        final List<JsonObject> jwks = getJwks(jsonObject);
+        DecodeOptions.current().checkKeys(jwks.size());
+
+        return jwks.stream()
+                .map(this::asLazyKey)
+                .collect(Collectors.toList());
+    }
+
+    private Key asLazyKey(final JsonObject jsonObject) {
+        if (!jsonObject.containsKey("kty")) {
+            throw new MissingKtyException();
+        }
+
+        final Jwk jwk = new Jwk(jsonObject);
+        final String kty = jwk.getString("kty");
+        final byte[] json = JsonWriter.string(jsonObject).getBytes(UTF_8);
+
+        if ("RSA".equalsIgnoreCase(kty)) {
+            final boolean isPrivate = jsonObject.containsKey("d");
+            final int size = bitLength(jwk.getBigInteger("n"));
+            DecodeOptions.current().checkRsaBits(size);
+            return lazy(json, isPrivate ? Key.Type.PRIVATE : Key.Type.PUBLIC, Key.Algorithm.RSA, size,
+                    getAttributes(jsonObject, isPrivate ? RSA_PRIVATE : RSA_PUBLIC));
+        }
+
+        if ("OCT".equalsIgnoreCase(kty)) {
+            final byte[] k = jwk.getBytes("k");
+            return lazy(json, Key.Type.SECRET, Key.Algorithm.OCT, k != null ? k.length * 8 : -1, getAttributes(jsonObject, OCT));
+        }
+
+        if ("DSA".equals(kty)) {
+            final Key.Type type = jsonObject.containsKey("x") ? Key.Type.PRIVATE : Key.Type.PUBLIC;
+            final int size = bitLength(jwk.getBigInteger("p"));
+            DecodeOptions.current().checkDsaBits(size);
+            return lazy(json, type, Key.Algorithm.DSA, size, getAttributes(jsonObject, DSA));
+        }
+
+        if ("EC".equals(kty)) {
+            final String crv = jwk.getString("crv");
+            if (crv == null) throw new InvalidJwkKeySpecException("EC", "crv");
+
+            final int size = Curve.resolve(crv).getParameterSpec().getCurve().getField().getFieldSize();
+            final boolean isPrivate = jsonObject.containsKey("d");
+            return lazy(json, isPrivate ? Key.Type.PRIVATE : Key.Type.PUBLIC, Key.Algorithm.EC, size,
+                    getAttributes(jsonObject, isPrivate ? EC_PRIVATE : EC_PUBLIC));
+        }
+
+        throw new UnsupportedKtyAlgorithmException(kty);
+    }
+
+    private static int bitLength(final BigInteger value) {
+        return value != null ? value.bitLength() : -1;
+    }
+
+    private Key lazy(final byte[] json, final Key.Type type, final Key.Algorithm algorithm, final int size,
+                     final Map<String, String> attributes) {
+        return new LazyKey(json, this::decode, type, algorithm, Key.Format.JWK, size, attributes);
+    }
+
     private Key asKey(final JsonObject jwk) {
         try {
 
@@ -140,6 +245,8 @@ public class JwkParser implements Key.Format.Parser {
         final Jwk jwk = new Jwk(jsonObject);
 
         final BigInteger p = jwk.getBigInteger("p");
+        if (p != null) DecodeOptions.current().checkDsaBits(p.bitLength());
+
         final BigInteger q = jwk.getBigInteger("q");
         final BigInteger g = jwk.getBigInteger("g");
         final BigInteger x = jwk.getBigInteger("x");
@@ -161,10 +268,9 @@ public class JwkParser implements Key.Format.Parser {
                     .x(x)
                     .build();
             final DSAPrivateKey privateKey = build.toKey();
-            final DSAPublicKey publicKey = build.toPublic().toKey();
 
-            final Map<String, String> attributes = getAttributes(jsonObject, "kty", "p", "q", "q", "x", "y");
-            return new Key(privateKey, publicKey, Key.Type.PRIVATE, Key.Algorithm.DSA, Key.Format.JWK, attributes);
+            final Map<String, String> attributes = getAttributes(jsonObject, DSA);
+            return new Key(privateKey, null, Key.Type.PRIVATE, Key.Algorithm.DSA, Key.Format.JWK, attributes);
         }
 
         if (y != null) {
@@ -175,7 +281,7 @@ public class JwkParser implements Key.Format.Parser {
                     .y(y)
                     .build()
                     .toKey();
-            final Map<String, String> attributes = getAttributes(jsonObject, "kty", "p", "q", "q", "x", "y");
+            final Map<String, String> attributes = getAttributes(jsonObject, DSA);
             return new Key(publicKey, Key.Type.PUBLIC, Key.Algorithm.DSA, Key.Format.JWK, attributes);
         }
 
@@ -215,7 +321,7 @@ public class JwkParser implements Key.Format.Parser {
 
             final ECPrivateKey privateKey = build.toKey();
             final ECPublicKey publicKey = build.getX() != null && build.getY() != null ? build.toPublic().toKey() : null;
-            final Map<String, String> attributes = getAttributes(jsonObject, "kty", "crv", "d");
+            final Map<String, String> attributes = getAttributes(jsonObject, EC_PRIVATE);
             return new Key(privateKey, publicKey, Key.Type.PRIVATE, Key.Algorithm.EC, Key.Format.JWK, attributes);
         }
 
@@ -231,7 +337,7 @@ public class JwkParser implements Key.Format.Parser {
                 .y(y)
                 .build()
                 .toKey();
-        final Map<String, String> attributes = getAttributes(jsonObject, "kty", "crv", "x", "y");
+        final Map<String, String> attributes = getAttributes(jsonObject, EC_PUBLIC);
         return new Key(publicKey, Key.Type.PUBLIC, Key.Algorithm.EC, Key.Format.JWK, attributes);
     }
 
@@ -239,6 +345,8 @@ public class JwkParser implements Key.Format.Parser {
         final Jwk jwk = new Jwk(jsonObject);
 
         final BigInteger modulus = jwk.getBigInteger("n");
+        if (modulus != null) DecodeOptions.current().checkRsaBits(modulus.bitLength());
+
         final BigInteger publicExp = jwk.getBigInteger("e");
         final BigInteger privateExp = jwk.getBigInteger("d");
         final BigInteger primeP = jwk.getBigInteger("p");
@@ -253,16 +361,15 @@ public class JwkParser implements Key.Format.Parser {
         checkPublicKey(rsaPublicKeySpec);
         checkPrivateKey(rsaPrivateKeySpec);
 
-        final KeyFactory result = KeyFactory.getInstance("RSA");
-        final PublicKey publicKey = result.generatePublic(rsaPublicKeySpec);
+        final PublicKey publicKey = KeyFactories.generatePublic(Key.Algorithm.RSA, rsaPublicKeySpec);
 
         if (privateExp != null) {
-            final PrivateKey privateKey = result.generatePrivate(rsaPrivateKeySpec);
-            final Map<String, String> attributes = getAttributes(jsonObject, "kty", "n", "e", "d", "p", "q", "dp", "dq", "qi");
+            final PrivateKey privateKey = KeyFactories.generatePrivate(Key.Algorithm.RSA, rsaPrivateKeySpec);
+            final Map<String, String> attributes = getAttributes(jsonObject, RSA_PRIVATE);
             return new Key(privateKey, publicKey, Key.Type.PRIVATE, Key.Algorithm.RSA, Key.Format.JWK, attributes);
         }
 
-        final Map<String, String> attributes = getAttributes(jsonObject, "kty", "n", "e");
+        final Map<String, String> attributes = getAttributes(jsonObject, RSA_PUBLIC);
         return new Key(publicKey, Key.Type.PUBLIC, Key.Algorithm.RSA, Key.Format.JWK, attributes);
     }
 
@@ -362,7 +469,7 @@ public class JwkParser implements Key.Format.Parser {
         final String jmvAlg = alg.replace("HS", "HmacSHA");
         final SecretKeySpec keySpec = new SecretKeySpec(keyBytes, jmvAlg);
 
-        final Map<String, String> attributes = getAttributes(jwkObject, "kty", "k");
+        final Map<String, String> attributes = getAttributes(jwkObject, OCT);
         return new Key(keySpec, Key.Type.SECRET, Key.Algorithm.OCT, Key.Format.JWK, attributes);
     }
 
@@ -384,6 +491,7 @@ public class JwkParser implements Key.Format.Parser {
 
     private Map<String, String> getAttributes(final JsonObject jwkObject, final Collection<String> excludes) {
         final Map<String, String> map = new HashMap<>();
+        if (!DecodeOptions.current().isAttributes()) return map;
 
         for (final Map.Entry<String, Object> entry : jwkObject.entrySet()) {
             if (excludes.contains(entry.getKey())) continue;
@@ -578,16 +686,16 @@ public class JwkParser implements Key.Format.Parser {
     /**
      * Base64 unencode the jwk key if needed
      */
-    private byte[] normalize(final byte[] bytes) {
+    private ByteBuffer normalize(final ByteBuffer buffer) {
         // Fun optimization, base64 json objects always happen to
         // start with 'e' due to always beginning with "{" in
         // unencoded form.  If it doesn't start with 'e' then it
         // isn't base64 encoded or isn't a jwk.
-        if (!Utils.startsWith("e", bytes)) return bytes;
+        if (!Utils.startsWith(buffer, E)) return buffer;
         // But don't try to convert ecdsa SSH keys
-        if (Utils.startsWith("ecdsa", bytes)) return bytes;
+        if (Utils.startsWith(buffer, ECDSA)) return buffer;
 
-        return java.util.Base64.getUrlDecoder().decode(bytes);
+        return java.util.Base64.getUrlDecoder().decode(buffer.duplicate());
     }
 
     @Override
@@ -613,12 +721,48 @@ public class JwkParser implements Key.Format.Parser {
 
     }
 
+    @Override
+    public void encodeSet(final List<Key> keys, final OutputStream out) throws IOException {
+        if (keys.size() == 0) {
+            throw new IllegalArgumentException("No keys to encode");
+        }
+
+        try {
+            if (keys.size() == 1) {
+                JsonWriter.on(out).object().value("keys", toJsonObject(keys.get(0))).end().done();
+                return;
+            }
+
+            final JsonAppendableWriter writer = JsonWriter.on(out).object().array("keys");
+            for (final Key key : keys) {
+                writer.value(toJsonObject(key));
+            }
+            writer.end().end().done();
+        } catch (JsonWriterException e) {
+            throw unwrap(e);
+        }
+    }
+
     @Override
     public byte[] encode(final Key key) {
         final JsonObject build = toJsonObject(key);
         return JsonWriter.string(build).getBytes();
     }
 
+    @Override
+    public void encode(final Key key, final OutputStream out) throws IOException {
+        try {
+            JsonWriter.on(out).value(toJsonObject(key)).done();
+        } catch (JsonWriterException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static IOException unwrap(final JsonWriterException e) {
+        if (e.getCause() instanceof IOException) return (IOException) e.getCause();
+        return new IOException(e);
+    }
+
     private JsonObject toJsonObject(final Key key) {
         final JsonBuilder<JsonObject> builder = JsonObject.builder();
         for (final Map.Entry<String, String> entry : key.getAttributes().entrySet()) {
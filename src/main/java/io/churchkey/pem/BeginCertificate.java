@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.DecodeOptions;
+import io.churchkey.Key;
+import io.churchkey.asn1.Asn1Template;
+import io.churchkey.asn1.Asn1Type;
+import io.churchkey.asn1.DerSlice;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Map;
+
+/**
+ * The public key of an X.509 {@code CERTIFICATE}.
+ *
+ * Unlike a {@link java.security.cert.CertificateFactory} nothing but the
+ * outline of the certificate is parsed: the TBSCertificate fields before
+ * the SubjectPublicKeyInfo are stepped over by their lengths and the
+ * extensions and signature after it are not looked at.  The key is then
+ * decoded in place as a {@link BeginPublicKey}.
+ *
+ * The subject, issuer, serial, validity and thumbprints of the certificate
+ * are available as key attributes.  Each is decoded from the retained
+ * certificate bytes the first time it is asked for, see {@link CertificateAttributes}.
+ * With {@link DecodeOptions#isAttributes()} off a plain public key is
+ * returned and the certificate bytes are not kept.
+ */
+public class BeginCertificate {
+
+    /**
+     *     SEQUENCE
+     *       UTCTime            not before, or GeneralizedTime
+     *       UTCTime            not after, or GeneralizedTime
+     */
+    private static final Asn1Template<Certificate> VALIDITY = Asn1Template.<Certificate>sequence()
+            .any((certificate, notBefore) -> certificate.notBefore = time(notBefore))
+            .any((certificate, notAfter) -> certificate.notAfter = time(notAfter))
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       [0]                version (optional)
+     *       INTEGER            serial number
+     *       SEQUENCE           signature algorithm
+     *       SEQUENCE           issuer
+     *       SEQUENCE           validity
+     *       SEQUENCE           subject
+     *       SEQUENCE           subject public key info
+     *       ...                unique ids and extensions, not read
+     */
+    private static final Asn1Template<Certificate> TBS_CERTIFICATE = Asn1Template.<Certificate>sequence()
+            .explicit(0, (certificate, version) -> { })
+            .element(Asn1Type.INTEGER, (certificate, serial) -> certificate.serial = serial)
+            .skip(Asn1Type.SEQUENCE)
+            .element(Asn1Type.SEQUENCE, (certificate, issuer) -> certificate.issuer = issuer)
+            .sequence(VALIDITY)
+            .element(Asn1Type.SEQUENCE, (certificate, subject) -> certificate.subject = subject)
+            .element(Asn1Type.SEQUENCE, (certificate, spki) -> certificate.subjectPublicKeyInfo = spki)
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       SEQUENCE           tbsCertificate
+     *       ...                signature algorithm and value, not read
+     */
+    private static final Asn1Template<Certificate> CERTIFICATE = Asn1Template.<Certificate>sequence()
+            .sequence(TBS_CERTIFICATE)
+            .build();
+
+    private BeginCertificate() {
+    }
+
+    public static Key decode(final byte[] bytes) {
+        final Certificate certificate;
+        try {
+            certificate = CERTIFICATE.bind(bytes, new Certificate());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid X.509 certificate", e);
+        }
+
+        final Key key = BeginPublicKey.decode(certificate.subjectPublicKeyInfo);
+        if (!DecodeOptions.current().isAttributes()) return key;
+
+        return new CertificateKey(key, new CertificateAttributes(bytes, certificate));
+    }
+
+    private static DerSlice time(final DerSlice time) throws IOException {
+        if (time.isConstructed() || !time.isType(Asn1Type.UTCTIME) && !time.isType(Asn1Type.GENERALIZEDTIME)) {
+            throw new StreamCorruptedException("Invalid X.509 certificate: validity is not a UTCTime or GeneralizedTime at offset " + time.getOffset());
+        }
+        return time;
+    }
+
+    /**
+     * Positions of the TBSCertificate fields within the certificate bytes
+     */
+    static class Certificate {
+        DerSlice serial;
+        DerSlice issuer;
+        DerSlice notBefore;
+        DerSlice notAfter;
+        DerSlice subject;
+        DerSlice subjectPublicKeyInfo;
+    }
+
+    /**
+     * Holds on to the lazily decoded attributes without copying them,
+     * which {@link Key}'s public constructors would do
+     */
+    private static class CertificateKey extends Key {
+
+        private final java.security.Key publicKey;
+
+        CertificateKey(final Key key, final Map<String, String> attributes) {
+            super(Type.PUBLIC, key.getAlgorithm(), Format.PEM, attributes);
+            this.publicKey = key.getKey();
+        }
+
+        @Override
+        public java.security.Key getKey() {
+            return publicKey;
+        }
+    }
+}
@@ -17,50 +17,44 @@
 package io.churchkey.pem;
 
 import io.churchkey.Key;
-import io.churchkey.asn1.Asn1Object;
+import io.churchkey.asn1.Asn1Template;
 import io.churchkey.asn1.Asn1Type;
-import io.churchkey.asn1.DerParser;
 import io.churchkey.dsa.Dsa;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.security.interfaces.DSAPrivateKey;
-import java.security.interfaces.DSAPublicKey;
 
 public class BeginDsaPrivateKey {
 
+    /**
+     * The OpenSSL DSA private key: version, p, q, g, y and x
+     */
+    private static final Asn1Template<Dsa.Private.Builder> DSA_PRIVATE_KEY = Asn1Template.<Dsa.Private.Builder>sequence()
+            .skip(Asn1Type.INTEGER) // version
+            .integer(Dsa.Private.Builder::p)
+            .integer(Dsa.Private.Builder::q)
+            .integer(Dsa.Private.Builder::g)
+            .integer(Dsa.Private.Builder::y)
+            .integer(Dsa.Private.Builder::x)
+            .build();
+
     private BeginDsaPrivateKey() {
     }
 
     public static Key decode(final byte[] bytes) {
         try {
-            final DerParser parser = new DerParser(bytes);
-
-            final Asn1Object sequence = parser.readObject();
-            if (sequence.getType() != Asn1Type.SEQUENCE) {
-                throw new IllegalArgumentException("Invalid DER: not a sequence");
-            }
-
-            // Parse inside the sequence
-            final DerParser parser1 = sequence.createParser();
-
-            parser1.readObject(); // Skip version
-            final Dsa.Private build = Dsa.Private.builder()
-                    .p(parser1.readObject().asInteger())
-                    .q(parser1.readObject().asInteger())
-                    .g(parser1.readObject().asInteger())
-                    .y(parser1.readObject().asInteger())
-                    .x(parser1.readObject().asInteger())
-                    .build();
-            final DSAPrivateKey privateKey = build.toKey();
-            final DSAPublicKey publicKey = build.toPublic().toKey();
-
-            return new Key(privateKey, publicKey, Key.Type.PRIVATE, Key.Algorithm.DSA, Key.Format.PEM);
+            return toKey(DSA_PRIVATE_KEY.bind(bytes, Dsa.Private.builder()).build());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    static Key toKey(final Dsa.Private build) {
+        final DSAPrivateKey privateKey = build.toKey();
+        return new Key(privateKey, null, Key.Type.PRIVATE, Key.Algorithm.DSA, Key.Format.PEM);
+    }
+
     public static byte[] encode(final Key key) {
         return null;
     }
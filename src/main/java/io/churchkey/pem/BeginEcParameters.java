@@ -16,7 +16,7 @@
 package io.churchkey.pem;
 
 import io.churchkey.asn1.Asn1Type;
-import io.churchkey.asn1.DerParser;
+import io.churchkey.asn1.DerSlice;
 import io.churchkey.util.Pem;
 import io.churchkey.asn1.Oid;
 import io.churchkey.util.Utils;
@@ -52,7 +52,7 @@ public class BeginEcParameters {
 
         final Pem pem = Pem.parse(bytes);
         final byte[] data = pem.getData();
-        final Asn1Type type = new DerParser(data).readObject().getType();
+        final Asn1Type type = DerSlice.of(data).getType();
 
         if (type == Asn1Type.SEQUENCE) {
             return EcCurveParams.parse(data);
@@ -15,14 +15,9 @@
  */
 package io.churchkey.pem;
 
+import io.churchkey.asn1.Asn1Template;
 import io.churchkey.asn1.Asn1Type;
-import io.churchkey.asn1.DerParser;
-import io.churchkey.ec.Curve;
-import io.churchkey.util.Bytes;
 import io.churchkey.Key;
-import io.churchkey.asn1.Asn1Object;
-import io.churchkey.asn1.Oid;
-import io.churchkey.ec.EcPoints;
 import io.churchkey.ec.Ecdsa;
 
 import java.io.IOException;
@@ -89,57 +84,35 @@ import static io.churchkey.Key.Algorithm.EC;
  */
 public class BeginEcPrivateKey {
 
+    /**
+     * SEC1 ECPrivateKey, also found inside the PKCS#8 OCTET STRING
+     */
+    static final Asn1Template<Ecdsa.Private.Builder> EC_PRIVATE_KEY = Asn1Template.<Ecdsa.Private.Builder>sequence()
+            .skip(Asn1Type.INTEGER) // version
+            .unsignedInteger(Ecdsa.Private.Builder::d)
+            .explicit(0, (ec, parameters) -> EcCurveParams.resolve(parameters, ec::curve, ec::spec))
+            .explicit(1, (ec, bitString) -> {
+                final ECPoint point = EcCurveParams.point(bitString);
+                ec.x(point.getAffineX());
+                ec.y(point.getAffineY());
+            })
+            .build();
+
     private BeginEcPrivateKey() {
     }
 
     public static Key decode(final byte[] bytes) {
         try {
-            final Ecdsa.Private.Builder ec = Ecdsa.Private.builder();
-            final DerParser d1 = new DerParser(bytes);
-            final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.SEQUENCE);
-            {
-                final DerParser d2 = new DerParser(d1o1.getValue());
-                final Asn1Object d2o1 = d2.readObject().assertType(Asn1Type.INTEGER);
-                final Asn1Object d2o2 = d2.readObject().assertType(Asn1Type.OCTET_STRING);
-                final Asn1Object d2o3 = d2.readObject().assertType(Asn1Type.ANY);
-                {
-                    final DerParser d3 = new DerParser(d2o3.getValue());
-                    final Asn1Object d3o1 = d3.readObject();
-
-                    if (d3o1.isType(Asn1Type.OBJECT_IDENTIFIER)) {
-
-                        final Oid oid = d3o1.asOID();
-                        final Curve curve = Curve.resolve(oid);
-                        ec.curve(curve);
-
-                    } else if (d3o1.isType(Asn1Type.SEQUENCE)) {
-
-                        ec.spec(EcCurveParams.parseSequence(d3o1));
-
-                    }
-
-                    ec.d(d2o2.toInteger());
-
-                }
-
-                final Asn1Object d2o4 = d2.readObject();
-                if (d2o4 != null && d2o4.isType(Asn1Type.BOOLEAN)) {
-                    final DerParser d3 = new DerParser(d2o4.getValue());
-                    final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.BIT_STRING);
-                    final byte[] value = Bytes.trim(d3o1.getValue());
-                    final ECPoint ecPoint = EcPoints.fromBytes(value);
-                    ec.x(ecPoint.getAffineX());
-                    ec.y(ecPoint.getAffineY());
-                }
-
-                final Ecdsa.Private build = ec.build();
-                final ECPrivateKey privateKey = build.toKey();
-                final ECPublicKey publicKey = build.getX() != null && build.getY() != null ? build.toPublic().toKey() : null;
-
-                return new Key(privateKey, publicKey, Key.Type.PRIVATE, EC, Key.Format.PEM);
-            }
+            return toKey(EC_PRIVATE_KEY.bind(bytes, Ecdsa.Private.builder()).build());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
+
+    static Key toKey(final Ecdsa.Private build) {
+        final ECPrivateKey privateKey = build.toKey();
+        final ECPublicKey publicKey = build.getX() != null && build.getY() != null ? build.toPublic().toKey() : null;
+
+        return new Key(privateKey, publicKey, Key.Type.PRIVATE, EC, Key.Format.PEM);
+    }
 }
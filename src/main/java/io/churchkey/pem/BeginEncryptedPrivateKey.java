@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.DecodeOptions;
+import io.churchkey.InvalidPasswordException;
+import io.churchkey.Key;
+import io.churchkey.asn1.Asn1Template;
+import io.churchkey.asn1.Asn1Type;
+import io.churchkey.asn1.DerSlice;
+import io.churchkey.asn1.Oid;
+import io.churchkey.asn1.OidRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.churchkey.asn1.Oid.oid;
+
+/**
+ * PKCS#8 EncryptedPrivateKeyInfo, the {@code ENCRYPTED PRIVATE KEY} PEM
+ * type written by {@code openssl pkcs8 -topk8}.  Keys encrypted with PBES2
+ * are supported, the key encryption key being derived with PBKDF2 or scrypt.
+ * The decrypted PrivateKeyInfo is handed to {@link BeginPrivateKey}.
+ */
+public class BeginEncryptedPrivateKey {
+
+    private static final Oid pbes2 = oid(1, 2, 840, 113549, 1, 5, 13);
+    private static final Oid pbkdf2 = oid(1, 2, 840, 113549, 1, 5, 12);
+    private static final Oid scrypt = oid(1, 3, 6, 1, 4, 1, 11591, 4, 11);
+    private static final String HMAC_SHA1 = "HmacSHA1";
+
+    private static final OidRegistry<String> prfs = prfs();
+
+    /**
+     *     SEQUENCE
+     *       OBJECT             encryption scheme, PBES2
+     *       SEQUENCE           scheme parameters
+     */
+    private static final Asn1Template<Encrypted> ALGORITHM = Asn1Template.<Encrypted>sequence()
+            .objectIdentifier((encrypted, scheme) -> encrypted.scheme = scheme)
+            .optional((encrypted, parameters) -> encrypted.parameters = parameters)
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       SEQUENCE           encryption algorithm
+     *       OCTET STRING       encrypted PrivateKeyInfo
+     */
+    private static final Asn1Template<Encrypted> ENCRYPTED_PRIVATE_KEY_INFO = Asn1Template.<Encrypted>sequence()
+            .sequence(ALGORITHM)
+            .element(Asn1Type.OCTET_STRING, (encrypted, data) -> encrypted.data = data.toBytes())
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       OBJECT             PBKDF2 or scrypt
+     *       SEQUENCE           function parameters
+     */
+    private static final Asn1Template<Encrypted> KEY_DERIVATION = Asn1Template.<Encrypted>sequence()
+            .objectIdentifier((encrypted, function) -> encrypted.function = function)
+            .element(Asn1Type.SEQUENCE, (encrypted, parameters) -> encrypted.functionParameters = parameters)
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       OBJECT             cipher
+     *       OCTET STRING       IV
+     */
+    private static final Asn1Template<Encrypted> ENCRYPTION_SCHEME = Asn1Template.<Encrypted>sequence()
+            .objectIdentifier((encrypted, cipher) -> encrypted.cipher = cipher)
+            .element(Asn1Type.OCTET_STRING, (encrypted, iv) -> encrypted.iv = iv.toBytes())
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       SEQUENCE           key derivation function
+     *       SEQUENCE           encryption scheme
+     */
+    private static final Asn1Template<Encrypted> PBES2_PARAMETERS = Asn1Template.<Encrypted>sequence()
+            .sequence(KEY_DERIVATION)
+            .sequence(ENCRYPTION_SCHEME)
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       OCTET STRING       salt
+     *       INTEGER            iteration count
+     *       INTEGER            key length (optional)
+     *       SEQUENCE           pseudo random function (optional, defaults to hmacWithSHA1)
+     *         OBJECT           prf
+     *         NULL
+     */
+    private static final Asn1Template<Encrypted> PBKDF2_PARAMETERS = Asn1Template.<Encrypted>sequence()
+            .element(Asn1Type.OCTET_STRING, (encrypted, salt) -> encrypted.salt = salt.toBytes())
+            .integer((encrypted, iterations) -> encrypted.iterations = iterations.intValueExact())
+            .optional(Asn1Type.INTEGER, (encrypted, keyLength) -> encrypted.keyLength = keyLength.asInteger().intValueExact())
+            .optional(Asn1Type.SEQUENCE, (encrypted, prf) -> encrypted.prf = prf.first())
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       OCTET STRING       salt
+     *       INTEGER            cost, N
+     *       INTEGER            block size, r
+     *       INTEGER            parallelization, p
+     *       INTEGER            key length (optional)
+     */
+    private static final Asn1Template<Encrypted> SCRYPT_PARAMETERS = Asn1Template.<Encrypted>sequence()
+            .element(Asn1Type.OCTET_STRING, (encrypted, salt) -> encrypted.salt = salt.toBytes())
+            .integer((encrypted, cost) -> encrypted.iterations = cost.intValueExact())
+            .integer((encrypted, blockSize) -> encrypted.blockSize = blockSize.intValueExact())
+            .integer((encrypted, parallelization) -> encrypted.parallelization = parallelization.intValueExact())
+            .optional(Asn1Type.INTEGER, (encrypted, keyLength) -> encrypted.keyLength = keyLength.asInteger().intValueExact())
+            .build();
+
+    private BeginEncryptedPrivateKey() {
+    }
+
+    public static Key decode(final byte[] bytes) {
+        final Encrypted encrypted;
+        final Pbe.Encryption encryption;
+        try {
+            encrypted = ENCRYPTED_PRIVATE_KEY_INFO.bind(bytes, new Encrypted());
+
+            if (!pbes2.equals(encrypted.scheme) || encrypted.parameters == null) {
+                throw new UnsupportedOperationException("Unsupported private key encryption scheme: " + encrypted.scheme);
+            }
+            PBES2_PARAMETERS.bind(encrypted.parameters, encrypted);
+
+            encryption = Pbe.cipher(encrypted.cipher);
+            if (encryption == null) {
+                throw new UnsupportedOperationException("Unsupported private key encryption cipher: " + encrypted.cipher);
+            }
+
+            if (pbkdf2.equals(encrypted.function)) {
+                PBKDF2_PARAMETERS.bind(encrypted.functionParameters, encrypted);
+            } else if (scrypt.equals(encrypted.function)) {
+                SCRYPT_PARAMETERS.bind(encrypted.functionParameters, encrypted);
+            } else {
+                throw new UnsupportedOperationException("Unsupported private key derivation function: " + encrypted.function);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid private key encryption parameters", e);
+        }
+
+        // Only the cipher's key length is used, a longer one would only add work
+        if (encrypted.keyLength != -1 && encrypted.keyLength != encryption.getKeyLength()) {
+            throw new IllegalArgumentException(String.format("Invalid private key encryption parameters: key length %s, the cipher uses %s",
+                    encrypted.keyLength, encryption.getKeyLength()));
+        }
+
+        // Bound the work the file asks for before any of it is done
+        final DecodeOptions options = DecodeOptions.current();
+        if (scrypt.equals(encrypted.function)) {
+            options.checkScryptMemory(Scrypt.memory(encrypted.iterations, encrypted.blockSize, encrypted.parallelization));
+            options.checkScryptCost(Scrypt.cost(encrypted.iterations, encrypted.blockSize, encrypted.parallelization));
+        } else {
+            options.checkPbkdf2Iterations(encrypted.iterations);
+        }
+
+        final char[] password = Pbe.password("ENCRYPTED PRIVATE KEY");
+        final byte[] decrypted;
+        try {
+            final byte[] kek = kek(encrypted, encryption, password);
+            decrypted = encryption.decrypt(kek, encrypted.iv, encrypted.data);
+        } catch (GeneralSecurityException e) {
+            throw new InvalidPasswordException("Cannot decrypt 'ENCRYPTED PRIVATE KEY', invalid password or corrupt key", e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+
+        try {
+            return BeginPrivateKey.decode(decrypted);
+        } finally {
+            Arrays.fill(decrypted, (byte) 0);
+        }
+    }
+
+    private static byte[] kek(final Encrypted encrypted, final Pbe.Encryption encryption, final char[] password) throws GeneralSecurityException {
+        final int length = encryption.getKeyLength();
+
+        if (scrypt.equals(encrypted.function)) {
+            final int n = encrypted.iterations;
+            final int r = encrypted.blockSize;
+            final int p = encrypted.parallelization;
+            final Pbe.Derivation derivation = new Pbe.Derivation("scrypt", encrypted.salt, password, n, r, p, length);
+            return Pbe.kek(derivation, () -> Scrypt.derive(password, encrypted.salt, n, r, p, length));
+        }
+
+        final String prf = encrypted.prf != null ? prfs.get(encrypted.prf) : HMAC_SHA1;
+        if (prf == null) {
+            throw new UnsupportedOperationException("Unsupported PBKDF2 pseudo random function: " + encrypted.prf);
+        }
+
+        final Pbe.Derivation derivation = new Pbe.Derivation("PBKDF2With" + prf, encrypted.salt, password, encrypted.iterations, length);
+        return Pbe.kek(derivation, () -> Pbe.pbkdf2(prf, password, encrypted.salt, encrypted.iterations, length));
+    }
+
+    private static OidRegistry<String> prfs() {
+        final Map<Oid, String> map = new HashMap<>();
+        map.put(oid(1, 2, 840, 113549, 2, 7), HMAC_SHA1);
+        map.put(oid(1, 2, 840, 113549, 2, 8), "HmacSHA224");
+        map.put(oid(1, 2, 840, 113549, 2, 9), "HmacSHA256");
+        map.put(oid(1, 2, 840, 113549, 2, 10), "HmacSHA384");
+        map.put(oid(1, 2, 840, 113549, 2, 11), "HmacSHA512");
+        return new OidRegistry<>(map);
+    }
+
+    private static class Encrypted {
+        private Oid scheme;
+        private DerSlice parameters;
+        private byte[] data;
+        private Oid function;
+        private DerSlice functionParameters;
+        private Oid cipher;
+        private byte[] iv;
+        private byte[] salt;
+        private int iterations;
+        private int keyLength = -1;
+        private DerSlice prf;
+        private int blockSize;
+        private int parallelization;
+    }
+}
@@ -16,39 +16,36 @@
  */
 package io.churchkey.pem;
 
+import io.churchkey.asn1.Asn1Template;
 import io.churchkey.asn1.Asn1Type;
-import io.churchkey.asn1.DerParser;
 import io.churchkey.dsa.Dsa;
 import io.churchkey.ec.Curve;
 import io.churchkey.rsa.Rsa;
-import io.churchkey.util.Bytes;
 import io.churchkey.util.Pem;
 import io.churchkey.Key;
-import io.churchkey.asn1.Asn1Object;
 import io.churchkey.asn1.Oid;
+import io.churchkey.asn1.OidRegistry;
 import io.churchkey.ec.EcPoints;
 import io.churchkey.ec.Ecdsa;
-import io.churchkey.ec.UnsupportedCurveException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.math.BigInteger;
 import java.security.interfaces.DSAPrivateKey;
-import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateCrtKey;
-import java.security.interfaces.RSAPublicKey;
 import java.security.spec.ECParameterSpec;
-import java.security.spec.ECPoint;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import static java.math.BigInteger.ONE;
 import static java.math.BigInteger.ZERO;
 import static io.churchkey.Key.Algorithm.DSA;
 import static io.churchkey.Key.Algorithm.EC;
 import static io.churchkey.Key.Algorithm.RSA;
-import static io.churchkey.asn1.DerWriter.write;
+import static io.churchkey.asn1.DerBuilder.write;
 
 public class BeginPrivateKey {
 
@@ -56,103 +53,67 @@ public class BeginPrivateKey {
     private static final Oid dsaKey = Oid.fromString("1.2.840.10040.4.1");
     private static final Oid ecKey = Oid.fromString("1.2.840.10045.2.1");
 
+    /**
+     * Key type OIDs shared by PKCS#8 and SubjectPublicKeyInfo
+     */
+    static final OidRegistry<Key.Algorithm> keyTypes = keyTypes();
+
+    /**
+     * Dss-Parms of the PKCS#8 AlgorithmIdentifier
+     */
+    private static final Asn1Template<Dsa.Private.Builder> DSA_PARAMETERS = Asn1Template.<Dsa.Private.Builder>sequence()
+            .integer(Dsa.Private.Builder::p)
+            .integer(Dsa.Private.Builder::q)
+            .integer(Dsa.Private.Builder::g)
+            .build();
+
     private BeginPrivateKey() {
     }
 
+    /**
+     * The PKCS#8 structure is bound in a single pass, the key inside the
+     * OCTET STRING is then bound by the template of its key type without
+     * going back over the header.
+     *
+     *     SEQUENCE
+     *       INTEGER            version
+     *       SEQUENCE
+     *         OBJECT           key type
+     *         ...              key type parameters
+     *       OCTET STRING       key type specific private key
+     */
     public static Key decode(final byte[] bytes) {
         try {
+            final KeyInfo info = KeyInfo.PRIVATE_KEY_INFO.bind(bytes, new KeyInfo());
 
-            final Oid keyTypeOid = readKeyType(bytes);
-
-            if (rsaKey.equals(keyTypeOid)) {
-                return decodeRsaKey(bytes);
+            final Key.Algorithm keyAlgorithm = keyTypes.get(info.keyType);
+            if (keyAlgorithm == RSA) {
+                return BeginRsaPrivateKey.toKey(BeginRsaPrivateKey.RSA_PRIVATE_KEY.bind(info.key, Rsa.Private.builder()).build());
             }
 
-            if (dsaKey.equals(keyTypeOid)) {
-                return decodeDsaKey(bytes);
+            if (keyAlgorithm == DSA) {
+                return decodeDsaKey(info);
             }
 
-            if (ecKey.equals(keyTypeOid)) {
-                return decodeEcKey(bytes);
+            if (keyAlgorithm == EC) {
+                return decodeEcKey(info);
             }
 
-            throw new UnsupportedOperationException("Unsupported key type oid: " + keyTypeOid);
+            throw new UnsupportedOperationException("Unsupported key type oid: " + info.keyType.asOID());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
 
     }
 
-    private static Key decodeRsaKey(final byte[] bytes) throws IOException {
-        final DerParser d1 = new DerParser(bytes);
-        final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.SEQUENCE);
-        {
-            final DerParser d2 = new DerParser(d1o1.getValue());
-            final Asn1Object d2o1 = d2.readObject().assertType(Asn1Type.INTEGER);
-            final Asn1Object d2o2 = d2.readObject().assertType(Asn1Type.SEQUENCE);
-            {
-                final DerParser d3 = new DerParser(d2o2.getValue());
-                final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-                final Asn1Object d3o2 = d3.readObject().assertType(Asn1Type.NULL);
-            }
-            final Asn1Object d2o3 = d2.readObject().assertType(Asn1Type.OCTET_STRING);
-            {
-                final DerParser d3 = new DerParser(d2o3.getValue());
-                final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.SEQUENCE);
-                {
-                    final DerParser d4 = new DerParser(d3o1.getValue());
-                    final BigInteger version = d4.readBigInteger();
-                    final Rsa.Private build = Rsa.Private.builder()
-                            .modulus(d4.readBigInteger())
-                            .publicExponent(d4.readBigInteger())
-                            .privateExponent(d4.readBigInteger())
-                            .primeP(d4.readBigInteger())
-                            .primeQ(d4.readBigInteger())
-                            .primeExponentP(d4.readBigInteger())
-                            .primeExponentQ(d4.readBigInteger())
-                            .crtCoefficient(d4.readBigInteger())
-                            .build();
-
-                    final RSAPrivateCrtKey privateKey = build.toKey();
-                    final RSAPublicKey publicKey = build.toPublic().toKey();
-
-                    return new Key(privateKey, publicKey, Key.Type.PRIVATE, RSA, Key.Format.PEM);
-                }
-            }
-        }
-    }
-
-    private static Key decodeDsaKey(final byte[] bytes) throws IOException {
-        final Dsa.Private.Builder dsa = Dsa.Private.builder();
-        final DerParser d1 = new DerParser(bytes);
-        final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.SEQUENCE);
-        {
-            final DerParser d2 = new DerParser(d1o1.getValue());
-            final Asn1Object d2o1 = d2.readObject().assertType(Asn1Type.INTEGER);
-            final Asn1Object d2o2 = d2.readObject().assertType(Asn1Type.SEQUENCE);
-            {
-                final DerParser d3 = new DerParser(d2o2.getValue());
-                final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-                final Asn1Object d3o2 = d3.readObject().assertType(Asn1Type.SEQUENCE);
-                {
-                    final DerParser d4 = new DerParser(d3o2.getValue());
-                    dsa.p(d4.readBigInteger());
-                    dsa.q(d4.readBigInteger());
-                    dsa.g(d4.readBigInteger());
-                }
-            }
-            final Asn1Object d2o3 = d2.readObject().assertType(Asn1Type.OCTET_STRING);
-            {
-                final DerParser d3 = new DerParser(d2o3.getValue());
-                dsa.x(d3.readBigInteger());
-
-                final Dsa.Private build = dsa.build();
-                final DSAPrivateKey privateKey = build.toKey();
-                final DSAPublicKey publicKey = build.toPublic().toKey();
+    /**
+     * The parameters are in the AlgorithmIdentifier, the OCTET STRING only holds x
+     */
+    private static Key decodeDsaKey(final KeyInfo info) throws IOException {
+        final Dsa.Private.Builder dsa = DSA_PARAMETERS.bind(info.parameters(), Dsa.Private.builder());
+        dsa.x(info.key.assertType(Asn1Type.INTEGER).asInteger());
 
-                return new Key(privateKey, publicKey, Key.Type.PRIVATE, DSA, Key.Format.PEM);
-            }
-        }
+        return BeginDsaPrivateKey.toKey(dsa.build());
     }
 
     /**
@@ -189,93 +150,37 @@ public class BeginPrivateKey {
      * The above OCTET STRING contains the private key BigInteger.
      * The BIT STRING contains the public key ECPoint (x, y) values.
      */
-    private static Key decodeEcKey(final byte[] bytes) throws IOException {
-        final Ecdsa.Private.Builder ecdsa = Ecdsa.Private.builder();
-        final DerParser d1 = new DerParser(bytes);
-        final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.SEQUENCE);
-        {
-            final DerParser d2 = new DerParser(d1o1.getValue());
-            final Asn1Object d2o1 = d2.readObject().assertType(Asn1Type.INTEGER);
-            final Asn1Object d2o2 = d2.readObject().assertType(Asn1Type.SEQUENCE);
-            {
-                final DerParser d3 = new DerParser(d2o2.getValue());
-                final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-                final Asn1Object d3o2 = d3.readObject();
-
-                if (d3o2.isType(Asn1Type.OBJECT_IDENTIFIER)) {
-                    /*
-                     * An OID naming a curve is encoded
-                     */
-                    final Oid oid = d3o2.asOID();
-                    final Curve curve = Curve.resolve(oid);
-                    if (curve == null) {
-                        throw new UnsupportedCurveException(oid.toString());
-                    }
-                    ecdsa.curve(curve);
-                } else if (d3o2.isType(Asn1Type.SEQUENCE)) {
-                    /*
-                     * The actual curve parameters are encoded
-                     */
-                    final ECParameterSpec parameterSpec = EcCurveParams.parseSequence(d3o2);
-                    ecdsa.spec(parameterSpec);
-                }
-            }
-            final Asn1Object d2o3 = d2.readObject().assertType(Asn1Type.OCTET_STRING);
-            {
-                final DerParser d3 = new DerParser(d2o3.getValue());
-                final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.SEQUENCE);
-                {
-                    final DerParser d4 = new DerParser(d3o1.getValue());
-                    final Asn1Object d4o1 = d4.readObject().assertType(Asn1Type.INTEGER);
-                    final Asn1Object d4o2 = d4.readObject().assertType(Asn1Type.OCTET_STRING);
-                    final Asn1Object d4o3 = d4.readObject();
-
-                    if (d4o3 != null && d4o3.isType(Asn1Type.BOOLEAN)) {
-                        final DerParser d5 = new DerParser(d4o3.getValue());
-                        final Asn1Object d5o1 = d5.readObject().assertType(Asn1Type.BIT_STRING);
-                        final byte[] value = Bytes.trim(d5o1.getValue());
-                        final ECPoint ecPoint = EcPoints.fromBytes(value);
-                        ecdsa.x(ecPoint.getAffineX());
-                        ecdsa.y(ecPoint.getAffineY());
-                    }
-
-                    ecdsa.d(new BigInteger(1, Bytes.trim(d4o2.getValue())));
-
-                    final Ecdsa.Private build = ecdsa.build();
-                    final ECPrivateKey privateKey = build.toKey();
-                    final ECPublicKey publicKey = build.getX() != null && build.getY() != null ? build.toPublic().toKey() : null;
-
-                    return new Key(privateKey, publicKey, Key.Type.PRIVATE, EC, Key.Format.PEM);
-                }
-            }
-        }
+    private static Key decodeEcKey(final KeyInfo info) throws IOException {
+        final Ecdsa.Private.Builder ecdsa = BeginEcPrivateKey.EC_PRIVATE_KEY.bind(info.key, Ecdsa.Private.builder());
+        EcCurveParams.resolve(info.parameters(), ecdsa::curve, ecdsa::spec);
+
+        return BeginEcPrivateKey.toKey(ecdsa.build());
     }
 
-    private static Oid readKeyType(final byte[] bytes) throws IOException {
-        final DerParser d1 = new DerParser(bytes);
-        final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.SEQUENCE);
-        {
-            final DerParser d2 = new DerParser(d1o1.getValue());
-            final Asn1Object d2o1 = d2.readObject().assertType(Asn1Type.INTEGER);
-            final Asn1Object d2o2 = d2.readObject().assertType(Asn1Type.SEQUENCE);
-            {
-                final DerParser d3 = new DerParser(d2o2.getValue());
-                final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-
-                return d3o1.asOID();
-            }
-        }
+    private static OidRegistry<Key.Algorithm> keyTypes() {
+        final Map<Oid, Key.Algorithm> map = new HashMap<>();
+        map.put(rsaKey, RSA);
+        map.put(dsaKey, DSA);
+        map.put(ecKey, EC);
+        return new OidRegistry<>(map);
     }
 
     public static byte[] encode(final Key key) {
+        return toPem(key).format().getBytes();
+    }
+
+    public static void encode(final Key key, final OutputStream out) throws IOException {
+        toPem(key).writeTo(out);
+    }
+
+    private static Pem toPem(final Key key) {
         final byte[] derEncodedBytes = toDer(key);
 
         return Pem.builder()
                 .type("PRIVATE KEY")
                 .data(derEncodedBytes)
                 .wrap(64)
-                .format()
-                .getBytes();
+                .build();
     }
 
     public static byte[] toDer(final Key key) {
@@ -17,57 +17,109 @@
 package io.churchkey.pem;
 
 import io.churchkey.Key;
+import io.churchkey.KeyFactories;
+import io.churchkey.asn1.Asn1Template;
+import io.churchkey.asn1.Asn1Type;
+import io.churchkey.asn1.DerSlice;
+import io.churchkey.dsa.Dsa;
+import io.churchkey.ec.Ecdsa;
+import io.churchkey.rsa.Rsa;
 import io.churchkey.util.Pem;
 
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECPoint;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 
 public class BeginPublicKey {
 
+    /**
+     * Dss-Parms of the SubjectPublicKeyInfo AlgorithmIdentifier
+     */
+    private static final Asn1Template<Dsa.Public.Builder> DSA_PARAMETERS = Asn1Template.<Dsa.Public.Builder>sequence()
+            .integer(Dsa.Public.Builder::p)
+            .integer(Dsa.Public.Builder::q)
+            .integer(Dsa.Public.Builder::g)
+            .build();
+
     private BeginPublicKey() {
     }
 
+    /**
+     * The SubjectPublicKeyInfo is bound in a single pass and the key in
+     * the BIT STRING by the template of its key type, the encoded key is
+     * not handed to a KeyFactory to be parsed a second time.
+     *
+     *     SEQUENCE
+     *       SEQUENCE
+     *         OBJECT           key type
+     *         ...              key type parameters
+     *       BIT STRING         key type specific public key
+     */
     public static Key decode(final byte[] bytes) {
         try {
-            final KeyFactory factory = KeyFactory.getInstance("RSA");
-            final RSAPublicKey publicKey = (RSAPublicKey) factory.generatePublic(new X509EncodedKeySpec(bytes));
-            return new Key(publicKey, Key.Type.PUBLIC, Key.Algorithm.RSA, Key.Format.PEM);
-        } catch (InvalidKeySpecException e) {
-            // continue trying other algorithms
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
+            return decode(DerSlice.of(bytes));
+        } catch (IOException e) {
+            throw new UnsupportedOperationException("Unsupported algorithm or invalid x509 key spec", e);
         }
+    }
 
+    /**
+     * Decodes a SubjectPublicKeyInfo in place, where it is part of a larger
+     * structure such as a certificate
+     */
+    static Key decode(final DerSlice subjectPublicKeyInfo) {
         try {
-            final KeyFactory factory = KeyFactory.getInstance("DSA");
-            final DSAPublicKey publicKey = (DSAPublicKey) factory.generatePublic(new X509EncodedKeySpec(bytes));
-            return new Key(publicKey, Key.Type.PUBLIC, Key.Algorithm.DSA, Key.Format.PEM);
-        } catch (InvalidKeySpecException e) {
-            // continue trying other algorithms
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+            final KeyInfo info = KeyInfo.SUBJECT_PUBLIC_KEY_INFO.bind(subjectPublicKeyInfo, new KeyInfo());
+            final Key.Algorithm algorithm = BeginPrivateKey.keyTypes.get(info.keyType);
+
+            if (algorithm == Key.Algorithm.RSA) {
+                final RSAPublicKey publicKey = BeginRsaPublicKey.RSA_PUBLIC_KEY.bind(info.bitStringContents(), Rsa.Public.builder())
+                        .build()
+                        .toKey();
+                return new Key(publicKey, Key.Type.PUBLIC, algorithm, Key.Format.PEM);
+            }
 
-        try {
-            final KeyFactory factory = KeyFactory.getInstance("EC");
-            final ECPublicKey publicKey = (ECPublicKey) factory.generatePublic(new X509EncodedKeySpec(bytes));
-            return new Key(publicKey, Key.Type.PUBLIC, Key.Algorithm.EC, Key.Format.PEM);
-        } catch (InvalidKeySpecException e) {
-            // continue trying other algorithms
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
+            if (algorithm == Key.Algorithm.DSA) {
+                final DSAPublicKey publicKey = DSA_PARAMETERS.bind(info.parameters(), Dsa.Public.builder())
+                        .y(info.bitStringContents().assertType(Asn1Type.INTEGER).asInteger())
+                        .build()
+                        .toKey();
+                return new Key(publicKey, Key.Type.PUBLIC, algorithm, Key.Format.PEM);
+            }
+
+            if (algorithm == Key.Algorithm.EC) {
+                final Ecdsa.Public.Builder ecdsa = Ecdsa.Public.builder();
+                EcCurveParams.resolve(info.parameters(), ecdsa::curve, ecdsa::spec);
+
+                final ECPoint point = EcCurveParams.point(info.key);
+                final ECPublicKey publicKey = ecdsa
+                        .x(point.getAffineX())
+                        .y(point.getAffineY())
+                        .build()
+                        .toKey();
+                return new Key(publicKey, Key.Type.PUBLIC, algorithm, Key.Format.PEM);
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new UnsupportedOperationException("Unsupported algorithm or invalid x509 key spec", e);
         }
 
         throw new UnsupportedOperationException("Unsupported algorithm or invalid x509 key spec");
     }
 
     public static byte[] encode(final Key key) {
+        return toPem(key).format().getBytes();
+    }
+
+    public static void encode(final Key key, final OutputStream out) throws IOException {
+        toPem(key).writeTo(out);
+    }
 
+    private static Pem toPem(final Key key) {
         final Pem.Builder pem = Pem.builder()
                 .type("PUBLIC KEY")
                 .wrap(64);
@@ -76,24 +128,19 @@ public class BeginPublicKey {
 
         try {
             if (value instanceof RSAPublicKey) {
-                final KeyFactory factory = KeyFactory.getInstance("RSA");
-                final X509EncodedKeySpec keySpec = factory.getKeySpec(value, X509EncodedKeySpec.class);
-                return pem.data(keySpec.getEncoded()).format().getBytes();
+                final X509EncodedKeySpec keySpec = KeyFactories.getKeySpec(Key.Algorithm.RSA, value, X509EncodedKeySpec.class);
+                return pem.data(keySpec.getEncoded()).build();
             }
 
             if (value instanceof DSAPublicKey) {
-                final KeyFactory factory = KeyFactory.getInstance("DSA");
-                final X509EncodedKeySpec keySpec = factory.getKeySpec(value, X509EncodedKeySpec.class);
-                return pem.data(keySpec.getEncoded()).format().getBytes();
+                final X509EncodedKeySpec keySpec = KeyFactories.getKeySpec(Key.Algorithm.DSA, value, X509EncodedKeySpec.class);
+                return pem.data(keySpec.getEncoded()).build();
             }
 
             if (value instanceof ECPublicKey) {
-                final KeyFactory factory = KeyFactory.getInstance("EC");
-                final X509EncodedKeySpec keySpec = factory.getKeySpec(value, X509EncodedKeySpec.class);
-                return pem.data(keySpec.getEncoded()).format().getBytes();
+                final X509EncodedKeySpec keySpec = KeyFactories.getKeySpec(Key.Algorithm.EC, value, X509EncodedKeySpec.class);
+                return pem.data(keySpec.getEncoded()).build();
             }
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("Unsupported key algorithm", e);
         } catch (InvalidKeySpecException e) {
             throw new IllegalStateException("Invalid Key Spec", e);
         }
@@ -17,54 +17,47 @@
 package io.churchkey.pem;
 
 import io.churchkey.Key;
-import io.churchkey.asn1.Asn1Object;
+import io.churchkey.asn1.Asn1Template;
 import io.churchkey.asn1.Asn1Type;
-import io.churchkey.asn1.DerParser;
 import io.churchkey.rsa.Rsa;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.security.interfaces.RSAPrivateCrtKey;
-import java.security.interfaces.RSAPublicKey;
 
 public class BeginRsaPrivateKey {
 
+    /**
+     * PKCS#1 RSAPrivateKey, also found inside the PKCS#8 OCTET STRING
+     */
+    static final Asn1Template<Rsa.Private.Builder> RSA_PRIVATE_KEY = Asn1Template.<Rsa.Private.Builder>sequence()
+            .skip(Asn1Type.INTEGER) // version
+            .integer(Rsa.Private.Builder::modulus)
+            .integer(Rsa.Private.Builder::publicExponent)
+            .integer(Rsa.Private.Builder::privateExponent)
+            .integer(Rsa.Private.Builder::primeP)
+            .integer(Rsa.Private.Builder::primeQ)
+            .integer(Rsa.Private.Builder::primeExponentP)
+            .integer(Rsa.Private.Builder::primeExponentQ)
+            .integer(Rsa.Private.Builder::crtCoefficient)
+            .build();
+
     private BeginRsaPrivateKey() {
     }
 
     public static Key decode(final byte[] bytes) {
         try {
-            final DerParser parser = new DerParser(bytes);
-
-            final Asn1Object sequence = parser.readObject();
-            if (sequence.getType() != Asn1Type.SEQUENCE) {
-                throw new IllegalArgumentException("Invalid DER: not a sequence");
-            }
-
-            // Parse inside the sequence
-            final DerParser p = sequence.createParser();
-
-            p.readObject(); // Skip version
-
-            final Rsa.Private build = Rsa.Private.builder()
-                    .modulus(p.readObject().asInteger())
-                    .publicExponent(p.readObject().asInteger())
-                    .privateExponent(p.readObject().asInteger())
-                    .primeP(p.readObject().asInteger())
-                    .primeQ(p.readObject().asInteger())
-                    .primeExponentP(p.readObject().asInteger())
-                    .primeExponentQ(p.readObject().asInteger())
-                    .crtCoefficient(p.readObject().asInteger())
-                    .build();
-            final RSAPrivateCrtKey privateKey = build.toKey();
-            final RSAPublicKey publicKey = build.toPublic().toKey();
-
-            return new Key(privateKey, publicKey, Key.Type.PRIVATE, Key.Algorithm.RSA, Key.Format.PEM);
+            return toKey(RSA_PRIVATE_KEY.bind(bytes, Rsa.Private.builder()).build());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    static Key toKey(final Rsa.Private build) {
+        final RSAPrivateCrtKey privateKey = build.toKey();
+        return new Key(privateKey, null, Key.Type.PRIVATE, Key.Algorithm.RSA, Key.Format.PEM);
+    }
+
     public static byte[] encode(final Key key) {
         return null;
     }
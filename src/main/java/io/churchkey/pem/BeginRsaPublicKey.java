@@ -18,9 +18,7 @@ package io.churchkey.pem;
 
 import io.churchkey.rsa.Rsa;
 import io.churchkey.Key;
-import io.churchkey.asn1.Asn1Object;
-import io.churchkey.asn1.Asn1Type;
-import io.churchkey.asn1.DerParser;
+import io.churchkey.asn1.Asn1Template;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -28,24 +26,20 @@ import java.security.interfaces.RSAPublicKey;
 
 public class BeginRsaPublicKey {
 
+    /**
+     * PKCS#1 RSAPublicKey, also found inside the SubjectPublicKeyInfo BIT STRING
+     */
+    static final Asn1Template<Rsa.Public.Builder> RSA_PUBLIC_KEY = Asn1Template.<Rsa.Public.Builder>sequence()
+            .integer(Rsa.Public.Builder::modulus)
+            .integer(Rsa.Public.Builder::publicExponent)
+            .build();
+
     private BeginRsaPublicKey() {
     }
 
     public static Key decode(final byte[] bytes) {
         try {
-            final DerParser parser = new DerParser(bytes);
-
-            final Asn1Object sequence = parser.readObject();
-            if (sequence.getType() != Asn1Type.SEQUENCE) {
-                throw new IllegalArgumentException("Invalid DER: not a sequence");
-            }
-
-            // Parse inside the sequence
-            final DerParser p = sequence.createParser();
-
-            final RSAPublicKey publicKey = Rsa.Public.builder()
-                    .modulus(p.readObject().asInteger())
-                    .publicExponent(p.readObject().asInteger())
+            final RSAPublicKey publicKey = RSA_PUBLIC_KEY.bind(bytes, Rsa.Public.builder())
                     .build()
                     .toKey();
 
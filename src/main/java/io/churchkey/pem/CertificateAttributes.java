@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.asn1.Asn1Type;
+import io.churchkey.asn1.DerSlice;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The attributes of a key read from a certificate.  None of them is
+ * decoded up front, a value is computed from the certificate bytes the
+ * first time it is read and kept from then on.  Iterating over the map or
+ * comparing it decodes all of them.
+ *
+ * <ul>
+ *     <li>{@code subject} and {@code issuer}, RFC 2253 distinguished names</li>
+ *     <li>{@code serial}, the serial number in upper case hex as printed by OpenSSL</li>
+ *     <li>{@code notBefore} and {@code notAfter}, ISO-8601 instants</li>
+ *     <li>{@code x5t} and {@code x5t#S256}, the base64url SHA-1 and SHA-256
+ *     thumbprints of the certificate as used by JWK</li>
+ * </ul>
+ *
+ * A value that cannot be decoded is returned in a raw form rather than
+ * failing long after the key was decoded.  Like the attributes of any
+ * other key the map is modifiable.
+ */
+final class CertificateAttributes extends AbstractMap<String, String> {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'");
+
+    private final Map<String, Supplier<String>> pending = new LinkedHashMap<>();
+    private final Map<String, String> values = new HashMap<>();
+
+    CertificateAttributes(final byte[] certificate, final BeginCertificate.Certificate fields) {
+        pending.put("subject", () -> name(fields.subject));
+        pending.put("issuer", () -> name(fields.issuer));
+        pending.put("serial", () -> serial(fields.serial));
+        pending.put("notBefore", () -> time(fields.notBefore));
+        pending.put("notAfter", () -> time(fields.notAfter));
+        pending.put("x5t", () -> thumbprint("SHA-1", certificate));
+        pending.put("x5t#S256", () -> thumbprint("SHA-256", certificate));
+    }
+
+    @Override
+    public synchronized String get(final Object name) {
+        resolve(name);
+        return values.get(name);
+    }
+
+    @Override
+    public synchronized boolean containsKey(final Object name) {
+        return pending.containsKey(name) || values.containsKey(name);
+    }
+
+    @Override
+    public synchronized String put(final String name, final String value) {
+        resolve(name);
+        return values.put(name, value);
+    }
+
+    @Override
+    public synchronized String remove(final Object name) {
+        resolve(name);
+        return values.remove(name);
+    }
+
+    @Override
+    public synchronized int size() {
+        return pending.size() + values.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        pending.clear();
+        values.clear();
+    }
+
+    @Override
+    public synchronized Set<Entry<String, String>> entrySet() {
+        for (final String name : pending.keySet().toArray(new String[0])) {
+            resolve(name);
+        }
+        return values.entrySet();
+    }
+
+    private void resolve(final Object name) {
+        final Supplier<String> value = pending.get(name);
+        if (value == null) return;
+
+        values.put((String) name, value.get());
+        pending.remove(name);
+    }
+
+    /**
+     * A name X500Principal cannot parse is returned in the RFC 2253 form
+     * of an unparsed value, '#' followed by the hex of its DER encoding
+     */
+    private static String name(final DerSlice name) {
+        final byte[] encoded = name.toEncoded();
+        try {
+            return new X500Principal(encoded).getName(X500Principal.RFC2253);
+        } catch (IllegalArgumentException e) {
+            return "#" + hex(encoded);
+        }
+    }
+
+    private static String serial(final DerSlice serial) {
+        try {
+            return serial.asInteger().toString(16).toUpperCase();
+        } catch (IOException | RuntimeException e) {
+            return hex(serial.toBytes()).toUpperCase();
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * RFC 5280 times are UTCTime up to 2049 and GeneralizedTime after, both
+     * in UTC with seconds.  Anything else is returned as found.
+     */
+    private static String time(final DerSlice time) {
+        final String text = new String(time.toBytes(), US_ASCII);
+        final String full = time.isType(Asn1Type.UTCTIME) && text.length() == 13
+                ? (text.charAt(0) >= '5' ? "19" : "20") + text
+                : text;
+
+        try {
+            return LocalDateTime.parse(full, TIME).toInstant(ZoneOffset.UTC).toString();
+        } catch (DateTimeParseException e) {
+            return text;
+        }
+    }
+
+    private static String thumbprint(final String algorithm, final byte[] certificate) {
+        try {
+            final byte[] digest = MessageDigest.getInstance(algorithm).digest(certificate);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
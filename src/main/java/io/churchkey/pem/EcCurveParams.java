@@ -17,9 +17,12 @@ package io.churchkey.pem;
 
 import io.churchkey.asn1.Asn1Type;
 import io.churchkey.asn1.Asn1Object;
-import io.churchkey.asn1.DerParser;
+import io.churchkey.asn1.Asn1Template;
+import io.churchkey.asn1.DerSlice;
 import io.churchkey.asn1.Oid;
+import io.churchkey.ec.Curve;
 import io.churchkey.ec.EcPoints;
+import io.churchkey.ec.UnsupportedCurveException;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -29,9 +32,10 @@ import java.security.spec.ECFieldFp;
 import java.security.spec.ECParameterSpec;
 import java.security.spec.ECPoint;
 import java.security.spec.EllipticCurve;
+import java.util.function.Consumer;
 
 import static java.math.BigInteger.ONE;
-import static io.churchkey.asn1.DerWriter.write;
+import static io.churchkey.asn1.DerBuilder.write;
 
 public class EcCurveParams {
     public static final ThreadLocal<String> name = new ThreadLocal<>();
@@ -41,95 +45,154 @@ public class EcCurveParams {
     public static final Oid tpBasis = new Oid(1, 2, 840, 10045, 1, 2, 3, 2);
     public static final Oid ppBasis = new Oid(1, 2, 840, 10045, 1, 2, 3, 3);
 
+    /**
+     *     SEQUENCE
+     *       INTEGER            m
+     *       OBJECT             tpBasis or ppBasis
+     *       INTEGER            k for tpBasis
+     *       SEQUENCE           k1, k2, k3 for ppBasis
+     */
+    private static final Asn1Template<Parameters> CHARACTERISTIC_TWO = Asn1Template.<Parameters>sequence()
+            .integer((p, m) -> p.m = m.intValue())
+            .objectIdentifier((p, basis) -> p.basis = basis)
+            .any((p, basis) -> p.field = basis(p, basis))
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       OBJECT             prime-field or characteristic-two-field
+     *       ...                p or the characteristic two parameters
+     */
+    private static final Asn1Template<Parameters> FIELD_ID = Asn1Template.<Parameters>sequence()
+            .objectIdentifier((p, type) -> p.fieldType = type)
+            .any((p, parameters) -> p.field = field(p, parameters))
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       OCTET STRING       a
+     *       OCTET STRING       b
+     *       BIT STRING         seed (optional)
+     */
+    private static final Asn1Template<Parameters> CURVE = Asn1Template.<Parameters>sequence()
+            .unsignedInteger((p, a) -> p.a = a)
+            .unsignedInteger((p, b) -> p.b = b)
+            .optional((p, seed) -> p.seed = seed.toBytes())
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       INTEGER            version
+     *       SEQUENCE           field
+     *       SEQUENCE           curve
+     *       OCTET STRING       generator point
+     *       INTEGER            order
+     *       INTEGER            cofactor
+     */
+    private static final Asn1Template<Parameters> PARAMETERS = Asn1Template.<Parameters>sequence()
+            .skip(Asn1Type.INTEGER)
+            .sequence(FIELD_ID)
+            .sequence(CURVE)
+            .element(Asn1Type.OCTET_STRING, (p, g) -> p.g = EcPoints.fromBytes(g.toBytes()))
+            .element(Asn1Type.INTEGER, (p, n) -> p.n = n.toInteger())
+            .element(Asn1Type.INTEGER, (p, h) -> p.h = h.toInteger().intValue())
+            .build();
+
     private EcCurveParams() {
     }
 
     public static Oid parseOid(final byte[] data) throws IOException {
-        final DerParser d1 = new DerParser(data);
-        final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-        return d1o1.asOID();
+        return DerSlice.of(data).assertType(Asn1Type.OBJECT_IDENTIFIER).asOID();
     }
 
     public static ECParameterSpec parse(final byte[] data) throws IOException {
-        final DerParser d1 = new DerParser(data);
-        final Asn1Object d1o1 = d1.readObject().assertType(Asn1Type.SEQUENCE);
-        return parseSequence(d1o1);
+        return parseSequence(DerSlice.of(data).assertType(Asn1Type.SEQUENCE));
     }
 
     public static ECParameterSpec parseSequence(final Asn1Object d1o1) throws IOException {
-        final ECField field;
-        final EllipticCurve ellipticCurve;
-
-        final DerParser d2 = new DerParser(d1o1.getValue());
-        final Asn1Object d2o1 = d2.readObject().assertType(Asn1Type.INTEGER);
-        final Asn1Object d2o2 = d2.readObject().assertType(Asn1Type.SEQUENCE);
-        {
-            final DerParser d3 = new DerParser(d2o2.getValue());
-            final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-            final Oid oid = d3o1.asOID();
-
-            if (primeField.equals(oid)) {
-                final Asn1Object d3o2 = d3.readObject().assertType(Asn1Type.INTEGER);
-                field = new ECFieldFp(d3o2.toInteger());
-            } else if (characteristicTwoField.equals(oid)) {
-                final Asn1Object d3o2 = d3.readObject().assertType(Asn1Type.SEQUENCE);
-                {
-                    final DerParser d4 = new DerParser(d3o2.getValue());
-                    final Asn1Object d4o1 = d4.readObject().assertType(Asn1Type.INTEGER);
-                    final Asn1Object d4o2 = d4.readObject().assertType(Asn1Type.OBJECT_IDENTIFIER);
-
-                    final Oid basis = d4o2.asOID();
-
-                    if (ppBasis.equals(basis)) {
-                        final Asn1Object d4o3 = d4.readObject().assertType(Asn1Type.SEQUENCE);
-                        {
-                            final DerParser d5 = new DerParser(d4o3.getValue());
-                            final Asn1Object d5o1 = d5.readObject().assertType(Asn1Type.INTEGER);
-                            final Asn1Object d5o2 = d5.readObject().assertType(Asn1Type.INTEGER);
-                            final Asn1Object d5o3 = d5.readObject().assertType(Asn1Type.INTEGER);
-                            field = new ECFieldF2m(d4o1.asInteger().intValue(), new int[]{
-                                    d5o3.asInteger().intValue(),
-                                    d5o2.asInteger().intValue(),
-                                    d5o1.asInteger().intValue()
-                            });
-                        }
-                    } else if (tpBasis.equals(basis)) {
-                        final Asn1Object d5o1 = d4.readObject().assertType(Asn1Type.INTEGER);
-                        field = new ECFieldF2m(d4o1.asInteger().intValue(), new int[]{
-                                d5o1.asInteger().intValue()
-                        });
-                    } else {
-                        throw new UnsupportedOperationException("Unsupported characteristic-two-basis " + basis);
-                    }
-                }
-            } else {
-                throw new UnsupportedOperationException(oid.toString());
+        return parse(write().writeObject(d1o1).bytes());
+    }
+
+    /**
+     * Applies the ECParameters of a key, either the OID of a named curve
+     * or the explicit curve parameters
+     */
+    static void resolve(final DerSlice parameters, final Consumer<Curve> named, final Consumer<ECParameterSpec> explicit) throws IOException {
+        if (parameters.isType(Asn1Type.OBJECT_IDENTIFIER)) {
+            final Curve curve = Curve.resolve(parameters);
+            if (curve == null) {
+                throw new UnsupportedCurveException(parameters.asOID().toString());
             }
+            named.accept(curve);
+        } else if (parameters.isType(Asn1Type.SEQUENCE)) {
+            explicit.accept(parseSequence(parameters));
         }
+    }
+
+    /**
+     * The public point of a key, a BIT STRING holding an uncompressed point
+     */
+    static ECPoint point(final DerSlice bitString) throws IOException {
+        return EcPoints.fromBytes(bitString.assertType(Asn1Type.BIT_STRING).toTrimmedBytes());
+    }
 
-        final Asn1Object d2o3 = d2.readObject().assertType(Asn1Type.SEQUENCE);
-        {
-            final DerParser d3 = new DerParser(d2o3.getValue());
-            final Asn1Object d3o1 = d3.readObject().assertType(Asn1Type.OCTET_STRING);
-            final Asn1Object d3o2 = d3.readObject().assertType(Asn1Type.OCTET_STRING);
-            final Asn1Object d3o3 = d3.readObject();
+    public static ECParameterSpec parseSequence(final DerSlice d1o1) throws IOException {
+        final Parameters parameters = PARAMETERS.bind(d1o1, new Parameters());
 
-            final BigInteger a = d3o1.toInteger();
-            final BigInteger b = d3o2.toInteger();
+        final EllipticCurve ellipticCurve = parameters.seed == null
+                ? new EllipticCurve(parameters.field, parameters.a, parameters.b)
+                : new EllipticCurve(parameters.field, parameters.a, parameters.b, parameters.seed);
 
-            if (d3o3 == null) {
-                ellipticCurve = new EllipticCurve(field, a, b);
-            } else {
-                ellipticCurve = new EllipticCurve(field, a, b, d3o3.getPureValueBytes());
-            }
+        return new ECParameterSpec(ellipticCurve, parameters.g, parameters.n, parameters.h);
+    }
+
+    /**
+     * The values of the ECParameters structure as they are bound
+     */
+    private static class Parameters {
+        private Oid fieldType;
+        private ECField field;
+        private int m;
+        private Oid basis;
+        private BigInteger a;
+        private BigInteger b;
+        private byte[] seed;
+        private ECPoint g;
+        private BigInteger n;
+        private int h;
+    }
+
+    private static ECField field(final Parameters parameters, final DerSlice slice) throws IOException {
+        if (parameters.fieldType.equals(primeField)) {
+            return new ECFieldFp(slice.assertType(Asn1Type.INTEGER).toInteger());
+        }
+
+        if (parameters.fieldType.equals(characteristicTwoField)) {
+            return CHARACTERISTIC_TWO.bind(slice, parameters).field;
+        }
+
+        throw new UnsupportedOperationException(parameters.fieldType.toString());
+    }
+
+    private static ECField basis(final Parameters parameters, final DerSlice slice) throws IOException {
+        if (parameters.basis.equals(ppBasis)) {
+            final DerSlice k1 = slice.assertType(Asn1Type.SEQUENCE).get(0).assertType(Asn1Type.INTEGER);
+            final DerSlice k2 = k1.next().assertType(Asn1Type.INTEGER);
+            final DerSlice k3 = k2.next().assertType(Asn1Type.INTEGER);
+            return new ECFieldF2m(parameters.m, new int[]{
+                    k3.asInteger().intValue(),
+                    k2.asInteger().intValue(),
+                    k1.asInteger().intValue()
+            });
         }
 
-        final Asn1Object d2o4 = d2.readObject().assertType(Asn1Type.OCTET_STRING);
-        final Asn1Object d2o5 = d2.readObject().assertType(Asn1Type.INTEGER);
-        final Asn1Object d2o6 = d2.readObject().assertType(Asn1Type.INTEGER);
+        if (parameters.basis.equals(tpBasis)) {
+            return new ECFieldF2m(parameters.m, new int[]{
+                    slice.assertType(Asn1Type.INTEGER).asInteger().intValue()
+            });
+        }
 
-        final ECPoint point = EcPoints.fromBytes(d2o4.getPureValueBytes());
-        return new ECParameterSpec(ellipticCurve, point, d2o5.toInteger(), d2o6.toInteger().intValue());
+        throw new UnsupportedOperationException("Unsupported characteristic-two-basis " + parameters.basis);
     }
 
     public static byte[] encode(final ECParameterSpec spec) {
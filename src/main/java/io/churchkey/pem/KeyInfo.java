@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.asn1.Asn1Template;
+import io.churchkey.asn1.Asn1Type;
+import io.churchkey.asn1.DerSlice;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * The AlgorithmIdentifier envelope shared by PKCS#8 PrivateKeyInfo and
+ * X.509 SubjectPublicKeyInfo.  Only the positions of the parts are
+ * recorded, the key itself is bound by the template of its algorithm.
+ */
+final class KeyInfo {
+
+    /**
+     *     SEQUENCE
+     *       OBJECT             key type
+     *       ...                key type parameters (optional)
+     */
+    private static final Asn1Template<KeyInfo> ALGORITHM = Asn1Template.<KeyInfo>sequence()
+            .element(Asn1Type.OBJECT_IDENTIFIER, (info, keyType) -> info.keyType = keyType)
+            .optional((info, parameters) -> info.parameters = parameters)
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       INTEGER            version
+     *       SEQUENCE           algorithm
+     *       OCTET STRING       key type specific private key
+     */
+    static final Asn1Template<KeyInfo> PRIVATE_KEY_INFO = Asn1Template.<KeyInfo>sequence()
+            .skip(Asn1Type.INTEGER)
+            .sequence(ALGORITHM)
+            .element(Asn1Type.OCTET_STRING, (info, key) -> info.key = contents(key, key.first()))
+            .build();
+
+    /**
+     *     SEQUENCE
+     *       SEQUENCE           algorithm
+     *       BIT STRING         key type specific public key
+     */
+    static final Asn1Template<KeyInfo> SUBJECT_PUBLIC_KEY_INFO = Asn1Template.<KeyInfo>sequence()
+            .sequence(ALGORITHM)
+            .element(Asn1Type.BIT_STRING, (info, key) -> info.key = key)
+            .build();
+
+    DerSlice keyType;
+    DerSlice parameters;
+    DerSlice key;
+
+    /**
+     * The DER element held by a BIT STRING key, skipping the unused bits octet
+     */
+    DerSlice bitStringContents() throws IOException {
+        final byte[] bits = key.toBytes();
+        if (bits.length < 2) {
+            throw new StreamCorruptedException("Invalid DER: empty public key BIT STRING");
+        }
+        return contents(key, DerSlice.of(bits, 1, bits.length - 1));
+    }
+
+    DerSlice parameters() throws IOException {
+        return contents(keyType, parameters);
+    }
+
+    private static DerSlice contents(final DerSlice owner, final DerSlice contents) throws IOException {
+        if (contents == null) {
+            throw new StreamCorruptedException("Invalid DER: missing contents after offset " + owner.getOffset());
+        }
+        return contents;
+    }
+}
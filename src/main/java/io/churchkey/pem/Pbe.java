@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.DecodeOptions;
+import io.churchkey.InvalidPasswordException;
+import io.churchkey.asn1.Oid;
+import io.churchkey.asn1.OidRegistry;
+import io.churchkey.util.Pem;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static io.churchkey.asn1.Oid.oid;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Password based decryption of PEM private keys, shared by PKCS#8
+ * {@code ENCRYPTED PRIVATE KEY} files and the legacy OpenSSL
+ * {@code Proc-Type: 4,ENCRYPTED} headers.
+ *
+ * Deriving a key encryption key (KEK) with PBKDF2 or scrypt is by design
+ * the costly part of decrypting a key.  Derived KEKs are kept in a bounded,
+ * least recently used cache keyed by the derivation function, its salt and
+ * cost parameters and a fingerprint of the password, so keys exported
+ * together under one password and salt only pay for one derivation.  The
+ * fingerprint is an HMAC with a key random to this JVM, the password itself
+ * is never held by the cache.  Concurrent derivations of the same KEK are
+ * collapsed into one.
+ */
+final class Pbe {
+
+    /**
+     * How many derived KEKs are kept
+     */
+    static final int CACHE_SIZE = 256;
+
+    private static final Map<String, Encryption> LEGACY = new HashMap<>();
+    private static final OidRegistry<Encryption> CIPHERS;
+
+    static {
+        final Encryption aes128 = new Encryption("AES", "AES/CBC/PKCS5Padding", 16);
+        final Encryption aes192 = new Encryption("AES", "AES/CBC/PKCS5Padding", 24);
+        final Encryption aes256 = new Encryption("AES", "AES/CBC/PKCS5Padding", 32);
+        final Encryption desede = new Encryption("DESede", "DESede/CBC/PKCS5Padding", 24);
+        final Encryption des = new Encryption("DES", "DES/CBC/PKCS5Padding", 8);
+
+        LEGACY.put("AES-128-CBC", aes128);
+        LEGACY.put("AES-192-CBC", aes192);
+        LEGACY.put("AES-256-CBC", aes256);
+        LEGACY.put("DES-EDE3-CBC", desede);
+        LEGACY.put("DES-CBC", des);
+
+        final Map<Oid, Encryption> ciphers = new HashMap<>();
+        ciphers.put(oid(2, 16, 840, 1, 101, 3, 4, 1, 2), aes128);
+        ciphers.put(oid(2, 16, 840, 1, 101, 3, 4, 1, 22), aes192);
+        ciphers.put(oid(2, 16, 840, 1, 101, 3, 4, 1, 42), aes256);
+        ciphers.put(oid(1, 2, 840, 113549, 3, 7), desede);
+        ciphers.put(oid(1, 3, 14, 3, 2, 7), des);
+        CIPHERS = new OidRegistry<>(ciphers);
+    }
+
+    private static final byte[] FINGERPRINT_KEY = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(FINGERPRINT_KEY);
+    }
+
+    /**
+     * Access ordered, so iteration starts at the least recently used KEK,
+     * which {@link #kek} evicts once the map holds more than {@link #CACHE_SIZE}
+     */
+    private static final LinkedHashMap<Derivation, CompletableFuture<byte[]>> KEKS = new LinkedHashMap<>(16, 0.75f, true);
+
+    private Pbe() {
+    }
+
+    /**
+     * @return the cipher of a PBES2 encryption scheme or null if it is not supported
+     */
+    static Encryption cipher(final Oid oid) {
+        return CIPHERS.get(oid);
+    }
+
+    /**
+     * @return true if the PEM has the {@code Proc-Type: 4,ENCRYPTED} header of OpenSSL's legacy encryption
+     */
+    static boolean isEncrypted(final Pem pem) {
+        final String procType = pem.getAttributes().get("Proc-Type");
+        return procType != null && procType.replace(" ", "").equals("4,ENCRYPTED");
+    }
+
+    /**
+     * Decrypts a PEM with a {@code DEK-Info} header as written by
+     * {@code openssl rsa -aes128} and friends.  The key is derived with
+     * OpenSSL's EVP_BytesToKey: a single round of MD5 over the password and
+     * the first 8 bytes of the IV.  It is cheap enough not to be cached.
+     */
+    static byte[] decrypt(final Pem pem) {
+        final String dekInfo = pem.getAttributes().get("DEK-Info");
+        if (dekInfo == null) {
+            throw new IllegalArgumentException(String.format("Encrypted '%s' has no DEK-Info header", pem.getType()));
+        }
+
+        final int comma = dekInfo.indexOf(',');
+        final String name = (comma < 0 ? dekInfo : dekInfo.substring(0, comma)).trim();
+        final Encryption encryption = LEGACY.get(name);
+        if (encryption == null || comma < 0) {
+            throw new UnsupportedOperationException("Unsupported PEM encryption: " + dekInfo);
+        }
+
+        final byte[] iv = hex(dekInfo.substring(comma + 1).trim());
+        if (iv.length < 8) {
+            throw new IllegalArgumentException("Invalid DEK-Info IV: " + dekInfo);
+        }
+
+        final char[] password = password(pem.getType());
+        try {
+            final byte[] kek = evpBytesToKey(password, Arrays.copyOf(iv, 8), encryption.keyLength);
+            return encryption.decrypt(kek, iv, pem.getData());
+        } catch (GeneralSecurityException e) {
+            throw new InvalidPasswordException(String.format("Cannot decrypt '%s', invalid password or corrupt key", pem.getType()), e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * Asks the {@link DecodeOptions#getPasswordCallback()} of the running decode
+     * for the password.  Callers clear the array once done with it.
+     */
+    static char[] password(final String type) {
+        final Supplier<char[]> callback = DecodeOptions.current().getPasswordCallback();
+        final char[] password = callback != null ? callback.get() : null;
+        if (password == null) {
+            throw new InvalidPasswordException(String.format("Cannot decrypt '%s', no password was supplied", type));
+        }
+        return password;
+    }
+
+    /**
+     * Returns the cached KEK for this derivation or computes it.  The array
+     * returned is shared and must not be modified.
+     */
+    static byte[] kek(final Derivation derivation, final Kdf kdf) throws GeneralSecurityException {
+        final CompletableFuture<byte[]> future;
+        final boolean owner;
+        synchronized (KEKS) {
+            final CompletableFuture<byte[]> cached = KEKS.get(derivation);
+            owner = cached == null;
+            future = owner ? new CompletableFuture<>() : cached;
+            if (owner) {
+                KEKS.put(derivation, future);
+                final Iterator<Derivation> eldest = KEKS.keySet().iterator();
+                while (KEKS.size() > CACHE_SIZE) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+
+        if (owner) {
+            try {
+                future.complete(kdf.derive());
+            } catch (Throwable e) {
+                // Errors too, or callers waiting on the future would block forever
+                synchronized (KEKS) {
+                    KEKS.remove(derivation, future);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) throw (GeneralSecurityException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    static int cacheSize() {
+        synchronized (KEKS) {
+            return KEKS.size();
+        }
+    }
+
+    static void clearCache() {
+        synchronized (KEKS) {
+            KEKS.clear();
+        }
+    }
+
+    static byte[] pbkdf2(final String prf, final char[] password, final byte[] salt, final int iterations, final int length)
+            throws GeneralSecurityException {
+        final PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2With" + prf).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] evpBytesToKey(final char[] password, final byte[] salt, final int length) throws GeneralSecurityException {
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        final byte[] bytes = utf8(password);
+        try {
+            final byte[] key = new byte[length];
+            byte[] digest = new byte[0];
+            for (int i = 0; i < length; i += digest.length) {
+                md5.update(digest);
+                md5.update(bytes);
+                md5.update(salt);
+                digest = md5.digest();
+                System.arraycopy(digest, 0, key, i, Math.min(digest.length, length - i));
+            }
+            return key;
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    private static byte[] utf8(final char[] password) {
+        final ByteBuffer encoded = UTF_8.encode(CharBuffer.wrap(password));
+        final byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        Arrays.fill(encoded.array(), (byte) 0);
+        return bytes;
+    }
+
+    private static byte[] hex(final String hex) {
+        if (hex.length() % 2 != 0) throw new IllegalArgumentException("Invalid hex: " + hex);
+
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(hex.charAt(2 * i), 16);
+            final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) throw new IllegalArgumentException("Invalid hex: " + hex);
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    @FunctionalInterface
+    interface Kdf {
+        byte[] derive() throws GeneralSecurityException;
+    }
+
+    /**
+     * A symmetric cipher in CBC mode with PKCS#5 padding
+     */
+    static final class Encryption {
+        private final String algorithm;
+        private final String transformation;
+        private final int keyLength;
+
+        Encryption(final String algorithm, final String transformation, final int keyLength) {
+            this.algorithm = algorithm;
+            this.transformation = transformation;
+            this.keyLength = keyLength;
+        }
+
+        int getKeyLength() {
+            return keyLength;
+        }
+
+        byte[] decrypt(final byte[] kek, final byte[] iv, final byte[] data) throws GeneralSecurityException {
+            final Cipher cipher = Cipher.getInstance(transformation);
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(kek, 0, keyLength, algorithm), new IvParameterSpec(iv));
+            return cipher.doFinal(data);
+        }
+    }
+
+    /**
+     * Identifies a KEK: the function and every input of the derivation,
+     * with the password replaced by its fingerprint
+     */
+    static final class Derivation {
+        private final String function;
+        private final byte[] salt;
+        private final int[] parameters;
+        private final byte[] password;
+        private final int hash;
+
+        Derivation(final String function, final byte[] salt, final char[] password, final int... parameters) throws GeneralSecurityException {
+            this.function = function;
+            this.salt = salt.clone();
+            this.parameters = parameters;
+            this.password = fingerprint(password);
+            this.hash = 31 * (31 * (31 * function.hashCode() + Arrays.hashCode(this.salt)) + Arrays.hashCode(parameters)) + Arrays.hashCode(this.password);
+        }
+
+        private static byte[] fingerprint(final char[] password) throws GeneralSecurityException {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(FINGERPRINT_KEY, "HmacSHA256"));
+            final byte[] bytes = utf8(password);
+            try {
+                return mac.doFinal(bytes);
+            } finally {
+                Arrays.fill(bytes, (byte) 0);
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Derivation)) return false;
+            final Derivation that = (Derivation) o;
+            return function.equals(that.function) && Arrays.equals(salt, that.salt)
+                    && Arrays.equals(parameters, that.parameters) && MessageDigest.isEqual(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
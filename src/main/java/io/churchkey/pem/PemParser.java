@@ -16,14 +16,24 @@
  */
 package io.churchkey.pem;
 
+import io.churchkey.DecodeOptions;
 import io.churchkey.Decoder;
 import io.churchkey.Key;
 import io.churchkey.util.Pem;
 import io.churchkey.util.Utils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 public class PemParser implements Key.Format.Parser {
 
@@ -34,6 +44,21 @@ public class PemParser implements Key.Format.Parser {
         return decoder.decode(bytes);
     }
 
+    @Override
+    public Key decode(final ByteBuffer buffer) {
+        return decoder.decode(buffer);
+    }
+
+    @Override
+    public List<Key> decodeSet(final byte[] bytes) {
+        return decoder.decodeSet(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public List<Key> decodeSet(final ByteBuffer buffer) {
+        return decoder.decodeSet(buffer);
+    }
+
     @Override
     public byte[] encode(final Key key) {
         switch (key.getType()) {
@@ -50,9 +75,35 @@ public class PemParser implements Key.Format.Parser {
         }
     }
 
+    @Override
+    public void encode(final Key key, final OutputStream out) throws IOException {
+        switch (key.getType()) {
+            case PUBLIC: {
+                BeginPublicKey.encode(key, out);
+                return;
+            }
+            case PRIVATE: {
+                BeginPrivateKey.encode(key, out);
+                return;
+            }
+            default:
+                // Let encode(Key) report the unsupported type
+                out.write(encode(key));
+        }
+    }
+
 
     public static class PemDecoder implements Decoder {
 
+        private static final byte[] DASHES = "-----".getBytes(US_ASCII);
+        private static final byte[] BEGIN_ENCRYPTED = "-----BEGIN ENCRYPTED ".getBytes(US_ASCII);
+        private static final byte[] PROC_TYPE = "Proc-Type:".getBytes(US_ASCII);
+
+        /**
+         * Bundles with at least this many blocks are decoded in parallel
+         */
+        private static final int PARALLEL_THRESHOLD = 32;
+
         private final Map<String, Function<byte[], Key>> converters = new HashMap<>();
 
         {
@@ -62,6 +113,9 @@ public class PemParser implements Key.Format.Parser {
             converters.put("RSA PUBLIC KEY", BeginRsaPublicKey::decode);
             converters.put("DSA PRIVATE KEY", BeginDsaPrivateKey::decode);
             converters.put("EC PRIVATE KEY", BeginEcPrivateKey::decode);
+            converters.put("ENCRYPTED PRIVATE KEY", BeginEncryptedPrivateKey::decode);
+            converters.put("CERTIFICATE", BeginCertificate::decode);
+            converters.put("X509 CERTIFICATE", BeginCertificate::decode);
 //            converters.put("EC PUBLIC KEY", BeginEcPublicKey::decode);
         }
 
@@ -71,17 +125,130 @@ public class PemParser implements Key.Format.Parser {
 
         @Override
         public Key decode(final byte[] key) {
-            if (!Utils.startsWith("-----", key)) return null;
+            if (!Utils.startsWith(key, DASHES)) return decodeFirst(ByteBuffer.wrap(key));
 
-            final Pem pem = Pem.parse(key);
+            return decode(Pem.parse(key));
+        }
 
+        /**
+         * Decodes the PEM directly from the buffer without first copying it to a byte array
+         */
+        public Key decode(final ByteBuffer key) {
+            if (!Utils.startsWith(key, DASHES)) return decodeFirst(key);
+
+            return decode(Pem.parse(key));
+        }
+
+        /**
+         * The first block of a bundle whose blocks are preceded by text
+         */
+        private Key decodeFirst(final ByteBuffer bundle) {
+            final List<ByteBuffer> blocks = Pem.blocks(bundle);
+            return blocks.isEmpty() ? null : decode(Pem.parse(blocks.get(0)));
+        }
+
+        /**
+         * Decodes every block of a PEM bundle, in the order of the blocks.
+         *
+         * The block boundaries are found in one scan of the bytes, text
+         * between blocks is ignored and each block is parsed in place.
+         * Large bundles, such as trust stores with thousands of entries,
+         * are decoded in parallel on the {@link java.util.concurrent.ForkJoinPool#commonPool() common pool}
+         * with the {@link DecodeOptions} of the calling thread.  So are
+         * bundles holding any encrypted key, where deriving each key
+         * encryption key dwarfs the cost of spreading the work.
+         *
+         * Blocks of a type no key can be decoded from, CRLs or certificate
+         * requests for example, are skipped.  Certificates yield their
+         * public key.  A bundle holding only such blocks is
+         * reported as unsupported.
+         *
+         * @return the keys or null if the bytes hold no PEM block
+         */
+        public List<Key> decodeSet(final ByteBuffer bundle) {
+            final List<ByteBuffer> blocks = Pem.blocks(bundle);
+            if (blocks.isEmpty()) return null;
+            DecodeOptions.current().checkKeys(blocks.size());
+
+            final List<Key> decoded;
+            if (blocks.size() < PARALLEL_THRESHOLD && (blocks.size() == 1 || !anyEncrypted(blocks))) {
+                decoded = new ArrayList<>(blocks.size());
+                for (final ByteBuffer block : blocks) {
+                    decoded.add(decodeBlock(block));
+                }
+            } else {
+                final DecodeOptions options = DecodeOptions.current();
+                decoded = blocks.parallelStream()
+                        .map(block -> options.within(() -> decodeBlock(block)))
+                        .collect(Collectors.toList());
+            }
+
+            final List<Key> keys = new ArrayList<>(decoded.size());
+            for (final Key key : decoded) {
+                if (key != null) keys.add(key);
+            }
+
+            if (keys.isEmpty()) {
+                throw new UnsupportedOperationException(String.format("Unsupported PEM format '%s'", Pem.parse(blocks.get(0)).getType()));
+            }
+
+            return keys;
+        }
+
+        /**
+         * Decodes a single PEM block the way {@link #decodeSet(ByteBuffer)}
+         * decodes each block of a bundle
+         *
+         * @return the key or null if the block is of a type that holds no key
+         */
+        public Key decodeBlock(final ByteBuffer block) {
+            final Pem pem = Pem.parse(block);
+            final Function<byte[], Key> converter = converters.get(pem.getType());
+            return converter != null ? convert(pem, converter) : null;
+        }
+
+        private Key decode(final Pem pem) {
             final Function<byte[], Key> converter = converters.get(pem.getType());
 
             if (converter == null) {
                 throw new UnsupportedOperationException(String.format("Unsupported PEM format '%s'", pem.getType()));
             }
 
-            return converter.apply(pem.getData());
+            return convert(pem, converter);
+        }
+
+        /**
+         * Decrypts the data first if the PEM has OpenSSL's legacy encryption headers
+         */
+        private static Key convert(final Pem pem, final Function<byte[], Key> converter) {
+            if (!Pbe.isEncrypted(pem)) return converter.apply(pem.getData());
+
+            final byte[] decrypted = Pbe.decrypt(pem);
+            try {
+                return converter.apply(decrypted);
+            } finally {
+                Arrays.fill(decrypted, (byte) 0);
+            }
+        }
+
+        /**
+         * Looks at the BEGIN line and the line after it, where PKCS#8 and
+         * legacy encryption respectively show, without parsing the blocks
+         */
+        private static boolean anyEncrypted(final List<ByteBuffer> blocks) {
+            for (final ByteBuffer block : blocks) {
+                if (Utils.startsWith(block, BEGIN_ENCRYPTED)) return true;
+
+                int lineEnd = block.position();
+                while (lineEnd < block.limit() && block.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+
+                final ByteBuffer second = block.duplicate();
+                second.position(Math.min(lineEnd + 1, block.limit()));
+                if (Utils.startsWith(second, PROC_TYPE)) return true;
+            }
+            return false;
         }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * The scrypt key derivation function of RFC 7914, which the JDK does not
+ * provide.  Used by PKCS#8 files encrypted with {@code openssl pkcs8 -scrypt}.
+ */
+final class Scrypt {
+
+    private Scrypt() {
+    }
+
+    /**
+     * @param n the CPU/memory cost, a power of 2 greater than 1
+     * @param r the block size
+     * @param p the parallelization
+     */
+    static byte[] derive(final char[] password, final byte[] salt, final int n, final int r, final int p, final int length)
+            throws GeneralSecurityException {
+
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new GeneralSecurityException("Invalid scrypt cost parameter, not a power of 2: " + n);
+        }
+        if (r < 1 || p < 1 || 32L * r * n > Integer.MAX_VALUE || 128L * r * p > Integer.MAX_VALUE) {
+            throw new GeneralSecurityException(String.format("Unsupported scrypt parameters N=%s r=%s p=%s", n, r, p));
+        }
+
+        final byte[] b = Pbe.pbkdf2("HmacSHA256", password, salt, 1, p * 128 * r);
+
+        final int[] x = new int[32 * r];
+        final int[] y = new int[32 * r];
+        final int[] v = new int[32 * r * n];
+        for (int i = 0; i < p; i++) {
+            romix(b, i * 128 * r, r, n, x, y, v);
+        }
+
+        return Pbe.pbkdf2("HmacSHA256", password, b, 1, length);
+    }
+
+    /**
+     * The bytes derive allocates for these parameters, checked against
+     * {@link io.churchkey.DecodeOptions#getMaximumScryptMemory()} before deriving
+     */
+    static long memory(final int n, final int r, final int p) {
+        return 128L * Math.max(r, 0) * ((long) Math.max(n, 0) + Math.max(p, 0));
+    }
+
+    /**
+     * Each of the p lanes runs BlockMix over 2 * r blocks 2 * N times, so the
+     * work of derive grows with N * r * p.  Checked against
+     * {@link io.churchkey.DecodeOptions#getMaximumScryptCost()} before deriving.
+     */
+    static long cost(final int n, final int r, final int p) {
+        return (long) Math.max(n, 0) * Math.max(r, 0) * Math.max(p, 0);
+    }
+
+    private static void romix(final byte[] b, final int offset, final int r, final int n, int[] x, int[] y, final int[] v) {
+        final int words = 32 * r;
+
+        for (int i = 0; i < words; i++) {
+            final int o = offset + i * 4;
+            x[i] = (b[o] & 0xFF) | (b[o + 1] & 0xFF) << 8 | (b[o + 2] & 0xFF) << 16 | (b[o + 3] & 0xFF) << 24;
+        }
+
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(x, 0, v, i * words, words);
+            blockMix(x, y, r);
+            final int[] swap = x;
+            x = y;
+            y = swap;
+        }
+
+        for (int i = 0; i < n; i++) {
+            final int j = x[(2 * r - 1) * 16] & (n - 1);
+            for (int k = 0; k < words; k++) {
+                x[k] ^= v[j * words + k];
+            }
+            blockMix(x, y, r);
+            final int[] swap = x;
+            x = y;
+            y = swap;
+        }
+
+        for (int i = 0; i < words; i++) {
+            final int o = offset + i * 4;
+            b[o] = (byte) x[i];
+            b[o + 1] = (byte) (x[i] >>> 8);
+            b[o + 2] = (byte) (x[i] >>> 16);
+            b[o + 3] = (byte) (x[i] >>> 24);
+        }
+    }
+
+    /**
+     * Mixes the 2r 64 byte blocks of b into y, even blocks first then odd ones
+     */
+    private static void blockMix(final int[] b, final int[] y, final int r) {
+        final int[] x = new int[16];
+        System.arraycopy(b, (2 * r - 1) * 16, x, 0, 16);
+
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++) {
+                x[k] ^= b[i * 16 + k];
+            }
+            salsa8(x);
+            System.arraycopy(x, 0, y, (i / 2 + (i % 2) * r) * 16, 16);
+        }
+    }
+
+    private static void salsa8(final int[] b) {
+        final int[] x = b.clone();
+
+        for (int i = 0; i < 8; i += 2) {
+            x[4] ^= Integer.rotateLeft(x[0] + x[12], 7);
+            x[8] ^= Integer.rotateLeft(x[4] + x[0], 9);
+            x[12] ^= Integer.rotateLeft(x[8] + x[4], 13);
+            x[0] ^= Integer.rotateLeft(x[12] + x[8], 18);
+            x[9] ^= Integer.rotateLeft(x[5] + x[1], 7);
+            x[13] ^= Integer.rotateLeft(x[9] + x[5], 9);
+            x[1] ^= Integer.rotateLeft(x[13] + x[9], 13);
+            x[5] ^= Integer.rotateLeft(x[1] + x[13], 18);
+            x[14] ^= Integer.rotateLeft(x[10] + x[6], 7);
+            x[2] ^= Integer.rotateLeft(x[14] + x[10], 9);
+            x[6] ^= Integer.rotateLeft(x[2] + x[14], 13);
+            x[10] ^= Integer.rotateLeft(x[6] + x[2], 18);
+            x[3] ^= Integer.rotateLeft(x[15] + x[11], 7);
+            x[7] ^= Integer.rotateLeft(x[3] + x[15], 9);
+            x[11] ^= Integer.rotateLeft(x[7] + x[3], 13);
+            x[15] ^= Integer.rotateLeft(x[11] + x[7], 18);
+            x[1] ^= Integer.rotateLeft(x[0] + x[3], 7);
+            x[2] ^= Integer.rotateLeft(x[1] + x[0], 9);
+            x[3] ^= Integer.rotateLeft(x[2] + x[1], 13);
+            x[0] ^= Integer.rotateLeft(x[3] + x[2], 18);
+            x[6] ^= Integer.rotateLeft(x[5] + x[4], 7);
+            x[7] ^= Integer.rotateLeft(x[6] + x[5], 9);
+            x[4] ^= Integer.rotateLeft(x[7] + x[6], 13);
+            x[5] ^= Integer.rotateLeft(x[4] + x[7], 18);
+            x[11] ^= Integer.rotateLeft(x[10] + x[9], 7);
+            x[8] ^= Integer.rotateLeft(x[11] + x[10], 9);
+            x[9] ^= Integer.rotateLeft(x[8] + x[11], 13);
+            x[10] ^= Integer.rotateLeft(x[9] + x[8], 18);
+            x[12] ^= Integer.rotateLeft(x[15] + x[14], 7);
+            x[13] ^= Integer.rotateLeft(x[12] + x[15], 9);
+            x[14] ^= Integer.rotateLeft(x[13] + x[12], 13);
+            x[15] ^= Integer.rotateLeft(x[14] + x[13], 18);
+        }
+
+        for (int i = 0; i < 16; i++) {
+            b[i] += x[i];
+        }
+    }
+}
@@ -24,6 +24,7 @@ import io.churchkey.ec.EcPoints;
 import io.churchkey.ec.Ecdsa;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
@@ -95,6 +96,14 @@ public class OpenSSHPrivateKey {
     }
 
     public static byte[] encode(final Key key) {
+        return toPem(key).format().getBytes();
+    }
+
+    public static void encode(final Key key, final OutputStream out) throws IOException {
+        toPem(key).writeTo(out);
+    }
+
+    private static Pem toPem(final Key key) {
         byte[] result;
         try {
             final KeyOutput out = new KeyOutput();
@@ -117,8 +126,7 @@ public class OpenSSHPrivateKey {
                 .type("OPENSSH PRIVATE KEY")
                 .wrap(70)
                 .data(bytes)
-                .format()
-                .getBytes();
+                .build();
     }
 
     private static byte[] pad(final byte[] bytes) {
@@ -15,6 +15,7 @@
  */
 package io.churchkey.ssh;
 
+import io.churchkey.DecodeOptions;
 import io.churchkey.Key;
 import io.churchkey.dsa.Dsa;
 import io.churchkey.ec.Curve;
@@ -27,6 +28,7 @@ import io.churchkey.util.Utils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
@@ -43,22 +45,34 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
 public class OpenSSHPublicKey implements Key.Format.Parser {
 
+    private static final byte[] SSH = "ssh-".getBytes(US_ASCII);
+    private static final byte[] ECDSA = "ecdsa-".getBytes(US_ASCII);
+    private static final byte[] SSH_RSA = "ssh-rsa".getBytes(US_ASCII);
+    private static final byte[] SSH_DSS = "ssh-dss".getBytes(US_ASCII);
+
 
     @Override
     public List<Key> decodeSet(final byte[] bytes) {
-        if (!Utils.startsWith("ssh-", bytes) && !Utils.startsWith("ecdsa-", bytes)) return null;
-        return Stream.of(new String(bytes).split("\n"))
+        if (!Utils.startsWith(bytes, SSH) && !Utils.startsWith(bytes, ECDSA)) return null;
+        final List<String> lines = Stream.of(new String(bytes).split("\n"))
                 .map(String::trim)
                 .filter(s -> s.startsWith("ssh-") || s.startsWith("ecdsa-"))
+                .collect(Collectors.toList());
+
+        DecodeOptions.current().checkKeys(lines.size());
+
+        return lines.stream()
                 .map(s -> decode(s.getBytes()))
                 .collect(Collectors.toList());
     }
 
     @Override
     public Key decode(final byte[] bytes) {
-        if (!Utils.startsWith("ssh-", bytes) && !Utils.startsWith("ecdsa-", bytes)) return null;
+        if (!Utils.startsWith(bytes, SSH) && !Utils.startsWith(bytes, ECDSA)) return null;
         try {
 
             final String[] parts = new String(bytes, StandardCharsets.UTF_8).split(" +");
@@ -67,7 +81,7 @@ public class OpenSSHPublicKey implements Key.Format.Parser {
 
             final Map<String, String> attributes = new HashMap<>();
 
-            if (parts.length == 3) {
+            if (parts.length == 3 && DecodeOptions.current().isAttributes()) {
                 attributes.put("Comment", parts[2].trim());
             }
 
@@ -99,57 +113,75 @@ public class OpenSSHPublicKey implements Key.Format.Parser {
     }
 
     public byte[] encode(final Key key) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            encode(key, bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode key", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the "algorithm base64 comment" line straight to the stream
+     */
+    public void encode(final Key key, final OutputStream out) throws IOException {
         final java.security.Key publicKey = key.getKey();
 
-        final String comment;
-        if (key.getAttributes().containsKey("Comment")) {
-            comment = " " + key.getAttribute("Comment");
-        } else {
-            comment = "";
-        }
+        final byte[] algorithm;
+        final byte[] encodedKey;
 
-        try {
-            if (publicKey instanceof RSAPublicKey) {
+        if (publicKey instanceof RSAPublicKey) {
 
-                final RSAPublicKey rsaPublicKey = (RSAPublicKey) publicKey;
-                final String encodedKey = OpenSSHParser.base64(RsaPublic.write(rsaPublicKey));
-                return String.format("ssh-rsa %s%s%n", encodedKey, comment).getBytes();
+            algorithm = SSH_RSA;
+            encodedKey = RsaPublic.write((RSAPublicKey) publicKey);
 
-            } else if (publicKey instanceof DSAPublicKey) {
+        } else if (publicKey instanceof DSAPublicKey) {
 
-                final DSAPublicKey dSAPublicKey = (DSAPublicKey) publicKey;
-                final String encodedKey = OpenSSHParser.base64(DsaPublic.write(dSAPublicKey));
-                return String.format("ssh-dss %s%s%n", encodedKey, comment).getBytes();
+            algorithm = SSH_DSS;
+            encodedKey = DsaPublic.write((DSAPublicKey) publicKey);
 
-            } else if (publicKey instanceof ECPublicKey) {
+        } else if (publicKey instanceof ECPublicKey) {
 
-                final ECPublicKey ecPublicKey = (ECPublicKey) publicKey;
-                final String curveName = EcPublic.curveName(ecPublicKey.getParams());
-                final String encodedKey = OpenSSHParser.base64(EcPublic.write(ecPublicKey, curveName));
-                return String.format("ecdsa-sha2-%s %s%s%n", curveName, encodedKey, comment).getBytes();
+            final ECPublicKey ecPublicKey = (ECPublicKey) publicKey;
+            final String curveName = EcPublic.curveName(ecPublicKey.getParams());
+            algorithm = ("ecdsa-sha2-" + curveName).getBytes(US_ASCII);
+            encodedKey = EcPublic.write(ecPublicKey, curveName);
 
-            }
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to encode key", e);
+        } else {
+            throw new UnsupportedOperationException("PublicKey type unsupported: " + publicKey.getClass().getName());
         }
 
-        throw new UnsupportedOperationException("PublicKey type unsupported: " + publicKey.getClass().getName());
+        out.write(algorithm);
+        out.write(' ');
+        out.write(Base64.getEncoder().encode(encodedKey));
 
+        if (key.getAttributes().containsKey("Comment")) {
+            out.write(' ');
+            out.write(key.getAttribute("Comment").getBytes(StandardCharsets.UTF_8));
+        }
+
+        out.write(System.lineSeparator().getBytes(US_ASCII));
     }
 
     @Override
     public byte[] encodeSet(final List<Key> keys) {
         final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        for (final Key key : keys) {
-            try {
-                bytes.write(encode(key));
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
+        try {
+            encodeSet(keys, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return bytes.toByteArray();
     }
 
+    @Override
+    public void encodeSet(final List<Key> keys, final OutputStream out) throws IOException {
+        for (final Key key : keys) {
+            encode(key, out);
+        }
+    }
+
     /**
      * Order determined by https://tools.ietf.org/html/rfc4253#section-6.6
      *
@@ -16,12 +16,15 @@
  */
 package io.churchkey.ssh;
 
+import io.churchkey.DecodeOptions;
 import io.churchkey.Key;
 import io.churchkey.util.Pem;
 import io.churchkey.util.Utils;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.security.PublicKey;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
@@ -31,15 +34,25 @@ import static io.churchkey.Key.Algorithm.DSA;
 import static io.churchkey.Key.Algorithm.EC;
 import static io.churchkey.Key.Algorithm.RSA;
 import static io.churchkey.Key.Type.PUBLIC;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 public class SSH2Parser implements Key.Format.Parser {
 
+    private static final byte[] BEGIN = "---- BEGIN SSH2 PUBLIC KEY ----".getBytes(US_ASCII);
+
     @Override
     public Key decode(final byte[] bytes) {
-        if (!Utils.startsWith("---- BEGIN SSH2 PUBLIC KEY ----", bytes)) return null;
+        return decode(ByteBuffer.wrap(bytes));
+    }
 
-        final Pem pem = Pem.parse(bytes);
+    @Override
+    public Key decode(final ByteBuffer buffer) {
+        if (!Utils.startsWith(buffer, BEGIN)) return null;
+
+        return decode(Pem.parse(buffer, DecodeOptions.current().isAttributes()));
+    }
 
+    private Key decode(final Pem pem) {
         try {
             final KeyInput reader = new KeyInput(pem.getData());
 
@@ -70,6 +83,15 @@ public class SSH2Parser implements Key.Format.Parser {
 
     @Override
     public byte[] encode(final Key key) {
+        return toPem(key).format().getBytes();
+    }
+
+    @Override
+    public void encode(final Key key, final OutputStream out) throws IOException {
+        toPem(key).writeTo(out);
+    }
+
+    private Pem toPem(final Key key) {
         if (!PUBLIC.equals(key.getType())) {
             throw new UnsupportedOperationException("SSH2 encoding only supported for public keys");
         }
@@ -97,8 +119,7 @@ public class SSH2Parser implements Key.Format.Parser {
                 .wrap(70)
                 .header("---- BEGIN SSH2 PUBLIC KEY ----")
                 .footer("---- END SSH2 PUBLIC KEY ----")
-                .format()
-                .getBytes();
+                .build();
     }
 
 }
@@ -15,6 +15,8 @@
  */
 package io.churchkey.util;
 
+import java.nio.ByteBuffer;
+
 public class Bytes {
     private Bytes() {
     }
@@ -41,4 +43,21 @@ public class Bytes {
             bytes = trim;
         }
     }
+
+    /**
+     * Returns the remaining bytes of the buffer without changing its position.
+     *
+     * When the buffer is a heap buffer that spans its entire backing array,
+     * that array is returned directly and no copy is made.
+     */
+    public static byte[] toArray(final ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.limit() == buffer.array().length) {
+            return buffer.array();
+        }
+
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
 }
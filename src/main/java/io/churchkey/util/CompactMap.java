@@ -0,0 +1,203 @@
+/*
+ * Copyright 2021 Tomitribe and community
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.churchkey.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A String map backed by a single array of alternating keys and values.
+ * Meant for the handful of attributes a key carries, where a linear scan
+ * is as fast as hashing and a HashMap's table and entry objects would
+ * outweigh the data itself.
+ *
+ * Attributes are rarely modified after decoding, so the array is never
+ * written to.  The first modification copies the entries into a HashMap
+ * that holds them from then on.
+ */
+public final class CompactMap extends AbstractMap<String, String> {
+
+    private static final String[] NONE = new String[0];
+
+    private final String[] entries;
+
+    /**
+     * Null until the first modification
+     */
+    private HashMap<String, String> copy;
+
+    private CompactMap(final String[] entries) {
+        this.entries = entries;
+    }
+
+    public static CompactMap of(final Map<String, String> map) {
+        if (map.isEmpty()) return new CompactMap(NONE);
+
+        final String[] entries = new String[map.size() * 2];
+        int i = 0;
+        for (final Map.Entry<String, String> entry : map.entrySet()) {
+            entries[i++] = entry.getKey();
+            entries[i++] = entry.getValue();
+        }
+        return new CompactMap(entries);
+    }
+
+    @Override
+    public int size() {
+        return copy != null ? copy.size() : entries.length / 2;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return copy != null ? copy.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(final Object key) {
+        if (copy != null) return copy.get(key);
+        final int index = indexOf(key);
+        return index >= 0 ? entries[index + 1] : null;
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        return writable().put(key, value);
+    }
+
+    @Override
+    public String remove(final Object key) {
+        return writable().remove(key);
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ? extends String> map) {
+        writable().putAll(map);
+    }
+
+    @Override
+    public void clear() {
+        writable().clear();
+    }
+
+    private HashMap<String, String> writable() {
+        if (copy == null) {
+            copy = new HashMap<>(entries.length);
+            for (int i = 0; i < entries.length; i += 2) {
+                copy.put(entries[i], entries[i + 1]);
+            }
+        }
+        return copy;
+    }
+
+    private int indexOf(final Object key) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i] == null ? key == null : entries[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (copy != null) return copy.entrySet();
+
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                if (copy != null) return copy.entrySet().iterator();
+
+                return new Iterator<Entry<String, String>>() {
+                    private int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < entries.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (i >= entries.length) throw new NoSuchElementException();
+                        final Entry<String, String> entry = new Attribute(entries[i], entries[i + 1]);
+                        i += 2;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (i == 0) throw new IllegalStateException();
+                        writable().remove(entries[i - 2]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * An entry whose {@link #setValue(Object)} writes through to the map
+     */
+    private final class Attribute implements Entry<String, String> {
+        private final String key;
+        private String value;
+
+        Attribute(final String key, final String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String setValue(final String value) {
+            this.value = value;
+            return writable().put(key, value);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry)) return false;
+            final Entry<?, ?> that = (Entry<?, ?>) o;
+            return Objects.equals(key, that.getKey()) && Objects.equals(value, that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -16,22 +16,38 @@
 package io.churchkey.util;
 
 import lombok.Data;
-import org.tomitribe.util.PrintString;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @Data
 public class Pem {
 
+    private static final byte[] ATTRIBUTE_START = ": \"".getBytes(UTF_8);
+    private static final byte[] BEGIN = "-----BEGIN ".getBytes(UTF_8);
+    private static final byte[] END = "-----END ".getBytes(UTF_8);
+
+    private static final byte[] BASE64 = new byte[256];
+
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        final byte[] alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(UTF_8);
+        for (int i = 0; i < alphabet.length; i++) {
+            BASE64[alphabet[i]] = (byte) i;
+        }
+    }
+
     private final String header;
     private final String footer;
     private final String type;
@@ -49,48 +65,291 @@ public class Pem {
     }
 
     public static Pem parse(final byte[] bytes) {
-        return parse(new String(bytes));
+        return parse(ByteBuffer.wrap(bytes));
     }
 
     public static Pem parse(final String string) {
-        final List<String> lines = new ArrayList<>(Arrays.asList(string.split("[\r\n]")));
+        return parse(string.getBytes(UTF_8));
+    }
 
-        final String header = lines.remove(0);
-        final String footer = lines.remove(lines.size() - 1);
+    /**
+     * Parses the remaining bytes of the buffer in a single pass.  Header,
+     * footer and attribute lines are located by scanning the buffer and only
+     * those lines are turned into Strings.  The base64 body is decoded
+     * straight from the buffer into an array of the exact decoded size, so
+     * no intermediate String, line list or byte[] copy of the file is made.
+     *
+     * Attribute lines are {@code Name: value} pairs as in RFC 1421 and
+     * RFC 4716, surrounding quotes are removed from the value and a value
+     * ending with a backslash continues on the next line.
+     *
+     * The buffer's position and limit are left untouched.
+     */
+    public static Pem parse(final ByteBuffer buffer) {
+        return parse(buffer, true);
+    }
 
-        final Iterator<String> iterator = lines.listIterator();
+    /**
+     * @param attributes false to skip over any attribute lines without turning them into Strings
+     */
+    public static Pem parse(final ByteBuffer buffer, final boolean attributes) {
+        final int start = buffer.position();
+        int end = buffer.limit();
 
-        final Map<String, String> attributes = new HashMap<>();
+        // Ignore trailing line breaks so the footer is the last non-empty line
+        while (end > start && isLineBreak(buffer.get(end - 1))) {
+            end--;
+        }
 
-        String line = "";
-        // Read the attributes
-        while (iterator.hasNext()) {
-            line = iterator.next();
-            if (!line.contains(":")) break;
+        final int headerEnd = lineEnd(buffer, start, end);
+        final String header = string(buffer, start, headerEnd);
 
-            final int colon = line.indexOf(":");
-            final String name = line.substring(0, colon).trim();
-            final String value = line.substring(colon + 1).trim().replaceAll("^\"|\"$", "");
-            attributes.put(name, value);
+        int footerStart = end;
+        while (footerStart > headerEnd && !isLineBreak(buffer.get(footerStart - 1))) {
+            footerStart--;
         }
+        final String footer = string(buffer, footerStart, end);
 
-        // Read the base64 encoded data
-        final StringBuilder encoded = new StringBuilder();
-        encoded.append(line);
-        final int wrap = line.length();
+        final Map<String, String> map = new HashMap<>();
 
-        while (iterator.hasNext()) {
-            encoded.append(iterator.next());
+        // Read the attributes
+        int line = nextLine(buffer, headerEnd, footerStart);
+        int lineEnd = lineEnd(buffer, line, footerStart);
+        while (line < footerStart) {
+            final int colon = indexOf(buffer, line, lineEnd, (byte) ':');
+            if (colon < 0) break;
+
+            final String name = attributes ? string(buffer, line, colon).trim() : null;
+            String value = attributes ? string(buffer, colon + 1, lineEnd).trim() : null;
+
+            // RFC 4716 continuation lines
+            while (lastSignificant(buffer, line, lineEnd) == '\\') {
+                line = nextLine(buffer, lineEnd, footerStart);
+                lineEnd = lineEnd(buffer, line, footerStart);
+                if (attributes) {
+                    value = value.substring(0, value.length() - 1) + string(buffer, line, lineEnd).trim();
+                }
+            }
+
+            if (attributes) {
+                map.put(name, unquote(value));
+            }
+
+            line = nextLine(buffer, lineEnd, footerStart);
+            lineEnd = lineEnd(buffer, line, footerStart);
         }
 
-        final byte[] data = Base64.getDecoder().decode(encoded.toString());
+        final int wrap = lineEnd - line;
+
+        final byte[] data = decode(buffer, line, footerStart);
 
         final String type = getType(header);
-        return new Pem(header, footer, type, data, wrap, attributes);
+        return new Pem(header, footer, type, data, wrap, map);
+    }
+
+    /**
+     * Finds every BEGIN to END block of a PEM bundle in a single scan of
+     * the buffer.  Text outside of the blocks, such as the "Bag Attributes"
+     * OpenSSL writes before each entry of an exported PKCS#12 file, is
+     * skipped.
+     *
+     * Each block is returned as a view of the buffer, from the start of its
+     * BEGIN line to the end of its END line, ready for {@link #parse(ByteBuffer)}.
+     * The buffer's position and limit are left untouched.
+     *
+     * @throws IllegalArgumentException if the last block has no END line
+     */
+    public static List<ByteBuffer> blocks(final ByteBuffer buffer) {
+        final List<ByteBuffer> blocks = new ArrayList<>();
+        final int limit = buffer.limit();
+
+        int begin = -1;
+        int line = buffer.position();
+        while (line < limit) {
+            final int lineEnd = lineEnd(buffer, line, limit);
+
+            if (begin < 0) {
+                if (startsWith(buffer, line, lineEnd, BEGIN)) begin = line;
+            } else if (startsWith(buffer, line, lineEnd, END)) {
+                final ByteBuffer block = buffer.duplicate();
+                block.limit(lineEnd);
+                block.position(begin);
+                blocks.add(block);
+                begin = -1;
+            }
+
+            line = nextLine(buffer, lineEnd, limit);
+        }
+
+        if (begin >= 0) {
+            throw new IllegalArgumentException("Unterminated PEM block at offset " + (begin - buffer.position()));
+        }
+
+        return blocks;
+    }
+
+    private static boolean startsWith(final ByteBuffer buffer, final int start, final int end, final byte[] prefix) {
+        if (end - start < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) return false;
+        }
+
+        return true;
     }
 
+    private static boolean isLineBreak(final byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static int lineEnd(final ByteBuffer buffer, int i, final int end) {
+        while (i < end && !isLineBreak(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextLine(final ByteBuffer buffer, int i, final int end) {
+        while (i < end && isLineBreak(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(final ByteBuffer buffer, final int start, final int end, final byte b) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    private static int lastSignificant(final ByteBuffer buffer, final int start, int end) {
+        while (end > start && isWhitespace(buffer.get(end - 1))) {
+            end--;
+        }
+        return end > start ? buffer.get(end - 1) : -1;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Lines are nearly always ASCII, those are copied char by char and
+     * anything else, such as a UTF-8 comment, is decoded as UTF-8
+     */
+    private static String string(final ByteBuffer buffer, final int start, final int end) {
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (b < 0) {
+                final ByteBuffer line = buffer.duplicate();
+                line.limit(end);
+                line.position(start);
+                return UTF_8.decode(line).toString();
+            }
+            chars[i - start] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Removes one leading and one trailing double quote, if present
+     */
+    private static String unquote(final String value) {
+        final int start = value.startsWith("\"") ? 1 : 0;
+        final int end = value.length() > start && value.endsWith("\"") ? value.length() - 1 : value.length();
+        return value.substring(start, end);
+    }
+
+    /**
+     * Decodes the base64 characters between start and end.  Line breaks,
+     * spaces and tabs are skipped; any other character outside of the
+     * base64 alphabet, wrong padding or data after the padding is rejected
+     * as {@link java.util.Base64#getDecoder()} would.  The characters are
+     * counted first so the result is allocated once, with its exact size.
+     */
+    private static byte[] decode(final ByteBuffer buffer, final int start, final int end) {
+        int stop = end;
+        int chars = 0;
+        int padding = 0;
+        for (int i = start; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (b == '\r' || b == '\n' || b == ' ' || b == '\t') continue;
+
+            if (b == '=') {
+                if (padding++ == 0) stop = i;
+            } else if (BASE64[b & 0xFF] < 0) {
+                throw new IllegalArgumentException(String.format("Invalid base64: illegal character 0x%02x at offset %d", b & 0xFF, i - buffer.position()));
+            } else if (padding > 0) {
+                throw new IllegalArgumentException("Invalid base64: data after padding at offset " + (i - buffer.position()));
+            } else {
+                chars++;
+            }
+        }
+
+        if (chars % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64: last unit does not have enough bits at offset " + (stop - buffer.position()));
+        }
+
+        if (padding > 2 || padding > 0 && (chars + padding) % 4 != 0) {
+            throw new IllegalArgumentException("Invalid base64: wrong padding at offset " + (stop - buffer.position()));
+        }
+
+        final byte[] data = new byte[chars / 4 * 3 + Math.max(0, chars % 4 - 1)];
+
+        int bits = 0;
+        int count = 0;
+        int o = 0;
+        for (int i = start; i < stop; i++) {
+            final int value = BASE64[buffer.get(i) & 0xFF];
+            if (value < 0) continue;
+
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                data[o++] = (byte) (bits >> 16);
+                data[o++] = (byte) (bits >> 8);
+                data[o++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+
+        if (count == 2) {
+            data[o] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            data[o++] = (byte) (bits >> 10);
+            data[o] = (byte) (bits >> 2);
+        }
+
+        return data;
+    }
+
+    /**
+     * Same result as the regular expression {@code ^-+ ?BEGIN | ?-+$}
+     * removing the dashes around the type of a PEM or SSH2 header
+     */
     private static String getType(final String header) {
-        return header.replaceAll("^-+ ?BEGIN | ?-+$", "");
+        final int length = header.length();
+
+        int start = 0;
+        while (start < length && header.charAt(start) == '-') {
+            start++;
+        }
+        if (start > 0) {
+            final int begin = start < length && header.charAt(start) == ' ' ? start + 1 : start;
+            start = header.startsWith("BEGIN ", begin) ? begin + 6 : 0;
+        }
+
+        int end = length;
+        while (end > start && header.charAt(end - 1) == '-') {
+            end--;
+        }
+        if (end < length && end > start && header.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        return header.substring(start, end);
     }
 
     public static Builder builder() {
@@ -98,28 +357,43 @@ public class Pem {
     }
 
     public String format() {
-        final PrintString out = new PrintString();
-        out.println(header);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Writes the same text as {@link #format()} straight to the stream.  The
+     * data is base64 encoded once and written out line by line from that array.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        final byte[] newline = System.lineSeparator().getBytes(UTF_8);
+
+        out.write(header.getBytes(UTF_8));
+        out.write(newline);
 
         for (final Map.Entry<String, String> entry : attributes.entrySet()) {
-            out.printf("%s: \"%s\"%n", entry.getKey(), entry.getValue());
+            out.write(entry.getKey().getBytes(UTF_8));
+            out.write(ATTRIBUTE_START);
+            out.write(entry.getValue().getBytes(UTF_8));
+            out.write('"');
+            out.write(newline);
         }
 
-        {// Write the data as base64 encoded
-            final ByteArrayInputStream encoded = new ByteArrayInputStream(Base64.getEncoder().encode(data));
-            try {
-                final byte[] line = new byte[wrap];
-                int length;
-                while ((length = encoded.read(line)) != -1) {
-                    out.println(new String(line, 0, length));
-                }
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
+        // Write the data as base64 encoded
+        final byte[] encoded = Base64.getEncoder().encode(data);
+        final int lineLength = wrap > 0 ? wrap : encoded.length;
+        for (int i = 0; i < encoded.length; i += lineLength) {
+            out.write(encoded, i, Math.min(lineLength, encoded.length - i));
+            out.write(newline);
         }
 
-        out.println(footer);
-        return out.toString();
+        out.write(footer.getBytes(UTF_8));
+        out.write(newline);
     }
 
     public static class Builder {
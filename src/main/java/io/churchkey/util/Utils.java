@@ -17,6 +17,7 @@
 package io.churchkey.util;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 
 public class Utils {
@@ -40,6 +41,20 @@ public class Utils {
         return true;
     }
 
+    /**
+     * Compares the bytes starting at the buffer's position without moving it
+     */
+    public static boolean startsWith(final ByteBuffer buffer, final byte[] prefixBytes) {
+        if (buffer.remaining() < prefixBytes.length) return false;
+
+        final int position = buffer.position();
+        for (int i = 0; i < prefixBytes.length; i++) {
+            if (prefixBytes[i] != buffer.get(position + i)) return false;
+        }
+
+        return true;
+    }
+
     public static byte[] base64Decode(final String s) throws UnsupportedEncodingException {
         return Base64.getDecoder().decode(s.getBytes("UTF-8"));
     }
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DecodeOptionsTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+    private final Resource sets = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt");
+
+    @Test
+    public void defaults() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPublicOpenSsh.txt");
+        assertEquals(Keys.decode(bytes).getAttributes(), Keys.decode(bytes, DecodeOptions.DEFAULTS).getAttributes());
+        assertSame(DecodeOptions.DEFAULTS, DecodeOptions.current());
+    }
+
+    @Test
+    public void attributes() throws Exception {
+        final DecodeOptions options = DecodeOptions.builder().attributes(false).build();
+
+        assertTrue(Keys.decode(resource.bytes("rsaPublicOpenSsh.txt")).getAttributes().containsKey("Comment"));
+        assertTrue(Keys.decode(resource.bytes("rsaPublicOpenSsh.txt"), options).getAttributes().isEmpty());
+
+        assertTrue(Keys.decode(resource.bytes("rsaPublicSsh2.txt")).getAttributes().containsKey("Comment"));
+        assertTrue(Keys.decode(resource.bytes("rsaPublicSsh2.txt"), options).getAttributes().isEmpty());
+
+        for (final Key key : Keys.decodeSet(sets.bytes("allKeyTypesJwks.jwk"), options)) {
+            assertTrue(key.getAttributes().isEmpty());
+        }
+
+        // options only apply to the call they were passed to
+        assertSame(DecodeOptions.DEFAULTS, DecodeOptions.current());
+    }
+
+    @Test
+    public void derivePublicKey() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs8.pem");
+        final DecodeOptions options = DecodeOptions.builder().derivePublicKey(false).build();
+
+        assertNotNull(Keys.decode(bytes).getPublicKey());
+        assertNull(Keys.decode(bytes, options).getPublicKey());
+    }
+
+    /**
+     * RSA and DSA public keys are derived on demand, not while decoding
+     */
+    @Test
+    public void derivePublicKeyOnDemand() throws Exception {
+        final DecodeOptions options = DecodeOptions.builder().derivePublicKey(false).build();
+
+        for (final String name : new String[]{"rsaPrivatePemPkcs1.pem", "dsaPrivatePemPkcs1.pem", "dsaPrivatePemPkcs8.pem", "dsaPrivateJwk.jwk"}) {
+            final byte[] bytes = resource.bytes(name);
+            final Key key = Keys.decode(bytes);
+            final Key publicKey = key.getPublicKey();
+            assertNotNull(name, publicKey);
+            assertEquals(name, key.getAlgorithm(), publicKey.getAlgorithm());
+            assertEquals(name, key.getSize(), publicKey.getSize());
+            assertNull(name, Keys.decode(bytes, options).getPublicKey());
+        }
+    }
+
+    @Test
+    public void maximumInputSize() throws Exception {
+        final byte[] bytes = resource.bytes("ecPublicPemX509.pem");
+        final DecodeOptions options = DecodeOptions.builder().maximumInputSize(bytes.length - 1).build();
+
+        assertLimit(options.toString(), () -> Keys.decode(bytes, options));
+        assertLimit(options.toString(), () -> Keys.decodeSet(ByteBuffer.wrap(bytes), options));
+
+        final File file = tmp.newFile("key.pem");
+        Files.write(file.toPath(), bytes);
+        assertLimit(options.toString(), () -> Keys.decode(file.toPath(), options));
+
+        final DecodeOptions enough = DecodeOptions.builder().maximumInputSize(bytes.length).build();
+        assertNotNull(Keys.decode(file.toPath(), enough));
+    }
+
+    @Test
+    public void maximumKeys() throws Exception {
+        final byte[] jwks = sets.bytes("allKeyTypesJwks.jwk");
+        final byte[] authorizedKeys = sets.bytes("authorized_keys");
+        final int count = Keys.decodeSet(authorizedKeys).size();
+
+        final DecodeOptions five = DecodeOptions.builder().maximumKeys(5).build();
+        assertLimit("jwks", () -> Keys.decodeSet(jwks, five));
+        assertEquals(6, Keys.decodeSet(jwks, DecodeOptions.builder().maximumKeys(6).build()).size());
+
+        final DecodeOptions fewer = DecodeOptions.builder().maximumKeys(count - 1).build();
+        assertLimit("authorized_keys", () -> Keys.decodeSet(authorizedKeys, fewer));
+
+        final ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        for (final String name : new String[]{"rsaPrivatePemPkcs8.pem", "ecPublicPemX509.pem", "dsaPrivatePemPkcs1.pem"}) {
+            bundle.write(resource.bytes(name));
+        }
+        final byte[] pem = bundle.toByteArray();
+        assertLimit("pem bundle", () -> Keys.decodeSet(pem, DecodeOptions.builder().maximumKeys(2).build()));
+        assertEquals(3, Keys.decodeSet(pem, DecodeOptions.builder().maximumKeys(3).build()).size());
+    }
+
+    @Test
+    public void maximumRsaBits() throws Exception {
+        final DecodeOptions options = DecodeOptions.builder().maximumRsaBits(1000).build();
+
+        for (final String name : new String[]{"rsaPublicPemX509.pem", "rsaPrivatePemPkcs1.pem", "rsaPublicJwk.jwk", "rsaPrivateJwk.jwk", "rsaPublicOpenSsh.txt"}) {
+            final byte[] bytes = resource.bytes(name);
+            assertLimit(name, () -> Keys.decode(bytes, options));
+        }
+
+        // other algorithms are not affected
+        assertNotNull(Keys.decode(resource.bytes("ecPrivateJwk.jwk"), options));
+        assertNotNull(Keys.decode(resource.bytes("rsaPublicPemX509.pem"), DecodeOptions.builder().maximumRsaBits(2048).build()));
+    }
+
+    @Test
+    public void maximumDsaBits() throws Exception {
+        final DecodeOptions options = DecodeOptions.builder().maximumDsaBits(512).build();
+
+        for (final String name : new String[]{"dsaPublicPemX509.pem", "dsaPrivatePemPkcs1.pem", "dsaPublicJwk.jwk", "dsaPrivateJwk.jwk"}) {
+            final byte[] bytes = resource.bytes(name);
+            assertLimit(name, () -> Keys.decode(bytes, options));
+        }
+    }
+
+    @Test
+    public void maximumDerDepth() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs1.pem");
+
+        assertLimit("depth", () -> Keys.decode(bytes, DecodeOptions.builder().maximumDerDepth(0).build()));
+        assertNotNull(Keys.decode(bytes, DecodeOptions.builder().maximumDerDepth(1).build()));
+    }
+
+    @Test
+    public void maximumDerLength() throws Exception {
+        for (final String name : new String[]{"rsaPrivatePemPkcs1.pem", "rsaPrivatePemPkcs8.pem", "ecPrivatePemPkcs1.pem"}) {
+            final byte[] bytes = resource.bytes(name);
+            assertLimit(name, () -> Keys.decode(bytes, DecodeOptions.builder().maximumDerLength(100).build()));
+            assertNotNull(Keys.decode(bytes, DecodeOptions.builder().maximumDerLength(4096).build()));
+        }
+    }
+
+    @Test
+    public void lazyKeysUseTheirOptions() throws Exception {
+        final DecodeOptions options = DecodeOptions.builder().derivePublicKey(false).build();
+        final byte[] bytes = sets.bytes("allKeyTypesJwks.jwk");
+
+        final List<Key> keys;
+        final DecodeOptions previous = DecodeOptions.enter(options);
+        try {
+            keys = Keys.decodeLazySet(bytes);
+        } finally {
+            DecodeOptions.exit(previous);
+        }
+
+        for (final Key key : keys) {
+            if (key.getType() != Key.Type.PRIVATE || key.getAlgorithm() != Key.Algorithm.DSA) continue;
+            assertNull(key.getPublicKey());
+        }
+    }
+
+    private static void assertLimit(final String message, final Decode decode) throws Exception {
+        try {
+            decode.run();
+            fail("DecodeLimitException expected: " + message);
+        } catch (final DecodeLimitException e) {
+            assertTrue(e.getActual() > e.getMaximum());
+        }
+    }
+
+    private interface Decode {
+        Object run() throws Exception;
+    }
+}
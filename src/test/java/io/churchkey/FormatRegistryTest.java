@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+import org.tomitribe.util.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FormatRegistryTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void serviceLoader() throws Exception {
+        final List<FormatProvider> providers = FormatRegistry.getProviders();
+        assertTrue(providers.stream().anyMatch(HexFormatProvider.class::isInstance));
+
+        final byte[] pem = resource.bytes("rsaPublicPemX509.pem");
+        final byte[] hex = ("  hex:" + Hex.toString(pem)).getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(Keys.decode(pem), Keys.decode(hex));
+        assertEquals(Keys.decodeSet(pem), Keys.decodeSet(hex));
+        assertEquals(Keys.decode(pem), Keys.decode(ByteBuffer.wrap(hex)));
+
+        // created once no matter how often the format is seen
+        assertEquals(1, HexFormatProvider.CREATED.get());
+    }
+
+    @Test
+    public void lazyParser() throws Exception {
+        final CountingProvider provider = new CountingProvider(-10, "lazy:");
+        FormatRegistry.register(provider);
+        try {
+            Keys.decode(resource.bytes("ecPublicPemX509.pem"));
+            Keys.decode(resource.bytes("rsaPublicJwk.jwk"));
+            assertEquals(0, provider.created.get());
+
+            final byte[] bytes = "lazy:anything".getBytes(StandardCharsets.US_ASCII);
+            Keys.decode(bytes);
+            Keys.decode(bytes);
+            assertEquals(1, provider.created.get());
+            assertEquals(2, provider.decoded.get());
+        } finally {
+            assertTrue(FormatRegistry.unregister(provider));
+        }
+    }
+
+    @Test
+    public void priority() throws Exception {
+        final byte[] pem = resource.bytes("rsaPublicPemX509.pem");
+
+        final CountingProvider low = new CountingProvider(-1, "-----BEGIN PUBLIC KEY-----");
+        final CountingProvider high = new CountingProvider(5, "-----BEGIN PUBLIC KEY-----");
+        final CountingProvider higher = new CountingProvider(10, "-----BEGIN PUBLIC KEY-----");
+
+        FormatRegistry.register(low);
+        try {
+            // built-in formats win over lower priority providers
+            assertEquals(Key.Format.PEM, Keys.decode(pem).getFormat());
+            assertEquals(0, low.decoded.get());
+
+            FormatRegistry.register(high);
+            FormatRegistry.register(higher);
+
+            final List<FormatProvider> providers = FormatRegistry.getProviders();
+            assertTrue(providers.indexOf(higher) < providers.indexOf(high));
+            assertTrue(providers.indexOf(high) < providers.indexOf(low));
+
+            Keys.decode(pem);
+            assertEquals(1, higher.decoded.get());
+            assertEquals(0, high.decoded.get());
+        } finally {
+            FormatRegistry.unregister(low);
+            FormatRegistry.unregister(high);
+            FormatRegistry.unregister(higher);
+        }
+
+        assertFalse(FormatRegistry.unregister(higher));
+        assertEquals(Key.Format.PEM, Keys.decode(pem).getFormat());
+    }
+
+    @Test
+    public void unknown() throws Exception {
+        assertNull(FormatRegistry.find("hello world".getBytes(), 0));
+        assertNull(FormatRegistry.find(ByteBuffer.wrap("hello world".getBytes()), 0));
+    }
+
+    @Test
+    public void builtinParserCreatedOnce() throws Exception {
+        assertSame(Key.Format.JWK.getParser(), Key.Format.JWK.getParser());
+        assertEquals(Key.Format.PEM.toString(), FormatRegistry.find(resource.bytes("rsaPublicPemX509.pem"), 0).toString());
+    }
+
+    /**
+     * Claims anything starting with the prefix and decodes it as a fixed PEM key
+     */
+    private class CountingProvider implements FormatProvider {
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger decoded = new AtomicInteger();
+        private final int priority;
+        private final byte[] prefix;
+
+        CountingProvider(final int priority, final String prefix) {
+            this.priority = priority;
+            this.prefix = prefix.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public boolean matches(final byte[] bytes, final int offset) {
+            if (bytes.length - offset < prefix.length) return false;
+            for (int i = 0; i < prefix.length; i++) {
+                if (bytes[offset + i] != prefix[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Key.Format.Parser createParser() {
+            created.incrementAndGet();
+            return new Key.Format.Parser() {
+                @Override
+                public Key decode(final byte[] bytes) {
+                    decoded.incrementAndGet();
+                    try {
+                        return Key.Format.PEM.decode(resource.bytes("ecPublicPemX509.pem"));
+                    } catch (final Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                @Override
+                public byte[] encode(final Key key) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
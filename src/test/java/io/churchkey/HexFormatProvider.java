@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.tomitribe.util.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A made up "hex:" format wrapping a hex encoded PEM file.  Installed
+ * through META-INF/services to exercise {@link FormatRegistry} discovery.
+ */
+public class HexFormatProvider implements FormatProvider {
+
+    static final AtomicInteger CREATED = new AtomicInteger();
+
+    private static final byte[] PREFIX = "hex:".getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public boolean matches(final byte[] bytes, final int offset) {
+        if (bytes.length - offset < PREFIX.length) return false;
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (bytes[offset + i] != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Key.Format.Parser createParser() {
+        CREATED.incrementAndGet();
+        return new Key.Format.Parser() {
+            @Override
+            public Key decode(final byte[] bytes) {
+                final String hex = new String(bytes, StandardCharsets.US_ASCII).trim().substring(PREFIX.length);
+                return Keys.decode(Hex.fromString(hex));
+            }
+
+            @Override
+            public byte[] encode(final Key key) {
+                return ("hex:" + Hex.toString(key.encode(Key.Format.PEM))).getBytes(StandardCharsets.US_ASCII);
+            }
+        };
+    }
+}
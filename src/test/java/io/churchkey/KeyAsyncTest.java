@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyAsyncTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @After
+    public void reset() {
+        KeyExecutors.setDefaultExecutor(null);
+    }
+
+    @Test
+    public void decode() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs1.pem");
+        assertEquals(Keys.decode(bytes), Keys.decodeAsync(bytes).get());
+    }
+
+    @Test
+    public void decodeSet() throws Exception {
+        final byte[] bytes = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt").bytes("authorized_keys");
+        final List<Key> keys = Keys.decodeSetAsync(bytes).get();
+        assertEquals(Keys.decodeSet(bytes), keys);
+    }
+
+    @Test
+    public void encode() throws Exception {
+        final Key key = Keys.decode(resource.bytes("ecPrivatePemPkcs8.pem"));
+        assertArrayEquals(key.encode(Key.Format.JWK), key.encodeAsync(Key.Format.JWK).get());
+    }
+
+    @Test
+    public void suppliedExecutor() throws Exception {
+        final AtomicInteger tasks = new AtomicInteger();
+        final Executor executor = command -> {
+            tasks.incrementAndGet();
+            command.run();
+        };
+
+        final Key key = Keys.decodeAsync(resource.bytes("rsaPublicPemX509.pem"), executor).get();
+        key.encodeAsync(Key.Format.OPENSSH, executor).get();
+
+        assertEquals(2, tasks.get());
+    }
+
+    @Test
+    public void defaultExecutor() throws Exception {
+        final Executor executor = KeyExecutors.getDefaultExecutor();
+        assertNotNull(executor);
+        assertSame(executor, KeyExecutors.getDefaultExecutor());
+
+        if (!KeyExecutors.isVirtualThreadsAvailable()) {
+            assertSame(ForkJoinPool.commonPool(), executor);
+        }
+
+        final Executor custom = Runnable::run;
+        KeyExecutors.setDefaultExecutor(custom);
+        assertSame(custom, KeyExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * The options, passed or current at submission, apply on the executor's threads
+     */
+    @Test
+    public void options() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs1.pem");
+        final DecodeOptions options = DecodeOptions.builder().maximumInputSize(bytes.length - 1).build();
+        final Executor thread = command -> new Thread(command).start();
+
+        assertLimit(Keys.decodeAsync(bytes, options));
+        assertLimit(Keys.decodeSetAsync(bytes, options, thread));
+        assertLimit(options.within(() -> Keys.decodeAsync(bytes, thread)));
+        assertLimit(options.within(() -> Keys.decodeSetAsync(bytes, thread)));
+
+        final DecodeOptions noPublicKey = DecodeOptions.builder().derivePublicKey(false).build();
+        assertNull(Keys.decodeAsync(bytes, noPublicKey, thread).get().getPublicKey());
+        assertNull(noPublicKey.within(() -> Keys.decodeAsync(bytes, thread)).get().getPublicKey());
+    }
+
+    private static void assertLimit(final CompletableFuture<?> future) {
+        try {
+            future.join();
+            fail("DecodeLimitException expected");
+        } catch (final CompletionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof DecodeLimitException);
+        }
+    }
+
+    @Test
+    public void failure() throws Exception {
+        try {
+            Keys.decodeAsync("not a key".getBytes()).join();
+            fail("CompletionException should have been thrown");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
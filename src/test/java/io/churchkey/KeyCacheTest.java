@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class KeyCacheTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void hitsAndMisses() throws Exception {
+        final KeyCache cache = KeyCache.builder().build();
+
+        final Key first = cache.decode(resource.bytes("rsaPublicPemX509.pem"));
+        // Same contents, different array
+        final Key second = cache.decode(resource.bytes("rsaPublicPemX509.pem"));
+
+        assertSame(first, second);
+        assertEquals(1, cache.stats().getMissCount());
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(0.5, cache.stats().getHitRate(), 0.0);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void decodeAndDecodeSetAreSeparate() throws Exception {
+        final KeyCache cache = KeyCache.builder().build();
+        final byte[] bytes = resource.bytes("ecPublicOpenSsh.txt");
+
+        final Key key = cache.decode(bytes);
+        final List<Key> keys = cache.decodeSet(bytes);
+
+        assertEquals(1, keys.size());
+        assertEquals(key.getAlgorithm(), keys.get(0).getAlgorithm());
+        assertSame(keys, cache.decodeSet(bytes));
+        assertEquals(2, cache.stats().getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        final KeyCache cache = KeyCache.builder().maximumSize(2).build();
+
+        final Key rsa = cache.decode(resource.bytes("rsaPublicPemX509.pem"));
+        final Key ec = cache.decode(resource.bytes("ecPublicOpenSsh.txt"));
+        // Touch rsa so ec becomes the eldest
+        cache.decode(resource.bytes("rsaPublicPemX509.pem"));
+        cache.decode(resource.bytes("dsaPublicSsh2.txt"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().getEvictionCount());
+        assertSame(rsa, cache.decode(resource.bytes("rsaPublicPemX509.pem")));
+        assertNotSame(ec, cache.decode(resource.bytes("ecPublicOpenSsh.txt")));
+    }
+
+    @Test
+    public void maximumWeight() throws Exception {
+        final byte[] rsa = resource.bytes("rsaPublicPemX509.pem");
+        final byte[] ec = resource.bytes("ecPublicOpenSsh.txt");
+
+        final KeyCache cache = KeyCache.builder().maximumWeight(rsa.length + ec.length - 1).build();
+
+        cache.decode(rsa);
+        assertEquals(rsa.length, cache.weight());
+
+        cache.decode(ec);
+        assertEquals(1, cache.size());
+        assertEquals(ec.length, cache.weight());
+        assertEquals(1, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void failuresAreNotCached() throws Exception {
+        final KeyCache cache = KeyCache.builder().build();
+        final byte[] bytes = "not a key".getBytes();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.decode(bytes);
+                fail("IllegalArgumentException should have been thrown");
+            } catch (IllegalArgumentException expected) {
+                // pass
+            }
+        }
+
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.stats().getMissCount());
+        assertEquals(2, cache.stats().getLoadFailureCount());
+    }
+
+    /**
+     * Many threads asking for the same bytes at once result in a single decode
+     */
+    @Test
+    public void singleFlight() throws Exception {
+        final KeyCache cache = KeyCache.builder().build();
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs1.pem");
+
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Key>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.decode(bytes.clone());
+                }));
+            }
+
+            start.countDown();
+
+            final Key expected = futures.get(0).get();
+            for (final Future<Key> future : futures) {
+                assertSame(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, cache.stats().getMissCount());
+        assertEquals(threads - 1, cache.stats().getHitCount());
+    }
+
+    /**
+     * A key decoded under other options is not handed out
+     */
+    @Test
+    public void decodeOptions() throws Exception {
+        final KeyCache cache = KeyCache.builder().build();
+        final byte[] bytes = resource.bytes("rsaPublicSsh2.txt");
+        final DecodeOptions options = DecodeOptions.builder().attributes(false).build();
+
+        final Key withoutAttributes = options.within(() -> cache.decode(bytes));
+        final Key withAttributes = cache.decode(bytes);
+
+        assertEquals(0, withoutAttributes.getAttributes().size());
+        assertNotSame(withoutAttributes, withAttributes);
+        assertEquals(true, withAttributes.getAttributes().containsKey("Comment"));
+        assertSame(withoutAttributes, options.within(() -> cache.decode(bytes)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void invalidateAll() throws Exception {
+        final KeyCache cache = KeyCache.builder().build();
+        cache.decode(resource.bytes("rsaPublicPemX509.pem"));
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+}
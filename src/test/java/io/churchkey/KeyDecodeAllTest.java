@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyDecodeAllTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "rsaPublicPemX509.pem",
+            "ecPrivatePemPkcs8.pem",
+            "dsaPublicSsh2.txt",
+            "ecPublicOpenSsh.txt",
+            "rsaPrivateJwk.jwk"
+    );
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    /**
+     * A bad input in the middle of the batch fails only its own result
+     * and every result lines up with its input
+     */
+    @Test
+    public void bytes() throws Exception {
+        final List<byte[]> inputs = new ArrayList<>();
+        for (final String name : NAMES) {
+            inputs.add(resource.bytes(name));
+        }
+        inputs.add(2, "not a key".getBytes());
+
+        final List<DecodeResult> results = Keys.decodeAll(inputs);
+
+        assertEquals(inputs.size(), results.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            final DecodeResult result = results.get(i);
+
+            if (i == 2) {
+                assertFalse(result.isSuccess());
+                assertTrue(result.getError() instanceof IllegalArgumentException);
+                assertTrue(result.getKeys().isEmpty());
+                continue;
+            }
+
+            assertTrue(result.isSuccess());
+            assertEncoded(Keys.decode(inputs.get(i)), result.getKey());
+        }
+    }
+
+    @Test
+    public void paths() throws Exception {
+        final List<Path> paths = new ArrayList<>();
+        for (final String name : NAMES) {
+            final Path path = folder.newFile(name).toPath();
+            Files.write(path, resource.bytes(name));
+            paths.add(path);
+        }
+        paths.add(1, folder.getRoot().toPath().resolve("missing.pem"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<DecodeResult> results = Keys.decodeAll(paths.stream(), executor);
+
+            assertEquals(paths.size(), results.size());
+            assertFalse(results.get(1).isSuccess());
+            assertNotNull(results.get(1).getError());
+
+            for (int i = 0; i < paths.size(); i++) {
+                if (i == 1) continue;
+                assertEncoded(Keys.decode(paths.get(i)), results.get(i).getKey());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void keySets() throws Exception {
+        final Resource set = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt");
+        final byte[] authorizedKeys = set.bytes("authorized_keys");
+
+        final List<DecodeResult> results = Keys.decodeAll(Arrays.asList(authorizedKeys, authorizedKeys));
+
+        assertEquals(2, results.size());
+        assertEquals(Keys.decodeSet(authorizedKeys).size(), results.get(0).getKeys().size());
+        assertEquals(Keys.decodeSet(authorizedKeys).size(), results.get(1).getKeys().size());
+    }
+
+    /**
+     * Limits apply to each input of the batch, whether the options are
+     * passed or installed on the calling thread
+     */
+    @Test
+    public void options() throws Exception {
+        final List<byte[]> inputs = new ArrayList<>();
+        final List<Path> paths = new ArrayList<>();
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            inputs.add(bytes);
+            final Path path = folder.getRoot().toPath().resolve(name);
+            Files.write(path, bytes);
+            paths.add(path);
+        }
+
+        final byte[] largest = inputs.stream().max((a, b) -> a.length - b.length).get();
+        final DecodeOptions options = DecodeOptions.builder().maximumInputSize(largest.length - 1).build();
+
+        final List<List<DecodeResult>> batches = Arrays.asList(
+                Keys.decodeAll(inputs, options),
+                Keys.decodeAll(paths.stream(), options),
+                options.within(() -> Keys.decodeAll(inputs)),
+                options.within(() -> Keys.decodeAll(paths.stream())));
+
+        for (final List<DecodeResult> results : batches) {
+            assertEquals(NAMES.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                final boolean tooLarge = inputs.get(i).length > options.getMaximumInputSize();
+                assertEquals(NAMES.get(i), !tooLarge, results.get(i).isSuccess());
+                if (tooLarge) assertTrue(results.get(i).getError() instanceof DecodeLimitException);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedResultHasNoKey() throws Exception {
+        Keys.decodeAll(Arrays.asList("not a key".getBytes())).get(0).getKey();
+    }
+
+    private static void assertEncoded(final Key expected, final Key actual) {
+        assertEquals(expected.getFormat(), actual.getFormat());
+        assertEquals(expected.getType(), actual.getType());
+        assertArrayEquals(expected.getKey().getEncoded(), actual.getKey().getEncoded());
+    }
+}
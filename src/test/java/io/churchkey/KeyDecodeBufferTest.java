@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class KeyDecodeBufferTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "rsaPublicPemX509.pem",
+            "rsaPrivatePemPkcs1.pem",
+            "ecPrivatePemPkcs8.pem",
+            "dsaPrivatePemPkcs8.pem",
+            "rsaPublicSsh2.txt",
+            "dsaPublicSsh2.txt",
+            "ecPublicOpenSsh.txt",
+            "rsaPrivateOpenSsh.txt",
+            "rsaPrivateJwk.jwk",
+            "ecPublicJwk.jwk"
+    );
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void heapBuffer() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            assertSame(name, Keys.decode(bytes), Keys.decode(ByteBuffer.wrap(bytes)));
+        }
+    }
+
+    @Test
+    public void directBuffer() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+
+            assertSame(name, Keys.decode(bytes), Keys.decode(buffer));
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    /**
+     * Only the bytes between position and limit are decoded
+     * and neither is modified
+     */
+    @Test
+    public void slicedBuffer() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            final byte[] padded = new byte[bytes.length + 20];
+            Arrays.fill(padded, (byte) 'x');
+            System.arraycopy(bytes, 0, padded, 10, bytes.length);
+
+            final ByteBuffer buffer = ByteBuffer.wrap(padded, 10, bytes.length);
+
+            assertSame(name, Keys.decode(bytes), Keys.decode(buffer));
+            assertEquals(10, buffer.position());
+            assertEquals(10 + bytes.length, buffer.limit());
+        }
+    }
+
+    @Test
+    public void readOnlyBuffer() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            assertSame(name, Keys.decode(bytes), Keys.decode(ByteBuffer.wrap(bytes).asReadOnlyBuffer()));
+        }
+    }
+
+    @Test
+    public void path() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            final File file = folder.newFile(name);
+            Files.write(file.toPath(), bytes);
+
+            assertSame(name, Keys.decode(bytes), Keys.decode(file.toPath()));
+            assertSame(name, Keys.decode(bytes), Keys.decode(file));
+        }
+    }
+
+    /**
+     * Files over the threshold are memory-mapped
+     */
+    @Test
+    public void mappedPath() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            final byte[] padded = new byte[Keys.MAP_THRESHOLD + bytes.length];
+            Arrays.fill(padded, (byte) '\n');
+            System.arraycopy(bytes, 0, padded, Keys.MAP_THRESHOLD, bytes.length);
+
+            final File file = folder.newFile(name);
+            Files.write(file.toPath(), padded);
+
+            assertSame(name, Keys.decode(bytes), Keys.decode(file.toPath()));
+        }
+    }
+
+    @Test
+    public void inputStream() throws Exception {
+        for (final String name : NAMES) {
+            final byte[] bytes = resource.bytes(name);
+            assertSame(name, Keys.decode(bytes), Keys.decode(new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    @Test
+    public void decodeSet() throws Exception {
+        final Resource set = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt");
+
+        for (final String name : Arrays.asList("authorized_keys", "allKeyTypesJwks.jwk")) {
+            final byte[] bytes = set.bytes(name);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+
+            final List<Key> expected = Keys.decodeSet(bytes);
+            final List<Key> actual = Keys.decodeSet(buffer);
+
+            assertEquals(name, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(name, expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown() throws Exception {
+        Keys.decode(ByteBuffer.wrap("hello world".getBytes()));
+    }
+
+    private static void assertSame(final String name, final Key expected, final Key actual) {
+        assertEquals(name, expected.getFormat(), actual.getFormat());
+        assertEquals(name, expected.getType(), actual.getType());
+        assertEquals(name, expected.getAlgorithm(), actual.getAlgorithm());
+        assertEquals(name, expected.getAttributes(), actual.getAttributes());
+        assertArrayEquals(name, expected.getKey().getEncoded(), actual.getKey().getEncoded());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class KeyEncodeToTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void publicKeys() throws Exception {
+        for (final String name : Arrays.asList("rsaPublicPemX509.pem", "dsaPublicPemX509.pem", "ecPublicPemX509.pem")) {
+            final Key key = Keys.decode(resource.bytes(name));
+            for (final Key.Format format : Key.Format.values()) {
+                assertEncodeTo(name + " " + format, key, format);
+            }
+        }
+    }
+
+    @Test
+    public void privateKeys() throws Exception {
+        for (final String name : Arrays.asList("rsaPrivatePemPkcs8.pem", "dsaPrivatePemPkcs8.pem", "ecPrivatePemPkcs8.pem")) {
+            final Key key = Keys.decode(resource.bytes(name));
+            assertEncodeTo(name + " PEM", key, Key.Format.PEM);
+            assertEncodeTo(name + " JWK", key, Key.Format.JWK);
+
+            // OpenSSH private keys carry a random check int, compare the decoded keys instead
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            key.encodeTo(Key.Format.OPENSSH, out);
+            assertEquals(name, key, Keys.decode(out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void comment() throws Exception {
+        final Key key = Keys.decode(resource.bytes("rsaPublicOpenSsh.txt"));
+        key.getAttributes().put("Comment", "jane@example.com");
+        assertEncodeTo("comment", key, Key.Format.OPENSSH);
+    }
+
+    @Test
+    public void byteBuffer() throws Exception {
+        final Key key = Keys.decode(resource.bytes("ecPublicPemX509.pem"));
+        final byte[] expected = key.encode(Key.Format.PEM);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(expected.length + 10);
+        buffer.position(5);
+        key.encodeTo(Key.Format.PEM, buffer);
+
+        assertEquals(5 + expected.length, buffer.position());
+
+        final byte[] actual = new byte[expected.length];
+        buffer.flip();
+        buffer.position(5);
+        buffer.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void byteBufferOverflow() throws Exception {
+        final Key key = Keys.decode(resource.bytes("rsaPublicPemX509.pem"));
+        try {
+            key.encodeTo(Key.Format.PEM, ByteBuffer.allocate(16));
+            fail("BufferOverflowException expected");
+        } catch (final BufferOverflowException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void encodeSet() throws Exception {
+        final byte[] bytes = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt").bytes("authorized_keys");
+        final List<Key> keys = Keys.decodeSet(bytes);
+
+        for (final Key.Format format : Arrays.asList(Key.Format.OPENSSH, Key.Format.JWK)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Keys.encodeSet(keys, format, out);
+
+            assertArrayEquals(format.toString(), format.encodeSet(keys), out.toByteArray());
+            assertEquals(format.toString(), keys, Keys.decodeSet(out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void encodeSetSingle() throws Exception {
+        final List<Key> keys = Keys.decodeSet(resource.bytes("rsaPublicJwk.jwk"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Keys.encodeSet(keys, Key.Format.JWK, out);
+        assertArrayEquals(Key.Format.JWK.encodeSet(keys), out.toByteArray());
+    }
+
+    private static void assertEncodeTo(final String message, final Key key, final Key.Format format) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        key.encodeTo(format, out);
+        assertArrayEquals(message, key.encode(format), out.toByteArray());
+    }
+}
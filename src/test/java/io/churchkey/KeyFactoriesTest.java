@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyFactory;
+import java.security.Security;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class KeyFactoriesTest {
+
+    @Before
+    @After
+    public void reset() {
+        for (final Key.Algorithm algorithm : new Key.Algorithm[]{Key.Algorithm.RSA, Key.Algorithm.DSA, Key.Algorithm.EC}) {
+            KeyFactories.setProvider(algorithm, (java.security.Provider) null);
+        }
+    }
+
+    /**
+     * A factory put back by one thread is taken by the next,
+     * as with a new virtual thread per task
+     */
+    @Test
+    public void sharedAcrossThreads() throws Exception {
+        final KeyFactory factory = KeyFactories.apply(Key.Algorithm.RSA, f -> f);
+        assertEquals("RSA", factory.getAlgorithm());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final KeyFactory other = executor.submit(() -> KeyFactories.apply(Key.Algorithm.RSA, f -> f)).get();
+            assertSame(factory, other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Threads building keys at the same time never share a factory
+     */
+    @Test
+    public void exclusiveWhileInUse() throws Exception {
+        final KeyFactory other = KeyFactories.apply(Key.Algorithm.DSA, outer -> {
+            final KeyFactory inner = KeyFactories.apply(Key.Algorithm.DSA, f -> f);
+            assertNotSame(outer, inner);
+            return inner;
+        });
+        assertEquals("DSA", other.getAlgorithm());
+
+        assertNotSame(KeyFactories.get(Key.Algorithm.DSA), KeyFactories.get(Key.Algorithm.DSA));
+    }
+
+    @Test
+    public void provider() throws Exception {
+        final KeyFactory before = KeyFactories.apply(Key.Algorithm.EC, f -> f);
+
+        KeyFactories.setProvider(Key.Algorithm.EC, "SunEC");
+
+        final KeyFactory after = KeyFactories.apply(Key.Algorithm.EC, f -> f);
+        assertNotSame(before, after);
+        assertEquals("SunEC", after.getProvider().getName());
+        assertSame(Security.getProvider("SunEC"), KeyFactories.getProvider(Key.Algorithm.EC));
+
+        // Keys are built with the selected provider
+        final Key key = Keys.decode(new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt").bytes("ecPublicOpenSsh.txt"));
+        assertEquals(Key.Algorithm.EC, key.getAlgorithm());
+
+        KeyFactories.setProvider(Key.Algorithm.EC, (java.security.Provider) null);
+        assertNull(KeyFactories.getProvider(Key.Algorithm.EC));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownProvider() throws Exception {
+        KeyFactories.setProvider(Key.Algorithm.RSA, "NoSuchProvider");
+    }
+
+    @Test(expected = UnsupportedAlgorithmException.class)
+    public void providerWithoutAlgorithm() throws Exception {
+        KeyFactories.setProvider(Key.Algorithm.RSA, "SunEC");
+        KeyFactories.get(Key.Algorithm.RSA);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void oct() throws Exception {
+        KeyFactories.get(Key.Algorithm.OCT);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KeyFormatDetectorTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void detect() throws Exception {
+        assertFormat(Key.Format.JWK, "rsaPublicJwk.jwk");
+        assertFormat(Key.Format.JWK, "ecPrivateJwk.jwk");
+        assertFormat(Key.Format.OPENSSH, "rsaPublicOpenSsh.txt");
+        assertFormat(Key.Format.OPENSSH, "ecPublicOpenSsh.txt");
+        assertFormat(Key.Format.OPENSSH, "rsaPrivateOpenSsh.txt");
+        assertFormat(Key.Format.SSH2, "dsaPublicSsh2.txt");
+        assertFormat(Key.Format.PEM, "rsaPublicPemX509.pem");
+        assertFormat(Key.Format.PEM, "ecPrivatePemPkcs1.pem");
+    }
+
+    @Test
+    public void base64Jwk() throws Exception {
+        final byte[] jwk = resource.bytes("rsaPublicJwk.jwk");
+        final byte[] encoded = Base64.getUrlEncoder().encode(jwk);
+
+        assertEquals(Key.Format.JWK, KeyFormatDetector.detect(encoded));
+        assertEquals(Key.Format.JWK, Keys.decode(encoded).getFormat());
+    }
+
+    @Test
+    public void leadingWhitespaceAndBom() throws Exception {
+        final byte[] pem = resource.bytes("rsaPublicPemX509.pem");
+        final byte[] padded = new byte[pem.length + 6];
+        padded[0] = (byte) 0xEF;
+        padded[1] = (byte) 0xBB;
+        padded[2] = (byte) 0xBF;
+        padded[3] = '\r';
+        padded[4] = '\n';
+        padded[5] = ' ';
+        System.arraycopy(pem, 0, padded, 6, pem.length);
+
+        assertEquals(6, KeyFormatDetector.start(padded));
+        assertEquals(Key.Format.PEM, KeyFormatDetector.detect(padded));
+
+        final Key key = Keys.decode(padded);
+        assertEquals(Key.Algorithm.RSA, key.getAlgorithm());
+        assertEquals(Key.Type.PUBLIC, key.getType());
+    }
+
+    @Test
+    public void unknown() throws Exception {
+        assertNull(KeyFormatDetector.detect(new byte[0]));
+        assertNull(KeyFormatDetector.detect("   ".getBytes()));
+        assertNull(KeyFormatDetector.detect("hello world".getBytes()));
+        assertNull(KeyFormatDetector.detect("ecology".getBytes()));
+        assertNull(KeyFormatDetector.detect("sshd".getBytes()));
+        assertNull(KeyFormatDetector.detect("--- BEGIN".getBytes()));
+        assertNull(KeyFormatDetector.detect("e+AAAA".getBytes()));
+        assertNull(KeyFormatDetector.detect("e/AAAA".getBytes()));
+        assertNull(KeyFormatDetector.detect(ByteBuffer.wrap("e/AAAA".getBytes())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeUnknown() throws Exception {
+        Keys.decode("hello world".getBytes());
+    }
+
+    @Test
+    public void decodeWithFormat() throws Exception {
+        final Key key = Keys.decode(resource.bytes("ecPublicOpenSsh.txt"), Key.Format.OPENSSH);
+        assertEquals(Key.Algorithm.EC, key.getAlgorithm());
+        assertEquals(Key.Format.OPENSSH, key.getFormat());
+
+        assertEquals(1, Keys.decodeSet(resource.bytes("ecPublicOpenSsh.txt"), Key.Format.OPENSSH).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeWithWrongFormat() throws Exception {
+        Keys.decode(resource.bytes("ecPublicOpenSsh.txt"), Key.Format.PEM);
+    }
+
+    private void assertFormat(final Key.Format expected, final String name) throws Exception {
+        final byte[] bytes = resource.bytes(name);
+        assertEquals(name, expected, KeyFormatDetector.detect(bytes));
+        assertEquals(name, expected, Keys.decode(bytes).getFormat());
+    }
+}
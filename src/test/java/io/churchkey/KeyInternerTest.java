@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class KeyInternerTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    /**
+     * The same key decoded from every format is equal
+     */
+    @Test
+    public void equalAcrossFormats() throws Exception {
+        final Key pem = Keys.decode(resource.bytes("rsaPublicPemX509.pem"));
+        final Key jwk = Keys.decode(resource.bytes("rsaPublicJwk.jwk"));
+        final Key openssh = Keys.decode(pem.encode(Key.Format.OPENSSH));
+        final Key ssh2 = Keys.decode(pem.encode(Key.Format.SSH2));
+
+        for (final Key key : new Key[]{jwk, openssh, ssh2}) {
+            assertNotEquals(pem.getFormat(), key.getFormat());
+            assertEquals(pem, key);
+            assertEquals(pem.hashCode(), key.hashCode());
+            assertArrayEquals(pem.getFingerprint(), key.getFingerprint());
+        }
+    }
+
+    @Test
+    public void notEqual() throws Exception {
+        final Key privateKey = Keys.decode(resource.bytes("rsaPrivateJwk.jwk"));
+        final Key publicKey = Keys.decode(resource.bytes("rsaPublicPemX509.pem"));
+
+        assertNotEquals(privateKey, publicKey);
+        assertEquals(publicKey, privateKey.getPublicKey());
+        assertNotEquals(publicKey, Keys.decode(resource.bytes("rsaPublicPemPkcs1.pem")));
+        assertNotEquals(publicKey, Keys.decode(resource.bytes("ecPublicOpenSsh.txt")));
+    }
+
+    @Test
+    public void lazyKeysCompareByKeyMaterial() throws Exception {
+        final Resource set = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt");
+        final byte[] bytes = set.bytes("allKeyTypesJwks.jwk");
+
+        assertEquals(Keys.decodeSet(bytes), Keys.decodeLazySet(bytes));
+    }
+
+    @Test
+    public void strong() throws Exception {
+        assertInterns(KeyInterner.strong());
+    }
+
+    @Test
+    public void weak() throws Exception {
+        assertInterns(KeyInterner.weak());
+    }
+
+    private void assertInterns(final KeyInterner interner) throws Exception {
+        final Key pem = Keys.decode(resource.bytes("rsaPublicPemX509.pem"));
+        final Key jwk = Keys.decode(resource.bytes("rsaPublicJwk.jwk"));
+        final Key ec = Keys.decode(resource.bytes("ecPublicOpenSsh.txt"));
+
+        assertNotSame(pem, jwk);
+        assertSame(pem, interner.intern(pem));
+        assertSame(pem, interner.intern(jwk));
+        assertSame(ec, interner.intern(ec));
+        assertEquals(2, interner.size());
+
+        interner.clear();
+        assertEquals(0, interner.size());
+        assertSame(jwk, interner.intern(jwk));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class KeyStreamTest {
+
+    private static final String CRL = "" +
+            "-----BEGIN X509 CRL-----\n" +
+            "MAA=\n" +
+            "-----END X509 CRL-----\n";
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+    private final Resource sets = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt");
+
+    /**
+     * Every supported layout mixed into one stream, with comments
+     * and unrelated text in between
+     */
+    @Test
+    public void mixed() throws Exception {
+        final List<Key> expected = new ArrayList<>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write("# exported keys\n\n".getBytes(UTF_8));
+
+        for (final String name : new String[]{"rsaPublicPemX509.pem", "ecPrivatePemPkcs1.pem", "rsaPrivateOpenSsh.txt", "dsaPublicSsh2.txt"}) {
+            final byte[] bytes = resource.bytes(name);
+            expected.add(Keys.decode(bytes));
+            out.write(bytes);
+            out.write("\nsome text that is not a key\n".getBytes(UTF_8));
+        }
+
+        final byte[] authorizedKeys = sets.bytes("authorized_keys");
+        expected.addAll(Keys.decodeSet(authorizedKeys));
+        out.write(authorizedKeys);
+        out.write('\n');
+
+        // Newline delimited JWK
+        for (final String name : new String[]{"rsaPublicJwk.jwk", "ecPrivateJwk.jwk"}) {
+            final Key key = Keys.decode(resource.bytes(name));
+            expected.add(key);
+            out.write(key.toJwk().replace("\n", "").getBytes(UTF_8));
+            out.write('\n');
+        }
+
+        // Pretty printed JWKS
+        final byte[] jwks = sets.bytes("allKeyTypesJwks.jwk");
+        expected.addAll(Keys.decodeSet(jwks));
+        out.write(jwks);
+
+        final List<Key> actual;
+        try (Stream<Key> stream = Keys.stream(new ByteArrayInputStream(out.toByteArray()))) {
+            actual = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+            assertEquals(expected.get(i).getFormat(), actual.get(i).getFormat());
+            assertEquals(expected.get(i).getAttributes(), actual.get(i).getAttributes());
+        }
+    }
+
+    /**
+     * Nothing past the keys consumed is read
+     */
+    @Test
+    public void lazy() throws Exception {
+        final InputStream first = new ByteArrayInputStream(resource.bytes("rsaPublicOpenSsh.txt"));
+        final InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("read too far");
+            }
+        };
+
+        final Key key = Keys.stream(new SequenceInputStream(first, failing)).findFirst().get();
+        assertEquals(Key.Algorithm.RSA, key.getAlgorithm());
+    }
+
+    @Test
+    public void empty() throws Exception {
+        final KeyReader reader = new KeyReader(new ByteArrayInputStream("\n# nothing\n".getBytes(UTF_8)));
+        assertFalse(reader.hasNext());
+    }
+
+    /**
+     * Blocks holding no key are skipped as in a PEM bundle
+     */
+    @Test
+    public void unsupportedBlocks() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(CRL.getBytes(UTF_8));
+        out.write(resource.bytes("rsaPublicPemX509.pem"));
+        out.write(CRL.getBytes(UTF_8));
+        final byte[] bytes = out.toByteArray();
+
+        final List<Key> keys = Keys.stream(new ByteArrayInputStream(bytes)).collect(Collectors.toList());
+        assertEquals(Keys.decodeSet(bytes), keys);
+        assertEquals(1, keys.size());
+
+        try {
+            Keys.stream(new ByteArrayInputStream(CRL.getBytes(UTF_8))).count();
+            fail("UnsupportedOperationException expected");
+        } catch (final UnsupportedOperationException e) {
+            assertEquals("Unsupported PEM format 'X509 CRL'", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unterminatedBlock() throws Exception {
+        final String pem = new String(resource.bytes("rsaPublicPemX509.pem"), UTF_8);
+        Keys.stream(new ByteArrayInputStream(pem.substring(0, pem.indexOf("-----END")).getBytes(UTF_8))).count();
+    }
+}
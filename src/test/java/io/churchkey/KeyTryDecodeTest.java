@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyTryDecodeTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void success() throws Exception {
+        final File[] files = new File(KeyDecodeTest.class.getClassLoader().getResource("KeyDecodeTest").toURI()).listFiles();
+        assertNotNull(files);
+
+        for (final File file : files) {
+            if (file.getName().equals("data.txt") || file.length() == 0) continue;
+
+            final byte[] bytes = resource.bytes(file.getName());
+            final DecodeResult result = Keys.tryDecode(bytes);
+
+            final Key expected;
+            try {
+                expected = Keys.decode(bytes);
+            } catch (final RuntimeException e) {
+                // well formed, but not supported by the parser
+                assertEquals(file.getName(), DecodeResult.Reason.INVALID_KEY, result.getReason());
+                assertEquals(file.getName(), e.getClass(), result.getError().getClass());
+                continue;
+            }
+
+            assertTrue(file.getName() + " " + result, result.isSuccess());
+            assertEquals(file.getName(), DecodeResult.Status.SUCCESS, result.getStatus());
+            assertEquals(file.getName(), DecodeResult.Reason.NONE, result.getReason());
+            assertEquals(file.getName(), expected, result.getKey());
+        }
+    }
+
+    @Test
+    public void decodeSet() throws Exception {
+        final byte[] bytes = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt").bytes("authorized_keys");
+        final DecodeResult result = Keys.tryDecodeSet(bytes);
+        assertTrue(result.isSuccess());
+        assertEquals(Keys.decodeSet(bytes), result.getKeys());
+    }
+
+    @Test
+    public void empty() throws Exception {
+        assertNotAKey(DecodeResult.Reason.EMPTY, 0, "");
+        assertNotAKey(DecodeResult.Reason.EMPTY, 3, " \r\n");
+    }
+
+    @Test
+    public void notAKey() throws Exception {
+        assertNotAKey(DecodeResult.Reason.UNKNOWN_FORMAT, 0, "hello world");
+        assertNotAKey(DecodeResult.Reason.UNKNOWN_FORMAT, 2, "  ecology");
+        assertNotAKey(DecodeResult.Reason.UNKNOWN_FORMAT, 0, "sshd");
+    }
+
+    @Test
+    public void pem() throws Exception {
+        assertMalformed(DecodeResult.Reason.INVALID_HEADER, 0, "-----BEGIN PUBLIC KEY\nAAAA\n-----END PUBLIC KEY-----\n");
+        assertMalformed(DecodeResult.Reason.INVALID_HEADER, 0, "-----END PUBLIC KEY-----\n");
+        assertMalformed(DecodeResult.Reason.MISSING_FOOTER, 32, "-----BEGIN PUBLIC KEY-----\nAAAA\n");
+        assertMalformed(DecodeResult.Reason.INVALID_BASE64, 29, "-----BEGIN PUBLIC KEY-----\nAA$A\n-----END PUBLIC KEY-----\n");
+        assertMalformed(DecodeResult.Reason.TRUNCATED, 27, "-----BEGIN PUBLIC KEY-----\n-----END PUBLIC KEY-----\n");
+    }
+
+    @Test
+    public void ssh2() throws Exception {
+        assertMalformed(DecodeResult.Reason.MISSING_FOOTER, 41, "---- BEGIN SSH2 PUBLIC KEY ----\nAAAAB3Nz\n");
+    }
+
+    @Test
+    public void openssh() throws Exception {
+        assertMalformed(DecodeResult.Reason.TRUNCATED, 7, "ssh-rsa");
+        assertMalformed(DecodeResult.Reason.INVALID_BASE64, 10, "ssh-rsa AA!A comment");
+    }
+
+    @Test
+    public void jwk() throws Exception {
+        assertMalformed(DecodeResult.Reason.TRUNCATED, 24, "{\"kty\": \"RSA\", \"n\": \"}{\"");
+        assertMalformed(DecodeResult.Reason.INVALID_BASE64, 2, "ey.J");
+    }
+
+    @Test
+    public void invalidKey() throws Exception {
+        final DecodeResult result = Keys.tryDecode("-----BEGIN PUBLIC KEY-----\nAAAA\n-----END PUBLIC KEY-----\n".getBytes());
+        assertEquals(DecodeResult.Status.MALFORMED, result.getStatus());
+        assertEquals(DecodeResult.Reason.INVALID_KEY, result.getReason());
+        assertEquals(0, result.getOffset());
+        assertNotNull(result.getError());
+    }
+
+    @Test
+    public void byteBuffer() throws Exception {
+        final byte[] pem = resource.bytes("ecPublicPemX509.pem");
+        final ByteBuffer buffer = ByteBuffer.allocate(pem.length + 4);
+        buffer.put("xxxx".getBytes());
+        buffer.put(pem);
+        buffer.flip();
+        buffer.position(4);
+
+        final DecodeResult result = Keys.tryDecode(buffer);
+        assertTrue(result.isSuccess());
+        assertEquals(Keys.decode(pem), result.getKey());
+        assertEquals(4, buffer.position());
+
+        final ByteBuffer broken = ByteBuffer.wrap("xx  ssh-rsa".getBytes());
+        broken.position(2);
+        final DecodeResult failed = Keys.tryDecodeSet(broken);
+        assertEquals(DecodeResult.Reason.TRUNCATED, failed.getReason());
+        assertEquals(9, failed.getOffset());
+    }
+
+    @Test
+    public void decodeAll() throws Exception {
+        final List<DecodeResult> results = Keys.decodeAll(java.util.Arrays.asList("nope".getBytes(), resource.bytes("rsaPublicOpenSsh.txt")));
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(DecodeResult.Status.MALFORMED, results.get(0).getStatus());
+        assertTrue(results.get(1).isSuccess());
+    }
+
+    private static void assertNotAKey(final DecodeResult.Reason reason, final int offset, final String input) {
+        final DecodeResult result = Keys.tryDecode(input.getBytes(StandardCharsets.UTF_8));
+        assertEquals(input, DecodeResult.Status.NOT_A_KEY, result.getStatus());
+        assertEquals(input, reason, result.getReason());
+        assertEquals(input, offset, result.getOffset());
+        assertNull(result.getError());
+        assertTrue(result.getKeys().isEmpty());
+    }
+
+    private static void assertMalformed(final DecodeResult.Reason reason, final int offset, final String input) {
+        final DecodeResult result = Keys.tryDecode(input.getBytes(StandardCharsets.UTF_8));
+        assertEquals(input, DecodeResult.Status.MALFORMED, result.getStatus());
+        assertEquals(input, reason, result.getReason());
+        assertEquals(input, offset, result.getOffset());
+        assertNull(result.getError());
+    }
+}
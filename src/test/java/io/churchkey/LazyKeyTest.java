@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey;
+
+import org.junit.Test;
+
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LazyKeyTest {
+
+    private final Resource resource = new Resource(KeyDecodeSetTest.class, "KeyDecodeSetTest/data.txt");
+
+    /**
+     * Metadata and attributes match a regular decode without building any key
+     */
+    @Test
+    public void metadataWithoutDecoding() throws Exception {
+        final byte[] bytes = resource.bytes("allKeyTypesJwks.jwk");
+
+        final List<Key> expected = Keys.decodeSet(bytes);
+        final List<Key> actual = Keys.decodeLazySet(bytes);
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            final LazyKey lazy = (LazyKey) actual.get(i);
+
+            assertEquals(expected.get(i).getType(), lazy.getType());
+            assertEquals(expected.get(i).getAlgorithm(), lazy.getAlgorithm());
+            assertEquals(Key.Format.JWK, lazy.getFormat());
+            assertEquals(expected.get(i).getSize(), lazy.getSize());
+            assertEquals(expected.get(i).getAttributes(), lazy.getAttributes());
+
+            assertFalse(lazy.isDecoded());
+        }
+    }
+
+    @Test
+    public void decodesOnFirstUse() throws Exception {
+        final byte[] bytes = resource.bytes("allKeyTypesJwks.jwk");
+
+        final List<Key> expected = Keys.decodeSet(bytes);
+        final List<Key> actual = Keys.decodeLazySet(bytes);
+
+        for (int i = 0; i < expected.size(); i++) {
+            final LazyKey lazy = (LazyKey) actual.get(i);
+
+            final java.security.Key key = lazy.getKey();
+            assertTrue(lazy.isDecoded());
+            assertSame(key, lazy.getKey());
+            assertArrayEquals(expected.get(i).getKey().getEncoded(), key.getEncoded());
+
+            if (lazy.getType() == Key.Type.PRIVATE) {
+                assertArrayEquals(expected.get(i).getPublicKey().getKey().getEncoded(), lazy.getPublicKey().getKey().getEncoded());
+            }
+        }
+    }
+
+    @Test
+    public void encode() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivateJwks.jwk");
+
+        final Key expected = Keys.decodeSet(bytes).get(0);
+        final Key lazy = Keys.decodeLazySet(bytes).get(0);
+
+        assertEquals(expected.toPem(), lazy.toPem());
+        assertEquals(expected.toJwk(), lazy.toJwk());
+    }
+
+    @Test
+    public void attributesAreModifiable() throws Exception {
+        final byte[] bytes = resource.bytes("allKeyTypesJwks.jwk");
+        final Map<String, String> expected = new HashMap<>(Keys.decodeLazySet(bytes).get(0).getAttributes());
+        final String name = expected.keySet().iterator().next();
+
+        final Key put = Keys.decodeLazySet(bytes).get(0);
+        put.getAttributes().put(name, "changed");
+        expected.put(name, "changed");
+        assertEquals(expected, put.getAttributes());
+
+        final Key set = Keys.decodeLazySet(bytes).get(0);
+        for (final Map.Entry<String, String> entry : set.getAttributes().entrySet()) {
+            if (entry.getKey().equals(name)) entry.setValue("changed");
+        }
+        assertEquals(expected, set.getAttributes());
+
+        final Key removed = Keys.decodeLazySet(bytes).get(0);
+        final Iterator<String> names = removed.getAttributes().keySet().iterator();
+        while (names.hasNext()) {
+            if (names.next().equals(name)) names.remove();
+        }
+        expected.remove(name);
+        assertEquals(expected, removed.getAttributes());
+        assertFalse(removed.hasAttribute(name));
+    }
+
+    /**
+     * Formats without lazy support decode as usual
+     */
+    @Test
+    public void otherFormats() throws Exception {
+        final List<Key> keys = Keys.decodeLazySet(resource.bytes("authorized_keys"));
+        assertEquals(Keys.decodeSet(resource.bytes("authorized_keys")).size(), keys.size());
+        assertFalse(keys.get(0) instanceof LazyKey);
+    }
+
+    /**
+     * The public key of an eagerly decoded private key is derived on first use
+     */
+    @Test
+    public void publicKeyDerivedOnDemand() throws Exception {
+        final Key key = Keys.decode(new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt").bytes("rsaPrivatePemPkcs1.pem"));
+        final RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) key.getKey();
+
+        final Key publicKey = key.getPublicKey();
+        assertNotNull(publicKey);
+        assertSame(publicKey, key.getPublicKey());
+        assertEquals(privateKey.getModulus().bitLength(), key.getSize());
+        assertEquals(key.getSize(), publicKey.getSize());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.KeyDecodeTest;
+import io.churchkey.Resource;
+import org.junit.Test;
+import org.tomitribe.util.Hex;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Expected output was produced with {@code openssl asn1parse -i -dump}
+ */
+public class Asn1DumpTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void pem() throws Exception {
+        final String expected = "" +
+                "    0:d=0  hl=3 l= 135 cons: SEQUENCE          \n" +
+                "    3:d=1  hl=2 l=   1 prim:  INTEGER           :00\n" +
+                "    6:d=1  hl=2 l=  19 cons:  SEQUENCE          \n" +
+                "    8:d=2  hl=2 l=   7 prim:   OBJECT            :id-ecPublicKey\n" +
+                "   17:d=2  hl=2 l=   8 prim:   OBJECT            :prime256v1\n" +
+                "   27:d=1  hl=2 l= 109 prim:  OCTET STRING      \n" +
+                "      0000 - 30 6b 02 01 01 04 20 73-b9 09 61 1e 3d 72 25 59   0k.... s..a.=r%Y\n" +
+                "      0010 - 77 66 8d 46 f3 18 63 20-60 84 c6 fd fc b5 72 5f   wf.F..c `.....r_\n" +
+                "      0020 - 37 34 df ca 9a 5d cd a1-44 03 42 00 04 e3 28 34   74...]..D.B...(4\n" +
+                "      0030 - e3 92 5d 32 51 37 43 c6-21 44 52 32 c2 d5 06 91   ..]2Q7C.!DR2....\n" +
+                "      0040 - 00 7a 85 68 f3 d1 26 06-df 4c b2 24 29 9c dc 55   .z.h..&..L.$)..U\n" +
+                "      0050 - 11 33 2b 2e 35 15 d9 3e-85 1d 64 a0 55 43 ac 61   .3+.5..>..d.UC.a\n" +
+                "      0060 - 42 e8 4a c9 25 6a 9d d8-0e 66 60 d0 1f            B.J.%j...f`..\n";
+
+        assertEquals(expected, Asn1Dump.dump(resource.bytes("ecPrivatePemPkcs8.pem")));
+    }
+
+    @Test
+    public void primitives() throws Exception {
+        final byte[] der = Hex.fromString("30200101ff0201ff02020080040568656c6c6f0c026f6b050080020102a103020105");
+
+        final String expected = "" +
+                "    0:d=0  hl=2 l=  32 cons: SEQUENCE          \n" +
+                "    2:d=1  hl=2 l=   1 prim:  BOOLEAN           :255\n" +
+                "    5:d=1  hl=2 l=   1 prim:  INTEGER           :-01\n" +
+                "    8:d=1  hl=2 l=   2 prim:  INTEGER           :80\n" +
+                "   12:d=1  hl=2 l=   5 prim:  OCTET STRING      :hello\n" +
+                "   19:d=1  hl=2 l=   2 prim:  UTF8STRING        :ok\n" +
+                "   23:d=1  hl=2 l=   0 prim:  NULL              \n" +
+                "   25:d=1  hl=2 l=   2 prim:  cont [ 0 ]        \n" +
+                "   29:d=1  hl=2 l=   3 cons:  cont [ 1 ]        \n" +
+                "   31:d=2  hl=2 l=   1 prim:   INTEGER           :05\n";
+
+        assertEquals(expected, Asn1Dump.dump(der));
+    }
+
+    @Test
+    public void badObject() throws Exception {
+        final byte[] der = Hex.fromString("3004020006000602808001");
+
+        final String expected = "" +
+                "    0:d=0  hl=2 l=   4 cons: SEQUENCE          \n" +
+                "    2:d=1  hl=2 l=   0 prim:  INTEGER           :BAD INTEGER:[]\n" +
+                "    4:d=1  hl=2 l=   0 prim:  OBJECT            :BAD OBJECT:[]\n" +
+                "    6:d=0  hl=2 l=   2 prim: OBJECT            :BAD OBJECT:[8080]\n" +
+                "Error in encoding: ";
+
+        assertEquals(expected, Asn1Dump.dump(der).substring(0, expected.length()));
+    }
+
+    @Test
+    public void deepNesting() throws Exception {
+        final String dump = Asn1Dump.dump(Asn1VisitorTest.nested(100_000));
+
+        final String[] lines = dump.split("\n");
+        assertEquals(Asn1Dump.MAXIMUM_DEPTH + 1, lines.length);
+        assertEquals("Error in encoding: nesting deeper than 128", lines[lines.length - 1]);
+    }
+}
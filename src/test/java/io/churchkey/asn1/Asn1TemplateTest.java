@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import org.junit.Test;
+
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.churchkey.asn1.DerBuilder.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Asn1TemplateTest {
+
+    private final Oid rsaKey = Oid.fromString("1.2.840.113549.1.1.1");
+
+    private static final Asn1Template<Values> INNER = Asn1Template.<Values>sequence()
+            .integer((values, i) -> values.add("inner " + i))
+            .build();
+
+    private static final Asn1Template<Values> TEMPLATE = Asn1Template.<Values>sequence()
+            .skip(Asn1Type.INTEGER)
+            .objectIdentifier((values, oid) -> values.add(oid.toString()))
+            .optional(Asn1Type.NULL, (values, nill) -> values.add("null"))
+            .sequence(INNER)
+            .encapsulated(INNER)
+            .unsignedInteger((values, i) -> values.add("unsigned " + i))
+            .explicit(0, (values, wrapped) -> values.add("[0] " + wrapped.asInteger()))
+            .explicit(1, (values, wrapped) -> values.add("[1] " + wrapped.asInteger()))
+            .build();
+
+    @Test
+    public void bind() throws Exception {
+        final byte[] der = write()
+                .sequence(write()
+                        .integer(BigInteger.ZERO)
+                        .objectIdentifier(rsaKey)
+                        .nill()
+                        .sequence(write().integer(BigInteger.valueOf(7)))
+                        .octetString(write().sequence(write().integer(BigInteger.valueOf(8))))
+                        .octetString(new byte[]{(byte) 0xFF})
+                        .any(write().integer(BigInteger.TEN))
+                        .bolean(write().integer(BigInteger.ONE))
+                        .integer(BigInteger.valueOf(99)))
+                .bytes();
+
+        final Values values = TEMPLATE.bind(der, new Values());
+        assertEquals("[1.2.840.113549.1.1.1, null, inner 7, inner 8, unsigned 255, [0] 10, [1] 1]", values.toString());
+    }
+
+    @Test
+    public void optionalAbsent() throws Exception {
+        final byte[] der = write()
+                .sequence(write()
+                        .integer(BigInteger.ZERO)
+                        .objectIdentifier(rsaKey)
+                        .sequence(write().integer(BigInteger.valueOf(7)))
+                        .octetString(write().sequence(write().integer(BigInteger.valueOf(8))))
+                        .octetString(new byte[]{1})
+                        .bolean(write().integer(BigInteger.ONE)))
+                .bytes();
+
+        final Values values = TEMPLATE.bind(der, new Values());
+        assertEquals("[1.2.840.113549.1.1.1, inner 7, inner 8, unsigned 1, [1] 1]", values.toString());
+    }
+
+    @Test
+    public void contextTags() throws Exception {
+        final Asn1Template<Values> template = Asn1Template.<Values>sequence()
+                .explicit(1, (values, wrapped) -> values.add(wrapped.getType().name()))
+                .build();
+
+        // a proper context specific [1] as written by OpenSSL
+        final Values values = template.bind(new byte[]{0x30, 0x04, (byte) 0xA1, 0x02, 0x05, 0x00}, new Values());
+        assertEquals("[NULL]", values.toString());
+    }
+
+    @Test
+    public void requiredMissing() throws Exception {
+        final byte[] der = write()
+                .sequence(write()
+                        .integer(BigInteger.ZERO)
+                        .integer(BigInteger.ONE))
+                .bytes();
+
+        try {
+            TEMPLATE.bind(der, new Values());
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertEquals("Invalid DER: expected OBJECT at offset 5, found INTEGER", e.getMessage());
+        }
+
+        try {
+            TEMPLATE.bind(write().sequence(write().integer(BigInteger.ZERO)).bytes(), new Values());
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("found end of sequence"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notASequence() throws Exception {
+        TEMPLATE.bind(write().integer(BigInteger.ONE).bytes(), new Values());
+    }
+
+    @Test
+    public void skipDoesNotBind() throws Exception {
+        final Values values = Asn1Template.<Values>sequence()
+                .skip(Asn1Type.INTEGER)
+                .optional((v, any) -> v.add("any"))
+                .build()
+                .bind(write().sequence(write().integer(BigInteger.ONE)).bytes(), new Values());
+
+        assertEquals("[]", values.toString());
+    }
+
+    private static class Values {
+        private final List<String> list = new ArrayList<>();
+
+        void add(final String value) {
+            list.add(value);
+        }
+
+        @Override
+        public String toString() {
+            return list.toString();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.KeyDecodeTest;
+import io.churchkey.Keys;
+import io.churchkey.Resource;
+import io.churchkey.util.Pem;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.churchkey.asn1.DerBuilder.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Asn1VisitorTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    private final Oid rsaKey = Oid.fromString("1.2.840.113549.1.1.1");
+
+    private final byte[] structure = write()
+            .sequence(write()
+                    .integer(BigInteger.ZERO)
+                    .sequence(write()
+                            .objectIdentifier(rsaKey)
+                            .nill())
+                    .octetString(new byte[]{1, 2}))
+            .bytes();
+
+    @Test
+    public void events() throws Exception {
+        final Events events = new Events(true);
+        DerSlice.of(structure).accept(events);
+
+        assertEquals("[start SEQUENCE, INTEGER, start SEQUENCE, OBJECT_IDENTIFIER, NULL, end SEQUENCE, OCTET_STRING, end SEQUENCE]",
+                events.events.toString());
+    }
+
+    @Test
+    public void skip() throws Exception {
+        final Events events = new Events(false);
+        DerSlice.of(structure).get(1).accept(events);
+
+        assertEquals("[start SEQUENCE]", events.events.toString());
+    }
+
+    @Test
+    public void inventory() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs8.pem");
+        final byte[] der = Pem.parse(bytes).getData();
+
+        final List<Oid> oids = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+
+        DerSlice.of(der).accept(new Asn1Visitor() {
+            @Override
+            public void primitive(final int tag, final DerSlice slice) throws IOException {
+                if (slice.isType(Asn1Type.OBJECT_IDENTIFIER)) {
+                    oids.add(slice.toOID());
+                } else if (slice.isType(Asn1Type.INTEGER)) {
+                    sizes.add(slice.getUnsignedBitLength());
+                } else if (slice.isType(Asn1Type.OCTET_STRING)) {
+                    slice.first().accept(this);
+                }
+            }
+        });
+
+        final RSAPrivateCrtKey key = (RSAPrivateCrtKey) Keys.decode(bytes).getKey();
+
+        assertEquals(1, oids.size());
+        assertEquals(rsaKey, oids.get(0));
+        assertTrue(sizes.contains(key.getModulus().bitLength()));
+        assertEquals(key.getModulus().bitLength(), (int) sizes.stream().max(Integer::compare).get());
+    }
+
+    @Test
+    public void deepNesting() throws Exception {
+        final int depth = 100_000;
+        final int[] counts = new int[3];
+
+        DerSlice.of(nested(depth)).accept(new Asn1Visitor() {
+            @Override
+            public boolean startConstructed(final int tag, final DerSlice slice) {
+                counts[0]++;
+                return true;
+            }
+
+            @Override
+            public void endConstructed(final int tag, final DerSlice slice) {
+                counts[1]++;
+            }
+
+            @Override
+            public void primitive(final int tag, final DerSlice slice) {
+                assertEquals(depth, slice.getDepth());
+                counts[2]++;
+            }
+        });
+
+        assertEquals(depth, counts[0]);
+        assertEquals(depth, counts[1]);
+        assertEquals(1, counts[2]);
+    }
+
+    /**
+     * @return a NULL wrapped in the given number of SEQUENCEs
+     */
+    static byte[] nested(final int depth) {
+        // Content length of every SEQUENCE, innermost first
+        final int[] lengths = new int[depth];
+        int length = 2;
+        for (int i = 0; i < depth; i++) {
+            lengths[i] = length;
+            length += 1 + lengthOfLength(length);
+        }
+
+        final byte[] der = new byte[length];
+        int position = 0;
+        for (int i = depth - 1; i >= 0; i--) {
+            der[position++] = 0x30;
+            final int bytes = lengthOfLength(lengths[i]) - 1;
+            if (bytes > 0) der[position++] = (byte) (0x80 | bytes);
+            for (int b = bytes - 1; b >= 0; b--) {
+                der[position++] = (byte) (lengths[i] >> (8 * b));
+            }
+            if (bytes == 0) der[position++] = (byte) lengths[i];
+        }
+        der[position++] = 0x05;
+        der[position] = 0x00;
+        return der;
+    }
+
+    private static int lengthOfLength(final int length) {
+        if (length < 0x80) return 1;
+        if (length < 0x100) return 2;
+        if (length < 0x10000) return 3;
+        return length < 0x1000000 ? 4 : 5;
+    }
+
+    @Test
+    public void unsignedBitLength() throws Exception {
+        assertEquals(0, DerSlice.of(write().integer(BigInteger.ZERO).bytes()).getUnsignedBitLength());
+        assertEquals(1, DerSlice.of(write().integer(BigInteger.ONE).bytes()).getUnsignedBitLength());
+        assertEquals(8, DerSlice.of(write().integer(255).bytes()).getUnsignedBitLength());
+        assertEquals(9, DerSlice.of(write().integer(256).bytes()).getUnsignedBitLength());
+
+        final BigInteger big = BigInteger.ONE.shiftLeft(4095);
+        assertEquals(4096, DerSlice.of(write().integer(big).bytes()).getUnsignedBitLength());
+    }
+
+    private static class Events implements Asn1Visitor {
+        private final List<String> events = new ArrayList<>();
+        private final boolean descend;
+
+        Events(final boolean descend) {
+            this.descend = descend;
+        }
+
+        @Override
+        public boolean startConstructed(final int tag, final DerSlice slice) {
+            events.add("start " + slice.getType());
+            return descend;
+        }
+
+        @Override
+        public void endConstructed(final int tag, final DerSlice slice) {
+            events.add("end " + slice.getType());
+        }
+
+        @Override
+        public void primitive(final int tag, final DerSlice slice) {
+            events.add(String.valueOf(slice.getType()));
+        }
+    }
+}
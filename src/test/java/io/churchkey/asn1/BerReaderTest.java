@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.KeyDecodeTest;
+import io.churchkey.Resource;
+import io.churchkey.util.Pem;
+import org.junit.Test;
+import org.tomitribe.util.Hex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BerReaderTest {
+
+    /**
+     * A PKCS#7 data ContentInfo with indefinite lengths throughout and the
+     * content split in a constructed OCTET STRING, followed by INTEGER 5
+     */
+    private static final String CONTENT_INFO = "" +
+            "3080" +
+            "06092a864886f70d010701" +
+            "a080" +
+            "2480" +
+            "0403010203" +
+            "04020405" +
+            "2480040106" + "0000" +
+            "0000" +
+            "0000" +
+            "0000" +
+            "020105";
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void indefiniteLength() throws Exception {
+        final BerReader reader = reader(CONTENT_INFO);
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Type.SEQUENCE, reader.getType());
+        assertTrue(reader.isIndefinite());
+        assertEquals(-1, reader.getLength());
+        reader.enter();
+
+        assertTrue(reader.next());
+        assertEquals(Oid.fromString("1.2.840.113549.1.7.1"), reader.readOid());
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Class.CONTEXT, reader.getAsn1Class());
+        assertEquals(0, reader.getTagNumber());
+        reader.enter();
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Type.OCTET_STRING, reader.getType());
+        assertTrue(reader.isConstructed());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, reader.readBytes());
+        assertEquals(2, reader.getDepth());
+
+        assertFalse(reader.next());
+        reader.exit();
+        assertFalse(reader.next());
+        reader.exit();
+
+        assertTrue(reader.next());
+        assertEquals(5, reader.readBigInteger().intValue());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void skipIndefinite() throws Exception {
+        final BerReader reader = reader(CONTENT_INFO);
+
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertEquals(39, reader.getOffset());
+        assertEquals(5, reader.readBigInteger().intValue());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void exitSkipsRemainingChildren() throws Exception {
+        final BerReader reader = reader(CONTENT_INFO);
+
+        assertTrue(reader.next());
+        reader.enter();
+        assertTrue(reader.next());
+        reader.exit();
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Type.INTEGER, reader.getType());
+    }
+
+    @Test
+    public void der() throws Exception {
+        final byte[] der = Pem.parse(resource.bytes("rsaPrivatePemPkcs1.pem")).getData();
+        final BerReader reader = new BerReader(new ByteArrayInputStream(der));
+
+        assertTrue(reader.next());
+        reader.assertType(Asn1Type.SEQUENCE).enter();
+
+        final DerSlice expected = DerSlice.of(der).first();
+        for (DerSlice slice = expected; slice != null; slice = slice.next()) {
+            assertTrue(reader.next());
+            assertEquals(slice.getOffset(), reader.getOffset());
+            assertEquals(slice.asInteger(), reader.readBigInteger());
+        }
+
+        assertFalse(reader.next());
+        reader.exit();
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void streamedSegments() throws Exception {
+        final byte[] segment = new byte[65536 + 5];
+        segment[0] = 0x04;
+        segment[1] = (byte) 0x83;
+        segment[2] = 0x01;
+        for (int i = 5; i < segment.length; i++) {
+            segment[i] = (byte) i;
+        }
+
+        final int count = 256;
+        final Enumeration<InputStream> parts = new Enumeration<InputStream>() {
+            private int i;
+
+            @Override
+            public boolean hasMoreElements() {
+                return i <= count + 1;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (i++ == 0) return new ByteArrayInputStream(new byte[]{0x24, (byte) 0x80});
+                if (i == count + 2) return new ByteArrayInputStream(new byte[]{0, 0});
+                return new ByteArrayInputStream(segment);
+            }
+        };
+
+        final BerReader reader = new BerReader(new SequenceInputStream(parts));
+        assertTrue(reader.next());
+
+        long total = 0;
+        long sum = 0;
+        final byte[] buffer = new byte[1000];
+        try (InputStream in = reader.openValue()) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    sum += buffer[i];
+                }
+                total += n;
+            }
+        }
+
+        assertEquals(65536L * count, total);
+        long expected = 0;
+        for (int i = 5; i < segment.length; i++) {
+            expected += segment[i];
+        }
+        assertEquals(expected * count, sum);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void partiallyReadValue() throws Exception {
+        final BerReader reader = reader("0403010203" + "0500");
+
+        assertTrue(reader.next());
+        final InputStream value = reader.openValue();
+        assertEquals(1, value.read());
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Type.NULL, reader.getType());
+        assertEquals(-1, value.read());
+    }
+
+    @Test
+    public void highTagNumber() throws Exception {
+        final BerReader reader = reader("9f8100" + "01" + "ff");
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Class.CONTEXT, reader.getAsn1Class());
+        assertEquals(128, reader.getTagNumber());
+        assertArrayEquals(new byte[]{(byte) 0xff}, reader.readBytes());
+    }
+
+    @Test
+    public void highTagNumberType() throws Exception {
+        final BerReader reader = reader("5f2101" + "05");
+
+        assertTrue(reader.next());
+        assertEquals(Asn1Class.APPLICATION, reader.getAsn1Class());
+        assertEquals(33, reader.getTagNumber());
+        assertNull(reader.getType());
+        assertFalse(reader.isType(Asn1Type.NULL));
+        try {
+            reader.assertType(Asn1Type.NULL);
+            fail("IllegalStateException expected");
+        } catch (final IllegalStateException e) {
+            assertEquals("Expected type NULL, found null", e.getMessage());
+        }
+    }
+
+    @Test
+    public void nonShortestLength() throws Exception {
+        final BerReader reader = reader("04820002" + "0102");
+
+        assertTrue(reader.next());
+        assertArrayEquals(new byte[]{1, 2}, reader.readBytes());
+    }
+
+    @Test
+    public void malformed() throws Exception {
+        assertCorrupted("0480");             // indefinite primitive
+        assertCorrupted("30030403010203");   // child longer than its parent
+        assertCorrupted("30020000");         // end-of-contents in a definite element
+        assertCorrupted("30800001");         // bad end-of-contents
+        assertCorrupted("3080020101");       // missing end-of-contents
+        assertCorrupted("0000");             // end-of-contents at the top level
+    }
+
+    @Test
+    public void indefiniteInDerParser() throws Exception {
+        try {
+            new DerParser(Hex.fromString(CONTENT_INFO)).readObject();
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("indefinite"));
+        }
+    }
+
+    private static void assertCorrupted(final String hex) throws Exception {
+        try {
+            final BerReader reader = reader(hex);
+            skipAll(reader);
+            fail("IOException expected for " + hex);
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private static void skipAll(final BerReader reader) throws IOException {
+        while (reader.next()) {
+            if (reader.isConstructed()) {
+                reader.enter();
+                skipAll(reader);
+                reader.exit();
+            }
+        }
+    }
+
+    /**
+     * Skipping walks the nesting without recursing
+     */
+    @Test
+    public void skipDeeplyNestedIndefinite() throws Exception {
+        final int depth = 100_000;
+        // depth SEQUENCE headers, a NULL, depth end-of-contents and an INTEGER after them
+        final byte[] stream = new byte[depth * 4 + 5];
+        for (int i = 0; i < depth; i++) {
+            stream[2 * i] = 0x30;
+            stream[2 * i + 1] = (byte) 0x80;
+        }
+        stream[2 * depth] = 0x05;
+        stream[stream.length - 3] = 0x02;
+        stream[stream.length - 2] = 0x01;
+        stream[stream.length - 1] = 0x07;
+
+        final BerReader reader = new BerReader(new ByteArrayInputStream(stream));
+        assertTrue(reader.next());
+        assertTrue(reader.isIndefinite());
+        assertTrue(reader.next());
+        assertEquals(7, reader.readBigInteger().intValue());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void indefiniteOverrunsDefiniteParent() throws Exception {
+        final String ber = "3004" + "3080" + "0500" + "0000";
+
+        final BerReader skipping = reader(ber);
+        assertTrue(skipping.next());
+        skipping.enter();
+        assertTrue(skipping.next());
+        try {
+            skipping.next();
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds its enclosing element"));
+        }
+
+        final BerReader entering = reader(ber);
+        assertTrue(entering.next());
+        entering.enter();
+        assertTrue(entering.next());
+        entering.enter();
+        assertTrue(entering.next());
+        try {
+            entering.next();
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds its enclosing element"));
+        }
+    }
+
+    private static BerReader reader(final String hex) {
+        return new BerReader(new ByteArrayInputStream(Hex.fromString(hex)));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static java.math.BigInteger.ONE;
+import static java.math.BigInteger.ZERO;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DerBuilderTest {
+
+    private final Oid rsaKey = Oid.fromString("1.2.840.113549.1.1.1");
+
+    @Test
+    public void sameAsDerWriter() throws Exception {
+        final Random random = new Random(42);
+
+        // lengths needing one, two and three length octets
+        for (final int bits : new int[]{64, 1024, 4096, 600_000}) {
+            final BigInteger big = new BigInteger(bits, random);
+            final BigInteger negative = big.negate();
+            final byte[] point = big.toByteArray();
+
+            final byte[] expected = DerWriter.write()
+                    .sequence(DerWriter.write()
+                            .integer(ZERO)
+                            .sequence(DerWriter.write()
+                                    .objectIdentifier(rsaKey)
+                                    .nill())
+                            .octetString(DerWriter.write()
+                                    .sequence(DerWriter.write()
+                                            .integer(big)
+                                            .integer(negative)
+                                            .integer(127)
+                                            .integer(128)
+                                            .octetString(ONE)
+                                            .octetString(new byte[]{0, 0, 5})
+                                            .octetString(new byte[]{0})
+                                            .any(DerWriter.write().integer(ONE))
+                                            .bolean(DerWriter.write()
+                                                    .bitString(point)))))
+                    .bytes();
+
+            final DerBuilder builder = DerBuilder.write()
+                    .sequence(DerBuilder.write()
+                            .integer(ZERO)
+                            .sequence(DerBuilder.write()
+                                    .objectIdentifier(rsaKey)
+                                    .nill())
+                            .octetString(DerBuilder.write()
+                                    .sequence(DerBuilder.write()
+                                            .integer(big)
+                                            .integer(negative)
+                                            .integer(127)
+                                            .integer(128)
+                                            .octetString(ONE)
+                                            .octetString(new byte[]{0, 0, 5})
+                                            .octetString(new byte[]{0})
+                                            .any(DerBuilder.write().integer(ONE))
+                                            .bolean(DerBuilder.write()
+                                                    .bitString(point)))));
+
+            assertEquals(expected.length, builder.size());
+            assertArrayEquals("bits " + bits, expected, builder.bytes());
+        }
+    }
+
+    @Test
+    public void writeToArray() throws Exception {
+        final DerBuilder builder = DerBuilder.write().sequence(DerBuilder.write().integer(300));
+        final byte[] expected = builder.bytes();
+
+        final byte[] bytes = new byte[expected.length + 4];
+        assertEquals(2 + expected.length, builder.writeTo(bytes, 2));
+
+        final byte[] written = new byte[expected.length];
+        System.arraycopy(bytes, 2, written, 0, written.length);
+        assertArrayEquals(expected, written);
+
+        try {
+            builder.writeTo(bytes, 5);
+            fail("IndexOutOfBoundsException expected");
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void writeToBuffer() throws Exception {
+        final DerBuilder builder = DerBuilder.write().sequence(DerBuilder.write().objectIdentifier(rsaKey));
+        final byte[] expected = builder.bytes();
+
+        for (final ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64)}) {
+            buffer.put((byte) 1);
+            builder.writeTo(buffer);
+            assertEquals(1 + expected.length, buffer.position());
+
+            buffer.flip();
+            buffer.get();
+            final byte[] written = new byte[expected.length];
+            buffer.get(written);
+            assertArrayEquals(expected, written);
+        }
+
+        try {
+            builder.writeTo(ByteBuffer.allocate(expected.length - 1));
+            fail("BufferOverflowException expected");
+        } catch (final BufferOverflowException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void writeToStream() throws Exception {
+        final DerBuilder builder = DerBuilder.write().integer(ONE).nill();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.writeTo(out);
+        assertArrayEquals(new byte[]{0x02, 0x01, 0x01, 0x05, 0x00}, out.toByteArray());
+    }
+}
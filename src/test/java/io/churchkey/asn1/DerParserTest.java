@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static io.churchkey.asn1.DerWriter.write;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DerParserTest {
+
+    @Test
+    public void beyond64k() throws Exception {
+        final byte[] value = value(200_000);
+        final byte[] bytes = write().octetString(value).bytes();
+
+        final Asn1Object object = new DerParser(bytes).readObject();
+        assertEquals(value.length, object.getLength());
+        assertArrayEquals(value, object.getValue());
+    }
+
+    @Test
+    public void fiveOctetLength() throws Exception {
+        final byte[] value = value(65536);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{0x04, (byte) 0x85, 0, 0, 1, 0, 0});
+        out.write(value);
+        final byte[] bytes = out.toByteArray();
+
+        final Asn1Object object = new DerParser(bytes).readObject();
+        assertArrayEquals(value, object.getValue());
+
+        final DerSlice slice = DerSlice.of(bytes);
+        assertEquals(7, slice.getValueOffset());
+        assertEquals(65536, slice.getLength());
+    }
+
+    @Test
+    public void hugeDeclaredLength() throws Exception {
+        // claims 4 GiB followed by only three value bytes
+        final byte[] bytes = {0x04, (byte) 0x88, 0, 0, 0, 1, 0, 0, 0, 0, 1, 2, 3};
+
+        final DerParser parser = new DerParser(bytes);
+        parser.read();
+        assertEquals(1L << 32, parser.readLongLength());
+
+        try {
+            new DerParser(bytes).readObject();
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            // too big for an array
+        }
+
+        try {
+            DerSlice.of(bytes);
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            // more than the source holds
+        }
+    }
+
+    @Test
+    public void truncatedValueDoesNotTrustLength() throws Exception {
+        // claims 1 GiB but is truncated
+        final byte[] bytes = {0x04, (byte) 0x84, 0x40, 0, 0, 0, 1, 2, 3};
+
+        try {
+            new DerParser(bytes).readObject();
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("read 3 out of required 1073741824"));
+        }
+    }
+
+    @Test
+    public void streamedValue() throws Exception {
+        final byte[] value = value(300_000);
+        final byte[] bytes = write()
+                .sequence(write()
+                        .octetString(value)
+                        .integer(BigInteger.valueOf(42)))
+                .bytes();
+
+        final DerParser sequence = new DerParser(bytes).readStreamedSequence();
+
+        final Tag tag = sequence.readTag();
+        assertEquals(Asn1Type.OCTET_STRING, tag.getType());
+
+        final long length = sequence.readLongLength();
+        assertEquals(value.length, length);
+
+        try (InputStream in = sequence.readValue(length)) {
+            final byte[] head = new byte[10];
+            assertEquals(10, in.read(head));
+            assertEquals(value[9], head[9]);
+            // the remainder is skipped on close
+        }
+
+        assertEquals(BigInteger.valueOf(42), sequence.readBigInteger());
+        assertNull(sequence.readObject());
+    }
+
+    @Test
+    public void streamedValueTruncated() throws Exception {
+        final byte[] bytes = {0x04, 0x05, 1, 2};
+
+        final DerParser parser = new DerParser(bytes);
+        parser.readTag();
+        final InputStream in = parser.readValue(parser.readLongLength());
+        assertEquals(1, in.read());
+        assertEquals(2, in.read());
+        try {
+            in.read();
+            fail("IOException expected");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void slicedValue() throws Exception {
+        final byte[] value = value(100_000);
+        final byte[] bytes = write().sequence(write().octetString(value)).bytes();
+
+        final ByteBuffer view = DerSlice.of(bytes).get(0).toByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(value.length, view.remaining());
+        assertEquals(value[99_999], view.get(99_999));
+    }
+
+    private static byte[] value(final int size) {
+        final byte[] value = new byte[size];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) (i % 251 + 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.DecodeLimitException;
+import io.churchkey.DecodeOptions;
+import io.churchkey.Key;
+import io.churchkey.KeyDecodeTest;
+import io.churchkey.Keys;
+import io.churchkey.Resource;
+import io.churchkey.util.Pem;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.List;
+
+import static io.churchkey.asn1.DerWriter.write;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DerSliceTest {
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    private final Oid rsaKey = Oid.fromString("1.2.840.113549.1.1.1");
+
+    @Test
+    public void navigate() throws Exception {
+        final byte[] bytes = write()
+                .sequence(write()
+                        .integer(BigInteger.valueOf(7))
+                        .sequence(write()
+                                .objectIdentifier(rsaKey)
+                                .nill())
+                        .octetString(new byte[]{1, 2, 3}))
+                .bytes();
+
+        final DerSlice root = DerSlice.of(bytes);
+        assertEquals(Asn1Type.SEQUENCE, root.getType());
+        assertTrue(root.isConstructed());
+        assertEquals(0, root.getOffset());
+        assertEquals(2, root.getValueOffset());
+        assertEquals(bytes.length, root.getEncodedLength());
+        assertNull(root.next());
+
+        final DerSlice integer = root.first();
+        assertEquals(BigInteger.valueOf(7), integer.asInteger());
+        assertEquals(1, integer.getDepth());
+
+        final DerSlice oid = root.get(1, 0);
+        assertTrue(oid.isOid(rsaKey));
+        assertEquals(rsaKey, oid.asOID());
+        assertEquals(Asn1Type.NULL, oid.next().getType());
+        assertEquals(0, oid.next().getLength());
+        assertNull(oid.next().next());
+
+        final DerSlice octets = root.child(2).assertType(Asn1Type.OCTET_STRING);
+        assertArrayEquals(new byte[]{1, 2, 3}, octets.toBytes());
+        assertEquals(bytes.length, octets.getEnd());
+
+        assertNull(root.child(3));
+        assertEquals(3, root.children().size());
+    }
+
+    @Test
+    public void missingPath() throws Exception {
+        final DerSlice root = DerSlice.of(write().sequence(write().integer(BigInteger.ONE)).bytes());
+        try {
+            root.get(1);
+            fail("StreamCorruptedException expected");
+        } catch (final StreamCorruptedException e) {
+            assertEquals("Invalid DER: no element at [1]", e.getMessage());
+        }
+    }
+
+    @Test
+    public void longFormLength() throws Exception {
+        final byte[] value = new byte[300];
+        value[0] = 0x55;
+        value[299] = 0x66;
+        final byte[] bytes = write().octetString(value).bytes();
+
+        final DerSlice slice = DerSlice.of(bytes);
+        assertEquals(4, slice.getValueOffset());
+        assertEquals(300, slice.getLength());
+        assertEquals(0x55, slice.getByte(0));
+        assertEquals(0x66, slice.getByte(299));
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        final byte[] bytes = write().sequence(write().integer(BigInteger.TEN)).bytes();
+
+        for (int i = 1; i < bytes.length; i++) {
+            try {
+                final DerSlice slice = DerSlice.of(bytes, 0, i);
+                slice.first();
+                fail("Truncated at " + i);
+            } catch (final IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void offsetIntoArray() throws Exception {
+        final byte[] der = write().integer(BigInteger.valueOf(4096)).bytes();
+        final byte[] bytes = new byte[der.length + 10];
+        System.arraycopy(der, 0, bytes, 5, der.length);
+
+        final DerSlice slice = DerSlice.of(bytes, 5, der.length);
+        assertEquals(5, slice.getOffset());
+        assertEquals(BigInteger.valueOf(4096), slice.asInteger());
+        assertArrayEquals(der, slice.toEncoded());
+    }
+
+    @Test
+    public void matchesDerParser() throws Exception {
+        final byte[] der = Pem.parse(resource.bytes("rsaPrivatePemPkcs8.pem")).getData();
+
+        final List<DerSlice> values = DerSlice.of(der).get(2, 0).children();
+        final RSAPrivateCrtKey key = (RSAPrivateCrtKey) Keys.decode(resource.bytes("rsaPrivatePemPkcs8.pem")).getKey();
+
+        assertEquals(9, values.size());
+        assertEquals(key.getModulus(), values.get(1).asInteger());
+        assertEquals(key.getPrivateExponent(), values.get(3).asInteger());
+        assertEquals(key.getCrtCoefficient(), values.get(8).asInteger());
+
+        final DerParser parser = new DerParser(der);
+        final Asn1Object object = parser.readObject();
+        assertEquals(object.getLength(), DerSlice.of(der).getLength());
+        assertArrayEquals(object.getValue(), DerSlice.of(der).toBytes());
+    }
+
+    @Test
+    public void byteBuffer() throws Exception {
+        final byte[] der = Pem.parse(resource.bytes("ecPrivatePemPkcs8.pem")).getData();
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(der.length + 2);
+        direct.put((byte) 0).put((byte) 0).put(der).flip().position(2);
+
+        final DerSlice fromBuffer = DerSlice.of(direct);
+        final DerSlice fromArray = DerSlice.of(der);
+
+        assertEquals(2, direct.position());
+        assertEquals(fromArray.getLength(), fromBuffer.getLength());
+        assertEquals(fromArray.get(1, 1).asOID(), fromBuffer.get(1, 1).asOID());
+        assertArrayEquals(fromArray.get(2).toBytes(), fromBuffer.get(2).toBytes());
+        assertFalse(fromBuffer.get(1, 0).isOid(rsaKey));
+    }
+
+    @Test
+    public void trimmedBytes() throws Exception {
+        final DerSlice slice = DerSlice.of(new byte[]{0x03, 0x04, 0x00, 0x00, 0x04, 0x01});
+        assertArrayEquals(new byte[]{0x04, 0x01}, slice.toTrimmedBytes());
+        assertArrayEquals(new byte[]{0x00, 0x00, 0x04, 0x01}, slice.toBytes());
+    }
+
+    @Test
+    public void depth() throws Exception {
+        final byte[] bytes = resource.bytes("rsaPrivatePemPkcs8.pem");
+
+        try {
+            Keys.decode(bytes, DecodeOptions.builder().maximumDerDepth(2).build());
+            fail("DecodeLimitException expected");
+        } catch (final DecodeLimitException e) {
+            // expected
+        }
+
+        final Key key = Keys.decode(bytes, DecodeOptions.builder().maximumDerDepth(3).build());
+        assertEquals(Key.Algorithm.RSA, key.getAlgorithm());
+    }
+}
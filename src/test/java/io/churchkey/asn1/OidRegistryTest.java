@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.asn1;
+
+import io.churchkey.ec.Curve;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.churchkey.asn1.DerBuilder.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OidRegistryTest {
+
+    private final Oid rsaKey = Oid.fromString("1.2.840.113549.1.1.1");
+    private final Oid dsaKey = Oid.fromString("1.2.840.10040.4.1");
+    private final Oid ecKey = Oid.fromString("1.2.840.10045.2.1");
+
+    private final OidRegistry<String> registry = registry();
+
+    @Test
+    public void oid() {
+        assertEquals("RSA", registry.get(rsaKey));
+        assertEquals("DSA", registry.get(dsaKey));
+        assertEquals("EC", registry.get(ecKey));
+        assertNull(registry.get(Oid.fromString("1.2.840.10045.2.2")));
+        assertNull(registry.get((Oid) null));
+    }
+
+    @Test
+    public void bytes() {
+        final byte[] encoded = ecKey.toBytes();
+        final byte[] padded = new byte[encoded.length + 3];
+        System.arraycopy(encoded, 0, padded, 3, encoded.length);
+
+        assertEquals("EC", registry.get(padded, 3, encoded.length));
+        assertNull(registry.get(padded, 3, encoded.length - 1));
+    }
+
+    @Test
+    public void slice() throws Exception {
+        final byte[] der = write()
+                .sequence(write()
+                        .objectIdentifier(dsaKey)
+                        .integer(BigInteger.ONE))
+                .bytes();
+
+        final DerSlice oid = DerSlice.of(der).get(0);
+        assertEquals("DSA", registry.get(oid));
+        assertNull(registry.get(oid.next()));
+    }
+
+    @Test
+    public void curves() throws Exception {
+        for (final Curve curve : Curve.values()) {
+            if (curve.getOid() == null || curve.getOid().length() == 0) continue;
+
+            final DerSlice slice = DerSlice.of(write().objectIdentifier(curve.getOid()).bytes());
+            final Curve resolved = Curve.resolve(slice);
+
+            assertSame(Curve.resolve(curve.getOid()), resolved);
+            assertEquals(curve.getOid(), resolved.getOid());
+        }
+    }
+
+    private OidRegistry<String> registry() {
+        final Map<Oid, String> map = new HashMap<>();
+        map.put(rsaKey, "RSA");
+        map.put(dsaKey, "DSA");
+        map.put(ecKey, "EC");
+        return new OidRegistry<>(map);
+    }
+}
@@ -19,6 +19,7 @@ import org.junit.Test;
 import org.tomitribe.util.Hex;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -157,4 +158,18 @@ public class OidTest {
 
         assertEquals(oid, actualOid);
     }
+
+    @Test
+    public void cachedEncoding() throws IOException {
+        final byte[] bytes = {42, -122, 72, -122, -9, 13, 1, 1, 1};
+        final Oid oid = Oid.fromBytes(bytes);
+
+        bytes[0] = 0;
+        assertEquals("1.2.840.113549.1.1.1", oid.toString());
+
+        final byte[] encoded = oid.toBytes();
+        encoded[0] = 0;
+        assertArrayEquals(new byte[]{42, -122, 72, -122, -9, 13, 1, 1, 1}, oid.toBytes());
+        assertEquals(Arrays.asList(1, 2, 840, 113549, 1, 1, 1), oid.getComponents());
+    }
 }
@@ -21,6 +21,7 @@ import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class CurveTest {
@@ -52,6 +53,22 @@ public class CurveTest {
         assertFalse(Curve.p256.isEqual(Curve.secp256k1.getParameterSpec()));
     }
 
+    @Test
+    public void find() {
+        assertEquals(Curve.secp256r1, Curve.find("secp256r1"));
+        assertEquals(Curve.p256, Curve.find("P-256"));
+        assertEquals(Curve.nistp256, Curve.find("NIST P256"));
+        assertEquals(Curve.k163, Curve.find("K-163"));
+        assertEquals(Curve.secp256r1, Curve.find("ansiX9p256r1"));
+        assertNull(Curve.find("nope"));
+        assertNull(Curve.find(null));
+    }
+
+    @Test(expected = UnsupportedCurveException.class)
+    public void resolveUnknown() {
+        Curve.resolve("nope");
+    }
+
     @Test
     public void getName() {
         assertEquals("P-256", Curve.p256.getName());
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.DecodeOptions;
+import io.churchkey.Key;
+import io.churchkey.KeyDecodeTest;
+import io.churchkey.Keys;
+import io.churchkey.Resource;
+import io.churchkey.asn1.DerSlice;
+import io.churchkey.util.Pem;
+import org.junit.Test;
+import org.tomitribe.util.Hex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BeginCertificateTest {
+
+    private final Resource resource = Resource.resource(BeginCertificateTest.class);
+
+    @Test
+    public void rsa() throws Exception {
+        final Key key = assertCertificate("rsa.crt", Key.Algorithm.RSA);
+        assertEquals("CN=rsa.example.com,OU=Church\\+Key,O=Tomitribe\\, Inc.,ST=CA,C=US", key.getAttribute("subject"));
+        assertEquals("1234567890ABCDEF1234", key.getAttribute("serial"));
+
+        final Key expected = Keys.decode(new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt").bytes("rsaPrivatePemPkcs8.pem"));
+        assertEquals(expected.getPublicKey(), key);
+    }
+
+    @Test
+    public void ec() throws Exception {
+        final Key key = assertCertificate("ec.crt", Key.Algorithm.EC);
+        assertEquals("7", key.getAttribute("serial"));
+        // After 2049 RFC 5280 times are GeneralizedTime
+        assertTrue(key.getAttribute("notAfter").startsWith("2108-12-06T"));
+    }
+
+    @Test
+    public void dsa() throws Exception {
+        assertCertificate("dsa.crt", Key.Algorithm.DSA);
+    }
+
+    /**
+     * Attributes are decoded as they are read, and the map otherwise
+     * behaves like that of any other key
+     */
+    @Test
+    public void lazyAttributes() throws Exception {
+        final Map<String, String> attributes = Keys.decode(resource.bytes("rsa.crt")).getAttributes();
+
+        assertEquals(7, attributes.size());
+        assertTrue(attributes.containsKey("x5t"));
+        assertNull(attributes.get("kid"));
+
+        attributes.put("kid", "rsa");
+        attributes.put("subject", "overridden");
+        assertEquals("overridden", attributes.remove("subject"));
+        assertFalse(attributes.containsKey("subject"));
+        assertEquals("rsa", attributes.get("kid"));
+        assertEquals(7, attributes.size());
+        assertEquals(7, attributes.entrySet().size());
+    }
+
+    /**
+     * Without attributes nothing of the certificate is kept
+     */
+    @Test
+    public void noAttributes() throws Exception {
+        final DecodeOptions options = DecodeOptions.builder().attributes(false).build();
+        final Key key = Keys.decode(resource.bytes("rsa.crt"), options);
+
+        assertEquals(Key.class, key.getClass());
+        assertTrue(key.getAttributes().isEmpty());
+        assertEquals(Keys.decode(resource.bytes("rsa.crt")), key);
+    }
+
+    /**
+     * A name X500Principal rejects is reported raw instead of throwing
+     * from the attribute map long after the decode
+     */
+    @Test
+    public void malformedSubject() throws Exception {
+        final byte[] der = Pem.parse(resource.bytes("rsa.crt")).getData();
+        final DerSlice subject = DerSlice.of(der).get(0, 5);
+        // The first RelativeDistinguishedName becomes a SEQUENCE instead of a SET
+        der[subject.getValueOffset()] = 0x30;
+
+        final Key key = Keys.decode(pem(der));
+        assertEquals("#" + Hex.toString(subject.toEncoded()).toLowerCase(), key.getAttribute("subject"));
+        assertEquals("1234567890ABCDEF1234", key.getAttribute("serial"));
+        for (final String name : key.getAttributes().keySet()) {
+            assertNotNull(name, key.getAttribute(name));
+        }
+    }
+
+    @Test
+    public void malformedValidity() throws Exception {
+        final byte[] der = Pem.parse(resource.bytes("rsa.crt")).getData();
+        der[DerSlice.of(der).get(0, 4, 0).getOffset()] = 0x04;
+
+        try {
+            Keys.decode(pem(der));
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            assertEquals("Invalid X.509 certificate", e.getMessage());
+        }
+    }
+
+    private static byte[] pem(final byte[] der) {
+        return ("-----BEGIN CERTIFICATE-----\n" + Base64.getMimeEncoder().encodeToString(der) + "\n-----END CERTIFICATE-----\n").getBytes(US_ASCII);
+    }
+
+    @Test
+    public void bundle() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            out.write(resource.bytes("rsa.crt"));
+            out.write(resource.bytes("ec.crt"));
+            out.write(resource.bytes("dsa.crt"));
+        }
+
+        final List<Key> keys = Keys.decodeSet(out.toByteArray());
+        assertEquals(60, keys.size());
+        for (int i = 0; i < keys.size(); i += 3) {
+            assertEquals(Key.Algorithm.RSA, keys.get(i).getAlgorithm());
+            assertEquals(Key.Algorithm.EC, keys.get(i + 1).getAlgorithm());
+            assertEquals(Key.Algorithm.DSA, keys.get(i + 2).getAlgorithm());
+        }
+    }
+
+    private Key assertCertificate(final String name, final Key.Algorithm algorithm) throws Exception {
+        final byte[] bytes = resource.bytes(name);
+        final X509Certificate expected = (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(bytes));
+
+        final Key key = Keys.decode(bytes);
+        assertEquals(algorithm, key.getAlgorithm());
+        assertEquals(Key.Type.PUBLIC, key.getType());
+        assertEquals(Key.Format.PEM, key.getFormat());
+        assertArrayEquals(expected.getPublicKey().getEncoded(), key.getKey().getEncoded());
+
+        final byte[] der = Pem.parse(bytes).getData();
+        final Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        assertEquals(expected.getSubjectX500Principal().getName(), key.getAttribute("subject"));
+        assertEquals(expected.getIssuerX500Principal().getName(), key.getAttribute("issuer"));
+        assertEquals(expected.getSerialNumber().toString(16).toUpperCase(), key.getAttribute("serial"));
+        assertEquals(expected.getNotBefore().toInstant().toString(), key.getAttribute("notBefore"));
+        assertEquals(expected.getNotAfter().toInstant().toString(), key.getAttribute("notAfter"));
+        assertEquals(base64.encodeToString(MessageDigest.getInstance("SHA-1").digest(der)), key.getAttribute("x5t"));
+        assertEquals(base64.encodeToString(MessageDigest.getInstance("SHA-256").digest(der)), key.getAttribute("x5t#S256"));
+        return key;
+    }
+}
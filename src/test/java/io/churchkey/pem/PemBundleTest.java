@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.churchkey.pem;
+
+import io.churchkey.DecodeLimitException;
+import io.churchkey.DecodeOptions;
+import io.churchkey.Key;
+import io.churchkey.KeyDecodeTest;
+import io.churchkey.Keys;
+import io.churchkey.Resource;
+import io.churchkey.util.Pem;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class PemBundleTest {
+
+    private static final String CRL = "" +
+            "-----BEGIN X509 CRL-----\n" +
+            "MAA=\n" +
+            "-----END X509 CRL-----\n";
+
+    private final Resource resource = new Resource(KeyDecodeTest.class, "KeyDecodeTest/data.txt");
+
+    @Test
+    public void mixedBundle() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("Bag Attributes\n" +
+                "    localKeyID: 01 00 00 00\n" +
+                "    friendlyName: server\n" +
+                "Key Attributes: <No Attributes>\n").getBytes(US_ASCII));
+        out.write(resource.bytes("rsaPrivatePemPkcs8.pem"));
+        out.write("subject=CN = server\nissuer=CN = server\n".getBytes(US_ASCII));
+        out.write(CRL.getBytes(US_ASCII));
+        out.write("\r\n".getBytes(US_ASCII));
+        out.write(resource.bytes("ecPublicPemX509.pem"));
+        out.write(resource.bytes("dsaPrivatePemPkcs1.pem"));
+
+        final byte[] bytes = out.toByteArray();
+        final List<Key> keys = Keys.decodeSet(bytes);
+
+        assertEquals(3, keys.size());
+        assertKey(keys.get(0), Key.Algorithm.RSA, Key.Type.PRIVATE);
+        assertKey(keys.get(1), Key.Algorithm.EC, Key.Type.PUBLIC);
+        assertKey(keys.get(2), Key.Algorithm.DSA, Key.Type.PRIVATE);
+
+        assertEquals(3, Keys.decodeSet(ByteBuffer.wrap(bytes)).size());
+
+        final Key first = Keys.decode(bytes);
+        assertKey(first, Key.Algorithm.RSA, Key.Type.PRIVATE);
+    }
+
+    @Test
+    public void blocks() throws Exception {
+        final byte[] bytes = ("junk\n" + CRL + "more junk\n" + CRL.replace("\n", "\r\n")).getBytes(US_ASCII);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2);
+
+        final List<ByteBuffer> blocks = Pem.blocks(buffer);
+        assertEquals(2, blocks.size());
+        assertEquals(2, buffer.position());
+        assertEquals(CRL.trim(), US_ASCII.decode(blocks.get(0)).toString());
+        assertEquals(CRL.trim().replace("\n", "\r\n"), US_ASCII.decode(blocks.get(1)).toString());
+    }
+
+    @Test
+    public void unterminated() throws Exception {
+        try {
+            Pem.blocks(ByteBuffer.wrap((CRL + "-----BEGIN PUBLIC KEY-----\nMAA=\n").getBytes(US_ASCII)));
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            assertEquals("Unterminated PEM block at offset 53", e.getMessage());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void noKeys() throws Exception {
+        Keys.decodeSet((CRL + CRL).getBytes(US_ASCII));
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        final String[] names = {"rsaPrivatePemPkcs1.pem", "ecPrivatePemPkcs8.pem", "rsaPublicPemX509.pem", "dsaPublicPemX509.pem"};
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 200; i++) {
+            out.write(resource.bytes(names[i % names.length]));
+        }
+        final byte[] bytes = out.toByteArray();
+
+        final List<Key> keys = Keys.decodeSet(bytes);
+        assertEquals(200, keys.size());
+        for (int i = 0; i < keys.size(); i += 4) {
+            assertKey(keys.get(i), Key.Algorithm.RSA, Key.Type.PRIVATE);
+            assertKey(keys.get(i + 1), Key.Algorithm.EC, Key.Type.PRIVATE);
+            assertKey(keys.get(i + 2), Key.Algorithm.RSA, Key.Type.PUBLIC);
+            assertKey(keys.get(i + 3), Key.Algorithm.DSA, Key.Type.PUBLIC);
+        }
+
+        // the options of the caller apply to the blocks decoded on other threads
+        try {
+            Keys.decodeSet(bytes, DecodeOptions.builder().maximumDerDepth(0).build());
+            fail("DecodeLimitException expected");
+        } catch (final DecodeLimitException e) {
+            assertEquals(0, e.getMaximum());
+        }
+    }
+
+    private static void assertKey(final Key key, final Key.Algorithm algorithm, final Key.Type type) {
+        assertNotNull(key);
+        assertEquals(algorithm, key.getAlgorithm());
+        assertEquals(type, key.getType());
+        assertEquals(Key.Format.PEM, key.getFormat());
+    }
+}